@@ -18,6 +18,7 @@ import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.ShapefileHandler;
 import edu.harvard.iq.dataverse.util.StringUtil;
 import java.io.IOException;
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Objects;
@@ -45,6 +46,8 @@ import jakarta.validation.constraints.NotBlank;
                 query = "SELECT o FROM DataFile o WHERE o.creator.id=:creatorId"),
         @NamedQuery(name = "DataFile.findByReleaseUserId",
                 query = "SELECT o FROM DataFile o WHERE o.releaseUser.id=:releaseUserId"),
+        @NamedQuery(name = "DataFile.findByIds",
+                query = "SELECT o FROM DataFile o WHERE o.id IN :ids"),
         @NamedQuery(name="DataFile.findDataFileByIdProtocolAuth",
                 query="SELECT s FROM DataFile s WHERE s.identifier=:identifier AND s.protocol=:protocol AND s.authority=:authority"),
         @NamedQuery(name="DataFile.findDataFileThatReplacedId",
@@ -131,6 +134,13 @@ public class DataFile extends DvObject implements Comparable {
     @Column(nullable = false)
     private String checksumValue;
 
+    /**
+     * When the checksum of the physical file was last verified successfully
+     * (on publish); null if it never was.
+     */
+    @Column(nullable = true)
+    private Timestamp checksumValidationTime;
+
     
     /* start: FILE REPLACE ATTRIBUTES */
     
@@ -666,6 +676,14 @@ public class DataFile extends DvObject implements Comparable {
         this.checksumValue = checksumValue;
     }
 
+    public Timestamp getChecksumValidationTime() {
+        return checksumValidationTime;
+    }
+
+    public void setChecksumValidationTime(Timestamp checksumValidationTime) {
+        this.checksumValidationTime = checksumValidationTime;
+    }
+
     public String getOriginalChecksumType() {
         return BundleUtil.getStringFromBundle("file.originalChecksumType", Arrays.asList(this.checksumType.toString()) );
     }
@@ -3,6 +3,7 @@ package edu.harvard.iq.dataverse;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
+import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter.ThumbnailStatus;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.harvest.client.HarvestingClient;
 import edu.harvard.iq.dataverse.ingest.IngestServiceBean;
@@ -17,6 +18,7 @@ import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -51,6 +53,11 @@ import jakarta.persistence.TypedQuery;
 public class DataFileServiceBean implements java.io.Serializable {
     
     private static final Logger logger = Logger.getLogger(DataFileServiceBean.class.getCanonicalName());
+
+    // the most ids looked up by one query of findByIds() (keeping the IN
+    // lists, and the bind parameters of the statement, bounded)
+    private static final int FIND_BY_IDS_CHUNK_SIZE = 1000;
+
     @EJB
     DvObjectServiceBean dvObjectService;
     @EJB
@@ -167,6 +174,23 @@ public class DataFileServiceBean implements java.io.Serializable {
         return dataFiles;
     }
 
+    /**
+     * Looks up many files with a query per {@link #FIND_BY_IDS_CHUNK_SIZE}
+     * ids (unlike {@link #findAll(List)}, with one per file).
+     *
+     * @param fileIds the ids
+     * @return the files found, in no particular order
+     */
+    public List<DataFile> findByIds(Collection<Long> fileIds) {
+        List<DataFile> dataFiles = new ArrayList<>();
+        List<Long> ids = new ArrayList<>(fileIds);
+        for (int from = 0; from < ids.size(); from += FIND_BY_IDS_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + FIND_BY_IDS_CHUNK_SIZE, ids.size()));
+            dataFiles.addAll(em.createNamedQuery("DataFile.findByIds", DataFile.class).setParameter("ids", chunk).getResultList());
+        }
+        return dataFiles;
+    }
+
     public List<DataFile> findAll(String fileIdsAsString){
         ArrayList<Long> dataFileIds = new ArrayList<>();
 
@@ -953,16 +977,43 @@ public class DataFileServiceBean implements java.io.Serializable {
         */
         
         file = this.find(file.getId());
-        if (ImageThumbConverter.isThumbnailAvailable(file)) {
+        ThumbnailStatus status = ImageThumbConverter.getThumbnailStatus(file);
+        if (status == ThumbnailStatus.AVAILABLE) {
             file.setPreviewImageAvailable(true);
             this.save(file);
             return true;
         }
-        file.setPreviewImageFail(true);
-        this.save(file);
+        // (if it was only too busy to generate it, it is tried again next time)
+        if (status == ThumbnailStatus.UNAVAILABLE) {
+            file.setPreviewImageFail(true);
+            this.save(file);
+        }
         return false;
     }
 
+
+    /**
+     * Generates the thumbnails of the file in all the standard sizes, unless
+     * this was done (or failed) before, and records the outcome; in a 
+     * transaction of its own (see IngestServiceBean#generateThumbnails()).
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void generateThumbnails(Long fileId) {
+        DataFile file = find(fileId);
+        if (file == null || file.isPreviewImageAvailable() || file.isPreviewImageFail()
+                || file.isHarvested() || !FileUtil.isThumbnailSupported(file)) {
+            return;
+        }
+        ThumbnailStatus status = ImageThumbConverter.generateThumbnails(file);
+        if (status == ThumbnailStatus.AVAILABLE) {
+            file.setPreviewImageAvailable(true);
+        } else if (status == ThumbnailStatus.UNAVAILABLE) {
+            file.setPreviewImageFail(true);
+        } else {
+            // (left to be generated when it is first asked for)
+            logger.fine("Too busy to generate the thumbnails of datafile " + fileId);
+        }
+    }
     
     /* 
      * Methods for identifying "classes" (groupings) of files by type:
@@ -20,23 +20,28 @@ import edu.harvard.iq.dataverse.export.ExportService;
 import edu.harvard.iq.dataverse.globus.GlobusServiceBean;
 import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.pidproviders.PidBatchExecutor;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.workflows.WorkflowComment;
 
 import java.io.*;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jakarta.annotation.Resource;
 import jakarta.ejb.Asynchronous;
 import jakarta.ejb.EJB;
 import jakarta.ejb.EJBException;
+import jakarta.ejb.SessionContext;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
 import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.LockModeType;
@@ -97,6 +102,12 @@ public class DatasetServiceBean implements java.io.Serializable {
     @EJB
     UserNotificationServiceBean userNotificationService;
 
+    @Resource
+    SessionContext sessionContext;
+
+    @Resource
+    ManagedExecutorService managedExecutorService;
+
     private static final SimpleDateFormat logFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss");
 
     @PersistenceContext(unitName = "VDCNet-ejbPU")
@@ -957,6 +968,7 @@ public class DatasetServiceBean implements java.io.Serializable {
      they can be run in sequence). -- L.A. Mar. 2018
     */
     @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void obtainPersistentIdentifiersForDatafiles(Dataset dataset) {
         GlobalIdServiceBean idServiceBean = GlobalIdServiceBean.getBean(dataset.getProtocol(), commandEngine.getContext());
 
@@ -968,50 +980,166 @@ public class DatasetServiceBean implements java.io.Serializable {
             maxIdentifier = getMaximumExistingDatafileIdentifier(dataset);
         }
 
+        // The identifiers are generated here, and created with the provider
+        // (several at once) by registerDataFileIdentifier: each file in a 
+        // transaction of its own, so that the files done stay saved, and are
+        // not registered again, if this is interrupted.
+        Map<Long, String> identifiers = new LinkedHashMap<>();
         for (DataFile datafile : dataset.getFiles()) {
-            logger.info("Obtaining persistent id for datafile id=" + datafile.getId());
-
             if (datafile.getIdentifier() == null || datafile.getIdentifier().isEmpty()) {
 
                 logger.info("Obtaining persistent id for datafile id=" + datafile.getId());
 
+                String identifier;
                 if (maxIdentifier != null) {
                     maxIdentifier++;
-                    datafile.setIdentifier(datasetIdentifier + "/" + maxIdentifier.toString());
+                    identifier = datasetIdentifier + "/" + maxIdentifier.toString();
                 } else {
-                    datafile.setIdentifier(idServiceBean.generateDataFileIdentifier(datafile));
-                }
-
-                if (datafile.getProtocol() == null) {
-                    datafile.setProtocol(settingsService.getValueForKey(SettingsServiceBean.Key.Protocol, ""));
-                }
-                if (datafile.getAuthority() == null) {
-                    datafile.setAuthority(settingsService.getValueForKey(SettingsServiceBean.Key.Authority, ""));
+                    identifier = idServiceBean.generateDataFileIdentifier(datafile);
                 }
 
-                logger.info("identifier: " + datafile.getIdentifier());
+                logger.info("identifier: " + identifier);
+                identifiers.put(datafile.getId(), identifier);
+            }
+        }
 
-                String doiRetString;
+        DatasetServiceBean self = sessionContext.getBusinessObject(DatasetServiceBean.class);
+        List<Long> failed;
+        try {
+            failed = getPidBatchExecutor().run(new ArrayList<>(identifiers.keySet()),
+                    datafileId -> self.registerDataFileIdentifier(datafileId, identifiers.get(datafileId)),
+                    datafileId -> {});
+        } catch (InterruptedException e) {
+            logger.log(Level.WARNING, "Interrupted while creating the identifiers of the files of dataset " + dataset.getId(), e);
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (Long datafileId : failed) {
+            logger.warning("Failed to create the identifier of datafile id=" + datafileId);
+        }
+    }
 
-                try {
-                    logger.log(Level.FINE, "creating identifier");
-                    doiRetString = idServiceBean.createIdentifier(datafile);
-                } catch (Throwable e) {
-                    logger.log(Level.WARNING, "Exception while creating Identifier: " + e.getMessage(), e);
-                    doiRetString = "";
-                }
+    /**
+     * Saves the identifier of a file (unless it already has one), and creates
+     * it with the PID provider; in a transaction of its own, see
+     * {@link #obtainPersistentIdentifiersForDatafiles(Dataset)}. The file is
+     * looked up again here, so that the threads registering the files don't
+     * share any entities.
+     *
+     * @param datafileId the id of the file
+     * @param identifier the identifier generated for it
+     * @return whether the identifier was created; it is saved either way
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public boolean registerDataFileIdentifier(Long datafileId, String identifier) {
+        DataFile datafile = em.find(DataFile.class, datafileId);
+        if (datafile == null) {
+            // (deleted since)
+            return true;
+        }
+        if (datafile.isIdentifierRegistered()) {
+            return true;
+        }
+        if (datafile.getIdentifier() == null || datafile.getIdentifier().isEmpty()) {
+            datafile.setIdentifier(identifier);
+        }
+        if (datafile.getProtocol() == null) {
+            datafile.setProtocol(settingsService.getValueForKey(SettingsServiceBean.Key.Protocol, ""));
+        }
+        if (datafile.getAuthority() == null) {
+            datafile.setAuthority(settingsService.getValueForKey(SettingsServiceBean.Key.Authority, ""));
+        }
 
-                // Check return value to make sure registration succeeded
-                if (!idServiceBean.registerWhenPublished() && doiRetString.contains(datafile.getIdentifier())) {
-                    datafile.setIdentifierRegistered(true);
-                    datafile.setGlobalIdCreateTime(new Date());
-                }
+        GlobalIdServiceBean idServiceBean = GlobalIdServiceBean.getBean(datafile.getOwner().getProtocol(), commandEngine.getContext());
+        String doiRetString;
+        try {
+            logger.log(Level.FINE, "creating identifier");
+            doiRetString = idServiceBean.createIdentifier(datafile);
+        } catch (Throwable e) {
+            logger.log(Level.WARNING, "Exception while creating Identifier: " + e.getMessage(), e);
+            return false;
+        }
 
-                DataFile merged = em.merge(datafile);
-                merged = null;
+        if (!idServiceBean.registerWhenPublished()) {
+            // Check return value to make sure registration succeeded
+            if (!doiRetString.contains(datafile.getIdentifier())) {
+                return false;
             }
+            datafile.setIdentifierRegistered(true);
+            datafile.setGlobalIdCreateTime(new Date());
+        }
+        return true;
+    }
+
+    /**
+     * Publicizes the identifier of a file with the PID provider, on the
+     * publication of a version of its dataset; in a transaction of its own,
+     * see {@link edu.harvard.iq.dataverse.engine.command.impl.FinalizeDatasetPublicationCommand}.
+     * The file is looked up again here, so that the threads publicizing the
+     * files don't share any entities.
+     *
+     * That the identifier has been publicized is recorded here (in the
+     * DATAFILEPIDPUBLICATION table), so that a publication that fails, and is
+     * attempted again, doesn't publicize it again. The file itself is only
+     * read: its row is being updated by the publication, whose transaction is
+     * still open; so the publication date it is sent with is the one the
+     * publication is saving.
+     *
+     * @param datafileId the id of the file
+     * @param datasetVersionId the id of the version being published
+     * @param publicationDate the publication date of the file
+     * @return whether the identifier is publicized
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public boolean publicizeDataFileIdentifier(Long datafileId, Long datasetVersionId, Timestamp publicationDate) {
+        boolean publicized = !em.createNativeQuery("SELECT 1 FROM DATAFILEPIDPUBLICATION WHERE DATAFILE_ID = ?1 AND DATASETVERSION_ID = ?2")
+                .setParameter(1, datafileId)
+                .setParameter(2, datasetVersionId)
+                .getResultList().isEmpty();
+        if (publicized) {
+            logger.log(Level.FINE, "identifier of datafile id={0} already publicized", datafileId);
+            return true;
+        }
+        DataFile datafile = em.find(DataFile.class, datafileId);
+        if (datafile == null) {
+            // (deleted since)
+            return true;
+        }
+        em.detach(datafile);
+        if (datafile.getPublicationDate() == null) {
+            datafile.setPublicationDate(publicationDate);
+        }
 
+        GlobalIdServiceBean idServiceBean = GlobalIdServiceBean.getBean(datafile.getOwner().getProtocol(), commandEngine.getContext());
+        logger.log(Level.FINE, "publicizing global id for file {0}", datafileId);
+        if (!idServiceBean.publicizeIdentifier(datafile)) {
+            return false;
         }
+        em.createNativeQuery("INSERT INTO DATAFILEPIDPUBLICATION (DATAFILE_ID, DATASETVERSION_ID, PUBLICIZETIME) VALUES (?1, ?2, ?3) ON CONFLICT DO NOTHING")
+                .setParameter(1, datafileId)
+                .setParameter(2, datasetVersionId)
+                .setParameter(3, new Timestamp(System.currentTimeMillis()))
+                .executeUpdate();
+        return true;
+    }
+
+    /**
+     * Forgets which file identifiers have been publicized for the version,
+     * once it is published; see
+     * {@link #publicizeDataFileIdentifier(Long, Long, Timestamp)}.
+     */
+    public void removeDataFilePidPublications(Long datasetVersionId) {
+        em.createNativeQuery("DELETE FROM DATAFILEPIDPUBLICATION WHERE DATASETVERSION_ID = ?1")
+                .setParameter(1, datasetVersionId)
+                .executeUpdate();
+    }
+
+    /**
+     * @return an executor for the calls to the PID providers for many files
+     *         at once, making the calls on the threads of the container
+     */
+    public PidBatchExecutor getPidBatchExecutor() {
+        return PidBatchExecutor.fromSettings(managedExecutorService);
     }
 
     public long findStorageSize(Dataset dataset) throws IOException {
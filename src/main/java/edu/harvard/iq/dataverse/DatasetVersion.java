@@ -250,6 +250,24 @@ public class DatasetVersion implements Serializable {
         return fileMetadatas;
     }
     
+    /**
+     * Whether the file is in this version.
+     * 
+     * @param dataFile the file
+     * @return whether the file is in this version
+     */
+    public boolean containsDataFile(DataFile dataFile) {
+        List<FileMetadata> fmds = getFileMetadatas();
+        if (fmds != null) {
+            for (FileMetadata fmd : fmds) {
+                if (dataFile.equals(fmd.getDataFile())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
     public List<FileMetadata> getFileMetadatasSorted() {
  
         /*
@@ -11,6 +11,7 @@ import jakarta.persistence.criteria.*;
 
 import java.io.Serializable;
 import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.util.*;
 
 import static edu.harvard.iq.dataverse.DataFileTag.TagLabelToTypes;
@@ -22,6 +23,12 @@ public class DatasetVersionFilesServiceBean implements Serializable {
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
 
+    /**
+     * The size sort key of the files of unknown size (null, or -1 as in
+     * {@link DataFile#getFilesize()}): they come last, as with NULLS LAST.
+     */
+    static final long UNKNOWN_FILESIZE_SORT_KEY = Long.MAX_VALUE;
+
     /**
      * Different criteria to sort the results of FileMetadata queries used in {@link DatasetVersionFilesServiceBean#getFileMetadatas}
      */
@@ -42,6 +49,28 @@ public class DatasetVersionFilesServiceBean implements Serializable {
         All, Original, Archival
     }
 
+    /**
+     * The counts of the files of a version, see
+     * {@link DatasetVersionFilesServiceBean#getFileMetadataCounts(DatasetVersion, FileSearchCriteria)}
+     */
+    public static class FileMetadataCounts {
+        private long total = 0;
+        private final Map<String, Long> perContentType = new HashMap<>();
+        private final Map<FileAccessStatus, Long> perAccessStatus = new HashMap<>();
+
+        public long getTotal() {
+            return total;
+        }
+
+        public Map<String, Long> getPerContentType() {
+            return perContentType;
+        }
+
+        public Map<FileAccessStatus, Long> getPerAccessStatus() {
+            return perAccessStatus;
+        }
+    }
+
     /**
      * Given a DatasetVersion, returns its total file metadata count
      *
@@ -59,25 +88,6 @@ public class DatasetVersionFilesServiceBean implements Serializable {
         return em.createQuery(criteriaQuery).getSingleResult();
     }
 
-    /**
-     * Given a DatasetVersion, returns its file metadata count per content type
-     *
-     * @param datasetVersion the DatasetVersion to access
-     * @param searchCriteria for counting only files matching this criteria
-     * @return Map<String, Long> of file metadata counts per content type
-     */
-    public Map<String, Long> getFileMetadataCountPerContentType(DatasetVersion datasetVersion, FileSearchCriteria searchCriteria) {
-        CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
-        CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
-        Root<FileMetadata> fileMetadataRoot = criteriaQuery.from(FileMetadata.class);
-        Path<String> contentType = fileMetadataRoot.get("dataFile").get("contentType");
-        criteriaQuery
-                .multiselect(contentType, criteriaBuilder.count(contentType))
-                .where(createSearchCriteriaPredicate(datasetVersion, searchCriteria, criteriaBuilder, criteriaQuery, fileMetadataRoot))
-                .groupBy(contentType);
-        return getStringLongMapResultFromQuery(criteriaQuery);
-    }
-
     /**
      * Given a DatasetVersion, returns its file metadata count per category name
      *
@@ -128,19 +138,51 @@ public class DatasetVersionFilesServiceBean implements Serializable {
     }
 
     /**
-     * Given a DatasetVersion, returns its file metadata count per FileAccessStatus
+     * Given a DatasetVersion, returns its total file metadata count, and its
+     * counts per content type and per FileAccessStatus; with one query
+     * (grouped by content type, restriction and embargo date). The embargoes
+     * are compared with the current date of the database, as in the
+     * FileAccessStatus criteria.
      *
      * @param datasetVersion the DatasetVersion to access
      * @param searchCriteria for counting only files matching this criteria
-     * @return Map<FileAccessStatus, Long> of file metadata counts per FileAccessStatus
+     * @return the counts
      */
-    public Map<FileAccessStatus, Long> getFileMetadataCountPerAccessStatus(DatasetVersion datasetVersion, FileSearchCriteria searchCriteria) {
-        Map<FileAccessStatus, Long> allCounts = new HashMap<>();
-        addAccessStatusCountToTotal(datasetVersion, allCounts, FileAccessStatus.Public, searchCriteria);
-        addAccessStatusCountToTotal(datasetVersion, allCounts, FileAccessStatus.Restricted, searchCriteria);
-        addAccessStatusCountToTotal(datasetVersion, allCounts, FileAccessStatus.EmbargoedThenPublic, searchCriteria);
-        addAccessStatusCountToTotal(datasetVersion, allCounts, FileAccessStatus.EmbargoedThenRestricted, searchCriteria);
-        return allCounts;
+    public FileMetadataCounts getFileMetadataCounts(DatasetVersion datasetVersion, FileSearchCriteria searchCriteria) {
+        CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+        Root<FileMetadata> fileMetadataRoot = criteriaQuery.from(FileMetadata.class);
+        Join<FileMetadata, DataFile> dataFile = fileMetadataRoot.join("dataFile");
+        Join<DataFile, Embargo> embargo = dataFile.join("embargo", JoinType.LEFT);
+        Path<String> contentType = dataFile.get("contentType");
+        Path<Boolean> restricted = dataFile.get("restricted");
+        Path<LocalDate> dateAvailable = embargo.get("dateAvailable");
+        criteriaQuery
+                .multiselect(contentType, restricted, dateAvailable, criteriaBuilder.currentDate(), criteriaBuilder.count(fileMetadataRoot))
+                .where(createSearchCriteriaPredicate(datasetVersion, searchCriteria, criteriaBuilder, criteriaQuery, fileMetadataRoot))
+                .groupBy(contentType, restricted, dateAvailable);
+
+        FileMetadataCounts counts = new FileMetadataCounts();
+        for (Tuple group : em.createQuery(criteriaQuery).getResultList()) {
+            long count = group.get(4, Long.class);
+            counts.total += count;
+            counts.perContentType.merge(group.get(0, String.class), count, Long::sum);
+            boolean isRestricted = Boolean.TRUE.equals(group.get(1, Boolean.class));
+            LocalDate embargoDate = group.get(2, LocalDate.class);
+            LocalDate today = group.get(3, java.sql.Date.class).toLocalDate();
+            // (as in createSearchCriteriaAccessStatusPredicate: the files with
+            // an embargo that has expired have none of the statuses)
+            FileAccessStatus accessStatus = null;
+            if (embargoDate == null) {
+                accessStatus = isRestricted ? FileAccessStatus.Restricted : FileAccessStatus.Public;
+            } else if (!embargoDate.isBefore(today)) {
+                accessStatus = isRestricted ? FileAccessStatus.EmbargoedThenRestricted : FileAccessStatus.EmbargoedThenPublic;
+            }
+            if (accessStatus != null) {
+                counts.perAccessStatus.merge(accessStatus, count, Long::sum);
+            }
+        }
+        return counts;
     }
 
     /**
@@ -171,6 +213,40 @@ public class DatasetVersionFilesServiceBean implements Serializable {
         return typedQuery.getResultList();
     }
 
+    /**
+     * Returns a page of the FileMetadata list of files in the specified
+     * DatasetVersion, starting after the given cursor. Unlike with an offset,
+     * the cost of getting a page doesn't grow with the number of files before
+     * it: the files are looked up from the sort keys of the last file of the
+     * previous page (see {@link FileMetadataCursor#after}) on.
+     *
+     * @param datasetVersion the DatasetVersion to access
+     * @param limit          the size of the page, can be null
+     * @param cursor         where the page starts; null for the first page
+     * @param searchCriteria for retrieving only files matching this criteria
+     * @param orderCriteria  a FileOrderCriteria to order the results; the
+     *                       same as that of the cursor
+     * @return a FileMetadata list from the specified DatasetVersion
+     */
+    public List<FileMetadata> getFileMetadatas(DatasetVersion datasetVersion, Integer limit, FileMetadataCursor cursor, FileSearchCriteria searchCriteria, FileOrderCriteria orderCriteria) {
+        CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+        CriteriaQuery<FileMetadata> criteriaQuery = criteriaBuilder.createQuery(FileMetadata.class);
+        Root<FileMetadata> fileMetadataRoot = criteriaQuery.from(FileMetadata.class);
+        Predicate predicate = createSearchCriteriaPredicate(datasetVersion, searchCriteria, criteriaBuilder, criteriaQuery, fileMetadataRoot);
+        if (cursor != null) {
+            predicate = criteriaBuilder.and(predicate, createAfterCursorPredicate(criteriaBuilder, cursor, fileMetadataRoot));
+        }
+        criteriaQuery
+                .select(fileMetadataRoot)
+                .where(predicate)
+                .orderBy(createGetFileMetadatasOrder(criteriaBuilder, orderCriteria, fileMetadataRoot));
+        TypedQuery<FileMetadata> typedQuery = em.createQuery(criteriaQuery);
+        if (limit != null) {
+            typedQuery.setMaxResults(limit);
+        }
+        return typedQuery.getResultList();
+    }
+
     /**
      * Returns the total download size of all files for a particular DatasetVersion
      *
@@ -189,25 +265,6 @@ public class DatasetVersionFilesServiceBean implements Serializable {
         };
     }
 
-    private void addAccessStatusCountToTotal(DatasetVersion datasetVersion, Map<FileAccessStatus, Long> totalCounts, FileAccessStatus dataFileAccessStatus, FileSearchCriteria searchCriteria) {
-        long fileMetadataCount = getFileMetadataCountByAccessStatus(datasetVersion, dataFileAccessStatus, searchCriteria);
-        if (fileMetadataCount > 0) {
-            totalCounts.put(dataFileAccessStatus, fileMetadataCount);
-        }
-    }
-
-    private long getFileMetadataCountByAccessStatus(DatasetVersion datasetVersion, FileAccessStatus accessStatus, FileSearchCriteria searchCriteria) {
-        CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
-        CriteriaQuery<Long> criteriaQuery = criteriaBuilder.createQuery(Long.class);
-        Root<FileMetadata> fileMetadataRoot = criteriaQuery.from(FileMetadata.class);
-        criteriaQuery
-                .select(criteriaBuilder.count(fileMetadataRoot))
-                .where(criteriaBuilder.and(
-                        createSearchCriteriaAccessStatusPredicate(accessStatus, criteriaBuilder, fileMetadataRoot),
-                        createSearchCriteriaPredicate(datasetVersion, searchCriteria, criteriaBuilder, criteriaQuery, fileMetadataRoot)));
-        return em.createQuery(criteriaQuery).getSingleResult();
-    }
-
     private Predicate createSearchCriteriaAccessStatusPredicate(FileAccessStatus accessStatus, CriteriaBuilder criteriaBuilder, Root<FileMetadata> fileMetadataRoot) {
         Path<Object> dataFile = fileMetadataRoot.get("dataFile");
         Path<Object> embargo = dataFile.get("embargo");
@@ -260,29 +317,77 @@ public class DatasetVersionFilesServiceBean implements Serializable {
         return criteriaBuilder.and(predicates.toArray(new Predicate[]{}));
     }
 
-    private List<Order> createGetFileMetadatasOrder(CriteriaBuilder criteriaBuilder,
-                                                    FileOrderCriteria orderCriteria,
-                                                    Root<FileMetadata> fileMetadataRoot) {
-        Path<Object> label = fileMetadataRoot.get("label");
+    /**
+     * The sort keys of each FileOrderCriteria. The id of the FileMetadata
+     * comes last, so that the order is total (which keyset pagination
+     * requires); it is sorted in the same direction as the other keys.
+     */
+    private List<Expression<? extends Comparable>> createSortKeys(CriteriaBuilder criteriaBuilder,
+                                                                  FileOrderCriteria orderCriteria,
+                                                                  Root<FileMetadata> fileMetadataRoot) {
+        Path<String> label = fileMetadataRoot.get("label");
         Path<Object> dataFile = fileMetadataRoot.get("dataFile");
         Path<Timestamp> publicationDate = dataFile.get("publicationDate");
         Path<Timestamp> createDate = dataFile.get("createDate");
-        Expression<Object> orderByLifetimeExpression = criteriaBuilder.selectCase().when(publicationDate.isNotNull(), publicationDate).otherwise(createDate);
+        Expression<Timestamp> orderByLifetimeExpression = criteriaBuilder.<Timestamp>selectCase().when(publicationDate.isNotNull(), publicationDate).otherwise(createDate);
+        Path<Long> filesize = dataFile.get("filesize");
+        Expression<Long> orderBySizeExpression = criteriaBuilder.<Long>selectCase()
+                .when(criteriaBuilder.or(criteriaBuilder.isNull(filesize), criteriaBuilder.lessThan(filesize, 0L)), UNKNOWN_FILESIZE_SORT_KEY)
+                .otherwise(filesize);
+        Path<Long> id = fileMetadataRoot.get("id");
+        return switch (orderCriteria) {
+            case Newest, Oldest -> List.of(orderByLifetimeExpression, id);
+            case Size -> List.of(orderBySizeExpression, id);
+            case Type -> List.of(dataFile.<String>get("contentType"), label, id);
+            default -> List.of(label, id);
+        };
+    }
+
+    private static boolean isDescending(FileOrderCriteria orderCriteria) {
+        return orderCriteria == FileOrderCriteria.NameZA || orderCriteria == FileOrderCriteria.Newest;
+    }
+
+    private List<Order> createGetFileMetadatasOrder(CriteriaBuilder criteriaBuilder,
+                                                    FileOrderCriteria orderCriteria,
+                                                    Root<FileMetadata> fileMetadataRoot) {
         List<Order> orderList = new ArrayList<>();
-        switch (orderCriteria) {
-            case NameZA -> orderList.add(criteriaBuilder.desc(label));
-            case Newest -> orderList.add(criteriaBuilder.desc(orderByLifetimeExpression));
-            case Oldest -> orderList.add(criteriaBuilder.asc(orderByLifetimeExpression));
-            case Size -> orderList.add(criteriaBuilder.asc(dataFile.get("filesize")));
-            case Type -> {
-                orderList.add(criteriaBuilder.asc(dataFile.get("contentType")));
-                orderList.add(criteriaBuilder.asc(label));
-            }
-            default -> orderList.add(criteriaBuilder.asc(label));
+        for (Expression<? extends Comparable> sortKey : createSortKeys(criteriaBuilder, orderCriteria, fileMetadataRoot)) {
+            orderList.add(isDescending(orderCriteria) ? criteriaBuilder.desc(sortKey) : criteriaBuilder.asc(sortKey));
         }
         return orderList;
     }
 
+    /**
+     * (k1 > v1) OR (k1 = v1 AND k2 > v2) OR ... for the sort keys k and their
+     * values v in the cursor (with &lt; when descending)
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate createAfterCursorPredicate(CriteriaBuilder criteriaBuilder,
+                                                 FileMetadataCursor cursor,
+                                                 Root<FileMetadata> fileMetadataRoot) {
+        FileOrderCriteria orderCriteria = cursor.getOrderCriteria();
+        List<Expression<? extends Comparable>> sortKeys = createSortKeys(criteriaBuilder, orderCriteria, fileMetadataRoot);
+        List<Comparable> values = switch (orderCriteria) {
+            case Newest, Oldest -> List.of(cursor.getDate(), cursor.getId());
+            case Size -> List.of(cursor.getFilesize(), cursor.getId());
+            case Type -> List.of(cursor.getContentType(), cursor.getLabel(), cursor.getId());
+            default -> List.of(cursor.getLabel(), cursor.getId());
+        };
+        List<Predicate> alternatives = new ArrayList<>();
+        List<Predicate> equalSoFar = new ArrayList<>();
+        for (int i = 0; i < sortKeys.size(); i++) {
+            Expression sortKey = sortKeys.get(i);
+            Comparable value = values.get(i);
+            List<Predicate> alternative = new ArrayList<>(equalSoFar);
+            alternative.add(isDescending(orderCriteria)
+                    ? criteriaBuilder.lessThan(sortKey, value)
+                    : criteriaBuilder.greaterThan(sortKey, value));
+            alternatives.add(criteriaBuilder.and(alternative.toArray(new Predicate[]{})));
+            equalSoFar.add(criteriaBuilder.equal(sortKey, value));
+        }
+        return criteriaBuilder.or(alternatives.toArray(new Predicate[]{}));
+    }
+
     private long getOriginalTabularFilesSize(DatasetVersion datasetVersion, FileSearchCriteria searchCriteria) {
         CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
         CriteriaQuery<Long> criteriaQuery = criteriaBuilder.createQuery(Long.class);
@@ -17,12 +17,14 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 //import jakarta.validation.constraints.NotNull;
 
 /**
@@ -46,8 +48,11 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     SolrIndexServiceBean solrIndexService;
     @EJB
     IndexAsync indexAsync;
+    @Resource
+    TransactionSynchronizationRegistry transactionSynchronizationRegistry;
 
     public DataverseRole save(DataverseRole aRole) {
+        PermissionCache.invalidate(transactionSynchronizationRegistry);
         if (aRole.getId() == null) {
             em.persist(aRole);
             /**
@@ -71,6 +76,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     }
     
     public RoleAssignment save(RoleAssignment assignment, boolean createIndex) {
+        PermissionCache.invalidate(transactionSynchronizationRegistry);
         if (assignment.getId() == null) {
             em.persist(assignment);
         } else {
@@ -103,6 +109,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     }
 
     public void delete(Long id) {
+        PermissionCache.invalidate(transactionSynchronizationRegistry);
         em.createNamedQuery("DataverseRole.deleteById", DataverseRole.class)
             .setParameter("id", id)
             .executeUpdate();
@@ -133,6 +140,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     }
 
     public void revoke(Set<DataverseRole> roles, RoleAssignee assignee, DvObject defPoint) {
+        PermissionCache.invalidate(transactionSynchronizationRegistry);
         for (DataverseRole role : roles) {
             em.createNamedQuery("RoleAssignment.deleteByAssigneeIdentifier_RoleIdDefinition_PointId")
                 .setParameter("assigneeIdentifier", assignee.getIdentifier())
@@ -145,6 +153,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     }
 
     public void revoke(RoleAssignment ra) {
+        PermissionCache.invalidate(transactionSynchronizationRegistry);
         if (!em.contains(ra)) {
             ra = em.merge(ra);
         }
@@ -160,6 +169,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     // on which the roles were assigned - need to be reindexed for permissions
     // once the role assignments are removed!
     public void revokeAll(RoleAssignee assignee) {
+        PermissionCache.invalidate(transactionSynchronizationRegistry);
         Set<DvObject> reindexSet = new HashSet<>();
 
         for (RoleAssignment ra : roleAssigneeService.getAssignmentsFor(assignee.getIdentifier())) {
@@ -44,6 +44,7 @@ import java.util.logging.Logger;
 import jakarta.annotation.Resource;
 import jakarta.ejb.EJBContext;
 import jakarta.ejb.EJBException;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.ejb.TransactionAttribute;
 import static jakarta.ejb.TransactionAttributeType.REQUIRES_NEW;
 import static jakarta.ejb.TransactionAttributeType.SUPPORTS;
@@ -195,6 +196,9 @@ public class EjbDataverseEngine {
     @Resource
     EJBContext ejbCtxt;
 
+    @Resource
+    ManagedExecutorService managedExecutorService;
+
     private CommandContext ctxt;
     
     @TransactionAttribute(REQUIRES_NEW)
@@ -537,6 +541,11 @@ public class EjbDataverseEngine {
                 public StorageUseServiceBean storageUse() {
                     return storageUseService;
                 }
+
+                @Override
+                public ManagedExecutorService managedExecutor() {
+                    return managedExecutorService;
+                }
                 
                 @Override
                 public DataverseEngine engine() {
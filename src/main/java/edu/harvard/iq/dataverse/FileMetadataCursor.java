@@ -0,0 +1,120 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.DatasetVersionFilesServiceBean.FileOrderCriteria;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+/**
+ * Where the next page of a file listing starts (see
+ * {@link DatasetVersionFilesServiceBean#getFileMetadatas(DatasetVersion, Integer, FileMetadataCursor, FileSearchCriteria, FileOrderCriteria)}):
+ * the values of the sort keys, and the id, of the last file of the previous
+ * page. The clients get it as an opaque string.
+ */
+public class FileMetadataCursor {
+
+    private final FileOrderCriteria orderCriteria;
+    private final String label;
+    private final String contentType;
+    // the publication date of the file, or its creation date if unpublished
+    private final Timestamp date;
+    // (see DatasetVersionFilesServiceBean.UNKNOWN_FILESIZE_SORT_KEY)
+    private final long filesize;
+    private final long id;
+
+    private FileMetadataCursor(FileOrderCriteria orderCriteria, String label, String contentType, Timestamp date, long filesize, long id) {
+        this.orderCriteria = orderCriteria;
+        this.label = label;
+        this.contentType = contentType;
+        this.date = date;
+        this.filesize = filesize;
+        this.id = id;
+    }
+
+    /**
+     * @return the cursor of the page after the given file
+     */
+    public static FileMetadataCursor after(FileMetadata fileMetadata, FileOrderCriteria orderCriteria) {
+        DataFile dataFile = fileMetadata.getDataFile();
+        return new FileMetadataCursor(orderCriteria,
+                fileMetadata.getLabel(),
+                dataFile.getContentType(),
+                dataFile.getPublicationDate() != null ? dataFile.getPublicationDate() : dataFile.getCreateDate(),
+                dataFile.getFilesize() < 0 ? DatasetVersionFilesServiceBean.UNKNOWN_FILESIZE_SORT_KEY : dataFile.getFilesize(),
+                fileMetadata.getId());
+    }
+
+    /**
+     * @param cursor a cursor, as returned by {@link #toString()}
+     * @param orderCriteria the order of the listing
+     * @return the cursor
+     * @throws IllegalArgumentException if the cursor is invalid, or is that
+     *         of a listing in another order
+     */
+    public static FileMetadataCursor parse(String cursor, FileOrderCriteria orderCriteria) {
+        JsonArray values;
+        try (JsonReader reader = Json.createReader(new StringReader(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)))) {
+            values = reader.readArray();
+            if (!orderCriteria.name().equals(values.getString(0))) {
+                throw new IllegalArgumentException("The cursor is that of a listing in another order");
+            }
+            long id = values.getJsonNumber(values.size() - 1).longValueExact();
+            return switch (orderCriteria) {
+                case Newest, Oldest -> new FileMetadataCursor(orderCriteria, null, null, Timestamp.valueOf(values.getString(1)), 0L, id);
+                case Size -> new FileMetadataCursor(orderCriteria, null, null, null, values.getJsonNumber(1).longValueExact(), id);
+                case Type -> new FileMetadataCursor(orderCriteria, values.getString(2), values.getString(1), null, 0L, id);
+                default -> new FileMetadataCursor(orderCriteria, values.getString(1), null, null, 0L, id);
+            };
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    public FileOrderCriteria getOrderCriteria() {
+        return orderCriteria;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Timestamp getDate() {
+        return date;
+    }
+
+    public long getFilesize() {
+        return filesize;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the cursor, as an opaque (URL-safe) string
+     */
+    @Override
+    public String toString() {
+        JsonArrayBuilder values = Json.createArrayBuilder().add(orderCriteria.name());
+        switch (orderCriteria) {
+            // (to the nanosecond, as stored)
+            case Newest, Oldest -> values.add(date.toString());
+            case Size -> values.add(filesize);
+            case Type -> values.add(contentType).add(label);
+            default -> values.add(label);
+        }
+        values.add(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(values.build().toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
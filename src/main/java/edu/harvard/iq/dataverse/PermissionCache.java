@@ -0,0 +1,174 @@
+package edu.harvard.iq.dataverse;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.RoleAssignee;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * An in-memory cache of the permissions that role assignees have over
+ * {@link DvObject}s through their role assignments, directly or via the groups
+ * they are members of. Computing these requires looking up the groups of the
+ * assignee and walking the ownership tree of the object, with several database
+ * queries; and a page showing a dataset with many files needs them for every
+ * one of the files.
+ *
+ * Every change to the role assignments, the roles, the groups or the ownership
+ * of the objects must call {@link #invalidate()}, which starts a new "epoch":
+ * the permissions computed in the earlier epochs are never served again. (The
+ * changes made in a transaction are invalidated again once it is over, with
+ * {@link #invalidate(TransactionSynchronizationRegistry)}.) Every change to
+ * the tables the permissions are computed from also bumps the version in the
+ * {@code permissionversion} table, with triggers (so this includes the changes
+ * made through another application server, or with SQL); the version is
+ * checked with {@link #checkVersion(LongSupplier)} at most every
+ * {@code dataverse.auth.permission-cache.refresh-interval} seconds, and the
+ * cache is invalidated when it has changed.
+ */
+public class PermissionCache {
+
+    private static final Logger logger = Logger.getLogger(PermissionCache.class.getCanonicalName());
+
+    private static final AtomicLong epoch = new AtomicLong();
+
+    // the version of the permissions in the database, when last checked; and
+    // when to check it again:
+    private static volatile long version = -1L;
+    private static volatile long nextCheck = 0L;
+
+    private static final Cache<String, Set<Permission>> cache = Caffeine.newBuilder()
+            .maximumSize(JvmSettings.PERMISSION_CACHE_MAXSIZE.lookupOptional(Integer.class).orElse(10000))
+            .expireAfterWrite(Duration.of(JvmSettings.PERMISSION_CACHE_MAXAGE.lookupOptional(Integer.class).orElse(60), ChronoUnit.SECONDS))
+            .build();
+
+    private PermissionCache() {
+    }
+
+    /**
+     * Returns the permissions {@code ra} has over {@code dvo}, computing them
+     * if they are not cached.
+     *
+     * @param ra the role assignee (the user of the request)
+     * @param sourceAddress the address of the request, if the permissions are
+     *        those of a request (which may be in IP groups), or null
+     * @param dvo the object
+     * @param compute computes the permissions
+     * @return an unmodifiable set of the permissions
+     */
+    public static Set<Permission> get(RoleAssignee ra, IpAddress sourceAddress, DvObject dvo, Supplier<Set<Permission>> compute) {
+        if (dvo.getId() == null || ra.getIdentifier() == null) {
+            // (not saved yet)
+            return compute.get();
+        }
+        return cache.get(key(ra, sourceAddress, dvo), k -> {
+            Set<Permission> permissions = compute.get();
+            return Collections.unmodifiableSet(permissions.isEmpty() ? EnumSet.noneOf(Permission.class) : EnumSet.copyOf(permissions));
+        });
+    }
+
+    /**
+     * Returns the permissions {@code ra} has over {@code dvo}, if they are
+     * cached; for looking up the permissions over many objects at once, and
+     * computing only the missing ones.
+     *
+     * @return an unmodifiable set of the permissions, or null
+     */
+    public static Set<Permission> getIfPresent(RoleAssignee ra, IpAddress sourceAddress, DvObject dvo) {
+        if (dvo.getId() == null || ra.getIdentifier() == null) {
+            return null;
+        }
+        return cache.getIfPresent(key(ra, sourceAddress, dvo));
+    }
+
+    private static String key(RoleAssignee ra, IpAddress sourceAddress, DvObject dvo) {
+        return epoch.get() + "|" + ra.getIdentifier() + "|" + (sourceAddress == null ? "" : sourceAddress.toString()) + "|" + dvo.getId();
+    }
+
+    /**
+     * Invalidates the cache if the version of the permissions in the database
+     * has changed since it was last checked; checking it at most every
+     * {@code dataverse.auth.permission-cache.refresh-interval} seconds.
+     *
+     * @param readVersion reads the version from the {@code permissionversion}
+     *        table
+     */
+    public static void checkVersion(LongSupplier readVersion) {
+        long now = System.currentTimeMillis();
+        if (now < nextCheck) {
+            return;
+        }
+        long current = readVersion.getAsLong();
+        if (current != version) {
+            version = current;
+            invalidate();
+            logger.fine("Version " + current + " of the permissions; cache invalidated");
+        }
+        nextCheck = now + 1000L * JvmSettings.PERMISSION_CACHE_REFRESH_INTERVAL.lookupOptional(Integer.class).orElse(5);
+    }
+
+    /**
+     * To be called whenever the role assignments, the roles, the group
+     * memberships or the ownership of the objects change; i.e., whenever the
+     * cached permissions may no longer be correct.
+     */
+    public static void invalidate() {
+        epoch.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Invalidates the cache right away; and again once the current
+     * transaction (making the changes) is over, as the permissions of the
+     * objects may have been computed and cached, from the old data, by other
+     * requests before the changes were committed; or, if it is rolled back,
+     * computed from the changes that never were.
+     */
+    public static void invalidate(TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+        invalidate();
+        if (transactionSynchronizationRegistry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+            transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate();
+                }
+            });
+        }
+    }
+
+    /**
+     * {@link #invalidate(TransactionSynchronizationRegistry)}, with the
+     * registry of the application server; for the commands making the
+     * changes themselves, which have none injected.
+     */
+    public static void invalidateWithTransaction() {
+        TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+        try {
+            transactionSynchronizationRegistry = InitialContext.doLookup("java:comp/TransactionSynchronizationRegistry");
+        } catch (NamingException e) {
+            // (not in the application server)
+            invalidate();
+            return;
+        }
+        invalidate(transactionSynchronizationRegistry);
+    }
+}
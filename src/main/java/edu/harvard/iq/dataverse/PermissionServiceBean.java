@@ -33,7 +33,9 @@ import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.workflow.PendingWorkflowInvocation;
 import edu.harvard.iq.dataverse.workflow.WorkflowServiceBean;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -326,9 +328,32 @@ public class PermissionServiceBean {
             }
         }
         
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(req, dvo));
-        ras.add(user);
-        return hasGroupPermissionsFor(ras, dvo, required);
+        required.removeAll(rolePermissionsFor(req, dvo));
+        return required.isEmpty();
+    }
+
+    /**
+     * {@link #hasPermissionsFor(DataverseRequest, DvObject, Set)} over many
+     * objects at once, with their role permissions looked up together.
+     *
+     * @return the objects the user of {@code req} has the permission over
+     */
+    public <T extends DvObject> Set<T> hasPermissionFor(DataverseRequest req, Collection<T> dvos, Permission required) {
+        User user = req.getUser();
+        if (user.isSuperuser()) {
+            return new HashSet<>(dvos);
+        }
+        Set<T> permitted = new HashSet<>();
+        if (dvos.isEmpty() || (!user.isAuthenticated() && PERMISSIONS_FOR_AUTHENTICATED_USERS_ONLY.contains(required))) {
+            return permitted;
+        }
+        Map<DvObject, Set<Permission>> rolePermissions = rolePermissionsFor(req, dvos);
+        for (T dvo : dvos) {
+            if (rolePermissions.get(dvo).contains(required)) {
+                permitted.add(dvo);
+            }
+        }
+        return permitted;
     }
 
     public boolean hasPermissionsFor(RoleAssignee ra, DvObject dvo, Set<Permission> required) {
@@ -349,15 +374,7 @@ public class PermissionServiceBean {
             return true;
         }
         
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(ra, dvo));
-        ras.add(ra);
-        return hasGroupPermissionsFor(ras, dvo, required);
-    }
-    
-    private boolean hasGroupPermissionsFor(Set<RoleAssignee> ras, DvObject dvo, Set<Permission> required) {
-        for (RoleAssignment asmnt : assignmentsFor(ras, dvo)) {
-            required.removeAll(asmnt.getRole().permissions());
-        }
+        required.removeAll(rolePermissionsFor(ra, dvo));
         return required.isEmpty();
     }
 
@@ -377,9 +394,7 @@ public class PermissionServiceBean {
         Set<Permission> permissions = getInferredPermissions(dvo);
 
         // Add permissions gained from ras
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(req, dvo));
-        ras.add(req.getUser());
-        addGroupPermissionsFor(ras, dvo, permissions);
+        permissions.addAll(rolePermissionsFor(req, dvo));
 
         if (!req.getUser().isAuthenticated()) {
             permissions.removeAll(PERMISSIONS_FOR_AUTHENTICATED_USERS_ONLY);
@@ -387,6 +402,43 @@ public class PermissionServiceBean {
         return permissions;
     }
 
+    /**
+     * Finds all the permissions the {@link User} in {@code req} has over each
+     * of {@code dvos}; the same as {@link #permissionsFor(DataverseRequest, DvObject)}
+     * on each of them, but with a constant number of queries: the groups of
+     * the request are looked up once, and the role assignments on all the
+     * objects and their ancestors in a single query. The permissions computed
+     * are cached (see {@link PermissionCache}), so the checks on these objects
+     * that follow, one at a time, don't go to the database either.
+     *
+     * @param req
+     * @param dvos
+     * @return Permissions of {@code req.getUser()} over each of {@code dvos}.
+     */
+    public Map<DvObject, Set<Permission>> permissionsFor(DataverseRequest req, Collection<? extends DvObject> dvos) {
+        Map<DvObject, Set<Permission>> permissions = new HashMap<>();
+        if (req.getUser().isSuperuser()) {
+            for (DvObject dvo : dvos) {
+                permissions.put(dvo, EnumSet.allOf(Permission.class));
+            }
+            return permissions;
+        }
+
+        Map<DvObject, Set<Permission>> rolePermissions = rolePermissionsFor(req, dvos);
+        // (the files of each released version gone through once, for all the
+        // files of the version)
+        Map<DatasetVersion, Set<Long>> releasedFileIds = new HashMap<>();
+        for (DvObject dvo : dvos) {
+            Set<Permission> dvoPermissions = getInferredPermissions(dvo, releasedFileIds);
+            dvoPermissions.addAll(rolePermissions.get(dvo));
+            if (!req.getUser().isAuthenticated()) {
+                dvoPermissions.removeAll(PERMISSIONS_FOR_AUTHENTICATED_USERS_ONLY);
+            }
+            permissions.put(dvo, dvoPermissions);
+        }
+        return permissions;
+    }
+
     /**
      * Returns the set of permission a user/group has over a dataverse object.
      * This method takes into consideration group memberships as well, but does
@@ -403,9 +455,7 @@ public class PermissionServiceBean {
 
         Set<Permission> permissions = getInferredPermissions(dvo);
 
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(ra, dvo));
-        ras.add(ra);
-        addGroupPermissionsFor(ras, dvo, permissions);
+        permissions.addAll(rolePermissionsFor(ra, dvo));
 
         if ((ra instanceof User) && (!((User) ra).isAuthenticated())) {
             permissions.removeAll(PERMISSIONS_FOR_AUTHENTICATED_USERS_ONLY);
@@ -413,10 +463,98 @@ public class PermissionServiceBean {
         return permissions;
     }
     
-    private void addGroupPermissionsFor(Set<RoleAssignee> ras, DvObject dvo, Set<Permission> permissions) {
+    /**
+     * The permissions gained from the role assignments of the user of
+     * {@code req}, and of the groups the request is part of, over {@code dvo}.
+     * Cached, see {@link PermissionCache}.
+     */
+    private Set<Permission> rolePermissionsFor(DataverseRequest req, DvObject dvo) {
+        checkPermissionCacheVersion();
+        return PermissionCache.get(req.getUser(), req.getSourceAddress(), dvo, () -> {
+            Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(req, dvo));
+            ras.add(req.getUser());
+            return groupPermissionsFor(ras, dvo);
+        });
+    }
+
+    private Set<Permission> rolePermissionsFor(RoleAssignee ra, DvObject dvo) {
+        checkPermissionCacheVersion();
+        return PermissionCache.get(ra, null, dvo, () -> {
+            Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(ra, dvo));
+            ras.add(ra);
+            return groupPermissionsFor(ras, dvo);
+        });
+    }
+
+    /**
+     * {@link #rolePermissionsFor(DataverseRequest, DvObject)} over many
+     * objects at once; for the ones that are not cached, with one lookup of
+     * the groups, and one query for the role assignments.
+     */
+    private Map<DvObject, Set<Permission>> rolePermissionsFor(DataverseRequest req, Collection<? extends DvObject> dvos) {
+        checkPermissionCacheVersion();
+        Map<DvObject, Set<Permission>> permissions = new HashMap<>();
+        List<DvObject> notCached = new ArrayList<>();
+        for (DvObject dvo : dvos) {
+            Set<Permission> cached = PermissionCache.getIfPresent(req.getUser(), req.getSourceAddress(), dvo);
+            if (cached != null) {
+                permissions.put(dvo, cached);
+            } else {
+                notCached.add(dvo);
+            }
+        }
+        if (notCached.isEmpty()) {
+            return permissions;
+        }
+
+        Map<DvObject, Set<Group>> groups = groupService.groupsFor(req, notCached);
+        Map<DvObject, Set<DvObject>> ancestors = new HashMap<>();
+        Set<RoleAssignee> ras = new HashSet<>();
+        ras.add(req.getUser());
+        Set<DvObject> allAncestors = new HashSet<>();
+        for (DvObject dvo : notCached) {
+            ras.addAll(groups.get(dvo));
+            Set<DvObject> dvoAncestors = getPermissionAncestors(dvo);
+            ancestors.put(dvo, dvoAncestors);
+            allAncestors.addAll(dvoAncestors);
+        }
+
+        Map<Long, List<RoleAssignment>> assignmentsByDefinitionPoint = new HashMap<>();
+        for (RoleAssignment asmnt : roleService.directRoleAssignments(ras, allAncestors)) {
+            assignmentsByDefinitionPoint.computeIfAbsent(asmnt.getDefinitionPoint().getId(), id -> new LinkedList<>()).add(asmnt);
+        }
+
+        for (DvObject dvo : notCached) {
+            Set<String> assigneeIdentifiers = new HashSet<>();
+            assigneeIdentifiers.add(req.getUser().getIdentifier());
+            for (Group group : groups.get(dvo)) {
+                assigneeIdentifiers.add(group.getIdentifier());
+            }
+            Set<Permission> dvoPermissions = EnumSet.noneOf(Permission.class);
+            for (DvObject ancestor : ancestors.get(dvo)) {
+                for (RoleAssignment asmnt : assignmentsByDefinitionPoint.getOrDefault(ancestor.getId(), Collections.emptyList())) {
+                    if (assigneeIdentifiers.contains(asmnt.getAssigneeIdentifier())) {
+                        dvoPermissions.addAll(asmnt.getRole().permissions());
+                    }
+                }
+            }
+            permissions.put(dvo, PermissionCache.get(req.getUser(), req.getSourceAddress(), dvo, () -> dvoPermissions));
+        }
+        return permissions;
+    }
+
+    // (picks up the changes made through the other application servers, or
+    // with SQL)
+    private void checkPermissionCacheVersion() {
+        PermissionCache.checkVersion(() -> ((Number) em.createNativeQuery("SELECT VERSION FROM PERMISSIONVERSION WHERE ID = 1").getSingleResult()).longValue());
+    }
+
+    private Set<Permission> groupPermissionsFor(Set<RoleAssignee> ras, DvObject dvo) {
+        Set<Permission> permissions = EnumSet.noneOf(Permission.class);
         for (RoleAssignment asmnt : assignmentsFor(ras, dvo)) {
             permissions.addAll(asmnt.getRole().permissions());
         }
+        return permissions;
     }
 
 
@@ -427,10 +565,19 @@ public class PermissionServiceBean {
      * @return
      */
     private Set<Permission> getInferredPermissions(DvObject dvo) {
+        return getInferredPermissions(dvo, null);
+    }
+
+    /**
+     * @param releasedFileIds the ids of the files of the released versions
+     *        (by version), collected as they are needed, for checking many
+     *        files; or null to look each file up in the database
+     */
+    private Set<Permission> getInferredPermissions(DvObject dvo, Map<DatasetVersion, Set<Long>> releasedFileIds) {
 
         Set<Permission> permissions = EnumSet.noneOf(Permission.class);
 
-        if (isPublicallyDownloadable(dvo)) {
+        if (isPublicallyDownloadable(dvo, releasedFileIds)) {
             permissions.add(Permission.DownloadFile);
         }
 
@@ -441,7 +588,7 @@ public class PermissionServiceBean {
      * unrestricted files that are part of a release dataset automatically get
      * download permission for everybody:
      */
-    private boolean isPublicallyDownloadable(DvObject dvo) {
+    private boolean isPublicallyDownloadable(DvObject dvo, Map<DatasetVersion, Set<Long>> releasedFileIds) {
         if (dvo instanceof DataFile) {
             // unrestricted files that are part of a release dataset 
             // automatically get download permission for everybody:
@@ -450,21 +597,38 @@ public class PermissionServiceBean {
             DataFile df = (DataFile) dvo;
 
             if (!df.isRestricted()) {
-                if (df.getOwner().getReleasedVersion() != null) {
-                    List<FileMetadata> fileMetadatas = df.getOwner().getReleasedVersion().getFileMetadatas();
-                    if (fileMetadatas != null) {
-                        for (FileMetadata fm : fileMetadatas) {
-                            if (df.equals(fm.getDataFile())) {
-                                return true;
-                            }
-                        }
+                DatasetVersion releasedVersion = df.getOwner().getReleasedVersion();
+                if (releasedVersion != null) {
+                    if (df.getId() == null || releasedVersion.getId() == null) {
+                        // (not saved yet)
+                        return releasedVersion.containsDataFile(df);
+                    }
+                    if (releasedFileIds != null) {
+                        return releasedFileIds.computeIfAbsent(releasedVersion, this::getDataFileIds).contains(df.getId());
                     }
+                    // (with the index on the files of the FileMetadatas,
+                    // rather than going through all the files of the version)
+                    return !em.createQuery("SELECT o.id FROM FileMetadata o WHERE o.dataFile.id = :dataFileId AND o.datasetVersion.id = :datasetVersionId", Long.class)
+                            .setParameter("dataFileId", df.getId())
+                            .setParameter("datasetVersionId", releasedVersion.getId())
+                            .setMaxResults(1)
+                            .getResultList().isEmpty();
                 }
             }
         }
         return false;
     }
 
+    private Set<Long> getDataFileIds(DatasetVersion version) {
+        Set<Long> ids = new HashSet<>();
+        for (FileMetadata fmd : version.getFileMetadatas()) {
+            if (fmd.getDataFile() != null) {
+                ids.add(fmd.getDataFile().getId());
+            }
+        }
+        return ids;
+    }
+
     /**
      * Returns all the role assignments that are effective for {@code ra} over
      * {@code d}. Traverses the containment hierarchy of the {@code d}.
@@ -855,9 +1019,7 @@ public class PermissionServiceBean {
         List<FileMetadata> fileMetadatas = datasetVersion.getFileMetadatas();
         for (FileMetadata fileMetadata : fileMetadatas) {
             DataFile dataFile = fileMetadata.getDataFile();
-            Set<RoleAssignee> roleAssignees = new HashSet<>(groupService.groupsFor(dataverseRequest, dataFile));
-            roleAssignees.add(dataverseRequest.getUser());
-            if (hasGroupPermissionsFor(roleAssignees, dataFile, EnumSet.of(Permission.DownloadFile))) {
+            if (rolePermissionsFor(dataverseRequest, dataFile).contains(Permission.DownloadFile)) {
                 return true;
             }
         }
@@ -867,7 +1029,7 @@ public class PermissionServiceBean {
     /**
      * Checks if a DatasetVersion has unrestricted released files.
      *
-     * This method is mostly based on {@link #isPublicallyDownloadable(DvObject)} although in this case, instead of basing
+     * This method is mostly based on {@link #isPublicallyDownloadable(DvObject, Map)} although in this case, instead of basing
      * the search on a particular file, it searches for the total number of files in the target version that are present
      * in the released version.
      *
@@ -11,7 +11,10 @@ import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.engine.command.Command;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.impl.*;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 import jakarta.ejb.EJB;
@@ -196,6 +199,25 @@ public class PermissionsWrapper implements java.io.Serializable {
         // return true/false
         return hasPermission;
     }
+    /**
+     * Looks up the permissions over many DvObjects at once (e.g. the files of
+     * a page of search results), so that the checks that follow, such as
+     * {@link #hasDownloadFilePermission(DvObject)}, find them cached (see
+     * {@link PermissionServiceBean#permissionsFor(DataverseRequest, Collection)}).
+     * @param dvos
+     */
+    public void prefetchPermissions(Collection<? extends DvObject> dvos) {
+        List<DvObject> notChecked = new ArrayList<>();
+        for (DvObject dvo : dvos) {
+            if (dvo != null && dvo.getId() != null && !fileDownloadPermissionMap.containsKey(dvo.getId())) {
+                notChecked.add(dvo);
+            }
+        }
+        if (!notChecked.isEmpty()) {
+            permissionService.permissionsFor(dvRequestService.getDataverseRequest(), notChecked);
+        }
+    }
+
     /**
      *  Does this dvoObject have "Permission.DownloadFile"?
      * @param dvo
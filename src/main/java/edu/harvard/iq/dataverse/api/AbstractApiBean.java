@@ -37,6 +37,7 @@ import jakarta.ejb.EJB;
 import jakarta.ejb.EJBException;
 import jakarta.json.*;
 import jakarta.json.JsonValue.ValueType;
+import jakarta.json.stream.JsonGenerator;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
@@ -47,6 +48,7 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.ResponseBuilder;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
 
 import java.io.InputStream;
 import java.net.URI;
@@ -54,9 +56,13 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+
 import static org.apache.commons.lang3.StringUtils.isNumeric;
 
 /**
@@ -69,6 +75,8 @@ public abstract class AbstractApiBean {
     private static final String DATAVERSE_KEY_HEADER_NAME = "X-Dataverse-key";
     private static final String PERSISTENT_ID_KEY=":persistentId";
     private static final String ALIAS_KEY=":alias";
+    /** How much of a generated response is buffered in memory, rather than in a temporary file. */
+    private static final int STREAMED_JSON_MEMORY_THRESHOLD = 1024 * 1024;
     public static final String STATUS_WF_IN_PROGRESS = "WORKFLOW_IN_PROGRESS";
     public static final String DATAVERSE_WORKFLOW_INVOCATION_HEADER_NAME = "X-Dataverse-invocationID";
     public static final String RESPONSE_MESSAGE_AUTHENTICATED_USER_REQUIRED = "Only authenticated users can perform the requested operation";
@@ -698,6 +706,75 @@ public abstract class AbstractApiBean {
                 .build();    
     }
 
+    /**
+     * The same response as {@link #ok(JsonObjectBuilder)}, but with the data
+     * written out as they are generated, rather than put together as a tree
+     * in memory first; for the data that can get very large, such as the files
+     * of a dataset version.
+     * 
+     * The data are written here, on the request thread, into a buffer that
+     * spills over to a temporary file once it gets large. Whatever they need
+     * is loaded (and checked) before the response is started, and a failure
+     * surfaces as an exception of this call, handled like that of any other
+     * endpoint, rather than as a truncated {@code 200 OK}.
+     * 
+     * @param data writes the data (one JSON value) with the generator
+     */
+    protected Response ok( Consumer<JsonGenerator> data ) {
+        return ok(data, null);
+    }
+
+    /**
+     * See {@link #ok(Consumer)} and {@link #ok(JsonArrayBuilder, long)}.
+     */
+    protected Response ok( Consumer<JsonGenerator> data, Long totalCount ) {
+        return ok(data, totalCount, null);
+    }
+
+    /**
+     * See {@link #ok(Consumer, Long)}; with the cursor of the next page of the
+     * data, if any.
+     */
+    protected Response ok( Consumer<JsonGenerator> data, Long totalCount, String nextCursor ) {
+        DeferredFileOutputStream buffer = new DeferredFileOutputStream(STREAMED_JSON_MEMORY_THRESHOLD, "api", ".json", null);
+        try {
+            // (not closed on failure: closing an unfinished document throws)
+            JsonGenerator generator = Json.createGenerator(buffer);
+            generator.writeStartObject()
+                    .write("status", ApiConstants.STATUS_OK);
+            if (totalCount != null) {
+                generator.write("totalCount", totalCount);
+            }
+            if (nextCursor != null) {
+                generator.write("nextCursor", nextCursor);
+            }
+            generator.writeKey("data");
+            data.accept(generator);
+            generator.writeEnd();
+            generator.close();
+        } catch (RuntimeException e) {
+            IOUtils.closeQuietly(buffer);
+            deleteSpilledBuffer(buffer);
+            throw e;
+        }
+        StreamingOutput stream = output -> {
+            try {
+                buffer.writeTo(output);
+            } finally {
+                deleteSpilledBuffer(buffer);
+            }
+        };
+        return Response.ok(stream)
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    private static void deleteSpilledBuffer(DeferredFileOutputStream buffer) {
+        if (!buffer.isInMemory() && buffer.getFile() != null && !buffer.getFile().delete()) {
+            logger.log(Level.WARNING, "Could not delete {0}", buffer.getFile());
+        }
+    }
+
     protected Response ok( String msg ) {
         return Response.ok().entity(Json.createObjectBuilder()
             .add("status", ApiConstants.STATUS_OK)
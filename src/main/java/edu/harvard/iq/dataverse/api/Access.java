@@ -67,6 +67,7 @@ import edu.harvard.iq.dataverse.engine.command.impl.UpdateDatasetVersionCommand;
 import edu.harvard.iq.dataverse.export.DDIExportServiceBean;
 import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLoggingServiceBean;
 import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLoggingServiceBean.MakeDataCountEntry;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.util.FileUtil;
@@ -75,7 +76,9 @@ import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.util.json.NullSafeJsonBuilder;
 
 import java.util.logging.Logger;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import java.io.InputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -86,9 +89,14 @@ import java.io.OutputStream;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.logging.Level;
 import jakarta.inject.Inject;
 import jakarta.json.Json;
@@ -191,6 +199,9 @@ public class Access extends AbstractApiBean {
     PermissionsWrapper permissionsWrapper;
     @Inject
     MakeDataCountLoggingServiceBean mdcLogService;
+    // (reads ahead the files of the zipped downloads)
+    @Resource
+    ManagedExecutorService managedExecutorService;
     
     //@EJB
     
@@ -835,16 +846,31 @@ public class Access extends AbstractApiBean {
         
         StreamingOutput stream = new StreamingOutput() {
 
+            private DataFileZipper zipper = null;
+
             @Override
             public void write(OutputStream os) throws IOException,
                     WebApplicationException {
+                try {
+                    writeZipStream(os);
+                } finally {
+                    if (zipper != null) {
+                        // stop fetching the remaining files, if the download was aborted: 
+                        zipper.cancelPrefetching();
+                    }
+                }
+            }
+
+            private void writeZipStream(OutputStream os) throws IOException {
                 String fileIdParams[] = fileIds.split(",");
-                DataFileZipper zipper = null; 
                 String fileManifest = "";
-                long sizeTotal = 0L;
+                
+                int prefetchSize = JvmSettings.ZIP_DOWNLOAD_PREFETCH.lookupOptional(Integer.class).orElse(4);
                 
                 if (fileIdParams != null && fileIdParams.length > 0) {
                     logger.fine(fileIdParams.length + " tokens;");
+                    Map<Long, DataFile> files = findFilesForDownload(fileIdParams);
+                    Set<DataFile> authorizedFiles = getAuthorizedFiles(user, files.values());
                     for (int i = 0; i < fileIdParams.length; i++) {
                         logger.fine("token: " + fileIdParams[i]);
                         Long fileId = null;
@@ -855,9 +881,9 @@ public class Access extends AbstractApiBean {
                         }
                         if (fileId != null) {
                             logger.fine("attempting to look up file id " + fileId);
-                            DataFile file = dataFileService.find(fileId);
+                            DataFile file = files.get(fileId);
                             if (file != null) {
-                                if (isAccessAuthorized(user, file)) {
+                                if (authorizedFiles.contains(file)) {
 
                                     logger.fine("adding datafile (id=" + file.getId() + ") to the download list of the ZippedDownloadInstance.");
                                     //downloadInstance.addDataFile(file);
@@ -873,6 +899,9 @@ public class Access extends AbstractApiBean {
                                         // to produce some output.
                                         zipper = new DataFileZipper(os);
                                         zipper.setFileManifest(fileManifest);
+                                        // The upcoming files are opened, and start being read,
+                                        // while the current one is written into the zip stream:
+                                        zipper.setPrefetching(managedExecutorService, prefetchSize);
                                         response.setHeader("Content-disposition", "attachment; filename=\"dataverse_files.zip\"");
                                         response.setHeader("Content-Type", "application/zip; name=\"dataverse_files.zip\"");
                                     }
@@ -911,8 +940,10 @@ public class Access extends AbstractApiBean {
                                     } else {
                                         size = file.getFilesize();
                                     }
-                                    if (sizeTotal + size < zipDownloadSizeLimit) {
-                                        sizeTotal += zipper.addFileToZipStream(file, getOriginal);
+                                    // (the sizes of the files already written are counted as 
+                                    // the bytes actually written into the zip stream)
+                                    if (zipper.getBundleSize() + size < zipDownloadSizeLimit) {
+                                        zipper.queueFileForZipStream(file, getOriginal, size);
                                     } else {
                                         String fileName = file.getFileMetadata().getLabel();
                                         String mimeType = file.getContentType();
@@ -1730,75 +1761,13 @@ public class Access extends AbstractApiBean {
     private boolean isAccessAuthorized(User requestUser, DataFile df) {
     // First, check if the file belongs to a released Dataset version: 
         
-        boolean published = false; 
+        boolean published = isPublished(df); 
         
         //True if there's an embargo that hasn't yet expired
         //In this state, we block access as though the file is restricted (even if it is not restricted)
         boolean embargoed = FileUtil.isActivelyEmbargoed(df);
         
-        
-        /*
-        SEK 7/26/2018 for 3661 relying on the version state of the dataset versions
-            to which this file is attached check to see if at least one is  RELEASED
-        */
-        for (FileMetadata fm : df.getFileMetadatas()){
-            if(fm.getDatasetVersion().isPublished()){
-                 published = true; 
-                 break;
-            }
-        }
-
-        // TODO: (IMPORTANT!)
-        // Business logic like this should NOT be maintained in individual 
-        // application fragments. 
-        // At the moment it is duplicated here, and inside the Dataset page.
-        // There are also stubs for file-level permission lookups and caching
-        // inside Gustavo's view-scoped PermissionsWrapper. 
-        // All this logic needs to be moved to the PermissionServiceBean where it will be 
-        // centrally maintained; with the PermissionsWrapper providing 
-        // efficient cached lookups to the pages (that often need to make 
-        // repeated lookups on the same files). Care will need to be taken 
-        // to preserve the slight differences in logic utilized by the page and 
-        // this Access call (the page checks the restriction flag on the
-        // filemetadata, not the datafile - as it needs to reflect the permission 
-        // status of the file in the version history).  
-        // I will open a 4.[34] ticket. 
-        //
-        // -- L.A. 4.2.1
-        
-        
-        // We don't need to check permissions on files that are 
-        // from released Dataset versions and not restricted: 
-        
-        boolean restricted = false; 
-        
-        if (df.isRestricted()) {
-            restricted = true;
-        } else {
-        
-        // There is also a special case of a restricted file that only exists 
-        // in a draft version (i.e., a new file, that hasn't been published yet).
-        // Such files must be considered restricted, for access purposes. I.e., 
-        // users with no download access to this particular file, but with the 
-        // permission to ViewUnpublished on the dataset, should NOT be allowed 
-        // to download it. 
-        // Up until 4.2.1 restricting unpublished files was only restricting them 
-        // in their Draft version fileMetadata, but not in the DataFile object. 
-        // (this is what we still want to do for published files; restricting those
-        // only restricts them in the new draft FileMetadata; until it becomes the 
-        // published version, the restriction flag on the DataFile is what governs
-        // the download authorization).
-        
-            //if (!published && df.getOwner().getVersions().size() == 1 && df.getOwner().getLatestVersion().isDraft()) {
-            // !df.isReleased() really means just this: new file, only exists in a Draft version!
-            if (!df.isReleased()) {
-                if (df.getFileMetadata().isRestricted()) {
-                    restricted = true;
-                }
-            }
-        }
-        
-        
+        boolean restricted = isRestrictedForAccess(df);
 
         //The one case where we don't need to check permissions
         if (!restricted && !embargoed && published) {
@@ -1858,13 +1827,7 @@ public class Access extends AbstractApiBean {
          * and not restricted/embargoed both get handled the same way.
          */
 
-        DataverseRequest dvr = null;
-        if (apiUser != null) {
-            dvr = createDataverseRequest(apiUser);
-        } else {
-            // used in JSF context, user may be Guest
-            dvr = dvRequestService.getDataverseRequest();
-        }
+        DataverseRequest dvr = getAccessRequest(requestUser);
         if (!published) { // and restricted or embargoed (implied by earlier processing)
             // If the file is not published, they can still download the file, if the user
             // has the permission to view unpublished versions:
@@ -1894,7 +1857,134 @@ public class Access extends AbstractApiBean {
         return false; 
     }   
     
+    /**
+     * The files of a multi-file download that the user may download: the
+     * same decision as {@link #isAccessAuthorized(User, DataFile)} for each
+     * file, but with the permissions of the user over all the files (and
+     * datasets) that need them looked up together.
+     *
+     * @return the files the user may download
+     */
+    private Set<DataFile> getAuthorizedFiles(User requestUser, Collection<DataFile> files) {
+        Set<DataFile> authorized = new HashSet<>();
+        List<DataFile> publishedFiles = new ArrayList<>();
+        List<DataFile> unpublishedFiles = new ArrayList<>();
+        for (DataFile df : files) {
+            boolean published = isPublished(df);
+            if (published && !isRestrictedForAccess(df) && !FileUtil.isActivelyEmbargoed(df)) {
+                authorized.add(df);
+            } else if (published) {
+                publishedFiles.add(df);
+            } else {
+                unpublishedFiles.add(df);
+            }
+        }
+        DataverseRequest dvr = getAccessRequest(requestUser);
+        if (dvr == null) {
+            // (no user: only the files that don't need any permission)
+            return authorized;
+        }
+        // published and restricted and/or embargoed:
+        authorized.addAll(permissionService.hasPermissionFor(dvr, publishedFiles, Permission.DownloadFile));
+        // unpublished:
+        Set<Dataset> datasets = new HashSet<>();
+        for (DataFile df : unpublishedFiles) {
+            datasets.add(df.getOwner());
+        }
+        Set<Dataset> viewable = permissionService.hasPermissionFor(dvr, datasets, Permission.ViewUnpublishedDataset);
+        for (DataFile df : unpublishedFiles) {
+            if (viewable.contains(df.getOwner())) {
+                authorized.add(df);
+            }
+        }
+        return authorized;
+    }
 
+    /**
+     * @return whether the file belongs to a released Dataset version
+     */
+    private static boolean isPublished(DataFile df) {
+        /*
+        SEK 7/26/2018 for 3661 relying on the version state of the dataset versions
+            to which this file is attached check to see if at least one is  RELEASED
+        */
+        for (FileMetadata fm : df.getFileMetadatas()){
+            if(fm.getDatasetVersion().isPublished()){
+                 return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRestrictedForAccess(DataFile df) {
+
+        // TODO: (IMPORTANT!)
+        // Business logic like this should NOT be maintained in individual 
+        // application fragments. 
+        // At the moment it is duplicated here, and inside the Dataset page.
+        // There are also stubs for file-level permission lookups and caching
+        // inside Gustavo's view-scoped PermissionsWrapper. 
+        // All this logic needs to be moved to the PermissionServiceBean where it will be 
+        // centrally maintained; with the PermissionsWrapper providing 
+        // efficient cached lookups to the pages (that often need to make 
+        // repeated lookups on the same files). Care will need to be taken 
+        // to preserve the slight differences in logic utilized by the page and 
+        // this Access call (the page checks the restriction flag on the
+        // filemetadata, not the datafile - as it needs to reflect the permission 
+        // status of the file in the version history).  
+        // I will open a 4.[34] ticket. 
+        //
+        // -- L.A. 4.2.1
+        
+        
+        // We don't need to check permissions on files that are 
+        // from released Dataset versions and not restricted: 
+        
+        boolean restricted = false; 
+        
+        if (df.isRestricted()) {
+            restricted = true;
+        } else {
+        
+        // There is also a special case of a restricted file that only exists 
+        // in a draft version (i.e., a new file, that hasn't been published yet).
+        // Such files must be considered restricted, for access purposes. I.e., 
+        // users with no download access to this particular file, but with the 
+        // permission to ViewUnpublished on the dataset, should NOT be allowed 
+        // to download it. 
+        // Up until 4.2.1 restricting unpublished files was only restricting them 
+        // in their Draft version fileMetadata, but not in the DataFile object. 
+        // (this is what we still want to do for published files; restricting those
+        // only restricts them in the new draft FileMetadata; until it becomes the 
+        // published version, the restriction flag on the DataFile is what governs
+        // the download authorization).
+        
+            //if (!published && df.getOwner().getVersions().size() == 1 && df.getOwner().getLatestVersion().isDraft()) {
+            // !df.isReleased() really means just this: new file, only exists in a Draft version!
+            if (!df.isReleased()) {
+                if (df.getFileMetadata().isRestricted()) {
+                    restricted = true;
+                }
+            }
+        }
+        
+        return restricted;
+    }
+    
+    /**
+     * The request whose permissions are checked by
+     * {@link #isAccessAuthorized(User, DataFile)}: that of the API user; or,
+     * if that's a guest, of the session user, if there is one.
+     *
+     * @return the request, or null if there is no user
+     */
+    private DataverseRequest getAccessRequest(User requestUser) {
+        if ((requestUser instanceof GuestUser) && session != null && session.getUser() != null) {
+            // used in JSF context, user may be Guest
+            return dvRequestService.getDataverseRequest();
+        }
+        return requestUser == null ? null : createDataverseRequest(requestUser);
+    }
         
     private User findAPITokenUser(User requestUser) {
         User apiTokenUser = requestUser;
@@ -1912,6 +2002,31 @@ public class Access extends AbstractApiBean {
         return apiTokenUser;
     }
 
+    /**
+     * Looks up the files of a multi-file download all together, with one
+     * query (so that the files of the same dataset share its versions); which
+     * of them the user may download is then decided all together as well, by
+     * {@link #getAuthorizedFiles(User, Collection)}.
+     *
+     * @param fileIdParams the ids requested (the invalid ones are skipped)
+     * @return the files found, by id
+     */
+    private Map<Long, DataFile> findFilesForDownload(String[] fileIdParams) {
+        List<Long> fileIds = new ArrayList<>(fileIdParams.length);
+        for (String fileIdParam : fileIdParams) {
+            try {
+                fileIds.add(Long.parseLong(fileIdParam));
+            } catch (NumberFormatException nfe) {
+                // (skipped, as in the loops over the ids)
+            }
+        }
+        Map<Long, DataFile> files = new HashMap<>();
+        for (DataFile file : dataFileService.findByIds(fileIds)) {
+            files.put(file.getId(), file);
+        }
+        return files;
+    }
+
     private URI handleCustomZipDownload(User user, String customZipServiceUrl, String fileIds, User apiTokenUser, UriInfo uriInfo, HttpHeaders headers, boolean donotwriteGBResponse, boolean orig) throws WebApplicationException {
         
         String zipServiceKey = null; 
@@ -1926,6 +2041,9 @@ public class Access extends AbstractApiBean {
             throw new BadRequestException();
         }
         
+        Map<Long, DataFile> files = findFilesForDownload(fileIdParams);
+        Set<DataFile> authorizedFiles = getAuthorizedFiles(user, files.values());
+        
         for (int i = 0; i < fileIdParams.length; i++) {
             Long fileId = null;
             try {
@@ -1935,10 +2053,10 @@ public class Access extends AbstractApiBean {
                 fileId = null;
             }
             if (fileId != null) {
-                DataFile file = dataFileService.find(fileId);
+                DataFile file = files.get(fileId);
                 if (file != null) {
                     validFileCount++;
-                    if (isAccessAuthorized(user, file)) {
+                    if (authorizedFiles.contains(file)) {
                         logger.fine("adding datafile (id=" + file.getId() + ") to the download list of the ZippedDownloadInstance.");
                         if (donotwriteGBResponse != true && file.isReleased()) {
                             GuestbookResponse gbr = guestbookResponseService.initAPIGuestbookResponse(file.getOwner(), file, session, apiTokenUser);
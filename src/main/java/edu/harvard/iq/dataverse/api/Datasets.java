@@ -436,10 +436,12 @@ public class Datasets extends AbstractApiBean {
                 return notFound("Dataset version not found");
             }
 
-            if (excludeFiles == null ? true : !excludeFiles) {
+            boolean includeFiles = excludeFiles == null ? true : !excludeFiles;
+            if (includeFiles) {
                 dsv = datasetversionService.findDeep(dsv.getId());
             }
-            return ok(json(dsv, excludeFiles == null ? true : !excludeFiles));
+            DatasetVersion version = dsv;
+            return ok(generator -> writeJson(generator, version, null, includeFiles));
         }, getRequestUser(crc));
     }
 
@@ -451,6 +453,7 @@ public class Datasets extends AbstractApiBean {
                                     @PathParam("versionId") String versionId,
                                     @QueryParam("limit") Integer limit,
                                     @QueryParam("offset") Integer offset,
+                                    @QueryParam("cursor") String cursor,
                                     @QueryParam("contentType") String contentType,
                                     @QueryParam("accessStatus") String accessStatus,
                                     @QueryParam("categoryName") String categoryName,
@@ -480,8 +483,30 @@ public class Datasets extends AbstractApiBean {
             } catch (IllegalArgumentException e) {
                 return badRequest(BundleUtil.getStringFromBundle("datasets.api.version.files.invalid.access.status", List.of(accessStatus)));
             }
-            return ok(jsonFileMetadatas(datasetVersionFilesServiceBean.getFileMetadatas(datasetVersion, limit, offset, fileSearchCriteria, fileOrderCriteria)),
-                    datasetVersionFilesServiceBean.getFileMetadataCount(datasetVersion, fileSearchCriteria));
+            // With a cursor (empty for the first page), the response has the
+            // cursor of the next page, if there can be one:
+            if (cursor == null) {
+                List<FileMetadata> fileMetadatas = datasetVersionFilesServiceBean.getFileMetadatas(datasetVersion, limit, offset, fileSearchCriteria, fileOrderCriteria);
+                return ok(generator -> writeFileMetadatas(generator, fileMetadatas),
+                        datasetVersionFilesServiceBean.getFileMetadataCount(datasetVersion, fileSearchCriteria));
+            }
+            if (offset != null) {
+                return badRequest(BundleUtil.getStringFromBundle("datasets.api.version.files.cursor.with.offset"));
+            }
+            FileMetadataCursor after = null;
+            if (!cursor.isEmpty()) {
+                try {
+                    after = FileMetadataCursor.parse(cursor, fileOrderCriteria);
+                } catch (IllegalArgumentException e) {
+                    return badRequest(BundleUtil.getStringFromBundle("datasets.api.version.files.invalid.cursor", List.of(cursor)));
+                }
+            }
+            List<FileMetadata> fileMetadatas = datasetVersionFilesServiceBean.getFileMetadatas(datasetVersion, limit, after, fileSearchCriteria, fileOrderCriteria);
+            String nextCursor = (limit != null && !fileMetadatas.isEmpty() && fileMetadatas.size() == limit)
+                    ? FileMetadataCursor.after(fileMetadatas.get(fileMetadatas.size() - 1), fileOrderCriteria).toString()
+                    : null;
+            return ok(generator -> writeFileMetadatas(generator, fileMetadatas),
+                    datasetVersionFilesServiceBean.getFileMetadataCount(datasetVersion, fileSearchCriteria), nextCursor);
         }, getRequestUser(crc));
     }
 
@@ -513,12 +538,13 @@ public class Datasets extends AbstractApiBean {
                 return badRequest(BundleUtil.getStringFromBundle("datasets.api.version.files.invalid.access.status", List.of(accessStatus)));
             }
             DatasetVersion datasetVersion = getDatasetVersionOrDie(req, versionId, findDatasetOrDie(datasetId), uriInfo, headers, includeDeaccessioned);
+            DatasetVersionFilesServiceBean.FileMetadataCounts counts = datasetVersionFilesServiceBean.getFileMetadataCounts(datasetVersion, fileSearchCriteria);
             JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
-            jsonObjectBuilder.add("total", datasetVersionFilesServiceBean.getFileMetadataCount(datasetVersion, fileSearchCriteria));
-            jsonObjectBuilder.add("perContentType", json(datasetVersionFilesServiceBean.getFileMetadataCountPerContentType(datasetVersion, fileSearchCriteria)));
+            jsonObjectBuilder.add("total", counts.getTotal());
+            jsonObjectBuilder.add("perContentType", json(counts.getPerContentType()));
             jsonObjectBuilder.add("perCategoryName", json(datasetVersionFilesServiceBean.getFileMetadataCountPerCategoryName(datasetVersion, fileSearchCriteria)));
             jsonObjectBuilder.add("perTabularTagName", jsonFileCountPerTabularTagNameMap(datasetVersionFilesServiceBean.getFileMetadataCountPerTabularTagName(datasetVersion, fileSearchCriteria)));
-            jsonObjectBuilder.add("perAccessStatus", jsonFileCountPerAccessStatusMap(datasetVersionFilesServiceBean.getFileMetadataCountPerAccessStatus(datasetVersion, fileSearchCriteria)));
+            jsonObjectBuilder.add("perAccessStatus", jsonFileCountPerAccessStatusMap(counts.getPerAccessStatus()));
             return ok(jsonObjectBuilder);
         }, getRequestUser(crc));
     }
@@ -4400,14 +4426,10 @@ public class Datasets extends AbstractApiBean {
         if (dsv == null || dsv.getId() == null) {
             return notFound("Dataset version not found");
         }
-        JsonObjectBuilder responseJson;
-        if (isAnonymizedAccess) {
-            List<String> anonymizedFieldTypeNamesList = new ArrayList<>(Arrays.asList(anonymizedFieldTypeNames.split(",\\s")));
-            responseJson = json(dsv, anonymizedFieldTypeNamesList, true);
-        } else {
-            responseJson = json(dsv, true);
-        }
-        return ok(responseJson);
+        List<String> anonymizedFieldTypeNamesList = isAnonymizedAccess
+                ? new ArrayList<>(Arrays.asList(anonymizedFieldTypeNames.split(",\\s")))
+                : null;
+        return ok(generator -> writeJson(generator, dsv, anonymizedFieldTypeNamesList, true));
     }
 
     @GET
@@ -30,17 +30,24 @@ import edu.harvard.iq.dataverse.engine.command.impl.CreateGuestbookResponseComma
 import edu.harvard.iq.dataverse.globus.GlobusServiceBean;
 import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLoggingServiceBean;
 import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLoggingServiceBean.MakeDataCountEntry;
+import edu.harvard.iq.dataverse.settings.FeatureFlags;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jakarta.inject.Inject;
@@ -68,6 +75,8 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
     GlobusServiceBean globusService;
 
     private static final Logger logger = Logger.getLogger(DownloadInstanceWriter.class.getCanonicalName());
+    // The maximum number of ranges in a Range header:
+    static final int MAX_RANGES = 64;
 
     @Override
     public boolean isWriteable(Class<?> clazz, Type type, Annotation[] annotation, MediaType mediaType) {
@@ -376,11 +385,26 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                                             numberOfLines++;
                                         }
                                         
-                                        tabularSubsetGenerator.subsetFile(storageIO.getInputStream(), 
-                                                tempSubsetFile.getAbsolutePath(), 
-                                                variablePositionIndex, 
-                                                numberOfLines, 
-                                                "\t");
+                                        TabularColumnStore.Reader columnStore = FeatureFlags.TABULAR_COLUMN_STORE.enabled()
+                                                ? TabularColumnStore.open(storageIO) : null;
+                                        
+                                        if (columnStore != null && columnStore.getNumRows() == numberOfLines) {
+                                            // Read only the selected columns from the column-oriented copy:
+                                            logger.fine("producing the subset from the column store.");
+                                            try (columnStore; OutputStream subsetOut = new FileOutputStream(tempSubsetFile)) {
+                                                columnStore.subset(variablePositionIndex, subsetOut);
+                                            }
+                                            storageIO.closeInputStream();
+                                        } else {
+                                            if (columnStore != null) {
+                                                columnStore.close();
+                                            }
+                                            tabularSubsetGenerator.subsetFile(storageIO.getInputStream(), 
+                                                    tempSubsetFile.getAbsolutePath(), 
+                                                    variablePositionIndex, 
+                                                    numberOfLines, 
+                                                    "\t");
+                                        }
 
                                         if (tempSubsetFile.exists()) {
                                             FileInputStream subsetStream = new FileInputStream(tempSubsetFile);
@@ -448,8 +472,19 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
 
                 } 
 
-                try (InputStream instream = storageIO.getInputStream()) {
-                    if (instream != null) {
+                String rangeHeader = null;
+                HttpHeaders headers = di.getRequestHttpHeaders();
+                if (headers != null) {
+                    rangeHeader = headers.getHeaderString("Range");
+                }
+                // For a range request, only the requested bytes are read, 
+                // with storageIO.openRange() below; so there's no need to 
+                // open the full stream - but we still need to make sure the 
+                // object is there, before any headers are sent: 
+                boolean rangeRequest = rangeHeader != null && getContentSize(storageIO) > 0;
+
+                try (InputStream instream = rangeRequest ? null : storageIO.getInputStream()) {
+                    if (rangeRequest ? contentExists(storageIO) : instream != null) {
                         // headers:
 
                         String fileName = storageIO.getFileName();
@@ -470,16 +505,10 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                         // stream is known (i.e., it's not a dynamically generated 
                         // stream. 
                         List<Range> ranges = new ArrayList<>();
-                        String rangeHeader = null;
-                        HttpHeaders headers = di.getRequestHttpHeaders();
-                        if (headers != null) {
-                            rangeHeader = headers.getHeaderString("Range");
-                        }
-                        long offset = 0;
-                        long leftToRead = -1L; 
-                        // Moving the "left to read" var. here; - since we may need 
-                        // to start counting our rangeHeader bytes outside the main .write()
-                        // loop, if it's a tabular file with a header. 
+                        // When multiple ranges are requested, each range is sent
+                        // in its own part of a multipart/byteranges response: 
+                        List<byte[]> partHeaders = new ArrayList<>();
+                        byte[] multipartEnd = null;
                         
                         if ((contentSize = getContentSize(storageIO)) > 0) {
                             try {
@@ -492,17 +521,33 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                             if (ranges.isEmpty()) {
                                 logger.fine("Content size (retrieved from the AccessObject): " + contentSize);
                                 httpHeaders.add("Content-Length", contentSize);
-                            } else  {
-                                // For now we only support a single rangeHeader.
+                            } else if (ranges.size() == 1) {
+                                long offset = ranges.get(0).getStart();
                                 long rangeContentSize = ranges.get(0).getLength();
                                 logger.fine("Content size (Range header in use): " + rangeContentSize);
                                 httpHeaders.add("Content-Length", rangeContentSize);
                                 
-                                offset = ranges.get(0).getStart();
-                                leftToRead = rangeContentSize;
                                 httpHeaders.add("Accept-Ranges", "bytes");
                                 httpHeaders.add("Content-Range", "bytes "+offset+"-"+(offset+rangeContentSize-1)+"/"+contentSize);
 
+                            } else {
+                                String boundary = UUID.randomUUID().toString().replace("-", "");
+                                long multipartContentSize = 0;
+                                for (Range range : ranges) {
+                                    byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                                            + "Content-Type: " + mimeType + "\r\n"
+                                            + "Content-Range: bytes " + range.getStart() + "-" + range.getEnd() + "/" + contentSize + "\r\n"
+                                            + "\r\n").getBytes(StandardCharsets.UTF_8);
+                                    partHeaders.add(partHeader);
+                                    multipartContentSize += partHeader.length + range.getLength();
+                                }
+                                multipartEnd = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+                                multipartContentSize += multipartEnd.length;
+                                logger.fine("Content size (multiple ranges in the Range header): " + multipartContentSize);
+                                
+                                httpHeaders.putSingle("Content-Type", "multipart/byteranges; boundary=" + boundary);
+                                httpHeaders.add("Content-Length", multipartContentSize);
+                                httpHeaders.add("Accept-Ranges", "bytes");
                             }
                         } else {
                             // Content size unknown, must be a dynamically
@@ -516,91 +561,50 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
 
                         // (the httpHeaders map must be modified *before* writing any
                         // data in the output stream!)
-                        int bufsize;
-                        byte[] bffr = new byte[4 * 8192];
-
-                        // Before writing out any bytes from the input stream, write
-                        // any extra content, such as the variable header for the 
-                        // subsettable files: 
-                        if (storageIO.getVarHeader() != null) {
-                            logger.fine("storageIO.getVarHeader().getBytes().length: " + storageIO.getVarHeader().getBytes().length);
-                            if (storageIO.getVarHeader().getBytes().length > 0) {
-                                // If a rangeHeader is not being requested, let's call that the normal case.
-                                // Write the entire line of variable headers. Later, the rest of the file
-                                // will be written.
-                                if (ranges.isEmpty()) {
-                                    logger.fine("writing the entire variable header");
-                                    outstream.write(storageIO.getVarHeader().getBytes());
-                                } else {
-                                    // Range requested. Since the output stream of a 
-                                    // tabular file is made up of the varHeader and the body of 
-                                    // the physical file, we should assume that the requested 
-                                    // rangeHeader may span any portion of the combined stream.
-                                    // Thus we may or may not have to write the header, or a 
-                                    // portion thereof. 
-                                    int headerLength = storageIO.getVarHeader().getBytes().length;
-                                    if (offset >= headerLength) {
-                                        // We can skip the entire header. 
-                                        // All we need to do is adjust the byte offset 
-                                        // in the physical file; the number of bytes
-                                        // left to write stays unchanged, since we haven't
-                                        // written anything.
-                                        logger.fine("Skipping the variable header completely.");
-                                        offset -= headerLength;
-                                    } else {
-                                        // We need to write some portion of the header; 
-                                        // Once we are done, we may or may not still have 
-                                        // some bytes left to write from the main physical file.
-                                        if (offset + leftToRead <= headerLength) {
-                                            // This is a more straightforward case - we just need to 
-                                            // write a portion of the header, and then we are done!
-                                            logger.fine("Writing this many bytes of the variable header line: " + leftToRead);
-                                            outstream.write(Arrays.copyOfRange(storageIO.getVarHeader().getBytes(), (int)offset, (int)offset + (int)leftToRead));
-                                            // set "left to read" to zero, indicating that we are done:
-                                            leftToRead = 0; 
-                                        } else {
-                                            // write the requested portion of the header:
-                                            logger.fine("Writing this many bytes of the variable header line: " + (headerLength - offset));
-                                            outstream.write(Arrays.copyOfRange(storageIO.getVarHeader().getBytes(), (int)offset, headerLength));
-                                            // and adjust the file offset and remaining number of bytes accordingly: 
-                                            leftToRead -= (headerLength - offset);
-                                            offset = 0;
-                                        }
-                                        
-                                    }
-                                }
-                            }
-                        }
 
-                        // Dynamic streams, etc. Normal operation. No leftToRead.
+                        // Dynamic streams, etc. Normal operation. No ranges.
                         if (ranges.isEmpty()) {
                             logger.fine("Normal, non-range request of file id " + dataFile.getId());
-                            while ((bufsize = instream.read(bffr)) != -1) {
-                                outstream.write(bffr, 0, bufsize);
+                            // Before writing out any bytes from the input stream, write
+                            // any extra content, such as the variable header for the 
+                            // subsettable files: 
+                            if (storageIO.getVarHeader() != null) {
+                                logger.fine("storageIO.getVarHeader().getBytes().length: " + storageIO.getVarHeader().getBytes().length);
+                                if (storageIO.getVarHeader().getBytes().length > 0) {
+                                    logger.fine("writing the entire variable header");
+                                    outstream.write(storageIO.getVarHeader().getBytes());
+                                }
                             }
-                        } else if (leftToRead > 0) {
-                            // This is a rangeHeader request, and we still have bytes to read 
-                            // (for a tabular file, we may have already written enough
-                            // bytes from the variable header!)
-                            storageIO.setOffset(offset);
-                            // Thinking about it, we could just do instream.skip(offset) 
-                            // here... But I would like to have this offset functionality 
-                            // in StorageIO, for any future cases where we may not 
-                            // be able to do that on the stream directly (?) -- L.A.
-                            logger.fine("Range request of file id " + dataFile.getId());
-                            // Read a rangeHeader of bytes instead of the whole file. We'll count down as we write.
-                            // For now we only support a single rangeHeader.
-                            while ((bufsize = instream.read(bffr)) != -1) {
-                                if ((leftToRead -= bufsize) > 0) {
-                                    // Just do a normal write. Potentially lots to go. Don't break.
+                            
+                            FileChannel localFileChannel = getLocalFileChannel(storageIO);
+                            if (localFileChannel != null) {
+                                // A local file: transfer the bytes from the 
+                                // file channel, instead of the read loop:
+                                long position = localFileChannel.position();
+                                transferFully(localFileChannel, position, localFileChannel.size() - position, outstream);
+                            } else {
+                                int bufsize;
+                                byte[] bffr = new byte[4 * 8192];
+                                while ((bufsize = instream.read(bffr)) != -1) {
                                     outstream.write(bffr, 0, bufsize);
-                                } else {
-                                    // Get those last bytes or bytes equal to bufsize. Last one. Then break.
-                                    outstream.write(bffr, 0, (int) leftToRead + bufsize);
-                                    break;
                                 }
                             }
-
+                        } else {
+                            logger.fine("Range request of file id " + dataFile.getId() + " (" + ranges.size() + " range(s))");
+                            try {
+                                for (int i = 0; i < ranges.size(); i++) {
+                                    if (multipartEnd != null) {
+                                        outstream.write(partHeaders.get(i));
+                                    }
+                                    writeRange(storageIO, ranges.get(i).getStart(), ranges.get(i).getLength(), outstream);
+                                }
+                                if (multipartEnd != null) {
+                                    outstream.write(multipartEnd);
+                                }
+                            } finally {
+                                // release the stream(s) the driver opened for the ranges:
+                                storageIO.closeInputStream();
+                            }
                         }
 
                         logger.fine("di conversion param: " + di.getConversionParam() + ", value: " + di.getConversionParamValue());
@@ -632,6 +636,116 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
 
     }
 
+    /**
+     * Checks that the content of a range request can be read, without opening
+     * the full stream (for the storage drivers, it's the physical file).
+     */
+    private boolean contentExists(StorageIO<?> storageIO) throws IOException {
+        if (storageIO instanceof InputStreamIO) {
+            return storageIO.getInputStream() != null;
+        }
+        return storageIO.exists();
+    }
+
+    /**
+     * Writes a range of bytes of the content: the variable header (for 
+     * subsettable files), if present, followed by the physical file.
+     */
+    private void writeRange(StorageIO<?> storageIO, long offset, long leftToRead, OutputStream outstream) throws IOException {
+        if (storageIO.getVarHeader() != null && storageIO.getVarHeader().getBytes().length > 0) {
+            // Since the output stream of a tabular file is made up of the 
+            // varHeader and the body of the physical file, we should assume 
+            // that the requested range may span any portion of the combined 
+            // stream. Thus we may or may not have to write the header, or a 
+            // portion thereof. 
+            byte[] varHeader = storageIO.getVarHeader().getBytes();
+            int headerLength = varHeader.length;
+            if (offset >= headerLength) {
+                // We can skip the entire header. 
+                // All we need to do is adjust the byte offset 
+                // in the physical file; the number of bytes
+                // left to write stays unchanged, since we haven't
+                // written anything.
+                logger.fine("Skipping the variable header completely.");
+                offset -= headerLength;
+            } else {
+                // We need to write some portion of the header; 
+                // Once we are done, we may or may not still have 
+                // some bytes left to write from the main physical file.
+                int headerBytes = (int) Math.min(leftToRead, headerLength - offset);
+                logger.fine("Writing this many bytes of the variable header line: " + headerBytes);
+                outstream.write(varHeader, (int) offset, headerBytes);
+                // and adjust the file offset and remaining number of bytes accordingly: 
+                leftToRead -= headerBytes;
+                offset = 0;
+            }
+        }
+
+        if (leftToRead <= 0) {
+            // (we may have already written enough bytes from the variable header!)
+            return;
+        }
+
+        FileChannel localFileChannel = getLocalFileChannel(storageIO);
+        if (localFileChannel != null) {
+            transferFully(localFileChannel, offset, leftToRead, outstream);
+            return;
+        }
+
+        // The storage driver will only retrieve the bytes requested, where 
+        // the storage supports it (an S3 ranged GET, etc.), instead of 
+        // skipping through the file up to the offset.
+        int bufsize;
+        byte[] bffr = new byte[4 * 8192];
+        try (InputStream rangeStream = storageIO.openRange(offset, leftToRead)) {
+            // We'll count down as we write.
+            while ((bufsize = rangeStream.read(bffr)) != -1) {
+                if ((leftToRead -= bufsize) > 0) {
+                    // Just do a normal write. Potentially lots to go. Don't break.
+                    outstream.write(bffr, 0, bufsize);
+                } else {
+                    // Get those last bytes or bytes equal to bufsize. Last one. Then break.
+                    outstream.write(bffr, 0, (int) leftToRead + bufsize);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the FileChannel of the physical file, if this is a file on the
+     * local filesystem, that can be copied with FileChannel.transferTo();
+     * null otherwise
+     */
+    private static FileChannel getLocalFileChannel(StorageIO<?> storageIO) throws IOException {
+        if (storageIO instanceof FileAccessIO && storageIO.getChannel() instanceof FileChannel) {
+            FileChannel fileChannel = (FileChannel) storageIO.getChannel();
+            if (fileChannel.isOpen()) {
+                return fileChannel;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies count bytes of the file, starting at position, with 
+     * FileChannel.transferTo(); which leaves it to the JDK to copy the bytes
+     * the most efficient way the output allows (without the read loop and 
+     * the buffer of our own). 
+     */
+    private static void transferFully(FileChannel fileChannel, long position, long count, OutputStream outstream) throws IOException {
+        // (not closing this channel - that would close the output stream)
+        WritableByteChannel outChannel = Channels.newChannel(outstream);
+        while (count > 0) {
+            long transferred = fileChannel.transferTo(position, count, outChannel);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of file at byte " + position + " (" + count + " more bytes expected)");
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
     private boolean isAuxiliaryObjectCached(StorageIO storageIO, String auxiliaryTag) {
         try {
             return storageIO.isAuxObjectCached(auxiliaryTag);
@@ -754,19 +868,16 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
         if (range != null) {
             logger.fine("Range header supplied: " + range);
 
-            // Technically this regex supports multiple ranges.
-            // Below we have a check to enforce a single range.
+            // Multiple ranges are supported, and sent as a multipart/byteranges response.
             if (!range.matches("^bytes=\\d*-\\d*(,\\d*-\\d*)*$")) {
                 throw new RuntimeException("The format is bytes=<range-start>-<range-end> where start and end are optional.");
             }
 
             // The 6 is to remove "bytes="
             String[] parts = range.substring(6).split(",");
-            if (parts.length > 1) {
-                // Only allow a single range.
-                throw new RuntimeException("Only one range is allowed.");
+            if (parts.length > MAX_RANGES) {
+                throw new RuntimeException("No more than " + MAX_RANGES + " ranges are allowed.");
             }
-            // This loop is here in case we ever want to support multiple ranges.
             for (String part : parts) {
 
                 long start = getRangeStart(part);
@@ -790,6 +901,26 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                 ranges.add(new Range(start, end));
 
             }
+
+            if (ranges.size() > 1) {
+                // Multiple ranges are sent in ascending order, with the ranges
+                // that overlap or are adjacent coalesced into one (as RFC 7233
+                // allows); so that they can be read from the storage in one 
+                // pass, and no byte is sent twice. 
+                ranges.sort(Comparator.comparingLong(Range::getStart));
+                List<Range> coalesced = new ArrayList<>();
+                Range current = ranges.get(0);
+                for (Range next : ranges.subList(1, ranges.size())) {
+                    if (next.getStart() <= current.getEnd() + 1) {
+                        current = new Range(current.getStart(), Math.max(current.getEnd(), next.getEnd()));
+                    } else {
+                        coalesced.add(current);
+                        current = next;
+                    }
+                }
+                coalesced.add(current);
+                ranges = coalesced;
+            }
         }
 
         return ranges;
@@ -28,6 +28,7 @@ import edu.harvard.iq.dataverse.search.DvObjectSolrDoc;
 import edu.harvard.iq.dataverse.search.FacetCategory;
 import edu.harvard.iq.dataverse.search.FileView;
 import edu.harvard.iq.dataverse.search.IndexBatchServiceBean;
+import edu.harvard.iq.dataverse.search.IndexQueueServiceBean;
 import edu.harvard.iq.dataverse.search.IndexResponse;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.search.IndexUtil;
@@ -35,7 +36,9 @@ import edu.harvard.iq.dataverse.search.SearchException;
 import edu.harvard.iq.dataverse.search.SearchFields;
 import edu.harvard.iq.dataverse.search.SearchFilesServiceBean;
 import edu.harvard.iq.dataverse.search.SearchUtil;
+import edu.harvard.iq.dataverse.search.SolrClientService;
 import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.search.SortBy;
 import edu.harvard.iq.dataverse.util.ConstraintViolationUtil;
 import edu.harvard.iq.dataverse.util.json.NullSafeJsonBuilder;
@@ -58,6 +61,7 @@ import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.QueryParam;
@@ -96,6 +100,10 @@ public class Index extends AbstractApiBean {
     DatasetFieldServiceBean datasetFieldService;
     @EJB
     SearchFilesServiceBean searchFilesService;
+    @EJB
+    SolrClientService solrClientService;
+    @EJB
+    IndexQueueServiceBean indexQueueService;
 
     public static String contentChanged = "contentChanged";
     public static String contentIndexed = "contentIndexed";
@@ -103,18 +111,36 @@ public class Index extends AbstractApiBean {
     public static String permsIndexed = "permsIndexed";
 
     @GET
-    public Response indexAllOrSubset(@QueryParam("numPartitions") Long numPartitionsSelected, @QueryParam("partitionIdToProcess") Long partitionIdToProcess, @QueryParam("previewOnly") boolean previewOnly) {
-        return indexAllOrSubset(numPartitionsSelected, partitionIdToProcess, false, previewOnly);
+    public Response indexAllOrSubset(@QueryParam("numPartitions") Long numPartitionsSelected, @QueryParam("partitionIdToProcess") Long partitionIdToProcess, @QueryParam("previewOnly") boolean previewOnly, @QueryParam("threads") Integer threads) {
+        return indexAllOrSubset(numPartitionsSelected, partitionIdToProcess, false, previewOnly, threads);
     }
 
     @GET
     @Path("continue")
-    public Response indexAllOrSubsetContinue(@QueryParam("numPartitions") Long numPartitionsSelected, @QueryParam("partitionIdToProcess") Long partitionIdToProcess, @QueryParam("previewOnly") boolean previewOnly) {
-        return indexAllOrSubset(numPartitionsSelected, partitionIdToProcess, true, previewOnly);
+    public Response indexAllOrSubsetContinue(@QueryParam("numPartitions") Long numPartitionsSelected, @QueryParam("partitionIdToProcess") Long partitionIdToProcess, @QueryParam("previewOnly") boolean previewOnly, @QueryParam("threads") Integer threads) {
+        return indexAllOrSubset(numPartitionsSelected, partitionIdToProcess, true, previewOnly, threads);
     }
 
-    private Response indexAllOrSubset(Long numPartitionsSelected, Long partitionIdToProcess, boolean skipIndexed, boolean previewOnly) {
+    private Response indexAllOrSubset(Long numPartitionsSelected, Long partitionIdToProcess, boolean skipIndexed, boolean previewOnly, Integer threads) {
         try {
+            if (threads != null && !previewOnly) {
+                if (threads < 1) {
+                    return error(Status.BAD_REQUEST, "threads must be 1 or higher but was " + threads);
+                }
+                if (numPartitionsSelected != null || partitionIdToProcess != null) {
+                    return error(Status.BAD_REQUEST, "threads can't be combined with numPartitions or partitionIdToProcess; the threads share the whole workload.");
+                }
+                int maxThreads = JvmSettings.SOLR_REINDEX_MAX_THREADS.lookupOptional(Integer.class).orElse(8);
+                if (threads > maxThreads) {
+                    logger.info("Reindexing with " + maxThreads + " threads rather than the " + threads + " requested (dataverse.solr.reindex-max-threads)");
+                    threads = maxThreads;
+                }
+                JsonObjectBuilder progress = indexBatchService.indexAllInParallel(threads, skipIndexed);
+                if (progress == null) {
+                    return error(Status.CONFLICT, "A parallel reindex is already running, see /api/admin/index/status/reindex");
+                }
+                return ok(progress);
+            }
             long numPartitions = 1;
             if (numPartitionsSelected != null) {
                 if (numPartitionsSelected < 1) {
@@ -215,6 +241,31 @@ public class Index extends AbstractApiBean {
             return error(Status.INTERNAL_SERVER_ERROR, ex.getLocalizedMessage());
         }
     }
+
+    /**
+     * Reports the counters of the updates sent to Solr (documents added and
+     * deleted, batches, commits, failures) since the application started.
+     */
+    @GET
+    @Path("updates")
+    public Response getIndexUpdates() {
+        return ok(solrClientService.getUpdateCounters());
+    }
+
+    /**
+     * Sends the updates still waiting to be batched to Solr, and commits, so
+     * that everything indexed so far is searchable.
+     */
+    @POST
+    @Path("commit")
+    public Response commitIndexUpdates() {
+        try {
+            solrClientService.commit();
+            return ok("Index updates committed.");
+        } catch (SolrServerException | IOException ex) {
+            return error(Status.INTERNAL_SERVER_ERROR, ex.getLocalizedMessage());
+        }
+    }
     
     @GET
     @Path("{type}/{id}")
@@ -408,6 +459,46 @@ public class Index extends AbstractApiBean {
             return ok("Index Status Batch Job initiated, check log for job status.");
         }
     }
+    /**
+     * Reports the progress of the parallel reindex running (started with 
+     * the "threads" parameter), or of the last one run: the collections and
+     * datasets indexed and failed, the documents sent to Solr per second, and
+     * an estimate of the time remaining.
+     */
+    @GET
+    @Path("status/reindex")
+    public Response reindexStatus() {
+        JsonObjectBuilder progress = indexBatchService.getReindexProgress();
+        if (progress == null) {
+            return error(Status.NOT_FOUND, "No parallel reindex has been run.");
+        }
+        return ok(progress);
+    }
+
+    /**
+     * Stops the parallel reindex running, once the objects being indexed are
+     * done.
+     */
+    @DELETE
+    @Path("status/reindex")
+    public Response cancelReindex() {
+        if (!indexBatchService.cancelReindex()) {
+            return error(Status.NOT_FOUND, "No parallel reindex is running.");
+        }
+        return ok("The parallel reindex is being cancelled.");
+    }
+
+    /**
+     * Reports the state of the queue of the datasets to be indexed: how many
+     * are queued and being indexed, how long the oldest one has been waiting,
+     * and the workers of this server.
+     */
+    @GET
+    @Path("queue")
+    public Response indexQueueStatus() {
+        return ok(indexQueueService.getStatus());
+    }
+
      /**
      * Deletes "orphan" Solr documents (that don't match anything in the database).
      * @param sync - optional parameter, if set, then run the command 
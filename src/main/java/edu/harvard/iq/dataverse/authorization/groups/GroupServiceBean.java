@@ -18,6 +18,7 @@ import edu.harvard.iq.dataverse.authorization.groups.impl.shib.ShibGroupProvider
 import edu.harvard.iq.dataverse.authorization.groups.impl.shib.ShibGroupServiceBean;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -104,6 +105,49 @@ public class GroupServiceBean {
                               .flatMap(gp->(Stream<Group>)gp.groupsFor(req, dvo).stream())
                               .collect(toSet());
         
+        ret.addAll(explicitAncestorsOfNonExplicitGroups(ret));
+        
+        return ret;
+    }
+    
+    /**
+     * Finds all the groups {@code req} is part of in the context of each of
+     * {@code dvos}. The same as calling {@link #groupsFor(DataverseRequest, DvObject)}
+     * on each of the objects, but the memberships are only looked up once:
+     * only the {@link ExplicitGroup}s depend on the context (they are defined
+     * in a dataverse), and these are filtered in memory.
+     * 
+     * @param req The request whose group memberships we seek.
+     * @param dvos The {@link DvObject}s determining the contexts of the memberships.
+     * @return The groups {@code req} is part of, under each of {@code dvos}.
+     */
+    public Map<DvObject, Set<Group>> groupsFor( DataverseRequest req, Collection<? extends DvObject> dvos ) {
+        Set<Group> contextFree = new HashSet<>();
+        Set<ExplicitGroup> explicitGroups = new HashSet<>();
+        for (GroupProvider gp : groupProviders.values()) {
+            if (gp == explicitGroupProvider) {
+                // (all of them, in any context)
+                explicitGroups.addAll(explicitGroupProvider.groupsFor(req));
+            } else {
+                contextFree.addAll(gp.groupsFor(req));
+            }
+        }
+        contextFree.addAll(explicitAncestorsOfNonExplicitGroups(contextFree));
+        
+        Map<DvObject, Set<Group>> ret = new HashMap<>();
+        for (DvObject dvo : dvos) {
+            Set<Group> groups = new HashSet<>(contextFree);
+            for (ExplicitGroup explicitGroup : explicitGroups) {
+                if (explicitGroup.getOwner().isAncestorOf(dvo)) {
+                    groups.add(explicitGroup);
+                }
+            }
+            ret.put(dvo, groups);
+        }
+        return ret;
+    }
+    
+    private Set<ExplicitGroup> explicitAncestorsOfNonExplicitGroups(Set<Group> groups) {
         // ShibGroupProvider.groupsFor(), above, only returns the Shib Groups 
         // (as you would expect), but not the Explicit Groups that may include them 
         // (unlike the ExplicitGroupProvider, that returns all the ancestors too). 
@@ -112,7 +156,7 @@ public class GroupServiceBean {
         // order to obtain the ancestors for the shib groups as well:
         
         Set<ExplicitGroup> directAncestorsOfShibGroups = new HashSet<>();
-        for (Group group : ret) {
+        for (Group group : groups) {
 
             if (group instanceof ShibGroup 
                     || group instanceof IpGroup 
@@ -133,7 +177,7 @@ public class GroupServiceBean {
             Set<ExplicitGroup> allAncestorsOfShibGroups = explicitGroupService.findClosure(directAncestorsOfShibGroups);
             
             if (allAncestorsOfShibGroups != null) {
-                ret.addAll(allAncestorsOfShibGroups);
+                return allAncestorsOfShibGroups;
             }
         }
         
@@ -142,7 +186,7 @@ public class GroupServiceBean {
         // all the groups that are not ExplicitGroups, i.e., IP- and domain-based 
         // groups too. (??)
         
-        return ret;
+        return Collections.emptySet();
     }
     
     /**
@@ -1,6 +1,7 @@
 package edu.harvard.iq.dataverse.authorization.groups.impl.explicit;
 
 import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
 import edu.harvard.iq.dataverse.authorization.RoleAssignee;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
@@ -14,12 +15,14 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import static java.util.stream.Collectors.joining;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 
 /**
  * A bean providing the {@link ExplicitGroupProvider}s with container services,
@@ -37,6 +40,9 @@ public class ExplicitGroupServiceBean {
     
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     protected EntityManager em;
+    
+    @Resource
+    TransactionSynchronizationRegistry transactionSynchronizationRegistry;
 	
     ExplicitGroupProvider provider;
     
@@ -75,6 +81,7 @@ public class ExplicitGroupServiceBean {
     }
     
     public ExplicitGroup persist( ExplicitGroup g ) {
+        PermissionCache.invalidate(transactionSynchronizationRegistry);
         if ( g.getId() == null ) {
             em.persist( g );
             return g;
@@ -125,6 +132,7 @@ public class ExplicitGroupServiceBean {
     }
 
     public void removeGroup(ExplicitGroup explicitGroup) {
+        PermissionCache.invalidate(transactionSynchronizationRegistry);
         em.remove( explicitGroup );
     }
     
@@ -272,6 +280,7 @@ public class ExplicitGroupServiceBean {
      * @param assignee User or Group 
      */
     public void revokeAllGroupsForAssignee(RoleAssignee assignee) {
+        PermissionCache.invalidate(transactionSynchronizationRegistry);
         if (assignee instanceof AuthenticatedUser) {
             em.createNativeQuery("DELETE FROM explicitgroup_authenticateduser WHERE containedauthenticatedusers_id=" + ((AuthenticatedUser) assignee).getId()).executeUpdate();
         } else if (assignee instanceof ExplicitGroup) {
@@ -1,21 +1,28 @@
 package edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress;
 
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
 import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv4Address;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv4Range;
 import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv6Address;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv6Range;
 import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 
 /**
  * Provides CRUD tools to efficiently manage IP groups in a Java EE container.
@@ -37,12 +44,24 @@ public class IpGroupsServiceBean {
     @EJB
     RoleAssigneeServiceBean roleAssigneeSvc;
     
+    @Resource
+    TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+    
+    private static final long indexMaxAgeMs = 1000L * JvmSettings.PERMISSION_CACHE_MAXAGE.lookupOptional(Integer.class).orElse(60);
+    
+    // The ranges of all the groups, shared by all the instances of the bean:
+    private static volatile IpRangeIndex index = null;
+    // when to rebuild it:
+    private static volatile long indexExpiry = 0L;
+    
     /**
      * Stores (inserts/updates) the passed IP group.
      * @param grp The group to store.
      * @return Managed version of the group. The provider might be un-set.
      */
     public IpGroup store( IpGroup grp ) {
+        PermissionCache.invalidate(transactionSynchronizationRegistry);
+        rangesChanged();
         ActionLogRecord alr = new ActionLogRecord(ActionLogRecord.ActionType.GlobalGroups, "ipCreate");
         if ( grp.getGroupProvider() != null ) {
             alr.setInfo( grp.getIdentifier());
@@ -97,7 +116,32 @@ public class IpGroupsServiceBean {
         return em.createNamedQuery("IpGroup.findAll", IpGroup.class).getResultList();
     }
     
+    /**
+     * Finds the groups with a range that includes the address. The ranges are
+     * looked up in an in-memory index of all of them (see {@link IpRangeIndex}),
+     * rebuilt when the groups are changed through this bean; and, for the
+     * changes made through the other application servers, when it is older
+     * than the maximum age of the cached permissions (see {@code dataverse.auth.permission-cache.max-age}).
+     * If that is {@code 0}, the ranges are queried in the database every time.
+     * 
+     * @param ipa the address
+     * @return the groups of the address
+     */
     public Set<IpGroup> findAllIncludingIp( IpAddress ipa ) {
+        if ( indexMaxAgeMs <= 0 ) {
+            return findAllIncludingIpInDatabase(ipa);
+        }
+        Set<IpGroup> groups = new HashSet<>();
+        for ( long groupId : getIndex().findGroupIdsIncluding(ipa) ) {
+            IpGroup group = em.find(IpGroup.class, groupId);
+            if ( group != null ) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+    
+    private Set<IpGroup> findAllIncludingIpInDatabase( IpAddress ipa ) {
         if ( ipa instanceof IPv4Address ) {
             IPv4Address ip4 = (IPv4Address) ipa;
             List<IpGroup> groupList = em.createNamedQuery("IPv4Range.findGroupsContainingAddressAsLong", IpGroup.class)
@@ -120,6 +164,46 @@ public class IpGroupsServiceBean {
         }
     }
     
+    /**
+     * @return the index of the ranges, rebuilt first if it has been
+     *         invalidated, or is too old
+     */
+    private IpRangeIndex getIndex() {
+        IpRangeIndex current = index;
+        long now = System.currentTimeMillis();
+        if ( current != null && now < indexExpiry ) {
+            return current;
+        }
+        // (the expiry is set first: an invalidation while the ranges are
+        // read gets the index rebuilt again on the next lookup)
+        indexExpiry = now + indexMaxAgeMs;
+        current = new IpRangeIndex(
+                em.createQuery("SELECT r FROM IPv4Range r", IPv4Range.class).getResultList(),
+                em.createQuery("SELECT r FROM IPv6Range r", IPv6Range.class).getResultList());
+        index = current;
+        logger.fine("Rebuilt the index of the IP group ranges");
+        return current;
+    }
+    
+    /**
+     * Has the index of the ranges rebuilt on the next lookup; and again once
+     * the transaction making the changes is over, as it may have been rebuilt
+     * before they were committed (or rolled back).
+     */
+    private void rangesChanged() {
+        indexExpiry = 0L;
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                indexExpiry = 0L;
+            }
+        });
+    }
+    
     /**
      * Deletes the group - if it has no assignments.
      * @param grp the group to be deleted
@@ -127,6 +211,8 @@ public class IpGroupsServiceBean {
      * @see RoleAssigneeServiceBean#getAssignmentsFor(java.lang.String) 
      */
     public void deleteGroup( IpGroup grp ) {
+        PermissionCache.invalidate(transactionSynchronizationRegistry);
+        rangesChanged();
         ActionLogRecord alr = new ActionLogRecord(ActionLogRecord.ActionType.GlobalGroups, "ipDelete");
         alr.setInfo( grp.getIdentifier() );
         if ( roleAssigneeSvc.getAssignmentsFor(grp.getIdentifier()).isEmpty() ) {
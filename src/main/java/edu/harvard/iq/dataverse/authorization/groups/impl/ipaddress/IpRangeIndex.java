@@ -0,0 +1,165 @@
+package edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress;
+
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv4Address;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv4Range;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv6Address;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv6Range;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An immutable, in-memory index of the address ranges of all the IP groups
+ * (see {@link IpGroupsServiceBean#findAllIncludingIp(IpAddress)}), so that
+ * the groups of a request can be found without a database query.
+ *
+ * The ranges cut the address space into segments, in each of which an address
+ * is in the same groups; the index is the sorted array of the starts of the
+ * segments, and the ids of the groups of each. A lookup is a binary search.
+ * The addresses are handled as 128-bit unsigned numbers (two {@code long}s);
+ * the IPv4 ones in an index of their own.
+ */
+final class IpRangeIndex {
+
+    private final Segments ipv4;
+    private final Segments ipv6;
+
+    IpRangeIndex(Collection<IPv4Range> ipv4Ranges, Collection<IPv6Range> ipv6Ranges) {
+        List<long[]> ranges = new ArrayList<>(ipv4Ranges.size());
+        for (IPv4Range range : ipv4Ranges) {
+            ranges.add(new long[]{0L, range.getBottomAsLong().longValue(), 0L, range.getTopAsLong().longValue(), range.getOwner().getId()});
+        }
+        ipv4 = new Segments(ranges);
+
+        ranges = new ArrayList<>(ipv6Ranges.size());
+        for (IPv6Range range : ipv6Ranges) {
+            IPv6Address bottom = range.getBottom();
+            IPv6Address top = range.getTop();
+            ranges.add(new long[]{high(bottom), low(bottom), high(top), low(top), range.getOwner().getId()});
+        }
+        ipv6 = new Segments(ranges);
+    }
+
+    /**
+     * @param ipa the address
+     * @return the ids of the groups with a range that includes the address
+     */
+    long[] findGroupIdsIncluding(IpAddress ipa) {
+        if (ipa instanceof IPv4Address) {
+            return ipv4.find(0L, ((IPv4Address) ipa).toBigInteger().longValue());
+        } else if (ipa instanceof IPv6Address) {
+            IPv6Address ip6 = (IPv6Address) ipa;
+            return ipv6.find(high(ip6), low(ip6));
+        } else {
+            throw new IllegalArgumentException("Unknown IpAddress type: " + ipa.getClass() + " (for IpAddress:" + ipa + ")");
+        }
+    }
+
+    private static long high(IPv6Address ip6) {
+        return word(ip6, 0) << 48 | word(ip6, 1) << 32 | word(ip6, 2) << 16 | word(ip6, 3);
+    }
+
+    private static long low(IPv6Address ip6) {
+        return word(ip6, 4) << 48 | word(ip6, 5) << 32 | word(ip6, 6) << 16 | word(ip6, 7);
+    }
+
+    private static long word(IPv6Address ip6, int idx) {
+        return ip6.get(idx) & 0xffffL;
+    }
+
+    private static int compare(long high1, long low1, long high2, long low2) {
+        int cmp = Long.compareUnsigned(high1, high2);
+        return cmp != 0 ? cmp : Long.compareUnsigned(low1, low2);
+    }
+
+    /**
+     * The segments of one of the address spaces.
+     */
+    private static final class Segments {
+
+        private static final long[] NO_GROUPS = new long[0];
+
+        // the (sorted) starts of the segments:
+        private final long[] highs;
+        private final long[] lows;
+        // the ids of the groups of each segment:
+        private final long[][] groupIds;
+
+        /**
+         * @param ranges the ranges, as {bottom (high, low), top (high, low), group id}
+         */
+        Segments(List<long[]> ranges) {
+            // The starts: the bottoms, and the addresses right after the tops
+            Set<long[]> starts = new TreeSet<>((a, b) -> compare(a[0], a[1], b[0], b[1]));
+            for (long[] range : ranges) {
+                starts.add(new long[]{range[0], range[1]});
+                if (range[3] != -1L) {
+                    starts.add(new long[]{range[2], range[3] + 1});
+                } else if (range[2] != -1L) {
+                    starts.add(new long[]{range[2] + 1, 0L});
+                }
+                // (else the range goes to the end of the address space)
+            }
+            int n = starts.size();
+            highs = new long[n];
+            lows = new long[n];
+            int i = 0;
+            for (long[] start : starts) {
+                highs[i] = start[0];
+                lows[i] = start[1];
+                i++;
+            }
+
+            List<Set<Long>> segmentGroups = new ArrayList<>(n);
+            for (i = 0; i < n; i++) {
+                segmentGroups.add(new TreeSet<>());
+            }
+            for (long[] range : ranges) {
+                // (the segments of the range: from the one of its bottom, up
+                // to the one of its top)
+                int first = indexOf(range[0], range[1]);
+                int last = indexOf(range[2], range[3]);
+                for (i = first; i <= last; i++) {
+                    segmentGroups.get(i).add(range[4]);
+                }
+            }
+            groupIds = new long[n][];
+            for (i = 0; i < n; i++) {
+                Set<Long> ids = segmentGroups.get(i);
+                if (ids.isEmpty()) {
+                    groupIds[i] = NO_GROUPS;
+                } else {
+                    groupIds[i] = ids.stream().mapToLong(Long::longValue).toArray();
+                }
+            }
+        }
+
+        /**
+         * @return the index of the segment of the address, or -1 if it is
+         *         before all the segments
+         */
+        private int indexOf(long high, long low) {
+            int lo = 0;
+            int hi = highs.length - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(highs[mid], lows[mid], high, low) <= 0) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        long[] find(long high, long low) {
+            int i = indexOf(high, low);
+            return i < 0 ? NO_GROUPS : groupIds[i].clone();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package edu.harvard.iq.dataverse.authorization.groups.impl.maildomain;
 
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
@@ -10,12 +11,14 @@ import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
 import jakarta.ejb.*;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 import jakarta.ws.rs.NotFoundException;
 
 /**
@@ -33,6 +36,9 @@ public class MailDomainGroupServiceBean {
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     protected EntityManager em;
     
+    @Resource
+    TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+    
     @Inject
     ConfirmEmailServiceBean confirmEmailSvc;
     @Inject
@@ -62,6 +68,7 @@ public class MailDomainGroupServiceBean {
                 mg -> mg,
                 mg -> Pattern.compile(mg.getEmailDomains().replace(";","|"))
             ));
+        PermissionCache.invalidate(transactionSynchronizationRegistry);
     }
     
     @Lock(LockType.READ)
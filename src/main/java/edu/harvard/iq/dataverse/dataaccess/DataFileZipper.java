@@ -25,11 +25,18 @@ import java.io.IOException;
 
 import edu.harvard.iq.dataverse.DataFile;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -52,6 +59,69 @@ public class DataFileZipper {
     private String fileManifest = "";
     
     private Set<String> zippedFolders = null; 
+    
+    // Files queued for the zip stream, being fetched in the background 
+    // (no more than prefetchSize of them at a time): 
+    private final Deque<PendingFile> pendingFiles = new ArrayDeque<>();
+    private int prefetchSize = 0;
+    // shared; not shut down here: 
+    private ExecutorService prefetchExecutor = null;
+    
+    // the bytes written into the zip stream so far:
+    private long bytesWritten = 0L;
+    
+    /**
+     * How much of each file is read ahead. (The files that fit are read in 
+     * their entirety.)
+     */
+    static final int PREFETCH_BUFFER_SIZE = 1024 * 1024;
+    
+    private static final Set<String> COMPRESSED_CONTENT_TYPES = Set.of(
+            "application/zip",
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/vnd.rar",
+            "application/zstd",
+            "application/java-archive",
+            "image/jpeg",
+            "image/png",
+            "image/gif",
+            "image/webp",
+            "audio/mpeg",
+            "audio/mp4",
+            "audio/ogg",
+            "audio/aac",
+            "audio/flac");
+    
+    private static class PendingFile {
+        final DataFile dataFile;
+        final long expectedSize;
+        // opened in the request thread: 
+        final StorageIO<DataFile> accessObject;
+        final Future<FetchedFile> fetchedFile;
+
+        PendingFile(DataFile dataFile, long expectedSize, StorageIO<DataFile> accessObject, Future<FetchedFile> fetchedFile) {
+            this.dataFile = dataFile;
+            this.expectedSize = expectedSize;
+            this.accessObject = accessObject;
+            this.fetchedFile = fetchedFile;
+        }
+    }
+    
+    private static class FetchedFile {
+        final StorageIO<DataFile> accessObject;
+        InputStream instream = null;
+        // the first PREFETCH_BUFFER_SIZE bytes of the file, or all of it: 
+        byte[] buffer = null;
+
+        FetchedFile(StorageIO<DataFile> accessObject) {
+            this.accessObject = accessObject;
+        }
+    }
 
     public DataFileZipper() {
         fileNameList = new ArrayList<>();
@@ -97,47 +167,161 @@ public class DataFileZipper {
         if (zipOutputStream == null) {
             openZipStream();
         }
+        // write out the files queued for the zip stream before this one, if any:
+        while (!pendingFiles.isEmpty()) {
+            writePendingFile();
+        }
+        
+        DataAccessRequest daReq = new DataAccessRequest();
+        StorageIO<DataFile> accessObject = DataAccess.getStorageIO(dataFile, daReq);
 
-        boolean createManifest = fileManifest != null;
+        if (accessObject != null) {
+            return writeFile(dataFile, fetchFile(openFile(accessObject, getOriginal)));
+        }
+        return 0L;
+    }
+    
+    /**
+     * Adds the file to the zip stream, like addFileToZipStream(), except 
+     * that, if prefetching is enabled (see setPrefetching()), the file is 
+     * opened and its first bytes are read in the background, while the files
+     * queued before it are being written to the zip stream. The files are 
+     * written in the order they were queued; finalizeZipStream() writes the 
+     * ones still in the queue. 
+     * 
+     * @param expectedSize the size of the file (or of the saved original), 
+     *        counted in getBundleSize() until the file is written
+     */
+    public void queueFileForZipStream(DataFile dataFile, boolean getOriginal, long expectedSize) throws IOException {
+        if (prefetchSize < 1 || prefetchExecutor == null) {
+            addFileToZipStream(dataFile, getOriginal);
+            return;
+        }
+        if (zipOutputStream == null) {
+            openZipStream();
+        }
         
         DataAccessRequest daReq = new DataAccessRequest();
         StorageIO<DataFile> accessObject = DataAccess.getStorageIO(dataFile, daReq);
 
         if (accessObject != null) {
-            Boolean gotOriginal = false;
-            if(getOriginal) {
-                StoredOriginalFile sof = new StoredOriginalFile();
-                StorageIO<DataFile> tempAccessObject = sof.retreive(accessObject);
-                if(null != tempAccessObject) { //If there is an original, use it
-                    gotOriginal = true;
-                    accessObject = tempAccessObject; 
-                } 
+            // The storage drivers look up the file metadata (and, for the 
+            // tabular files, the variables) when the file is opened; so it is
+            // opened here, in the request thread. Only the reading of the 
+            // stream, which involves no database entities, is left to the 
+            // prefetching thread:
+            StorageIO<DataFile> openedAccessObject = openFile(accessObject, getOriginal);
+            pendingFiles.add(new PendingFile(dataFile, expectedSize, openedAccessObject, prefetchExecutor.submit(() -> fetchFile(openedAccessObject))));
+            
+            while (pendingFiles.size() > prefetchSize) {
+                writePendingFile();
             }
-            if(!gotOriginal) { //if we didn't get this from sof.retreive we have to open it
-                accessObject.open();
+        }
+    }
+    
+    /**
+     * @param executor where the files are read ahead; shared with the other
+     * downloads (such as the ManagedExecutorService of the container), and 
+     * not shut down here
+     * @param prefetchSize the number of files to open and start reading ahead
+     * of the one being written into the zip stream, when the files are added
+     * with queueFileForZipStream(); i.e., the most files of this zip stream 
+     * being read on the executor at a time. With 0 (the default), every file
+     * is opened when its turn comes. 
+     */
+    public void setPrefetching(ExecutorService executor, int prefetchSize) {
+        this.prefetchExecutor = executor;
+        this.prefetchSize = prefetchSize;
+    }
+    
+    private void writePendingFile() throws IOException {
+        PendingFile pendingFile = pendingFiles.poll();
+        FetchedFile fetchedFile;
+        try {
+            fetchedFile = pendingFile.fetchedFile.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching file " + pendingFile.dataFile.getId(), ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
             }
-
-            long byteSize = 0;
-
-            String fileName = accessObject.getFileName();
-            String mimeType = accessObject.getMimeType();
-            if (mimeType == null || mimeType.equals("")) {
-                mimeType = "application/octet-stream";
+            throw new IOException("Failed to fetch file " + pendingFile.dataFile.getId(), ee.getCause());
+        }
+        writeFile(pendingFile.dataFile, fetchedFile);
+    }
+    
+    /**
+     * @return the bytes written into the zip stream so far, plus the expected
+     * sizes of the files queued, but not written yet
+     */
+    public long getBundleSize() {
+        long bundleSize = bytesWritten;
+        for (PendingFile pendingFile : pendingFiles) {
+            bundleSize += pendingFile.expectedSize;
+        }
+        return bundleSize;
+    }
+    
+    /**
+     * Opens the file (or its saved original).
+     */
+    private static StorageIO<DataFile> openFile(StorageIO<DataFile> accessObject, boolean getOriginal) throws IOException {
+        Boolean gotOriginal = false;
+        if(getOriginal) {
+            StoredOriginalFile sof = new StoredOriginalFile();
+            StorageIO<DataFile> tempAccessObject = sof.retreive(accessObject);
+            if(null != tempAccessObject) { //If there is an original, use it
+                gotOriginal = true;
+                accessObject = tempAccessObject; 
+            } 
+        }
+        if(!gotOriginal) { //if we didn't get this from sof.retreive we have to open it
+            accessObject.open();
+        }
+        return accessObject;
+    }
+    
+    /**
+     * Reads up to PREFETCH_BUFFER_SIZE bytes of the opened file; so that the 
+     * latency of the storage (before the first byte) is out of the way when 
+     * the file is written. 
+     */
+    private static FetchedFile fetchFile(StorageIO<DataFile> accessObject) throws IOException {
+        FetchedFile fetchedFile = new FetchedFile(accessObject);
+        fetchedFile.instream = accessObject.getInputStream();
+        if (fetchedFile.instream != null) {
+            try {
+                fetchedFile.buffer = fetchedFile.instream.readNBytes(PREFETCH_BUFFER_SIZE);
+            } catch (IOException ioex) {
+                fetchedFile.instream.close();
+                throw ioex;
             }
+        }
+        return fetchedFile;
+    }
+    
+    private long writeFile(DataFile dataFile, FetchedFile fetchedFile) throws IOException {
+        boolean createManifest = fileManifest != null;
+        StorageIO<DataFile> accessObject = fetchedFile.accessObject;
 
-            //if (sizeTotal + fileSize < sizeLimit) {
-            Boolean Success = true;
+        long byteSize = 0;
 
-            InputStream instream = accessObject.getInputStream();
-            if (instream == null) {
-                if (createManifest) {
-                    addToManifest(fileName
-                            + " (" + mimeType
-                            + ") COULD NOT be downloaded because an I/O error has occured. \r\n");
-                }
+        String fileName = accessObject.getFileName();
+        String mimeType = accessObject.getMimeType();
+        if (mimeType == null || mimeType.equals("")) {
+            mimeType = "application/octet-stream";
+        }
 
-                Success = false;
-            } else {
+        InputStream instream = fetchedFile.instream;
+        if (instream == null) {
+            if (createManifest) {
+                addToManifest(fileName
+                        + " (" + mimeType
+                        + ") COULD NOT be downloaded because an I/O error has occured. \r\n");
+            }
+        } else {
+            try {
                 // If any of the files have non-empty DirectoryLabels we'll 
                 // use them to re-create the folders in the Zipped bundle:
                 String folderName = dataFile.getFileMetadata().getDirectoryLabel(); 
@@ -158,36 +342,55 @@ public class DataFileZipper {
                         fileName = folderName + "/" + fileName;
                     }
                 }
-                
+
                 String zipEntryName = checkZipEntryName(fileName);
-                
+
                 ZipEntry e = new ZipEntry(zipEntryName);
                 logger.fine("created new zip entry for " + zipEntryName);
 
-                zipOutputStream.putNextEntry(e);
-
-                // before writing out any bytes from the input stream, flush
+                // before writing out any bytes from the input stream, write
                 // any extra content, such as the variable header for the 
                 // subsettable files:
                 String varHeaderLine = accessObject.getVarHeader();
-                if (varHeaderLine != null) {
-                    zipOutputStream.write(varHeaderLine.getBytes());
-                    byteSize += (varHeaderLine.getBytes().length);
+                byte[] varHeader = varHeaderLine != null ? varHeaderLine.getBytes() : new byte[0];
+                byte[] buffer = fetchedFile.buffer;
+
+                // There is no point in deflating content that is compressed
+                // already (zip, gzip, jpeg, etc.). If the entire file has been
+                // read into the buffer, it is stored as is; otherwise it is 
+                // "deflated" without compression (the size and CRC of a stored
+                // entry have to be known before it is written).
+                boolean compressedContent = isCompressedContent(mimeType);
+                if (compressedContent && buffer.length < PREFETCH_BUFFER_SIZE) {
+                    CRC32 crc = new CRC32();
+                    crc.update(varHeader);
+                    crc.update(buffer);
+                    e.setMethod(ZipEntry.STORED);
+                    e.setSize(varHeader.length + buffer.length);
+                    e.setCompressedSize(varHeader.length + buffer.length);
+                    e.setCrc(crc.getValue());
+                } else {
+                    zipOutputStream.setLevel(compressedContent ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
                 }
 
-                byte[] data = new byte[8192];
+                zipOutputStream.putNextEntry(e);
+
+                zipOutputStream.write(varHeader);
+                byteSize += varHeader.length;
+                zipOutputStream.write(buffer);
+                byteSize += buffer.length;
 
-                int i = 0;
-                while ((i = instream.read(data)) > 0) {
-                    zipOutputStream.write(data, 0, i);
-                    logger.fine("wrote " + i + " bytes;");
+                if (buffer.length == PREFETCH_BUFFER_SIZE) {
+                    byte[] data = new byte[4 * 8192];
 
-                    byteSize += i;
-                    zipOutputStream.flush();
+                    int i = 0;
+                    while ((i = instream.read(data)) > 0) {
+                        zipOutputStream.write(data, 0, i);
+                        byteSize += i;
+                    }
                 }
-                instream.close();
                 zipOutputStream.closeEntry();
-                logger.fine("closed zip entry for " + zipEntryName);
+                logger.fine("closed zip entry for " + zipEntryName + ", " + byteSize + " bytes");
 
                 if (createManifest) {
                     addToManifest(zipEntryName + " (" + mimeType + ") " + byteSize + " bytes.\r\n");
@@ -196,13 +399,53 @@ public class DataFileZipper {
                 if (byteSize > 0) {
                     zippedFilesList.add(dataFile.getId());
                 }
+            } finally {
+                instream.close();
+                bytesWritten += byteSize;
             }
-            //} else if (createManifest) {
-            //    addToManifest(fileName + " (" + mimeType + ") " + " skipped because the total size of the download bundle exceeded the limit of " + sizeLimit + " bytes.\r\n");
-            //}
-            return byteSize;
         }
-        return 0L;
+        return byteSize;
+    }
+    
+    /**
+     * @return true for the content types that are compressed already, and 
+     * would not be made any smaller by deflating them. 
+     */
+    static boolean isCompressedContent(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        // (ignoring any parameters, such as "; charset=...")
+        String type = mimeType.split(";")[0].trim().toLowerCase();
+        return COMPRESSED_CONTENT_TYPES.contains(type)
+                || type.startsWith("video/")
+                || type.startsWith("application/vnd.openxmlformats-officedocument.")
+                || type.startsWith("application/vnd.oasis.opendocument.");
+    }
+    
+    /**
+     * Stops fetching the files still queued, if any, and closes the streams
+     * opened for them; for when the zip stream is abandoned before 
+     * finalizeZipStream() is called.
+     */
+    public void cancelPrefetching() {
+        for (PendingFile pendingFile : pendingFiles) {
+            pendingFile.fetchedFile.cancel(true);
+            if (pendingFile.fetchedFile.isDone() && !pendingFile.fetchedFile.isCancelled()) {
+                try {
+                    FetchedFile fetchedFile = pendingFile.fetchedFile.get();
+                    if (fetchedFile.instream != null) {
+                        fetchedFile.instream.close();
+                    }
+                } catch (InterruptedException | ExecutionException | IOException ex) {
+                    // we really don't care.
+                }
+            }
+            // (some drivers open the stream when the file is opened, before
+            // it is fetched)
+            pendingFile.accessObject.closeInputStream();
+        }
+        pendingFiles.clear();
     }
     
     public void finalizeZipStream() throws IOException {
@@ -212,7 +455,16 @@ public class DataFileZipper {
             openZipStream();
         }
         
+        try {
+            while (!pendingFiles.isEmpty()) {
+                writePendingFile();
+            }
+        } finally {
+            cancelPrefetching();
+        }
+        
         if (createManifest) {
+            zipOutputStream.setLevel(Deflater.DEFAULT_COMPRESSION);
             String manifestEntry = MANIFEST_FILE_NAME; 
             while (fileNameList.contains(manifestEntry)) {
                 manifestEntry = "0".concat(manifestEntry); 
@@ -0,0 +1,173 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads delimited (tab-delimited, by default) data line by line, straight
+ * from the bytes, locating the field boundaries within each line without
+ * creating any objects per line or per field. Used for subsetting tabular
+ * data files, where only a few of the fields of every line are needed.
+ *
+ * Lines are terminated by '\n' (the last line of the file may or may not be);
+ * like with a {@link java.util.Scanner} delimited by "\n", an empty last
+ * line is not reported as a line.
+ *
+ * A line must fit in the buffer, which grows as needed.
+ */
+class DelimitedLineReader {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel in;
+    private final byte delimiter;
+    private final int maxFields;
+
+    private ByteBuffer buffer;
+    private boolean endOfInput = false;
+
+    // the current line:
+    private int lineStart = 0;
+    private int lineEnd = 0;
+    // the position where the next line starts:
+    private int nextLineStart = 0;
+    private int fieldCount = 0;
+    // start offsets of the fields found; the end of field i is
+    // fieldStarts[i + 1] - 1 (or the end of the line for the last field)
+    private final int[] fieldStarts;
+
+    /**
+     * @param in the data
+     * @param delimiter the field delimiter
+     * @param maxFields the number of the fields needed from each line; the
+     *        remainder of the line beyond these fields is not examined.
+     */
+    DelimitedLineReader(ReadableByteChannel in, byte delimiter, int maxFields) {
+        this.in = in;
+        this.delimiter = delimiter;
+        this.maxFields = maxFields;
+        this.fieldStarts = new int[maxFields + 1];
+        this.buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+        this.buffer.limit(0);
+    }
+
+    /**
+     * Advances to the next line.
+     *
+     * @return false if there are no more lines
+     */
+    boolean nextLine() throws IOException {
+        int searchFrom = nextLineStart;
+
+        while (true) {
+            byte[] bytes = buffer.array();
+            int limit = buffer.limit();
+            for (int i = searchFrom; i < limit; i++) {
+                if (bytes[i] == '\n') {
+                    setLine(nextLineStart, i);
+                    nextLineStart = i + 1;
+                    return true;
+                }
+            }
+
+            if (endOfInput) {
+                if (nextLineStart < limit) {
+                    setLine(nextLineStart, limit);
+                    nextLineStart = limit;
+                    return true;
+                }
+                return false;
+            }
+
+            // No complete line in the buffer; move the partial line to the
+            // beginning of the buffer (growing it, if it's full already),
+            // and read some more data:
+            int partialLength = limit - nextLineStart;
+            searchFrom = partialLength;
+            if (nextLineStart == 0 && limit == buffer.capacity()) {
+                buffer = ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length * 2));
+            } else {
+                System.arraycopy(bytes, nextLineStart, bytes, 0, partialLength);
+            }
+            nextLineStart = 0;
+            buffer.limit(buffer.capacity());
+            buffer.position(partialLength);
+
+            int read = 0;
+            while (read == 0) {
+                read = in.read(buffer);
+            }
+            if (read < 0) {
+                endOfInput = true;
+            }
+            buffer.limit(buffer.position());
+        }
+    }
+
+    private void setLine(int start, int end) {
+        lineStart = start;
+        lineEnd = end;
+
+        byte[] bytes = buffer.array();
+        fieldCount = 1;
+        fieldStarts[0] = start;
+        for (int i = start; i < end && fieldCount < maxFields; i++) {
+            if (bytes[i] == delimiter) {
+                fieldStarts[fieldCount++] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * @return the number of fields found in the current line, up to maxFields
+     */
+    int getFieldCount() {
+        return fieldCount;
+    }
+
+    boolean isLineEmpty() {
+        return lineStart == lineEnd;
+    }
+
+    private int fieldEnd(int field) {
+        if (field + 1 < fieldCount) {
+            return fieldStarts[field + 1] - 1;
+        }
+        // The last field found runs until the next delimiter, or the end
+        // of the line:
+        byte[] bytes = buffer.array();
+        for (int i = fieldStarts[field]; i < lineEnd; i++) {
+            if (bytes[i] == delimiter) {
+                return i;
+            }
+        }
+        return lineEnd;
+    }
+
+    private void checkField(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new IndexOutOfBoundsException("Line has no field " + field + " (" + fieldCount + " fields found)");
+        }
+    }
+
+    /**
+     * Copies the bytes of the field of the current line to the output.
+     */
+    void writeField(int field, OutputStream out) throws IOException {
+        checkField(field);
+        out.write(buffer.array(), fieldStarts[field], fieldEnd(field) - fieldStarts[field]);
+    }
+
+    String getField(int field, Charset charset) {
+        checkField(field);
+        return new String(buffer.array(), fieldStarts[field], fieldEnd(field) - fieldStarts[field], charset);
+    }
+
+    String getLine(Charset charset) {
+        return new String(buffer.array(), lineStart, lineEnd - lineStart, charset);
+    }
+}
@@ -45,10 +45,13 @@ import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import java.io.FileNotFoundException;
 import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 
+import org.apache.commons.io.input.BoundedInputStream;
+
 
 public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
 
@@ -240,6 +243,22 @@ public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
         setSize(outputFile.length());
     }
     
+    /**
+     * Positions the channel of the open file at the offset, instead of 
+     * reading through the file up to it (so the ranges can be read in any
+     * order).
+     */
+    @Override
+    public InputStream openRange(long offset, long length) throws IOException {
+        if (getChannel() instanceof FileChannel && getInputStream() != null) {
+            ((FileChannel) getChannel()).position(offset);
+            BoundedInputStream rangeStream = new BoundedInputStream(getInputStream(), length);
+            rangeStream.setPropagateClose(false);
+            return rangeStream;
+        }
+        return super.openRange(offset, length);
+    }
+
     @Override
     public Channel openAuxChannel(String auxItemTag, DataAccessOption... options) throws IOException {
       
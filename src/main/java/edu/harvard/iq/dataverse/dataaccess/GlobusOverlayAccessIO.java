@@ -245,6 +245,15 @@ public class GlobusOverlayAccessIO<T extends DvObject> extends AbstractRemoteOve
             throw new IOException("Not implemented");
         }
     }
+
+    @Override
+    public InputStream openRange(long offset, long length) throws IOException {
+        if(!AbstractRemoteOverlayAccessIO.isNotDataverseAccessible(endpoint)) {
+            return baseStore.openRange(offset, length);
+        } else {
+            throw new IOException("Not implemented");
+        }
+    }
     
     @Override
     public void delete() throws IOException {
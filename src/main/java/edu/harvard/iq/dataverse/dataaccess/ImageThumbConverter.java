@@ -24,17 +24,26 @@ import java.io.InputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
 import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 
 import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.ByteArrayOutputStream;
@@ -68,8 +77,31 @@ public class ImageThumbConverter {
     public static int DEFAULT_DATASETLOGO_SIZE = 140;
     public static int DEFAULT_PREVIEW_SIZE = 400;
 
+    // the sizes generated ahead of time (see generateThumbnails()):
+    private static final int[] STANDARD_SIZES = {DEFAULT_PREVIEW_SIZE, DEFAULT_THUMBNAIL_SIZE, DEFAULT_CARDIMAGE_SIZE};
+    // how many images may be decoded at once (see 
+    // dataverse.dataAccess.thumbnail.image.limit for the size of each):
+    private static volatile Semaphore imageDecodingPermits;
+    // how long to wait for one, before giving up (and showing the default 
+    // icon instead):
+    static final long IMAGE_DECODING_WAIT_MS = 5000L;
+
     private static final Logger logger = Logger.getLogger(ImageThumbConverter.class.getCanonicalName());
 
+    /**
+     * Whether the thumbnail of a file is available. BUSY means it could not 
+     * be generated because too many images were being decoded at once; 
+     * unlike UNAVAILABLE, that says nothing about the file, and it may well 
+     * be generated on the next try.
+     */
+    public enum ThumbnailStatus {
+        AVAILABLE, UNAVAILABLE, BUSY
+    }
+
+    // (no image decoding permit could be had in time)
+    private static class ImageDecodingBusyException extends Exception {
+    }
+
     public ImageThumbConverter() {
     }
 
@@ -78,18 +110,33 @@ public class ImageThumbConverter {
     }
 
     public static boolean isThumbnailAvailable(DataFile file, int size) {
+        return getThumbnailStatus(file, size) == ThumbnailStatus.AVAILABLE;
+    }
+
+    public static ThumbnailStatus getThumbnailStatus(DataFile file) {
+        return getThumbnailStatus(file, DEFAULT_THUMBNAIL_SIZE);
+    }
+
+    /**
+     * Like isThumbnailAvailable(), for the callers that record the outcome 
+     * (see DataFile#isPreviewImageFail()), and must not record a failure 
+     * when the thumbnail was only not generated for being too busy.
+     */
+    public static ThumbnailStatus getThumbnailStatus(DataFile file, int size) {
 
         try {
 
             StorageIO<DataFile> storageIO = file.getStorageIO();
-            return isThumbnailAvailable(storageIO, size);
+            return isThumbnailAvailable(storageIO, size) ? ThumbnailStatus.AVAILABLE : ThumbnailStatus.UNAVAILABLE;
         } catch (IOException ioEx) {
-            return false;
+            return ThumbnailStatus.UNAVAILABLE;
+        } catch (ImageDecodingBusyException busy) {
+            return ThumbnailStatus.BUSY;
         }
 
     }
 
-    private static boolean isThumbnailAvailable(StorageIO<DataFile> storageIO, int size) {
+    private static boolean isThumbnailAvailable(StorageIO<DataFile> storageIO, int size) throws ImageDecodingBusyException {
 
         if (storageIO == null || storageIO.getDvObject() == null) {
             return false;
@@ -118,7 +165,7 @@ public class ImageThumbConverter {
 
     }
 
-    private static boolean generateThumbnail(DataFile file, StorageIO<DataFile> storageIO, int size) {
+    private static boolean generateThumbnail(DataFile file, StorageIO<DataFile> storageIO, int size) throws ImageDecodingBusyException {
         logger.log(Level.FINE, (file.isPreviewImageFail() ? "Not trying" : "Trying") + " to generate thumbnail, file id: " + file.getId());
         // Don't try to generate if there have been failures:
         if (!file.isPreviewImageFail()) {
@@ -149,7 +196,11 @@ public class ImageThumbConverter {
     // string version.
     public static InputStreamIO getImageThumbnailAsInputStream(StorageIO<DataFile> storageIO, int size) {
 
-        if (!isThumbnailAvailable(storageIO, size)) {
+        try {
+            if (!isThumbnailAvailable(storageIO, size)) {
+                return null;
+            }
+        } catch (ImageDecodingBusyException busy) {
             return null;
         }
 
@@ -281,43 +332,58 @@ public class ImageThumbConverter {
         return true;
     }
 
-    private static boolean generateImageThumbnail(StorageIO<DataFile> storageIO, int size) {
+    private static boolean generateImageThumbnail(StorageIO<DataFile> storageIO, int size) throws ImageDecodingBusyException {
 
         if (isImageOverSizeLimit(storageIO.getDataFile().getFilesize())) {
             logger.fine("Image file too large - skipping");
             return false;
         }
 
+        // While we are decoding the image, we also generate the other standard 
+        // sizes that are not cached yet: 
+        List<Integer> sizes = new ArrayList<>();
+        sizes.add(size);
+        for (int s : STANDARD_SIZES) {
+            if (s != size && !isThumbnailCached(storageIO, s)) {
+                sizes.add(s);
+            }
+        }
+
+        Semaphore permits = getImageDecodingPermits();
+        acquireImageDecodingPermit(permits);
         try {
             storageIO.open();
             try(InputStream inputStream = storageIO.getInputStream()) {
-              return generateImageThumbnailFromInputStream(storageIO, size, inputStream);
+              return generateImageThumbnailsFromInputStream(storageIO, sizes, inputStream);
             }
         } catch (IOException ioex) {
             logger.warning("caught IOException trying to open an input stream for " + storageIO.getDataFile().getStorageIdentifier() + ioex);
             return false;
+        } finally {
+            permits.release();
         }
         
     }
 
     /*
      * This is the actual workhorse method that does the rescaling of the full 
-     * size image: 
+     * size image: (the first size is the one requested; the thumbnails of the
+     * others are generated on a best effort basis)
      */
-    private static boolean generateImageThumbnailFromInputStream(StorageIO<DataFile> storageIO, int size, InputStream inputStream) {
+    private static boolean generateImageThumbnailsFromInputStream(StorageIO<DataFile> storageIO, List<Integer> sizes, InputStream inputStream) {
 
         BufferedImage fullSizeImage;
 
         try {
-            logger.fine("attempting to read the image file with ImageIO.read(InputStream), " + storageIO.getDataFile().getStorageIdentifier());
-            fullSizeImage = ImageIO.read(inputStream);
+            logger.fine("attempting to read the image file with ImageIO, " + storageIO.getDataFile().getStorageIdentifier());
+            fullSizeImage = readImage(inputStream, Collections.max(sizes));
         } catch (Exception ioex) {
-            logger.warning("Caught exception attempting to read the image file with ImageIO.read(InputStream)");
+            logger.warning("Caught exception attempting to read the image file with ImageIO");
             return false;
         }
 
         if (fullSizeImage == null) {
-            logger.warning("could not read image with ImageIO.read()");
+            logger.warning("could not read image with ImageIO");
             return false;
         }
 
@@ -326,6 +392,49 @@ public class ImageThumbConverter {
 
         logger.fine("image dimensions: " + width + "x" + height + "(" + storageIO.getDataFile().getStorageIdentifier() + ")");
 
+        boolean generated = saveImageThumbnail(storageIO, fullSizeImage, width, height, sizes.get(0));
+        if (generated) {
+            for (int s : sizes.subList(1, sizes.size())) {
+                saveImageThumbnail(storageIO, fullSizeImage, width, height, s);
+            }
+        }
+        fullSizeImage.flush();
+        return generated;
+    }
+
+    /**
+     * Reads the image; subsampled (reading only every n-th pixel of every 
+     * n-th line) down to no less than twice the given thumbnail size, so that
+     * a thumbnail of a large image doesn't need the full size image in memory.
+     * 
+     * @return the image, or null if there is no ImageIO reader for the format
+     */
+    static BufferedImage readImage(InputStream inputStream, int size) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            if (imageInputStream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(reader.getWidth(0), reader.getHeight(0)) / (2 * size);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static boolean saveImageThumbnail(StorageIO<DataFile> storageIO, BufferedImage fullSizeImage, int width, int height, int size) {
+
         OutputStream outputStream = null;
 
         // With some storage drivers, we can open a WritableChannel, or OutputStream 
@@ -359,15 +468,6 @@ public class ImageThumbConverter {
         try {
 
             rescaleImage(fullSizeImage, width, height, size, outputStream);
-            /*
-            // while we are at it, let's make sure other size thumbnails are 
-            // generated too:
-            for (int s : (new int[]{DEFAULT_PREVIEW_SIZE, DEFAULT_THUMBNAIL_SIZE, DEFAULT_CARDIMAGE_SIZE})) {
-                if (size != s && !thumbnailFileExists(fileLocation, s)) {
-                    rescaleImage(fullSizeImage, width, height, s, fileLocation);
-                }
-            }
-             */
 
             if (tempFileRequired) {
                 storageIO.savePathAsAux(Paths.get(tempFile.getAbsolutePath()), THUMBNAIL_SUFFIX + size);
@@ -390,6 +490,60 @@ public class ImageThumbConverter {
 
     }
 
+    /**
+     * Generates, and caches, the thumbnails of the file in all the standard
+     * sizes, if they are not cached yet; so that the pages and the API only
+     * have to serve them. Meant to be called in the background, once the file
+     * is saved (see DataFileServiceBean#generateThumbnails).
+     * 
+     * @return whether the thumbnails are available; BUSY if they could not
+     *         be generated for too many images being decoded at once
+     */
+    public static ThumbnailStatus generateThumbnails(DataFile file) {
+        try {
+            StorageIO<DataFile> storageIO = file.getStorageIO();
+            // (the first call generates the other sizes too, if it can)
+            for (int size : STANDARD_SIZES) {
+                if (!isThumbnailAvailable(storageIO, size)) {
+                    return ThumbnailStatus.UNAVAILABLE;
+                }
+            }
+            return ThumbnailStatus.AVAILABLE;
+        } catch (IOException ioEx) {
+            return ThumbnailStatus.UNAVAILABLE;
+        } catch (ImageDecodingBusyException busy) {
+            return ThumbnailStatus.BUSY;
+        }
+    }
+
+    /**
+     * @throws ImageDecodingBusyException if no image could be decoded within 
+     *         IMAGE_DECODING_WAIT_MS (or if interrupted)
+     */
+    private static void acquireImageDecodingPermit(Semaphore permits) throws ImageDecodingBusyException {
+        try {
+            if (permits.tryAcquire(IMAGE_DECODING_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            logger.fine("Too many images being decoded at once - skipping");
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        }
+        throw new ImageDecodingBusyException();
+    }
+
+    static Semaphore getImageDecodingPermits() {
+        if (imageDecodingPermits == null) {
+            synchronized (ImageThumbConverter.class) {
+                if (imageDecodingPermits == null) {
+                    int permits = JvmSettings.THUMBNAIL_MAX_CONCURRENT.lookupOptional(Integer.class).orElse(4);
+                    imageDecodingPermits = new Semaphore(Math.max(1, permits));
+                }
+            }
+        }
+        return imageDecodingPermits;
+    }
+
     private static boolean isThumbnailCached(StorageIO<DataFile> storageIO, int size) {
         boolean cached;
         try {
@@ -463,12 +617,16 @@ public class ImageThumbConverter {
             logger.fine("Null channel for aux object " + THUMBNAIL_SUFFIX + size);
 
             // try to generate, if not available and hasn't failed before
-            if(generateThumbnail(file, storageIO, size)) {
-                try {
-                    cachedThumbnailChannel = storageIO.openAuxChannel(THUMBNAIL_SUFFIX + size);
-                } catch (Exception ioEx) {
-                    cachedThumbnailChannel = null;
+            try {
+                if (generateThumbnail(file, storageIO, size)) {
+                    try {
+                        cachedThumbnailChannel = storageIO.openAuxChannel(THUMBNAIL_SUFFIX + size);
+                    } catch (Exception ioEx) {
+                        cachedThumbnailChannel = null;
+                    }
                 }
+            } catch (ImageDecodingBusyException busy) {
+                return null;
             }
 
             // if still null - give up:
@@ -595,12 +753,18 @@ public class ImageThumbConverter {
             return null;
         }
 
+        Semaphore permits = getImageDecodingPermits();
         try {
-            logger.fine("attempting to read the image file " + fileLocation + " with ImageIO.read()");
-            BufferedImage fullSizeImage = ImageIO.read(new File(fileLocation));
+            acquireImageDecodingPermit(permits);
+        } catch (ImageDecodingBusyException busy) {
+            return null;
+        }
+        try (InputStream inputStream = new FileInputStream(fileLocation)) {
+            logger.fine("attempting to read the image file " + fileLocation + " with ImageIO");
+            BufferedImage fullSizeImage = readImage(inputStream, size);
 
             if (fullSizeImage == null) {
-                logger.warning("could not read image with ImageIO.read()");
+                logger.warning("could not read image with ImageIO");
                 return null;
             }
 
@@ -616,6 +780,8 @@ public class ImageThumbConverter {
             }
         } catch (Exception e) {
             logger.warning("Failed to read in an image from " + fileLocation + ": " + e.getMessage());
+        } finally {
+            permits.release();
         }
         return null;
 
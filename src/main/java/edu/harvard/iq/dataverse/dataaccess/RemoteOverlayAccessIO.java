@@ -20,6 +20,8 @@ import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.util.List;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.http.Header;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
@@ -212,6 +214,51 @@ public class RemoteOverlayAccessIO<T extends DvObject> extends AbstractRemoteOve
         return super.getInputStream();
     }
 
+    /**
+     * Sends a Range request to the remote store, instead of reading through 
+     * the entire file up to the offset. (If the remote server ignores the
+     * Range header, the offset is skipped locally.)
+     */
+    @Override
+    public InputStream openRange(long offset, long length) throws IOException {
+        // If the full file has been requested already, abandon that stream:
+        closeInputStream();
+        HttpGet get = new HttpGet(generateTemporaryDownloadUrl(null, null, null));
+        get.addHeader("Range", "bytes=" + offset + "-" + (offset + length - 1));
+        CloseableHttpResponse response = null;
+        try {
+            response = getSharedHttpClient().execute(get, localContext);
+
+            int code = response.getStatusLine().getStatusCode();
+            switch (code) {
+            case 206:
+                setInputStream(response.getEntity().getContent());
+                break;
+            case 200:
+                setInputStream(response.getEntity().getContent());
+                IOUtils.skipFully(super.getInputStream(), offset);
+                break;
+            default:
+                logger.warning("Response from " + get.getURI().toString() + " was " + code);
+                throw new IOException("Cannot retrieve: " + baseUrl + "/" + path + " code: " + code);
+            }
+        } catch (IOException e) {
+            logger.warning(e.getMessage());
+            // (the connection is only released once the response is closed)
+            if (response != null) {
+                try {
+                    response.close();
+                } catch (IOException closeEx) {
+                    e.addSuppressed(closeEx);
+                }
+            }
+            setInputStream(null);
+            throw new IOException("Error retrieving: " + baseUrl + "/" + path + " " + e.getMessage(), e);
+        }
+        setChannel(Channels.newChannel(super.getInputStream()));
+        return new BoundedInputStream(super.getInputStream(), length);
+    }
+
     @Override
     public Channel getChannel() throws IOException {
         if (super.getChannel() == null) {
@@ -309,6 +309,30 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         return super.getInputStream();
     }
     
+    /**
+     * Requests only the bytes needed from S3 (a ranged GET), instead of 
+     * reading through the entire object up to the offset.
+     */
+    @Override
+    public InputStream openRange(long offset, long length) throws IOException {
+        // If the full object has been requested already, abandon that stream:
+        closeInputStream();
+        try {
+            GetObjectRequest rangeRequest = new GetObjectRequest(bucketName, key).withRange(offset, offset + length - 1);
+            setInputStream(s3.getObject(rangeRequest).getObjectContent());
+        } catch (SdkClientException sce) {
+            throw new IOException("Cannot get S3 object " + key + " range " + offset + "-" + (offset + length - 1) + " (" + sce.getMessage() + ")");
+        }
+
+        if (super.getInputStream() == null) {
+            throw new IOException("Cannot get InputStream for S3 Object" + key);
+        }
+
+        setChannel(Channels.newChannel(super.getInputStream()));
+
+        return super.getInputStream();
+    }
+
     @Override
     public Channel getChannel() throws IOException {
         if(super.getChannel()==null) {
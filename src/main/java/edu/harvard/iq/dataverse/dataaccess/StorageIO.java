@@ -43,6 +43,9 @@ import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
 /**
  *
  * @author Leonid Andreev
@@ -214,6 +217,11 @@ public abstract class StorageIO<T extends DvObject> {
      * of the file).
      */
     private long offset;
+    /**
+     * Where the last range read by the default implementation of openRange()
+     * ended.
+     */
+    private long rangeEnd = 0;
 
     private String mimeType;
     private String fileName;
@@ -420,7 +428,7 @@ public abstract class StorageIO<T extends DvObject> {
     public void setOffset(long offset) throws IOException {
         InputStream inputStream = getInputStream();
         if (inputStream != null) {
-            inputStream.skip(offset);
+            IOUtils.skipFully(inputStream, offset);
             // The skip has already been done. Why not record it.
             this.offset = offset;
         } else {
@@ -428,6 +436,35 @@ public abstract class StorageIO<T extends DvObject> {
         }
     }
 
+    /**
+     * Opens the stored object for reading the bytes offset through
+     * offset + length - 1 (for serving HTTP Range requests, etc.).
+     * open() has already been called. openRange() may be called more than 
+     * once, for successive ranges, in ascending order; the stream returned 
+     * does not need to be closed, but closeInputStream() should be called 
+     * once the last range has been read.
+     * 
+     * This default implementation skips to the offset in the input stream,
+     * which means reading (and discarding) all the bytes before it. The 
+     * drivers that can position the underlying file, or request a range of
+     * bytes from the storage directly, should override it, so that the cost
+     * of the read does not depend on the offset.
+     * 
+     * @return an input stream that ends after length bytes, or at the end of
+     *         the stored object, whichever comes first
+     */
+    public InputStream openRange(long offset, long length) throws IOException {
+        // The stream has been read up to the end of the previous range, if any:
+        if (offset < rangeEnd) {
+            throw new IOException("Ranges must be read in ascending order (" + offset + " requested, stream is at " + rangeEnd + ")");
+        }
+        setOffset(offset - rangeEnd);
+        rangeEnd = offset + length;
+        BoundedInputStream rangeStream = new BoundedInputStream(getInputStream(), length);
+        rangeStream.setPropagateClose(false);
+        return rangeStream;
+    }
+
     public void setInputStream(InputStream is) {
         in = is;
     }
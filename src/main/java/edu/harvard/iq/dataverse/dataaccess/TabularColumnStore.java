@@ -0,0 +1,391 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A column-oriented copy of an ingested tab-delimited file, stored as an
+ * auxiliary object next to the main file (under the {@link #AUX_TAG} tag).
+ *
+ * The store allows a column subset to be produced by reading only the bytes
+ * of the requested columns, instead of re-reading and splitting every line of
+ * the full tab file. The raw (still escaped) tab file tokens are stored
+ * as they are, so that the subsets produced from the store are byte-for-byte
+ * identical to the ones produced by {@link TabularSubsetGenerator#subsetFile}.
+ *
+ * Layout (all numbers are big-endian):
+ * <pre>
+ * header:  "DVC2", int numColumns, long numRows,
+ *          long[numColumns] column offsets, long end offset
+ * column:  byte encoding,
+ *          ENCODING_PLAIN:      long[numRows + 1] token offsets, token bytes
+ *          ENCODING_DICTIONARY: int dictionarySize,
+ *                               long[dictionarySize + 1] entry offsets, entry bytes,
+ *                               int[numRows] codes
+ * </pre>
+ * The token offsets are relative to the start of the token (or dictionary
+ * entry) bytes. Low cardinality columns (categorical variables, etc.) are
+ * dictionary-encoded. Empty tokens (missing values) are stored as tokens of
+ * length 0.
+ *
+ * Note that the rows are the lines of the tab file, so if the file is stored
+ * with the variable header line, the header is row 0.
+ */
+public class TabularColumnStore {
+
+    private static final Logger logger = Logger.getLogger(TabularColumnStore.class.getCanonicalName());
+
+    public static final String AUX_TAG = "cols";
+
+    static final byte[] MAGIC = "DVC2".getBytes(StandardCharsets.US_ASCII);
+    static final byte ENCODING_PLAIN = 0;
+    static final byte ENCODING_DICTIONARY = 1;
+
+    // The maximum number of tokens kept in memory by the writer at any given
+    // time; the columns are collected in batches, one pass through the tab
+    // file per batch.
+    private static final int MAX_TOKENS_IN_MEMORY = 2000000;
+    // Columns with no more than this many distinct values, or with at least
+    // 4 rows per distinct value, are dictionary-encoded:
+    private static final int MAX_SMALL_DICTIONARY_SIZE = 256;
+    // The number of rows read from each column at a time when producing a subset:
+    private static final int SUBSET_ROW_CHUNK = 8192;
+
+    /**
+     * Writes the column store for the tab-delimited file.
+     *
+     * @param tabFile the tab-delimited file, as produced by ingest
+     * @param numColumns the number of variables in the file
+     * @param numRows the number of lines in the file (i.e., the number of cases,
+     *        plus one if the file is stored with the variable header line)
+     * @param storeFile the file to write the column store to
+     * @throws IOException if the file cannot be read, or if it does not have
+     *         the number of columns or rows expected.
+     */
+    public static void write(File tabFile, int numColumns, long numRows, File storeFile) throws IOException {
+        if (numRows > Integer.MAX_VALUE) {
+            throw new IOException("Too many rows for a column store: " + numRows);
+        }
+        int rows = (int) numRows;
+        int batchSize = rows > 0 ? Math.max(1, MAX_TOKENS_IN_MEMORY / rows) : numColumns;
+
+        try (RandomAccessFile out = new RandomAccessFile(storeFile, "rw")) {
+            out.setLength(0);
+            long[] columnOffsets = new long[numColumns];
+
+            // header; the offsets will be filled in when we know them:
+            out.write(MAGIC);
+            out.writeInt(numColumns);
+            out.writeLong(numRows);
+            long offsetTablePosition = out.getFilePointer();
+            out.seek(offsetTablePosition + 8L * (numColumns + 1));
+
+            for (int start = 0; start < numColumns; start += batchSize) {
+                int end = Math.min(start + batchSize, numColumns);
+                String[][] tokens = readRawColumns(tabFile, start, end, numColumns, rows);
+
+                for (int c = start; c < end; c++) {
+                    columnOffsets[c] = out.getFilePointer();
+                    byte[] block = encodeColumn(tokens[c - start]);
+                    tokens[c - start] = null;
+                    out.write(block);
+                }
+            }
+
+            long endOffset = out.getFilePointer();
+            out.seek(offsetTablePosition);
+            for (long offset : columnOffsets) {
+                out.writeLong(offset);
+            }
+            out.writeLong(endOffset);
+        }
+    }
+
+    /*
+     * Reads the columns start through end - 1 of the tab file, as raw tokens.
+     * The bytes are decoded as ISO-8859-1, so that they survive the round
+     * trip unchanged, whatever the encoding of the file.
+     */
+    private static String[][] readRawColumns(File tabFile, int start, int end, int numColumns, int numRows) throws IOException {
+        String[][] tokens = new String[end - start][numRows];
+
+        try (FileInputStream in = new FileInputStream(tabFile)) {
+            DelimitedLineReader reader = new DelimitedLineReader(in.getChannel(), (byte) '\t', end);
+
+            for (int row = 0; row < numRows; row++) {
+                if (!reader.nextLine()) {
+                    throw new IOException("Tab file has fewer rows than the stored number of cases!");
+                }
+                if (reader.getFieldCount() < end) {
+                    throw new IOException("Row " + row + " of the tab file has " + reader.getFieldCount() + " columns; expected " + numColumns);
+                }
+                for (int column = start; column < end; column++) {
+                    tokens[column - start][row] = reader.getField(column, StandardCharsets.ISO_8859_1);
+                }
+            }
+
+            while (reader.nextLine()) {
+                if (!reader.isLineEmpty()) {
+                    throw new IOException("Tab file has more nonempty rows than the stored number of cases (" + numRows + ")!");
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static byte[] encodeColumn(String[] tokens) throws IOException {
+        int numRows = tokens.length;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        // Try to build a dictionary; give up as soon as it gets too large to
+        // be worth it:
+        int maxDictionarySize = Math.max(MAX_SMALL_DICTIONARY_SIZE, numRows / 4);
+        Map<String, Integer> dictionary = new HashMap<>();
+        int[] codes = new int[numRows];
+        for (int i = 0; i < numRows && dictionary != null; i++) {
+            Integer code = dictionary.get(tokens[i]);
+            if (code == null) {
+                if (dictionary.size() >= maxDictionarySize) {
+                    dictionary = null;
+                    break;
+                }
+                code = dictionary.size();
+                dictionary.put(tokens[i], code);
+            }
+            codes[i] = code;
+        }
+
+        if (dictionary != null) {
+            String[] entries = new String[dictionary.size()];
+            for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+                entries[entry.getValue()] = entry.getKey();
+            }
+            out.writeByte(ENCODING_DICTIONARY);
+            out.writeInt(entries.length);
+            writeTokens(out, entries);
+            for (int code : codes) {
+                out.writeInt(code);
+            }
+        } else {
+            out.writeByte(ENCODING_PLAIN);
+            writeTokens(out, tokens);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeTokens(DataOutputStream out, String[] tokens) throws IOException {
+        long offset = 0;
+        out.writeLong(offset);
+        for (String token : tokens) {
+            offset += token.length();
+            out.writeLong(offset);
+        }
+        for (String token : tokens) {
+            out.write(token.getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    /**
+     * Reads an existing column store. The channel must be positioned at the
+     * start of the store.
+     */
+    public static class Reader implements AutoCloseable {
+
+        private final SeekableByteChannel channel;
+        private final int numColumns;
+        private final long numRows;
+        private final long[] columnOffsets;
+        private final Map<Integer, byte[][]> dictionaries = new HashMap<>();
+
+        public Reader(SeekableByteChannel channel) throws IOException {
+            this.channel = channel;
+            ByteBuffer header = readFully(0, MAGIC.length + 4 + 8);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("Not a tabular column store");
+            }
+            numColumns = header.getInt();
+            numRows = header.getLong();
+
+            ByteBuffer offsets = readFully(MAGIC.length + 4 + 8, 8L * (numColumns + 1));
+            columnOffsets = new long[numColumns + 1];
+            for (int i = 0; i <= numColumns; i++) {
+                columnOffsets[i] = offsets.getLong();
+            }
+        }
+
+        public int getNumColumns() {
+            return numColumns;
+        }
+
+        public long getNumRows() {
+            return numRows;
+        }
+
+        /**
+         * Reads the raw tokens of rows fromRow through fromRow + count - 1 of
+         * the column.
+         */
+        public byte[][] readRawTokens(int column, long fromRow, int count) throws IOException {
+            if (column < 0 || column >= numColumns) {
+                throw new IOException("No such column in the column store: " + column);
+            }
+            if (fromRow < 0 || fromRow + count > numRows) {
+                throw new IOException("Rows " + fromRow + " through " + (fromRow + count - 1) + " are out of range");
+            }
+            byte[][] tokens = new byte[count][];
+            if (count == 0) {
+                return tokens;
+            }
+
+            long columnStart = columnOffsets[column];
+            byte encoding = readFully(columnStart, 1).get();
+            long bodyStart = columnStart + 1;
+
+            if (encoding == ENCODING_DICTIONARY) {
+                byte[][] dictionary = dictionaries.get(column);
+                if (dictionary == null) {
+                    int dictionarySize = readFully(bodyStart, 4).getInt();
+                    long[] entryOffsets = readLongs(bodyStart + 4, dictionarySize + 1);
+                    long entriesStart = bodyStart + 4 + 8L * (dictionarySize + 1);
+                    ByteBuffer entries = readFully(entriesStart, entryOffsets[dictionarySize]);
+                    dictionary = new byte[dictionarySize][];
+                    for (int i = 0; i < dictionarySize; i++) {
+                        dictionary[i] = new byte[(int) (entryOffsets[i + 1] - entryOffsets[i])];
+                        entries.get(dictionary[i]);
+                    }
+                    dictionaries.put(column, dictionary);
+                }
+                long codesStart = bodyStart + 4 + 8L * (dictionary.length + 1) + sum(dictionary);
+                ByteBuffer codes = readFully(codesStart + 4L * fromRow, 4L * count);
+                for (int i = 0; i < count; i++) {
+                    tokens[i] = dictionary[codes.getInt()];
+                }
+            } else if (encoding == ENCODING_PLAIN) {
+                long[] tokenOffsets = readLongs(bodyStart + 8L * fromRow, count + 1);
+                long tokensStart = bodyStart + 8L * (numRows + 1);
+                ByteBuffer bytes = readFully(tokensStart + tokenOffsets[0], tokenOffsets[count] - tokenOffsets[0]);
+                for (int i = 0; i < count; i++) {
+                    tokens[i] = new byte[(int) (tokenOffsets[i + 1] - tokenOffsets[i])];
+                    bytes.get(tokens[i]);
+                }
+            } else {
+                throw new IOException("Unknown column encoding: " + encoding);
+            }
+            return tokens;
+        }
+
+        /**
+         * Produces the same output as {@link TabularSubsetGenerator#subsetFile}
+         * would for the same columns, reading only the selected columns.
+         */
+        public void subset(List<Integer> columns, OutputStream out) throws IOException {
+            OutputStream buffered = new BufferedOutputStream(out);
+            for (long fromRow = 0; fromRow < numRows; fromRow += SUBSET_ROW_CHUNK) {
+                int count = (int) Math.min(SUBSET_ROW_CHUNK, numRows - fromRow);
+                byte[][][] chunk = new byte[columns.size()][][];
+                for (int c = 0; c < columns.size(); c++) {
+                    chunk[c] = readRawTokens(columns.get(c), fromRow, count);
+                }
+                for (int i = 0; i < count; i++) {
+                    for (int c = 0; c < chunk.length; c++) {
+                        if (c > 0) {
+                            buffered.write('\t');
+                        }
+                        buffered.write(chunk[c][i]);
+                    }
+                    buffered.write('\n');
+                }
+            }
+            buffered.flush();
+        }
+
+        private long[] readLongs(long position, int count) throws IOException {
+            ByteBuffer buffer = readFully(position, 8L * count);
+            long[] values = new long[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = buffer.getLong();
+            }
+            return values;
+        }
+
+        private ByteBuffer readFully(long position, long length) throws IOException {
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Read too large for a single buffer: " + length);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            channel.position(position);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Unexpected end of the column store at " + channel.position());
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        private static long sum(byte[][] entries) {
+            long total = 0;
+            for (byte[] entry : entries) {
+                total += entry.length;
+            }
+            return total;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Opens the column store saved for this (tabular) data file, if there is
+     * one, and if the storage driver provides random access to it.
+     *
+     * @return the reader, or null if the column store cannot be used
+     */
+    public static Reader open(StorageIO<?> storageIO) {
+        Channel channel = null;
+        try {
+            if (!storageIO.isAuxObjectCached(AUX_TAG)) {
+                return null;
+            }
+            channel = storageIO.openAuxChannel(AUX_TAG);
+            if (channel instanceof SeekableByteChannel) {
+                return new Reader((SeekableByteChannel) channel);
+            }
+            logger.fine("The storage driver does not provide random access to the column store");
+        } catch (IOException ioex) {
+            logger.warning("Failed to open the column store: " + ioex.getMessage());
+        } catch (RuntimeException rex) {
+            // (a corrupt header, such as a negative number of columns)
+            logger.warning("Failed to read the column store: " + rex.getMessage());
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ioex) {
+                // (nothing else to do)
+            }
+        }
+        return null;
+    }
+}
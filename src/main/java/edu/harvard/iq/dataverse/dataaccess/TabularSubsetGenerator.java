@@ -25,23 +25,24 @@ import edu.harvard.iq.dataverse.datavariable.DataVariable;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Scanner;
 import java.util.Set;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.logging.Logger;
@@ -94,30 +95,44 @@ public class TabularSubsetGenerator implements SubsetGenerator {
     }
 
 
+    /**
+     * Subsets the columns of the delimited data, copying the bytes of the 
+     * selected fields of each line straight to the (tab-delimited) output, 
+     * without decoding the lines into Strings or splitting them into arrays. 
+     * 
+     * @param delimiter a single (ASCII) character. 
+     */
     public void subsetFile(InputStream in, String outfile, List<Integer> columns, Long numCases,
         String delimiter) {
-          try (Scanner scanner = new Scanner(in); BufferedWriter out = new BufferedWriter(new FileWriter(outfile))) {
-            scanner.useDelimiter("\\n");
+        if (delimiter == null || delimiter.length() != 1 || delimiter.charAt(0) > 127) {
+            throw new IllegalArgumentException("Unsupported delimiter for subsetting: \"" + delimiter + "\"");
+        }
+        
+        int[] selected = columns.stream().mapToInt(Integer::intValue).toArray();
+        int maxFields = Arrays.stream(selected).max().orElse(0) + 1;
+        DelimitedLineReader reader = new DelimitedLineReader(Channels.newChannel(in), (byte) delimiter.charAt(0), maxFields);
+        
+        try (in; OutputStream out = new BufferedOutputStream(new FileOutputStream(outfile))) {
 
-                for (long caseIndex = 0; caseIndex < numCases; caseIndex++) {
-                    if (scanner.hasNext()) {
-                        String[] line = (scanner.next()).split(delimiter,-1);
-                        List<String> ln = new ArrayList<String>();
-                        for (Integer i : columns) {
-                            ln.add(line[i]);
+            for (long caseIndex = 0; caseIndex < numCases; caseIndex++) {
+                if (reader.nextLine()) {
+                    for (int j = 0; j < selected.length; j++) {
+                        if (j > 0) {
+                            out.write('\t');
                         }
-                        out.write(StringUtils.join(ln,"\t")+"\n");
-                    } else {
-                        throw new RuntimeException("Tab file has fewer rows than the determined number of cases.");
+                        reader.writeField(selected[j], out);
                     }
+                    out.write('\n');
+                } else {
+                    throw new RuntimeException("Tab file has fewer rows than the determined number of cases.");
                 }
+            }
 
-              while (scanner.hasNext()) {
-                  if (!"".equals(scanner.next()) ) {
-                      throw new RuntimeException("Tab file has extra nonempty rows than the determined number of cases.");
-
-                  }
-              }
+            while (reader.nextLine()) {
+                if (!reader.isLineEmpty()) {
+                    throw new RuntimeException("Tab file has extra nonempty rows than the determined number of cases.");
+                }
+            }
 
         } catch (FileNotFoundException e) {
             e.printStackTrace();
@@ -133,55 +148,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
      */
     
     public static Double[] subsetDoubleVector(InputStream in, int column, int numCases, boolean skipHeader) {
-        Double[] retVector = new Double[numCases];
-        try (Scanner scanner = new Scanner(in)) {
-            scanner.useDelimiter("\\n");
-
-            if (skipHeader) {
-                skipFirstLine(scanner);
-            }
-            
-            for (int caseIndex = 0; caseIndex < numCases; caseIndex++) {
-                if (scanner.hasNext()) {
-                    String[] line = (scanner.next()).split("\t", -1);
-
-                    // Verified: new Double("nan") works correctly,
-                    // resulting in Double.NaN;
-                    // Double("[+-]Inf") doesn't work however;
-                    // (the constructor appears to be expecting it
-                    // to be spelled as "Infinity", "-Infinity", etc.
-                    if ("inf".equalsIgnoreCase(line[column]) || "+inf".equalsIgnoreCase(line[column])) {
-                        retVector[caseIndex] = java.lang.Double.POSITIVE_INFINITY;
-                    } else if ("-inf".equalsIgnoreCase(line[column])) {
-                        retVector[caseIndex] = java.lang.Double.NEGATIVE_INFINITY;
-                    } else if (line[column] == null || line[column].equals("")) {
-                        // missing value:
-                        retVector[caseIndex] = null;
-                    } else {
-                        try {
-                            retVector[caseIndex] = new Double(line[column]);
-                        } catch (NumberFormatException ex) {
-                            retVector[caseIndex] = null; // missing value
-                        }
-                    }
-
-                } else {
-                    throw new RuntimeException("Tab file has fewer rows than the stored number of cases!");
-                }
-            }
-
-            int tailIndex = numCases;
-            while (scanner.hasNext()) {
-                String nextLine = scanner.next();
-                if (!"".equals(nextLine)) {
-                    throw new RuntimeException("Column " + column + ": tab file has more nonempty rows than the stored number of cases (" + numCases + ")! current index: " + tailIndex + ", line: " + nextLine);
-                }
-                tailIndex++;
-            }
-
-        }
-        return retVector;
-
+        return (Double[]) subsetVectors(in, new int[]{column}, new Class<?>[]{Double.class}, numCases, skipHeader)[0];
     }
     
     /*
@@ -189,53 +156,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
      * Not a resource hog though - will only try to store one vector in memory. 
      */
     public static Float[] subsetFloatVector(InputStream in, int column, int numCases, boolean skipHeader) {
-        Float[] retVector = new Float[numCases];
-        try (Scanner scanner = new Scanner(in)) {
-            scanner.useDelimiter("\\n");
-
-            if (skipHeader) {
-                skipFirstLine(scanner);
-            }
-            
-            for (int caseIndex = 0; caseIndex < numCases; caseIndex++) {
-                if (scanner.hasNext()) {
-                    String[] line = (scanner.next()).split("\t", -1);
-                    // Verified: new Float("nan") works correctly,
-                    // resulting in Float.NaN;
-                    // Float("[+-]Inf") doesn't work however;
-                    // (the constructor appears to be expecting it
-                    // to be spelled as "Infinity", "-Infinity", etc.
-                    if ("inf".equalsIgnoreCase(line[column]) || "+inf".equalsIgnoreCase(line[column])) {
-                        retVector[caseIndex] = java.lang.Float.POSITIVE_INFINITY;
-                    } else if ("-inf".equalsIgnoreCase(line[column])) {
-                        retVector[caseIndex] = java.lang.Float.NEGATIVE_INFINITY;
-                    } else if (line[column] == null || line[column].equals("")) {
-                        // missing value:
-                        retVector[caseIndex] = null;
-                    } else {
-                        try {
-                            retVector[caseIndex] = new Float(line[column]);
-                        } catch (NumberFormatException ex) {
-                            retVector[caseIndex] = null; // missing value
-                        }
-                    }
-                } else {
-                    throw new RuntimeException("Tab file has fewer rows than the stored number of cases!");
-                }
-            }
-
-            int tailIndex = numCases;
-            while (scanner.hasNext()) {
-                String nextLine = scanner.next();
-                if (!"".equals(nextLine)) {
-                    throw new RuntimeException("Column "+column+": tab file has more nonempty rows than the stored number of cases ("+numCases+")! current index: "+tailIndex+", line: "+nextLine);
-                }
-                tailIndex++;
-            }
-
-        }
-        return retVector;
-
+        return (Float[]) subsetVectors(in, new int[]{column}, new Class<?>[]{Float.class}, numCases, skipHeader)[0];
     }
     
     /*
@@ -243,39 +164,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
      * Not a resource hog though - will only try to store one vector in memory. 
      */
     public static Long[] subsetLongVector(InputStream in, int column, int numCases, boolean skipHeader) {
-        Long[] retVector = new Long[numCases];
-        try (Scanner scanner = new Scanner(in)) {
-            scanner.useDelimiter("\\n");
-
-            if (skipHeader) {
-                skipFirstLine(scanner);
-            }
-            
-            for (int caseIndex = 0; caseIndex < numCases; caseIndex++) {
-                if (scanner.hasNext()) {
-                    String[] line = (scanner.next()).split("\t", -1);
-                    try {
-                        retVector[caseIndex] = new Long(line[column]);
-                    } catch (NumberFormatException ex) {
-                        retVector[caseIndex] = null; // assume missing value
-                    }
-                } else {
-                    throw new RuntimeException("Tab file has fewer rows than the stored number of cases!");
-                }
-            }
-
-            int tailIndex = numCases;
-            while (scanner.hasNext()) {
-                String nextLine = scanner.next();
-                if (!"".equals(nextLine)) {
-                    throw new RuntimeException("Column "+column+": tab file has more nonempty rows than the stored number of cases ("+numCases+")! current index: "+tailIndex+", line: "+nextLine);
-                }
-                tailIndex++;
-            }
-
-        }
-        return retVector;
-
+        return (Long[]) subsetVectors(in, new int[]{column}, new Class<?>[]{Long.class}, numCases, skipHeader)[0];
     }
     
     /*
@@ -283,85 +172,181 @@ public class TabularSubsetGenerator implements SubsetGenerator {
      * Not a resource hog though - will only try to store one vector in memory. 
      */
     public static String[] subsetStringVector(InputStream in, int column, int numCases, boolean skipHeader) {
-        String[] retVector = new String[numCases];
-        try (Scanner scanner = new Scanner(in)) {
-            scanner.useDelimiter("\\n");
+        return (String[]) subsetVectors(in, new int[]{column}, new Class<?>[]{String.class}, numCases, skipHeader)[0];
+    }
+    
+    /**
+     * Subsets several column vectors in a single pass through the tab-delimited 
+     * file. Each line is read and split once, and the requested columns are 
+     * parsed into their respective vectors. This is what should be used when 
+     * more than one column is needed (for example, when calculating the 
+     * summary statistics and UNFs for all the variables during ingest), 
+     * instead of calling the single-column methods above once per variable, 
+     * which would re-read the entire file for every column.
+     * 
+     * The same column may be requested more than once, with different types.
+     * 
+     * @param in tab-delimited data; the stream is consumed and closed
+     * @param columns 0-based column numbers
+     * @param types Double.class, Float.class, Long.class or String.class, 
+     *        for each of the requested columns
+     * @param numCases the number of cases (rows) stored in the file
+     * @param skipHeader whether the file starts with the variable name header line
+     * @return one vector per requested column, in the order requested; i.e. 
+     *         a Double[], Float[], Long[] or String[], depending on the type 
+     *         requested. Missing values are returned as nulls. 
+     */
+    public static Object[][] subsetVectors(InputStream in, int[] columns, Class<?>[] types, int numCases, boolean skipHeader) {
+        if (columns.length != types.length) {
+            throw new IllegalArgumentException("The numbers of columns and column types requested do not match.");
+        }
+        
+        Object[][] retVectors = new Object[columns.length][];
+        for (int j = 0; j < columns.length; j++) {
+            retVectors[j] = newVector(types[j], numCases);
+        }
+        
+        int maxFields = Arrays.stream(columns).max().orElse(0) + 1;
+        DelimitedLineReader reader = new DelimitedLineReader(Channels.newChannel(in), (byte) '\t', maxFields);
 
-            if (skipHeader) {
-                skipFirstLine(scanner);
+        try (in) {
+            if (skipHeader && !reader.nextLine()) {
+                throw new RuntimeException("Failed to read the variable name header line from the tab-delimited file!");
             }
             
             for (int caseIndex = 0; caseIndex < numCases; caseIndex++) {
-                if (scanner.hasNext()) {
-                    String[] line = (scanner.next()).split("\t", -1);
-                    retVector[caseIndex] = line[column];
-
-                    if ("".equals(line[column])) {
-                        // An empty string is a string missing value!
-                        // An empty string in quotes is an empty string!
-                        retVector[caseIndex] = null;
-                    } else {
-                        // Strip the outer quotes:
-                        line[column] = line[column].replaceFirst("^\\\"", "");
-                        line[column] = line[column].replaceFirst("\\\"$", "");
-
-                        // We need to restore the special characters that
-                        // are stored in tab files escaped - quotes, new lines
-                        // and tabs. Before we do that however, we need to
-                        // take care of any escaped backslashes stored in
-                        // the tab file. I.e., "foo\t" should be transformed
-                        // to "foo<TAB>"; but "foo\\t" should be transformed
-                        // to "foo\t". This way new lines and tabs that were
-                        // already escaped in the original data are not
-                        // going to be transformed to unescaped tab and
-                        // new line characters!
-                        String[] splitTokens = line[column].split(Matcher.quoteReplacement("\\\\"), -2);
-
-                        // (note that it's important to use the 2-argument version
-                        // of String.split(), and set the limit argument to a
-                        // negative value; otherwise any trailing backslashes
-                        // are lost.)
-                        for (int i = 0; i < splitTokens.length; i++) {
-                            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\\""), "\"");
-                            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\t"), "\t");
-                            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\n"), "\n");
-                            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\r"), "\r");
-                        }
-                        // TODO:
-                        // Make (some of?) the above optional; for ex., we
-                        // do need to restore the newlines when calculating UNFs;
-                        // But if we are subsetting these vectors in order to
-                        // create a new tab-delimited file, they will
-                        // actually break things! -- L.A. Jul. 28 2014
-
-                        line[column] = StringUtils.join(splitTokens, '\\');
-
-                        retVector[caseIndex] = line[column];
+                if (reader.nextLine()) {
+                    for (int j = 0; j < columns.length; j++) {
+                        retVectors[j][caseIndex] = parseValue(types[j], reader.getField(columns[j], StandardCharsets.UTF_8));
                     }
-
                 } else {
                     throw new RuntimeException("Tab file has fewer rows than the stored number of cases!");
                 }
             }
 
             int tailIndex = numCases;
-            while (scanner.hasNext()) {
-                String nextLine = scanner.next();
-                if (!"".equals(nextLine)) {
-                    throw new RuntimeException("Column "+column+": tab file has more nonempty rows than the stored number of cases ("+numCases+")! current index: "+tailIndex+", line: "+nextLine);
+            while (reader.nextLine()) {
+                if (!reader.isLineEmpty()) {
+                    throw new RuntimeException("Columns " + Arrays.toString(columns) + ": tab file has more nonempty rows than the stored number of cases (" + numCases + ")! current index: " + tailIndex + ", line: " + reader.getLine(StandardCharsets.UTF_8));
                 }
                 tailIndex++;
             }
 
+        } catch (IOException ioex) {
+            throw new RuntimeException("Failed to read the tab-delimited file: " + ioex.getMessage(), ioex);
         }
-        return retVector;
-
+        return retVectors;
     }
-
-    private static void skipFirstLine(Scanner scanner) {
-        if (!scanner.hasNext()) {
-            throw new RuntimeException("Failed to read the variable name header line from the tab-delimited file!");
+    
+    private static Object[] newVector(Class<?> type, int numCases) {
+        if (Double.class.equals(type)) {
+            return new Double[numCases];
+        } else if (Float.class.equals(type)) {
+            return new Float[numCases];
+        } else if (Long.class.equals(type)) {
+            return new Long[numCases];
+        } else if (String.class.equals(type)) {
+            return new String[numCases];
+        }
+        throw new IllegalArgumentException("Unsupported column vector type: " + type);
+    }
+    
+    private static Object parseValue(Class<?> type, String token) {
+        if (Double.class.equals(type)) {
+            return parseDoubleValue(token);
+        } else if (Float.class.equals(type)) {
+            return parseFloatValue(token);
+        } else if (Long.class.equals(type)) {
+            return parseLongValue(token);
+        }
+        return parseStringValue(token);
+    }
+    
+    private static Double parseDoubleValue(String token) {
+        // Verified: new Double("nan") works correctly,
+        // resulting in Double.NaN;
+        // Double("[+-]Inf") doesn't work however;
+        // (the constructor appears to be expecting it
+        // to be spelled as "Infinity", "-Infinity", etc.
+        if ("inf".equalsIgnoreCase(token) || "+inf".equalsIgnoreCase(token)) {
+            return java.lang.Double.POSITIVE_INFINITY;
+        } else if ("-inf".equalsIgnoreCase(token)) {
+            return java.lang.Double.NEGATIVE_INFINITY;
+        } else if (token == null || token.equals("")) {
+            // missing value:
+            return null;
+        }
+        try {
+            return new Double(token);
+        } catch (NumberFormatException ex) {
+            return null; // missing value
         }
-        scanner.next();
-    }   
-}
\ No newline at end of file
+    }
+    
+    private static Float parseFloatValue(String token) {
+        // Same as above - new Float("nan") works, "[+-]Inf" needs special handling:
+        if ("inf".equalsIgnoreCase(token) || "+inf".equalsIgnoreCase(token)) {
+            return java.lang.Float.POSITIVE_INFINITY;
+        } else if ("-inf".equalsIgnoreCase(token)) {
+            return java.lang.Float.NEGATIVE_INFINITY;
+        } else if (token == null || token.equals("")) {
+            // missing value:
+            return null;
+        }
+        try {
+            return new Float(token);
+        } catch (NumberFormatException ex) {
+            return null; // missing value
+        }
+    }
+    
+    private static Long parseLongValue(String token) {
+        try {
+            return new Long(token);
+        } catch (NumberFormatException ex) {
+            return null; // assume missing value
+        }
+    }
+    
+    private static String parseStringValue(String token) {
+        if ("".equals(token)) {
+            // An empty string is a string missing value!
+            // An empty string in quotes is an empty string!
+            return null;
+        }
+        // Strip the outer quotes:
+        token = token.replaceFirst("^\\\"", "");
+        token = token.replaceFirst("\\\"$", "");
+
+        // We need to restore the special characters that
+        // are stored in tab files escaped - quotes, new lines
+        // and tabs. Before we do that however, we need to
+        // take care of any escaped backslashes stored in
+        // the tab file. I.e., "foo\t" should be transformed
+        // to "foo<TAB>"; but "foo\\t" should be transformed
+        // to "foo\t". This way new lines and tabs that were
+        // already escaped in the original data are not
+        // going to be transformed to unescaped tab and
+        // new line characters!
+        String[] splitTokens = token.split(Matcher.quoteReplacement("\\\\"), -2);
+
+        // (note that it's important to use the 2-argument version
+        // of String.split(), and set the limit argument to a
+        // negative value; otherwise any trailing backslashes
+        // are lost.)
+        for (int i = 0; i < splitTokens.length; i++) {
+            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\\""), "\"");
+            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\t"), "\t");
+            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\n"), "\n");
+            splitTokens[i] = splitTokens[i].replaceAll(Matcher.quoteReplacement("\\r"), "\r");
+        }
+        // TODO:
+        // Make (some of?) the above optional; for ex., we
+        // do need to restore the newlines when calculating UNFs;
+        // But if we are subsetting these vectors in order to
+        // create a new tab-delimited file, they will
+        // actually break things! -- L.A. Jul. 28 2014
+
+        return StringUtils.join(splitTokens, '\\');
+    }
+}
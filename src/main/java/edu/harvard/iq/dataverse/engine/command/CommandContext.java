@@ -43,6 +43,7 @@ import edu.harvard.iq.dataverse.storageuse.StorageUseServiceBean;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.workflow.WorkflowServiceBean;
 import java.util.Stack;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.persistence.EntityManager;
 
 /**
@@ -145,6 +146,12 @@ public interface CommandContext {
     public ConfirmEmailServiceBean confirmEmail();
     
     public ActionLogServiceBean actionLog();
+
+    /**
+     * @return the executor of the container, for the commands that do some
+     *         of their work on several threads at once
+     */
+    public ManagedExecutorService managedExecutor();
     
     public void beginCommandSequence();
     
@@ -6,6 +6,7 @@
 package edu.harvard.iq.dataverse.engine.command.impl;
 
 import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.RoleAssignment;
 import edu.harvard.iq.dataverse.authorization.AuthenticatedUserLookup;
 import edu.harvard.iq.dataverse.authorization.providers.builtin.BuiltinUser;
@@ -90,6 +91,7 @@ public class ChangeUserIdentifierCommand extends AbstractVoidCommand {
         for(RoleAssignment ra : raList) {
             ra.setAssigneeIdentifier("@" + newIdentifier);
         }
+        PermissionCache.invalidateWithTransaction();
     }
     
     @Override
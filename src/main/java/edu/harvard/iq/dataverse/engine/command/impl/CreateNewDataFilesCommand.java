@@ -14,6 +14,7 @@ import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandExecutionException;
 import edu.harvard.iq.dataverse.ingest.IngestServiceShapefileHelper;
 import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.storageuse.UploadSessionQuotaLimit;
 import edu.harvard.iq.dataverse.util.file.FileExceedsStorageQuotaException;
 import edu.harvard.iq.dataverse.util.BundleUtil;
@@ -38,7 +39,6 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -49,11 +49,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 import jakarta.enterprise.inject.spi.CDI;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -136,6 +144,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
         }
         String finalType = null;
         File newFile = null;    // this File will be used for a single-file, local (non-direct) upload
+        String uploadCheckSum = null; // and this, its checksum
         long fileSize = -1; 
 
 
@@ -148,25 +157,22 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                     // temp files will always be stored on the local filesystem.
                     // -- L.A. Jul. 2014
                     logger.fine("Will attempt to save the file as: " + tempFile.toString());
-                    Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                    // (the checksum is calculated as the upload is saved, rather 
+                    // than by reading the saved file again; and the file size 
+                    // is checked on the way, before we do anything else - 
+                    // note that "no size limit set" = "unlimited")
+                    // (the storage quota is checked once we know whether 
+                    // this is a zip file: if so, it's the unpacked files that
+                    // count against it, rather than the upload)
+                    uploadCheckSum = FileUtil.copyAndCalculateChecksum(inputStream, tempFile, newCheckSumType, fileSizeLimit, null);
                 } catch (IOException ioex) {
                     throw new CommandExecutionException("Failed to save the upload as a temp file (temp disk space?)", ioex, this);
+                } catch (FileExceedsMaxSizeException | FileExceedsStorageQuotaException ex) {
+                    // (the temp file is removed)
+                    throw new CommandExecutionException(ex.getMessage(), ex, this);
                 }
 
-                // A file size check, before we do anything else:
-                // (note that "no size limit set" = "unlimited")
-                // (also note, that if this is a zip file, we'll be checking
-                // the size limit for each of the individual unpacked files)
                 fileSize = tempFile.toFile().length();
-                if (fileSizeLimit != null && fileSize > fileSizeLimit) {
-                    try {
-                        tempFile.toFile().delete();
-                    } catch (Exception ex) {
-                        // ignore - but log a warning
-                        logger.warning("Could not remove temp file " + tempFile.getFileName());
-                    }
-                    throw new CommandExecutionException(MessageFormat.format(BundleUtil.getStringFromBundle("file.addreplace.error.file_exceeds_limit"), bytesToHumanReadable(fileSize), bytesToHumanReadable(fileSizeLimit)), this);
-                }
 
             } else {
                 throw new CommandExecutionException("Temp directory is not configured.", this);
@@ -261,8 +267,6 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
             } else if (finalType.equals("application/zip")) {
 
                 ZipFile zipFile = null;
-                ZipInputStream unZippedIn = null;
-                ZipEntry zipEntry = null;
 
                 int fileNumberLimit = ctxt.systemConfig().getZipUploadFilesLimit();
                 Long combinedUnzippedFileSize = 0L;
@@ -314,6 +318,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                      */
 
                     int numberOfUnpackableFiles = 0; 
+                    List<ZipEntry> entriesToUnpack = new ArrayList<>();
                      
                     /**
                      * Note that we can't just use zipFile.size(),
@@ -332,6 +337,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                             // created for a MacOS X filesystem element: (these
                             // start with "._") 
                             if (!shortName.startsWith("._") && !shortName.startsWith(".DS_Store") && !"".equals(shortName)) {
+                                entriesToUnpack.add(entry);
                                 numberOfUnpackableFiles++;
                                 if (numberOfUnpackableFiles > fileNumberLimit) {
                                     logger.warning("Zip upload - too many files in the zip to process individually.");
@@ -367,112 +373,54 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                     
                     // OK we're still here - that means we can proceed unzipping. 
                     
-                    // Close the ZipFile, re-open as ZipInputStream: 
-                    zipFile.close(); 
+                    // The entries are unpacked (and checksummed, and their types
+                    // determined) several at once, straight from the ZipFile; 
+                    // the DataFiles are then created in the order of the entries:
+                    // (the sizes recorded in the zip file are only what it 
+                    // claims: the actual bytes are counted against the limits
+                    // as they are unpacked)
+                    List<UnzippedEntry> unzippedEntries = unzipEntries(ctxt.managedExecutor(), zipFile, entriesToUnpack, ctxt.systemConfig().getFileFixityChecksumAlgorithm(), 
+                            fileSizeLimit, storageQuotaLimit != null ? new AtomicLong(storageQuotaLimit) : null);
                     // reset:
                     combinedUnzippedFileSize = 0L;
 
-                    if (charset != null) {
-                        unZippedIn = new ZipInputStream(new FileInputStream(tempFile.toFile()), charset);
-                    } else {
-                        unZippedIn = new ZipInputStream(new FileInputStream(tempFile.toFile()));
-                    }
-
-                    while (true) {
-                        try {
-                            zipEntry = unZippedIn.getNextEntry();
-                        } catch (IllegalArgumentException iaex) {
-                            // Note:
-                            // ZipInputStream documentation doesn't even mention that
-                            // getNextEntry() throws an IllegalArgumentException!
-                            // but that's what happens if the file name of the next
-                            // entry is not valid in the current CharSet.
-                            // -- L.A.
-                            warningMessage = "Failed to unpack Zip file. (Unknown Character Set used in a file name?) Saving the file as is.";
-                            logger.warning(warningMessage);
-                            throw new IOException();
+                    for (UnzippedEntry unzippedEntry : unzippedEntries) {
+                        String fileEntryName = unzippedEntry.entry.getName();
+                        String shortName = unzippedEntry.shortName;
+                        logger.fine("ZipEntry, file: " + fileEntryName);
+
+                        // No need to check the size of this unpacked file against the size limit, 
+                        // since we've already checked for that in the first pass.
+
+                        DataFile datafile = FileUtil.createSingleDataFile(version, null, unzippedEntry.storageIdentifier, shortName,
+                                MIME_TYPE_UNDETERMINED_DEFAULT,
+                                ctxt.systemConfig().getFileFixityChecksumAlgorithm(), unzippedEntry.checksum, false);
+
+                        if (!fileEntryName.equals(shortName)) {
+                            // If the filename looks like a hierarchical folder name (i.e., contains slashes and backslashes),
+                            // we'll extract the directory name; then subject it to some "aggressive sanitizing" - strip all 
+                            // the leading, trailing and duplicate slashes; then replace all the characters that 
+                            // don't pass our validation rules.
+                            String directoryName = fileEntryName.replaceFirst("[\\\\/][\\\\/]*[^\\\\/]*$", "");
+                            directoryName = StringUtil.sanitizeFileDirectory(directoryName, true);
+                            // if (!"".equals(directoryName)) {
+                            if (!StringUtil.isEmpty(directoryName)) {
+                                logger.fine("setting the directory label to " + directoryName);
+                                datafile.getFileMetadata().setDirectoryLabel(directoryName);
+                            }
                         }
 
-                        if (zipEntry == null) {
-                            break;
-                        }
-                        // Note that some zip entries may be directories - we
-                        // simply skip them:
-
-                        if (!zipEntry.isDirectory()) {
-                            if (datafiles.size() > fileNumberLimit) {
-                                logger.warning("Zip upload - too many files.");
-                                warningMessage = "The number of files in the zip archive is over the limit (" + fileNumberLimit
-                                        + "); please upload a zip archive with fewer files, if you want them to be ingested "
-                                        + "as individual DataFiles.";
-                                throw new IOException();
+                        if (datafile != null) {
+                            // We have created this datafile with the mime type "unknown";
+                            // now we set the real type, determined once it was unpacked:
+                            recognizedType = unzippedEntry.recognizedType;
+                            if (recognizedType != null && !recognizedType.equals("")) {
+                                datafile.setContentType(recognizedType);
                             }
 
-                            String fileEntryName = zipEntry.getName();
-                            logger.fine("ZipEntry, file: " + fileEntryName);
-
-                            if (fileEntryName != null && !fileEntryName.equals("")) {
-
-                                String shortName = fileEntryName.replaceFirst("^.*[\\/]", "");
-
-                                // Check if it's a "fake" file - a zip archive entry
-                                // created for a MacOS X filesystem element: (these
-                                // start with "._")
-                                if (!shortName.startsWith("._") && !shortName.startsWith(".DS_Store") && !"".equals(shortName)) {
-                                    // OK, this seems like an OK file entry - we'll try
-                                    // to read it and create a DataFile with it:
-
-                                    String storageIdentifier = FileUtil.generateStorageIdentifier();
-                                    File unzippedFile = new File(getFilesTempDirectory() + "/" + storageIdentifier);
-                                    Files.copy(unZippedIn, unzippedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                                    // No need to check the size of this unpacked file against the size limit, 
-                                    // since we've already checked for that in the first pass.
-                                    
-                                    DataFile datafile = FileUtil.createSingleDataFile(version, null, storageIdentifier, shortName,
-                                            MIME_TYPE_UNDETERMINED_DEFAULT,
-                                            ctxt.systemConfig().getFileFixityChecksumAlgorithm(), null, false);
-                                    
-                                    if (!fileEntryName.equals(shortName)) {
-                                        // If the filename looks like a hierarchical folder name (i.e., contains slashes and backslashes),
-                                        // we'll extract the directory name; then subject it to some "aggressive sanitizing" - strip all 
-                                        // the leading, trailing and duplicate slashes; then replace all the characters that 
-                                        // don't pass our validation rules.
-                                        String directoryName = fileEntryName.replaceFirst("[\\\\/][\\\\/]*[^\\\\/]*$", "");
-                                        directoryName = StringUtil.sanitizeFileDirectory(directoryName, true);
-                                        // if (!"".equals(directoryName)) {
-                                        if (!StringUtil.isEmpty(directoryName)) {
-                                            logger.fine("setting the directory label to " + directoryName);
-                                            datafile.getFileMetadata().setDirectoryLabel(directoryName);
-                                        }
-                                    }
-
-                                    if (datafile != null) {
-                                        // We have created this datafile with the mime type "unknown";
-                                        // Now that we have it saved in a temporary location,
-                                        // let's try and determine its real type:
-
-                                        String tempFileName = getFilesTempDirectory() + "/" + datafile.getStorageIdentifier();
-
-                                        try {
-                                            recognizedType = determineFileType(unzippedFile, shortName);
-                                            // null the File explicitly, to release any open FDs:
-                                            unzippedFile = null;
-                                            logger.fine("File utility recognized unzipped file as " + recognizedType);
-                                            if (recognizedType != null && !recognizedType.equals("")) {
-                                                datafile.setContentType(recognizedType);
-                                            }
-                                        } catch (Exception ex) {
-                                            logger.warning("Failed to run the file utility mime type check on file " + fileName);
-                                        }
-
-                                        datafiles.add(datafile);
-                                        combinedUnzippedFileSize += datafile.getFilesize();
-                                    }
-                                }
-                            }
+                            datafiles.add(datafile);
+                            combinedUnzippedFileSize += datafile.getFilesize();
                         }
-                        unZippedIn.closeEntry();
-
                     }
 
                 } catch (IOException ioex) {
@@ -489,6 +437,9 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                     logger.warning("One of the unzipped files exceeds the size limit; resorting to saving the file as is. " + femsx.getMessage());
                     warningMessage =  BundleUtil.getStringFromBundle("file.addreplace.warning.unzip.failed.size", Arrays.asList(FileSizeChecker.bytesToHumanReadable(fileSizeLimit)));
                     datafiles.clear();
+                } catch (FileExceedsStorageQuotaException fesqx) {
+                    // (as when the sizes in the zip file are over the quota)
+                    throw new CommandExecutionException(MessageFormat.format(BundleUtil.getStringFromBundle("file.addreplace.error.unzipped.quota_exceeded"), bytesToHumanReadable(storageQuotaLimit)), fesqx, this);
                 } /*catch (FileExceedsStorageQuotaException fesqx) {
                     //logger.warning("One of the unzipped files exceeds the storage quota limit; resorting to saving the file as is. " + fesqx.getMessage());
                     //warningMessage =  BundleUtil.getStringFromBundle("file.addreplace.warning.unzip.failed.quota", Arrays.asList(FileSizeChecker.bytesToHumanReadable(storageQuotaLimit)));
@@ -500,11 +451,6 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
                             zipFile.close();
                         } catch (Exception zEx) {}
                     }
-                    if (unZippedIn != null) {
-                        try {
-                            unZippedIn.close();
-                        } catch (Exception zEx) {}
-                    }
                 }
                 if (!datafiles.isEmpty()) {
                     // remove the uploaded zip file:
@@ -699,7 +645,7 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
             throw new CommandExecutionException(MessageFormat.format(BundleUtil.getStringFromBundle("file.addreplace.error.quota_exceeded"), bytesToHumanReadable(fileSize), bytesToHumanReadable(storageQuotaLimit)), this);
         } 
         
-        DataFile datafile = FileUtil.createSingleDataFile(version, newFile, newStorageIdentifier, fileName, finalType, newCheckSumType, newCheckSum);
+        DataFile datafile = FileUtil.createSingleDataFile(version, newFile, newStorageIdentifier, fileName, finalType, newCheckSumType, newCheckSum != null ? newCheckSum : uploadCheckSum);
 
         if (datafile != null) {
 
@@ -731,6 +677,242 @@ public class CreateNewDataFilesCommand extends AbstractCommand<CreateDataFileRes
         return CreateDataFileResult.error(fileName, finalType);
     }   // end createDataFiles
     
+    /**
+     * An entry of an uploaded zip, unpacked into the temp directory.
+     */
+    static class UnzippedEntry {
+        ZipEntry entry;
+        String shortName;
+        String storageIdentifier;
+        String checksum;
+        String recognizedType;
+    }
+
+    /**
+     * Unpacks one entry into the temp file with the given storage identifier.
+     */
+    @FunctionalInterface
+    interface EntryUnzipper {
+        UnzippedEntry unzip(ZipEntry entry, String storageIdentifier) throws IOException, FileExceedsMaxSizeException, FileExceedsStorageQuotaException;
+    }
+
+    /**
+     * The temp files of the entries of one zip unpacked so far. Once the
+     * unpacking is aborted, the entries not started yet are skipped, and the
+     * ones still being unpacked remove their own files as they complete.
+     */
+    private static class UnzippedFiles {
+        private final List<String> storageIdentifiers = new ArrayList<>();
+        private boolean aborted = false;
+
+        synchronized boolean isAborted() {
+            return aborted;
+        }
+
+        /**
+         * @return false (and the file is removed) if aborted
+         */
+        synchronized boolean add(String storageIdentifier) {
+            if (aborted) {
+                deleteTempFile(storageIdentifier);
+                return false;
+            }
+            storageIdentifiers.add(storageIdentifier);
+            return true;
+        }
+
+        /**
+         * Removes the files unpacked so far.
+         */
+        synchronized void abort() {
+            aborted = true;
+            for (String storageIdentifier : storageIdentifiers) {
+                deleteTempFile(storageIdentifier);
+            }
+            storageIdentifiers.clear();
+        }
+    }
+
+    // How long a failed unpacking waits for the entries still being unpacked:
+    private static final long UNZIP_ABORT_TIMEOUT_MS = 60000L;
+
+    // The turns to unpack an entry, shared by all the uploads: no more than
+    // that many entries are unpacked at once, on the threads of the container
+    private static volatile Semaphore unzipTurns;
+
+    private static Semaphore getUnzipTurns() {
+        Semaphore turns = unzipTurns;
+        if (turns == null) {
+            synchronized (CreateNewDataFilesCommand.class) {
+                turns = unzipTurns;
+                if (turns == null) {
+                    turns = new Semaphore(Math.max(1, JvmSettings.ZIP_UPLOAD_THREADS.lookupOptional(Integer.class).orElse(4)));
+                    unzipTurns = turns;
+                }
+            }
+        }
+        return turns;
+    }
+
+    /**
+     * Unpacks the entries into temp files, calculating their checksums and
+     * determining their types, several at once; as the entries are read from
+     * the ZipFile directly, rather than one after the other from a
+     * ZipInputStream. They are unpacked on the executor of the container, up
+     * to {@code dataverse.files.zip-upload-threads} at once, for all the
+     * uploads together.
+     *
+     * @param fileSizeLimit the size limit of each of the files; null for none
+     * @param storageQuotaRemaining the storage quota remaining for all of
+     *        them; null for none
+     * @return the unpacked entries, in the order given
+     * @throws IOException if any of the entries could not be unpacked (the
+     *         ones that were are removed)
+     * @throws FileExceedsMaxSizeException if any of the files is over the
+     *         size limit
+     * @throws FileExceedsStorageQuotaException if the files are over the
+     *         storage quota
+     */
+    private List<UnzippedEntry> unzipEntries(ExecutorService executor, ZipFile zipFile, List<ZipEntry> entries, DataFile.ChecksumType checksumType, Long fileSizeLimit, AtomicLong storageQuotaRemaining) 
+            throws IOException, FileExceedsMaxSizeException, FileExceedsStorageQuotaException {
+        return unzipEntries(executor, getUnzipTurns(), entries,
+                (entry, storageIdentifier) -> unzipEntry(zipFile, entry, storageIdentifier, checksumType, fileSizeLimit, storageQuotaRemaining),
+                UNZIP_ABORT_TIMEOUT_MS);
+    }
+
+    /**
+     * Unpacks the entries on the given executor, each one once it gets one
+     * of the turns: the calling thread waits for a turn before submitting
+     * the next entry, so that the threads of the executor are never kept
+     * waiting; and the turn is given back as the entry is done.
+     *
+     * @param turns the turns, shared by all the uploads
+     * @param abortTimeoutMs if an entry fails, how long to wait for the ones
+     *        still being unpacked; those that take longer remove their files
+     *        themselves, once done
+     * @return the unpacked entries, in the order given
+     * @throws IOException if any of the entries could not be unpacked (the
+     *         ones that were are removed)
+     * @throws FileExceedsMaxSizeException if any of the files is over the
+     *         size limit (the ones unpacked are removed)
+     * @throws FileExceedsStorageQuotaException if the files are over the
+     *         storage quota (the ones unpacked are removed)
+     */
+    static List<UnzippedEntry> unzipEntries(ExecutorService executor, Semaphore turns, List<ZipEntry> entries, EntryUnzipper unzipper, long abortTimeoutMs) 
+            throws IOException, FileExceedsMaxSizeException, FileExceedsStorageQuotaException {
+        if (entries.isEmpty()) {
+            return new ArrayList<>();
+        }
+        UnzippedFiles unzippedFiles = new UnzippedFiles();
+        // (taken as they complete, so that a failure is noticed right away)
+        CompletionService<UnzippedEntry> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<UnzippedEntry>, Integer> positions = new HashMap<>();
+        UnzippedEntry[] unzippedEntries = new UnzippedEntry[entries.size()];
+        int completed = 0;
+        try {
+            for (ZipEntry entry : entries) {
+                turns.acquire();
+                try {
+                    positions.put(completionService.submit(() -> {
+                        try {
+                            return unzipUnlessAborted(unzippedFiles, entry, unzipper);
+                        } finally {
+                            turns.release();
+                        }
+                    }), positions.size());
+                } catch (RejectedExecutionException ree) {
+                    turns.release();
+                    throw ree;
+                }
+                // (the ones done meanwhile)
+                for (Future<UnzippedEntry> future; (future = completionService.poll()) != null; completed++) {
+                    unzippedEntries[positions.get(future)] = future.get();
+                }
+            }
+            for (; completed < entries.size(); completed++) {
+                Future<UnzippedEntry> future = completionService.take();
+                unzippedEntries[positions.get(future)] = future.get();
+            }
+            return new ArrayList<>(Arrays.asList(unzippedEntries));
+        } catch (InterruptedException | ExecutionException | RejectedExecutionException ex) {
+            // (the entries not started yet are skipped; the ones completing
+            // from now on remove their own files)
+            unzippedFiles.abort();
+            boolean interrupted = ex instanceof InterruptedException;
+            if (ex instanceof ExecutionException) {
+                // (the one that failed)
+                completed++;
+            }
+            long deadline = System.currentTimeMillis() + abortTimeoutMs;
+            try {
+                for (; completed < positions.size(); completed++) {
+                    if (completionService.poll(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS) == null) {
+                        logger.warning((positions.size() - completed) + " entries of the zip file still being unpacked; their files will be removed once they are done");
+                        break;
+                    }
+                }
+            } catch (InterruptedException iex) {
+                interrupted = true;
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (ex.getCause() instanceof FileExceedsMaxSizeException) {
+                throw (FileExceedsMaxSizeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof FileExceedsStorageQuotaException) {
+                throw (FileExceedsStorageQuotaException) ex.getCause();
+            }
+            throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException("Failed to unpack the zip file", ex);
+        }
+    }
+
+    private static UnzippedEntry unzipUnlessAborted(UnzippedFiles unzippedFiles, ZipEntry entry, EntryUnzipper unzipper) throws Exception {
+        if (unzippedFiles.isAborted()) {
+            return null;
+        }
+        String storageIdentifier = FileUtil.generateStorageIdentifier();
+        UnzippedEntry unzippedEntry;
+        try {
+            unzippedEntry = unzipper.unzip(entry, storageIdentifier);
+        } catch (Exception | Error e) {
+            deleteTempFile(storageIdentifier);
+            throw e;
+        }
+        return unzippedFiles.add(storageIdentifier) ? unzippedEntry : null;
+    }
+
+    private static void deleteTempFile(String storageIdentifier) {
+        try {
+            Files.deleteIfExists(Paths.get(getFilesTempDirectory(), storageIdentifier));
+        } catch (IOException e) {
+            // do nothing - it's just a temp file.
+            logger.warning("Could not remove temp file " + storageIdentifier);
+        }
+    }
+
+    private static UnzippedEntry unzipEntry(ZipFile zipFile, ZipEntry entry, String storageIdentifier, DataFile.ChecksumType checksumType, Long fileSizeLimit, AtomicLong storageQuotaRemaining) 
+            throws IOException, FileExceedsMaxSizeException, FileExceedsStorageQuotaException {
+        UnzippedEntry unzippedEntry = new UnzippedEntry();
+        unzippedEntry.entry = entry;
+        unzippedEntry.shortName = entry.getName().replaceFirst("^.*[\\/]", "");
+        unzippedEntry.storageIdentifier = storageIdentifier;
+        File unzippedFile = new File(getFilesTempDirectory() + "/" + unzippedEntry.storageIdentifier);
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            unzippedEntry.checksum = FileUtil.copyAndCalculateChecksum(in, unzippedFile.toPath(), checksumType, fileSizeLimit, storageQuotaRemaining);
+        } catch (IOException ioex) {
+            unzippedFile.delete();
+            throw ioex;
+        }
+        try {
+            unzippedEntry.recognizedType = determineFileType(unzippedFile, unzippedEntry.shortName);
+            logger.fine("File utility recognized unzipped file as " + unzippedEntry.recognizedType);
+        } catch (Exception ex) {
+            logger.warning("Failed to run the file utility mime type check on file " + entry.getName());
+        }
+        return unzippedEntry;
+    }
+
     @Override
     public Map<String, Set<Permission>> getRequiredPermissions() {
         Map<String, Set<Permission>> ret = new HashMap<>();
@@ -27,7 +27,10 @@ import edu.harvard.iq.dataverse.workflow.WorkflowContext.TriggerType;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import edu.harvard.iq.dataverse.GlobalIdServiceBean;
@@ -35,7 +38,13 @@ import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.engine.command.Command;
 import edu.harvard.iq.dataverse.util.FileUtil;
+import edu.harvard.iq.dataverse.pidproviders.PidBatchExecutor;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import org.apache.solr.client.solrj.SolrServerException;
 
@@ -62,6 +71,8 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
     
     public static final String FILE_VALIDATION_ERROR = "FILE VALIDATION ERROR";
     
+    private static final long PROGRESS_INTERVAL_MS = 5000L;
+    
     public FinalizeDatasetPublicationCommand(Dataset aDataset, DataverseRequest aRequest) {
         this( aDataset, aRequest, false );
     }
@@ -342,21 +353,34 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
 
             long datasetSize = DatasetUtil.getDownloadSizeNumeric(dataset.getLatestVersion(), false);
             if (maxDatasetSize == -1 || datasetSize < maxDatasetSize) {
+                // All the files are validated on every major release; unless 
+                // only the new ones are to be (the files added since the last 
+                // published version), or a maximum age is configured: then the 
+                // files that were published before, and validated since, are 
+                // skipped. 
+                boolean newFilesOnly = JvmSettings.FILES_VALIDATION_NEW_FILES_ONLY.lookupOptional(Boolean.class).orElse(false);
+                int maxAgeDays = JvmSettings.FILES_VALIDATION_MAX_AGE.lookupOptional(Integer.class).orElse(-1);
+                long validatedSince = maxAgeDays < 0 ? Long.MAX_VALUE : System.currentTimeMillis() - maxAgeDays * 24L * 3600L * 1000L;
+                
+                List<DataFile> dataFilesToValidate = new ArrayList<>();
                 for (DataFile dataFile : dataset.getFiles()) {
-                    // TODO: Should we validate all the files in the dataset, or only
-                    // the files that haven't been published previously?
-                    // (the decision was made to validate all the files on every
-                    // major release; we can revisit the decision if there's any
-                    // indication that this makes publishing take significantly longer.
                     String driverId = FileUtil.getStorageDriver(dataFile);
                     if(StorageIO.isDataverseAccessible(driverId) && maxFileSize == -1 || dataFile.getFilesize() < maxFileSize) {
-                        FileUtil.validateDataFileChecksum(dataFile);
+                        Timestamp validationTime = dataFile.getChecksumValidationTime();
+                        if (dataFile.isReleased() && newFilesOnly) {
+                            logger.fine("Checksum Validation skipped for this datafile: " + dataFile.getId() + ", published before");
+                        } else if (dataFile.isReleased() && validationTime != null && validationTime.getTime() >= validatedSince) {
+                            logger.fine("Checksum Validation skipped for this datafile: " + dataFile.getId() + ", last validated on " + validationTime);
+                        } else {
+                            dataFilesToValidate.add(dataFile);
+                        }
                     }
                     else {
                         String message = "Checksum Validation skipped for this datafile: " + dataFile.getId() + ", because of the size of the datafile limit (set to " + maxFileSize + " ); ";
                         logger.info(message);
                     }
                 }
+                validateDataFileChecksums(dataset, dataFilesToValidate, ctxt);
             }
             else {
                 String message = "Checksum Validation skipped for this dataset: " + dataset.getId() + ", because of the size of the dataset limit (set to " + maxDatasetSize + " ); ";
@@ -383,6 +407,149 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
         }
     }
     
+    /**
+     * Verifies the checksums of the files on the threads of the container, 
+     * up to {@code dataverse.files.validation.threads} at once, as reading the 
+     * files from remote storage takes most of the time; and shows the progress 
+     * on the finalizePublication lock of the dataset, every few seconds.
+     * 
+     * @throws ExecutionException (caused by an IOException) if any of the
+     *         files can't be validated
+     */
+    private void validateDataFileChecksums(Dataset dataset, List<DataFile> dataFiles, CommandContext ctxt) throws InterruptedException, ExecutionException {
+        if (dataFiles.isEmpty()) {
+            return;
+        }
+        int threads = Math.max(1, Math.min(dataFiles.size(), JvmSettings.FILES_VALIDATION_THREADS.lookupOptional(Integer.class).orElse(4)));
+        DatasetLock lock = dataset.getLockFor(DatasetLock.Reason.finalizePublication);
+        String lockInfo = lock == null ? null : lock.getInfo();
+        boolean progressShown = false;
+        
+        for (DataFile dataFile : dataFiles) {
+            // (the relationships the validation needs are loaded here, 
+            // rather than lazily by the threads of the executor)
+            dataFile.getOwner();
+            dataFile.isTabularData();
+            dataFile.getIngestReport();
+        }
+        
+        // (the executor is shared with the rest of the application: the next 
+        // file is only submitted as one is done, so that no more than the 
+        // configured number are read at once)
+        CompletionService<DataFile> completionService = new ExecutorCompletionService<>(ctxt.managedExecutor());
+        List<Future<DataFile>> submitted = new ArrayList<>();
+        try {
+            for (DataFile dataFile : dataFiles.subList(0, threads)) {
+                submitted.add(completionService.submit(() -> validateDataFileChecksum(dataFile)));
+            }
+            
+            long nextProgress = System.currentTimeMillis() + PROGRESS_INTERVAL_MS;
+            for (int validated = 1; validated <= dataFiles.size(); validated++) {
+                DataFile dataFile = completionService.take().get();
+                if (submitted.size() < dataFiles.size()) {
+                    DataFile next = dataFiles.get(submitted.size());
+                    submitted.add(completionService.submit(() -> validateDataFileChecksum(next)));
+                }
+                dataFile.setChecksumValidationTime(new Timestamp(System.currentTimeMillis()));
+                if (lock != null && System.currentTimeMillis() >= nextProgress) {
+                    lock.setInfo(BundleUtil.getStringFromBundle("dataset.publish.file.validation.progress",
+                            Arrays.asList(String.valueOf(validated), String.valueOf(dataFiles.size()))));
+                    ctxt.datasets().updateDatasetLock(lock);
+                    progressShown = true;
+                    nextProgress = System.currentTimeMillis() + PROGRESS_INTERVAL_MS;
+                }
+            }
+        } finally {
+            // (on failure, the files still being read are abandoned)
+            for (Future<DataFile> future : submitted) {
+                future.cancel(true);
+            }
+            if (progressShown) {
+                lock.setInfo(lockInfo);
+                ctxt.datasets().updateDatasetLock(lock);
+            }
+        }
+    }
+    
+    private static DataFile validateDataFileChecksum(DataFile dataFile) throws IOException {
+        FileUtil.validateDataFileChecksum(dataFile);
+        return dataFile;
+    }
+    
+    /**
+     * Publicizes the identifiers of all the files; several at once (see
+     * {@link PidBatchExecutor}), and showing the progress on the 
+     * finalizePublication lock of the dataset, every few seconds.
+     * 
+     * The calls to the provider are made on the threads of the container
+     * (see {@link edu.harvard.iq.dataverse.DatasetServiceBean#getPidBatchExecutor()}),
+     * each file in a transaction of its own, where it is looked up by id (see
+     * {@link edu.harvard.iq.dataverse.DatasetServiceBean#publicizeDataFileIdentifier(Long, Long, Timestamp)}),
+     * which records that it has been publicized; so that, if the publication 
+     * fails, the files done are not publicized again when it is attempted 
+     * again. The files of this transaction are updated on this thread. The 
+     * files that don't have an identifier yet get one from the provider as it 
+     * is publicized: that is done on this thread, so that the identifier is 
+     * saved with the publication.
+     * 
+     * @throws Exception if the identifier of any of the files could not be
+     *         publicized
+     */
+    private void publicizeDataFileIdentifiers(Dataset dataset, GlobalIdServiceBean idServiceBean, CommandContext ctxt) throws Exception {
+        Long versionId = dataset.getLatestVersion().getId();
+        Map<Long, DataFile> dataFiles = new LinkedHashMap<>();
+        Map<Long, Timestamp> publicationDates = new HashMap<>();
+        int failed = 0;
+        for (DataFile df : dataset.getFiles()) {
+            if (df.getIdentifier() != null && !df.getIdentifier().isEmpty() && df.getId() != null && versionId != null) {
+                dataFiles.put(df.getId(), df);
+                publicationDates.put(df.getId(), df.getPublicationDate());
+            } else {
+                logger.log(Level.FINE, "registering global id for file {0}", df.getId());
+                //A false return value indicates a failure in calling the service
+                if (idServiceBean.publicizeIdentifier(df)) {
+                    df.setGlobalIdCreateTime(getTimestamp());
+                    df.setIdentifierRegistered(true);
+                } else {
+                    failed++;
+                }
+            }
+        }
+        DatasetLock lock = dataset.getLockFor(DatasetLock.Reason.finalizePublication);
+        String lockInfo = lock == null ? null : lock.getInfo();
+        int[] publicized = {0};
+        boolean[] progressShown = {false};
+        long[] nextProgress = {System.currentTimeMillis() + PROGRESS_INTERVAL_MS};
+        
+        try {
+            // (only the ids, and what they send that isn't saved yet, are 
+            // passed on to the threads of the executor)
+            failed += ctxt.datasets().getPidBatchExecutor().run(new ArrayList<>(dataFiles.keySet()), 
+                    dfId -> ctxt.datasets().publicizeDataFileIdentifier(dfId, versionId, publicationDates.get(dfId)), 
+                    dfId -> {
+                DataFile df = dataFiles.get(dfId);
+                df.setGlobalIdCreateTime(getTimestamp());
+                df.setIdentifierRegistered(true);
+                publicized[0]++;
+                if (lock != null && System.currentTimeMillis() >= nextProgress[0]) {
+                    lock.setInfo(BundleUtil.getStringFromBundle("dataset.publish.file.pid.progress",
+                            Arrays.asList(String.valueOf(publicized[0]), String.valueOf(dataFiles.size()))));
+                    ctxt.datasets().updateDatasetLock(lock);
+                    progressShown[0] = true;
+                    nextProgress[0] = System.currentTimeMillis() + PROGRESS_INTERVAL_MS;
+                }
+            }).size();
+        } finally {
+            if (progressShown[0]) {
+                lock.setInfo(lockInfo);
+                ctxt.datasets().updateDatasetLock(lock);
+            }
+        }
+        if (failed > 0) {
+            throw new Exception("Failed to publicize the identifiers of " + failed + " file(s)");
+        }
+    }
+    
     private void publicizeExternalIdentifier(Dataset dataset, CommandContext ctxt) throws CommandException {
         String protocol = getDataset().getProtocol();
         String authority = getDataset().getAuthority();
@@ -390,6 +557,7 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
  
         if (idServiceBean != null) {
             
+            boolean filesPublicized = false;
             try {
                 String currentGlobalIdProtocol = ctxt.settings().getValueForKey(SettingsServiceBean.Key.Protocol, "");
                 String currentGlobalAuthority = ctxt.settings().getValueForKey(SettingsServiceBean.Key.Authority, "");
@@ -409,22 +577,18 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
                         && isFilePIDsEnabled
                         && dataset.getLatestVersion().getMinorVersionNumber() != null
                         && dataset.getLatestVersion().getMinorVersionNumber().equals((long) 0)) {
-                    //A false return value indicates a failure in calling the service
-                    for (DataFile df : dataset.getFiles()) {
-                        logger.log(Level.FINE, "registering global id for file {0}", df.getId());
-                        //A false return value indicates a failure in calling the service
-                        if (!idServiceBean.publicizeIdentifier(df)) {
-                            throw new Exception();
-                        }
-                        df.setGlobalIdCreateTime(getTimestamp());
-                        df.setIdentifierRegistered(true);
-                    }
+                    publicizeDataFileIdentifiers(dataset, idServiceBean, ctxt);
+                    filesPublicized = true;
                 }
                 if (!idServiceBean.publicizeIdentifier(dataset)) {
                     throw new Exception();
                 }
                 dataset.setGlobalIdCreateTime(new Date()); // TODO these two methods should be in the responsibility of the idServiceBean.
                 dataset.setIdentifierRegistered(true);
+                if (filesPublicized) {
+                    // (the files are all publicized, as part of this publication)
+                    ctxt.datasets().removeDataFilePidPublications(dataset.getLatestVersion().getId());
+                }
             } catch (Throwable e) {
                 logger.warning("Failed to register the identifier "+dataset.getGlobalId().asString()+", or to register a file in the dataset; notifying the user(s), unlocking the dataset");
                 
@@ -9,6 +9,7 @@ import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetLinkingDataverse;
 import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.Guestbook;
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.engine.command.AbstractVoidCommand;
@@ -140,6 +141,7 @@ public class MoveDatasetCommand extends AbstractVoidCommand {
         // OK, move
         moved.setOwner(destination);
         ctxt.em().merge(moved);
+        PermissionCache.invalidateWithTransaction();
 
         boolean doNormalSolrDocCleanUp = true;
         ctxt.index().asyncIndexDataset(moved, doNormalSolrDocCleanUp);
@@ -7,6 +7,7 @@ import edu.harvard.iq.dataverse.DataverseFeaturedDataverse;
 import edu.harvard.iq.dataverse.DataverseLinkingDataverse;
 import edu.harvard.iq.dataverse.Guestbook;
 import edu.harvard.iq.dataverse.MetadataBlock;
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.Template;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
@@ -291,6 +292,7 @@ public class MoveDataverseCommand extends AbstractVoidCommand {
         // OK, move
         moved.setOwner(destination);
         ctxt.dataverses().save(moved);
+        PermissionCache.invalidateWithTransaction();
         
         long moveDvEnd = System.currentTimeMillis();
         logger.info("Dataverse move took " + (moveDvEnd - moveDvStart) + " milliseconds");
@@ -1,6 +1,7 @@
 package edu.harvard.iq.dataverse.engine.command.impl;
 
 import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.engine.command.AbstractCommand;
 import edu.harvard.iq.dataverse.engine.command.CommandContext;
@@ -33,6 +34,7 @@ public class UpdatePermissionRootCommand extends AbstractCommand<Dataverse> {
 
         } else {
 			dvoc.setPermissionRoot(newValue);
+            PermissionCache.invalidateWithTransaction();
             return ctxt.dataverses().save(dvoc);
 		}
 	}
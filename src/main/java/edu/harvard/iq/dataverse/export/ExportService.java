@@ -136,54 +136,15 @@ public class ExportService {
         // The DDI export is limited for restricted and actively embargoed files (no
         // data/file description sections).and when an embargo ends, we need to refresh
         // this export.
-        boolean clearCachedExport = false;
-        if (formatName.equals(DDIExporter.PROVIDER_NAME) && (exportInputStream != null)) {
-            // We want ddi and there was a cached version
-            LocalDate exportLocalDate = null;
-            Date lastExportDate = dataset.getLastExportTime();
-            // if lastExportDate == null, assume it's not set because were exporting for the
-            // first time now (e.g. during publish) and therefore no changes are needed
-            if (lastExportDate != null) {
-                exportLocalDate = lastExportDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-                logger.fine("Last export date: " + exportLocalDate.toString());
-                // Track which embargoes we've already checked
-                Set<Long> embargoIds = new HashSet<Long>();
-                // Check for all files in the latest released version
-                for (FileMetadata fm : dataset.getLatestVersionForCopy().getFileMetadatas()) {
-                    // ToDo? This loop is necessary because we have not stored the date when the
-                    // next embargo in this datasetversion will end. If we knew that (another
-                    // dataset/datasetversion column), we could make
-                    // one check that nextembargoEnd exists and is after the last export and before
-                    // now versus scanning through files until we potentially find such an embargo.
-                    Embargo e = fm.getDataFile().getEmbargo();
-                    if (e != null) {
-                        logger.fine("Datafile:  " + fm.getDataFile().getId());
-                        logger.fine("Embargo end date: " + e.getFormattedDateAvailable());
-                    }
-                    if (e != null && !embargoIds.contains(e.getId()) && e.getDateAvailable().isAfter(exportLocalDate)
-                            && e.getDateAvailable().isBefore(LocalDate.now())) {
-                        logger.fine("Request that the ddi export be cleared.");
-                        // The file has been embargoed and the embargo ended after the last export and
-                        // before the current date, so we need to remove the cached DDI export and make
-                        // it refresh
-                        clearCachedExport = true;
-                        break;
-                    } else if (e != null) {
-                        logger.fine("adding embargo to checked list: " + e.getId());
-                        embargoIds.add(e.getId());
-                    }
-                }
-            }
-            if (clearCachedExport) {
-                try {
-                    exportInputStream.close();
-                    clearCachedExport(dataset, formatName);
-                } catch (Exception ex) {
-                    logger.warning("Failure deleting DDI export format for dataset id: " + dataset.getId()
-                            + " after embargo expiration: " + ex.getLocalizedMessage());
-                } finally {
-                    exportInputStream = null;
-                }
+        if (exportInputStream != null && isCachedExportOutdated(dataset, formatName)) {
+            try {
+                exportInputStream.close();
+                clearCachedExport(dataset, formatName);
+            } catch (Exception ex) {
+                logger.warning("Failure deleting DDI export format for dataset id: " + dataset.getId()
+                        + " after embargo expiration: " + ex.getLocalizedMessage());
+            } finally {
+                exportInputStream = null;
             }
         }
 
@@ -207,6 +168,78 @@ public class ExportService {
 
     }
 
+    /**
+     * Makes sure that there is a current cached export of the dataset in this
+     * format, running the export if there isn't; like getExport(), but
+     * without opening it, for when it will only be read later.
+     */
+    public void prepareExport(Dataset dataset, String formatName) throws ExportException, IOException {
+        StorageIO<Dataset> dataAccess = DataAccess.getStorageIO(dataset);
+        String auxTag = "export_" + formatName + ".cached";
+
+        if (dataAccess.isAuxObjectCached(auxTag)) {
+            if (!isCachedExportOutdated(dataset, formatName)) {
+                return;
+            }
+            try {
+                clearCachedExport(dataset, formatName);
+            } catch (Exception ex) {
+                logger.warning("Failure deleting DDI export format for dataset id: " + dataset.getId()
+                        + " after embargo expiration: " + ex.getLocalizedMessage());
+            }
+        }
+
+        exportFormat(dataset, formatName);
+
+        if (!dataAccess.isAuxObjectCached(auxTag)) {
+            throw new ExportException("Failed to export the dataset as " + formatName);
+        }
+    }
+
+    // (the cached DDI export of the dataset leaves out the files embargoed
+    // when it was made; so it needs to be made again when one of these
+    // embargoes has ended since)
+    private boolean isCachedExportOutdated(Dataset dataset, String formatName) {
+        if (!formatName.equals(DDIExporter.PROVIDER_NAME)) {
+            return false;
+        }
+        LocalDate exportLocalDate = null;
+        Date lastExportDate = dataset.getLastExportTime();
+        // if lastExportDate == null, assume it's not set because were exporting for the
+        // first time now (e.g. during publish) and therefore no changes are needed
+        if (lastExportDate != null) {
+            exportLocalDate = lastExportDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+            logger.fine("Last export date: " + exportLocalDate.toString());
+            // Track which embargoes we've already checked
+            Set<Long> embargoIds = new HashSet<Long>();
+            // Check for all files in the latest released version
+            for (FileMetadata fm : dataset.getLatestVersionForCopy().getFileMetadatas()) {
+                // ToDo? This loop is necessary because we have not stored the date when the
+                // next embargo in this datasetversion will end. If we knew that (another
+                // dataset/datasetversion column), we could make
+                // one check that nextembargoEnd exists and is after the last export and before
+                // now versus scanning through files until we potentially find such an embargo.
+                Embargo e = fm.getDataFile().getEmbargo();
+                if (e != null) {
+                    logger.fine("Datafile:  " + fm.getDataFile().getId());
+                    logger.fine("Embargo end date: " + e.getFormattedDateAvailable());
+                }
+                if (e != null && !embargoIds.contains(e.getId()) && e.getDateAvailable().isAfter(exportLocalDate)
+                        && e.getDateAvailable().isBefore(LocalDate.now())) {
+                    logger.fine("Request that the ddi export be cleared.");
+                    // The file has been embargoed and the embargo ended after the last export and
+                    // before the current date, so we need to remove the cached DDI export and make
+                    // it refresh
+                    return true;
+                } else if (e != null) {
+                    logger.fine("adding embargo to checked list: " + e.getId());
+                    embargoIds.add(e.getId());
+                }
+            }
+        }
+        return false;
+    }
+
     public String getExportAsString(Dataset dataset, String formatName) {
         InputStream inputStream = null;
         InputStreamReader inp = null;
@@ -14,10 +14,17 @@ import edu.harvard.iq.dataverse.timer.DataverseTimerServiceBean;
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -27,6 +34,7 @@ import jakarta.ejb.EJB;
 import jakarta.ejb.EJBException;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.Timer;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.inject.Named;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -40,6 +48,7 @@ import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandler;
 import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandlerException;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.InputStream;
@@ -80,6 +89,9 @@ public class HarvesterServiceBean {
     EjbDataverseEngine engineService;
     @EJB
     IndexServiceBean indexService;
+    // (makes the GetRecord calls ahead of the imports)
+    @Resource
+    ManagedExecutorService managedExecutorService;
     
     private static final Logger logger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.client.HarvesterServiceBean");
     private static final SimpleDateFormat logFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss");
@@ -232,6 +244,13 @@ public class HarvesterServiceBean {
         // OAI (or remote Dataverse API) to obtain the metadata records 
         httpClient = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
         
+        // The GetRecord calls are made in the background, up to this many 
+        // records ahead of the one being imported; the imports themselves 
+        // are still done one at a time, in the order of the identifiers. 
+        int fetchAhead = Math.max(1, JvmSettings.HARVEST_GETRECORD_CONCURRENCY.lookupOptional(Integer.class).orElse(4));
+        ExecutorService fetchExecutor = fetchAhead > 1 ? managedExecutorService : null;
+        Deque<PendingRecord> pendingRecords = new ArrayDeque<>();
+        
         try {
             for (Iterator<Header> idIter = oaiHandler.runListIdentifiers(); idIter.hasNext();) {
                 // Before each iteration, check if this harvesting job needs to be aborted:
@@ -246,70 +265,174 @@ public class HarvesterServiceBean {
                 hdLogger.info("processing identifier: " + identifier + ", date: " + dateStamp);
                 
                 if (h.isDeleted()) {
-                    hdLogger.info("Deleting harvesting dataset for " + identifier + ", per ListIdentifiers.");
-
-                    deleteHarvestedDatasetIfExists(identifier, oaiHandler.getHarvestingClient().getDataverse(), dataverseRequest, deletedIdentifiers, hdLogger);
-                    continue;
+                    // (queued as well, so that it is deleted after any earlier
+                    // version of the record has been imported)
+                    pendingRecords.add(new PendingRecord(identifier, dateStamp, null));
+                } else {
+                    // Retrieve this record with a separate GetRecord call:
+                    pendingRecords.add(new PendingRecord(identifier, dateStamp, fetchRecord(fetchExecutor, hdLogger, oaiHandler, identifier, httpClient)));
                 }
-
-                MutableBoolean getRecordErrorOccurred = new MutableBoolean(false);
-
-                // Retrieve and process this record with a separate GetRecord call:
                 
-                Long datasetId = processRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, identifier, getRecordErrorOccurred, deletedIdentifiers, dateStamp, httpClient);
-                
-                if (datasetId != null) {
-                    harvestedDatasetIds.add(datasetId);
+                while (pendingRecords.size() >= fetchAhead) {
+                    processPendingRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, pendingRecords.poll(), failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
                 }
-                
-                if (getRecordErrorOccurred.booleanValue() == true) {
-                    failedIdentifiers.add(identifier);
-                    //can be uncommented out for testing failure handling:
-                    //throw new IOException("Exception occured, stopping harvest");
+            }
+            
+            while (!pendingRecords.isEmpty()) {
+                if (checkIfStoppingJob(harvestingClient)) {
+                    throw new StopHarvestException("Harvesting stopped by external request");
                 }
+                processPendingRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, pendingRecords.poll(), failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
             }
         } catch (OaiHandlerException e) {
             throw new IOException("Failed to run ListIdentifiers: " + e.getMessage());
+        } finally {
+            cancelPendingRecords(pendingRecords);
         }
 
         logCompletedOaiHarvest(hdLogger, harvestingClient);
 
-    }    
+    }
+    
+    /**
+     * A record listed by ListIdentifiers, waiting to be imported (or deleted, 
+     * if fetchedRecord is null) while its metadata is being retrieved. 
+     */
+    private static class PendingRecord {
+        final String identifier;
+        final Date dateStamp;
+        final Future<FetchedRecord> fetchedRecord;
+
+        PendingRecord(String identifier, Date dateStamp, Future<FetchedRecord> fetchedRecord) {
+            this.identifier = identifier;
+            this.dateStamp = dateStamp;
+            this.fetchedRecord = fetchedRecord;
+        }
+    }
     
-    private Long processRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, String identifier, MutableBoolean recordErrorOccurred, List<String> deletedIdentifiers, Date dateStamp, HttpClient httpClient) {
+    /**
+     * The outcome of a GetRecord call (or of a call to the remote Dataverse 
+     * API, for the proprietary metadata format). 
+     */
+    private static class FetchedRecord {
+        File tempFile = null;
         String errMessage = null;
-        Dataset harvestedDataset = null;
+        boolean deleted = false;
+    }
+    
+    private Future<FetchedRecord> fetchRecord(ExecutorService fetchExecutor, Logger hdLogger, OaiHandler oaiHandler, String identifier, HttpClient httpClient) {
+        Callable<FetchedRecord> fetch = () -> fetchRecord(hdLogger, oaiHandler, identifier, httpClient);
+        if (fetchExecutor != null) {
+            return fetchExecutor.submit(fetch);
+        }
+        FutureTask<FetchedRecord> task = new FutureTask<>(fetch);
+        task.run();
+        return task;
+    }
+    
+    /**
+     * Retrieves the metadata of the record into a temp file. Runs in the 
+     * fetch threads, so it must not use any EJBs or the entity manager. 
+     */
+    private FetchedRecord fetchRecord(Logger hdLogger, OaiHandler oaiHandler, String identifier, HttpClient httpClient) {
+        FetchedRecord fetched = new FetchedRecord();
         logGetRecord(hdLogger, oaiHandler, identifier);
-        File tempFile = null;
         
         try {
-            boolean deleted = false;
-            
             if (DATAVERSE_PROPRIETARY_METADATA_FORMAT.equals(oaiHandler.getMetadataPrefix())) {
                 // Make direct call to obtain the proprietary Dataverse metadata
                 // in JSON from the remote Dataverse server:
                 String metadataApiUrl = oaiHandler.getProprietaryDataverseMetadataURL(identifier);
                 logger.fine("calling "+metadataApiUrl);
-                tempFile = retrieveProprietaryDataverseMetadata(httpClient, metadataApiUrl);
+                fetched.tempFile = retrieveProprietaryDataverseMetadata(httpClient, metadataApiUrl);
                 
             } else {
                 FastGetRecord record = oaiHandler.runGetRecord(identifier, httpClient);
-                errMessage = record.getErrorMessage();
-                deleted = record.isDeleted();
-                tempFile = record.getMetadataFile();
+                fetched.errMessage = record.getErrorMessage();
+                fetched.deleted = record.isDeleted();
+                fetched.tempFile = record.getMetadataFile();
             }
+        } catch (Throwable e) {
+            logGetRecordException(hdLogger, oaiHandler, identifier, e);
+            fetched.errMessage = "Caught exception while executing GetRecord on "+identifier;
+        }
+        
+        return fetched;
+    }
+    
+    private void processPendingRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, PendingRecord pendingRecord, List<String> failedIdentifiers, List<String> deletedIdentifiers, List<Long> harvestedDatasetIds) {
+        if (pendingRecord.fetchedRecord == null) {
+            hdLogger.info("Deleting harvesting dataset for " + pendingRecord.identifier + ", per ListIdentifiers.");
+
+            deleteHarvestedDatasetIfExists(pendingRecord.identifier, oaiHandler.getHarvestingClient().getDataverse(), dataverseRequest, deletedIdentifiers, hdLogger);
+            return;
+        }
+        
+        MutableBoolean getRecordErrorOccurred = new MutableBoolean(false);
+
+        Long datasetId = processRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, pendingRecord.identifier, getRecordErrorOccurred, deletedIdentifiers, pendingRecord.dateStamp, getFetchedRecord(hdLogger, oaiHandler, pendingRecord));
 
+        if (datasetId != null) {
+            harvestedDatasetIds.add(datasetId);
+        }
+
+        if (getRecordErrorOccurred.booleanValue() == true) {
+            failedIdentifiers.add(pendingRecord.identifier);
+            //can be uncommented out for testing failure handling:
+            //throw new IOException("Exception occured, stopping harvest");
+        }
+    }
+    
+    private FetchedRecord getFetchedRecord(Logger hdLogger, OaiHandler oaiHandler, PendingRecord pendingRecord) {
+        try {
+            return pendingRecord.fetchedRecord.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            logGetRecordException(hdLogger, oaiHandler, pendingRecord.identifier, ie);
+        } catch (ExecutionException ee) {
+            logGetRecordException(hdLogger, oaiHandler, pendingRecord.identifier, ee.getCause());
+        }
+        FetchedRecord failed = new FetchedRecord();
+        failed.errMessage = "Caught exception while executing GetRecord on "+pendingRecord.identifier;
+        return failed;
+    }
+    
+    /**
+     * Stops the GetRecord calls still in progress (when the harvest has been 
+     * stopped, or has failed) and removes the metadata already retrieved. 
+     */
+    private void cancelPendingRecords(Deque<PendingRecord> pendingRecords) {
+        for (PendingRecord pendingRecord : pendingRecords) {
+            if (pendingRecord.fetchedRecord != null && !pendingRecord.fetchedRecord.cancel(true)) {
+                try {
+                    File tempFile = pendingRecord.fetchedRecord.get().tempFile;
+                    if (tempFile != null) {
+                        tempFile.delete();
+                    }
+                } catch (Throwable t) {
+                    // nothing to clean up
+                }
+            }
+        }
+        pendingRecords.clear();
+    }
+    
+    private Long processRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, String identifier, MutableBoolean recordErrorOccurred, List<String> deletedIdentifiers, Date dateStamp, FetchedRecord record) {
+        String errMessage = record.errMessage;
+        Dataset harvestedDataset = null;
+        File tempFile = record.tempFile;
+        
+        try {
             if (errMessage != null) {
                 hdLogger.log(Level.SEVERE, "Error calling GetRecord - " + errMessage);
                 
-            } else if (deleted) {
+            } else if (record.deleted) {
                 hdLogger.info("Deleting harvesting dataset for "+identifier+", per GetRecord.");
                 
                 deleteHarvestedDatasetIfExists(identifier, oaiHandler.getHarvestingClient().getDataverse(), dataverseRequest, deletedIdentifiers, hdLogger); 
             } else {
                 hdLogger.info("Successfully retrieved GetRecord response.");
 
-                PrintWriter cleanupLog;
                 harvestedDataset = importService.doImportHarvestedDataset(dataverseRequest, 
                         oaiHandler.getHarvestingClient(),
                         identifier,
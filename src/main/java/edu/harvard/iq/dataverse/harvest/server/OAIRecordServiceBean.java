@@ -310,10 +310,6 @@ public class OAIRecordServiceBean implements java.io.Serializable {
         return findOaiRecordsBySetName(setName, from, until, false);
     }
     
-    public List<OAIRecord> findOaiRecordsNotInThisSet(String setName, Instant from, Instant until) {
-        return findOaiRecordsBySetName(setName, from, until, true);
-    }
-    
     public List<OAIRecord> findOaiRecordsBySetName(String setName, Instant from, Instant until, boolean excludeSet) {
                 
         if (setName == null) {
@@ -356,6 +352,102 @@ public class OAIRecordServiceBean implements java.io.Serializable {
         }
     }
     
+    /**
+     * Looks up one page of the records in the set, in the same order as 
+     * findOaiRecordsBySetName() (by the global id; and by the database id, 
+     * for the records with the same global id). 
+     * 
+     * @param afterRecord the last record of the previous page; the page is 
+     *        looked up by this key, using the (setname, globalid) index, so 
+     *        that the cost of the query does not depend on how deep into the
+     *        set it is. If null, the offset is used instead.
+     * @param offset the number of records before the page, if the last 
+     *        record of the previous page is not known
+     * @param maxResults the size of the page
+     */
+    public List<OAIRecord> findOaiRecordsPageBySetName(String setName, Instant from, Instant until, OAIRecord afterRecord, int offset, int maxResults) {
+        if (setName == null) {
+            setName = "";
+        }
+        
+        String queryString = "SELECT object(h) from OAIRecord h where h.setName = :setName";
+        queryString += from != null ? " and h.lastUpdateTime >= :from" : "";
+        queryString += until != null ? " and h.lastUpdateTime<=:until" : "";
+        if (afterRecord != null) {
+            queryString += " and (h.globalId > :afterGlobalId or (h.globalId = :afterGlobalId and h.id > :afterId))";
+        }
+        queryString += " order by h.globalId, h.id";
+
+        logger.fine("Query: "+queryString);
+        
+        TypedQuery<OAIRecord> query = em.createQuery(queryString, OAIRecord.class);
+        query.setParameter("setName",setName); 
+        if (from != null) { 
+            query.setParameter("from",Date.from(from),TemporalType.TIMESTAMP); 
+        }
+        if (until != null) { 
+            query.setParameter("until",Date.from(until),TemporalType.TIMESTAMP); 
+        }
+        if (afterRecord != null) {
+            query.setParameter("afterGlobalId", afterRecord.getGlobalId());
+            query.setParameter("afterId", afterRecord.getId());
+        } else if (offset > 0) {
+            query.setFirstResult(offset);
+        }
+        query.setMaxResults(maxResults);
+        
+        return query.getResultList();
+    }
+    
+    public long countOaiRecordsBySetName(String setName, Instant from, Instant until) {
+        if (setName == null) {
+            setName = "";
+        }
+        
+        String queryString = "SELECT count(h) from OAIRecord h where h.setName = :setName";
+        queryString += from != null ? " and h.lastUpdateTime >= :from" : "";
+        queryString += until != null ? " and h.lastUpdateTime<=:until" : "";
+        
+        TypedQuery<Long> query = em.createQuery(queryString, Long.class);
+        query.setParameter("setName",setName); 
+        if (from != null) { 
+            query.setParameter("from",Date.from(from),TemporalType.TIMESTAMP); 
+        }
+        if (until != null) { 
+            query.setParameter("until",Date.from(until),TemporalType.TIMESTAMP); 
+        }
+        
+        return query.getSingleResult();
+    }
+    
+    /**
+     * Looks up the records with the global ids specified that are in the sets 
+     * other than the one specified; sorted by the global id. 
+     */
+    public List<OAIRecord> findOaiRecordsNotInThisSet(String setName, Instant from, Instant until, Collection<String> globalIds) {
+        if (setName == null) {
+            setName = "";
+        }
+        
+        String queryString = "SELECT object(h) from OAIRecord h where h.globalId in :globalIds"
+                + " and h.setName is not null and h.setName != '' and h.setName != :setName";
+        queryString += from != null ? " and h.lastUpdateTime >= :from" : "";
+        queryString += until != null ? " and h.lastUpdateTime<=:until" : "";
+        queryString += " order by h.globalId";
+        
+        TypedQuery<OAIRecord> query = em.createQuery(queryString, OAIRecord.class);
+        query.setParameter("globalIds", globalIds);
+        query.setParameter("setName",setName); 
+        if (from != null) { 
+            query.setParameter("from",Date.from(from),TemporalType.TIMESTAMP); 
+        }
+        if (until != null) { 
+            query.setParameter("until",Date.from(until),TemporalType.TIMESTAMP); 
+        }
+        
+        return query.getResultList();
+    }
+    
     // This method is to only get the records NOT marked as "deleted":
     public List<OAIRecord> findActiveOaiRecordsBySetName(String setName) {
         
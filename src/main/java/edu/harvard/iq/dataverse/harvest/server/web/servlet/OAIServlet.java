@@ -28,17 +28,20 @@ import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
 import edu.harvard.iq.dataverse.harvest.server.OAISetServiceBean;
 import edu.harvard.iq.dataverse.harvest.server.xoai.DataverseXoaiItemRepository;
 import edu.harvard.iq.dataverse.harvest.server.xoai.DataverseXoaiSetRepository;
+import edu.harvard.iq.dataverse.harvest.server.xoai.DataverseXoaiResumptionTokenFormat;
+import edu.harvard.iq.dataverse.harvest.server.xoai.StreamedMetadata;
+import edu.harvard.iq.dataverse.settings.FeatureFlags;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.MailUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import io.gdcc.xoai.exceptions.BadVerbException;
 import io.gdcc.xoai.exceptions.OAIException;
 import io.gdcc.xoai.model.oaipmh.Granularity;
-import io.gdcc.xoai.services.impl.SimpleResumptionTokenFormat;
 import org.apache.commons.lang3.StringUtils;
 
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.logging.Logger;
 import jakarta.ejb.EJB;
 import jakarta.inject.Inject;
@@ -203,7 +206,7 @@ public class OAIServlet extends HttpServlet {
                 .withCompression("gzip")
                 .withCompression("deflate")
                 .withGranularity(Granularity.Lenient)
-                .withResumptionTokenFormat(new SimpleResumptionTokenFormat().withGranularity(Granularity.Second))
+                .withResumptionTokenFormat(new DataverseXoaiResumptionTokenFormat().withGranularity(Granularity.Second))
                 .withRepositoryName(repositoryName)
                 .withBaseUrl(systemConfig.getDataverseSiteUrl()+"/oai")
                 .withEarliestDate(recordService.getEarliestDate())
@@ -251,6 +254,7 @@ public class OAIServlet extends HttpServlet {
     private void processRequest(HttpServletRequest httpServletRequest, HttpServletResponse response)
             throws ServletException, IOException {
         
+        boolean streamMetadata = FeatureFlags.OAI_STREAMED_METADATA.enabled();
         try {
             if (!isHarvestingServerEnabled()) {
                 response.sendError(
@@ -259,6 +263,15 @@ public class OAIServlet extends HttpServlet {
                 return;
             }
 
+            // With streamed metadata, the cached metadata exports of the 
+            // records (GetRecord, ListRecords) are located while the response 
+            // is built, then opened, one at a time, and copied into the output
+            // as it is written, instead of being read into memory and 
+            // re-serialized by XOAI:
+            if (streamMetadata) {
+                StreamedMetadata.start();
+            }
+
             Map<String, String[]> params = httpServletRequest.getParameterMap();
             OAIPMH handle;
             try {
@@ -270,12 +283,19 @@ public class OAIServlet extends HttpServlet {
 
             response.setContentType("text/xml;charset=UTF-8");
 
-            try (XmlWriter xmlWriter = new XmlWriter(response.getOutputStream(), repositoryConfiguration);) {
+            OutputStream outputStream = streamMetadata ? StreamedMetadata.wrap(response.getOutputStream()) : response.getOutputStream();
+            try (XmlWriter xmlWriter = new XmlWriter(outputStream, repositoryConfiguration);) {
                 xmlWriter.write(handle);
             }
+            outputStream.flush();
                        
         } catch (XMLStreamException | OAIException e) {
             throw new ServletException (e);
+        } finally {
+            if (streamMetadata) {
+                StreamedMetadata.stop();
+            }
+            DataverseXoaiResumptionTokenFormat.clear();
         }
         
     }
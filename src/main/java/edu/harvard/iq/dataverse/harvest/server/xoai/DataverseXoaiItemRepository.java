@@ -13,6 +13,7 @@ import edu.harvard.iq.dataverse.export.ExportService;
 import io.gdcc.spi.export.ExportException;
 import edu.harvard.iq.dataverse.harvest.server.OAIRecord;
 import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
+import edu.harvard.iq.dataverse.harvest.server.xoai.DataverseXoaiResumptionTokenFormat.PageKey;
 import edu.harvard.iq.dataverse.util.StringUtil;
 import io.gdcc.xoai.dataprovider.exceptions.handler.HandlerException;
 import io.gdcc.xoai.dataprovider.exceptions.handler.NoMetadataFormatsException;
@@ -24,6 +25,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.time.Instant;
+import java.util.HashSet;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -41,7 +43,7 @@ public class DataverseXoaiItemRepository implements ItemRepository {
     private final OAIRecordServiceBean recordService;
     private final DatasetServiceBean datasetService;
     private final String serverUrl; 
-
+    
     public DataverseXoaiItemRepository (OAIRecordServiceBean recordService, DatasetServiceBean datasetService, String serverUrl) {
         this.recordService = recordService;
         this.datasetService = datasetService;
@@ -133,14 +135,33 @@ public class DataverseXoaiItemRepository implements ItemRepository {
                 + ", from=" + from
                 + ", until=" + until);
 
-        List<OAIRecord> oaiRecords = recordService.findOaiRecordsBySetName(setSpec, from, until);
+        // The resumption token for this page carries the last record of the
+        // previous one, and the page is looked up by that key. Otherwise
+        // (this is the first page; or the token was served before the keys
+        // were added to them) we look it up by the offset. 
+        PageKey pageKey = offset > 0 ? DataverseXoaiResumptionTokenFormat.getPageKey(resumptionToken) : null;
+        
+        OAIRecord afterRecord = null; 
+        long total; 
+        if (pageKey != null) {
+            afterRecord = new OAIRecord(setSpec, pageKey.lastGlobalId, null);
+            afterRecord.setId(pageKey.lastId);
+            total = pageKey.total;
+        } else {
+            total = recordService.countOaiRecordsBySetName(setSpec, from, until);
+        }
+        
+        // (looking up one extra record, to find out if there are more)
+        List<OAIRecord> oaiRecords = recordService.findOaiRecordsPageBySetName(setSpec, from, until, afterRecord, offset, maxResponseLength + 1);
         
         List<DataverseXoaiItem> xoaiItems = new ArrayList<>();
 
         if (oaiRecords != null && !oaiRecords.isEmpty()) {
-            logger.fine("total " + oaiRecords.size() + " records returned");
+            logger.fine("total " + total + " records in the set, " + oaiRecords.size() + " records returned");
             
-            for (int i = offset; i < offset + maxResponseLength && i < oaiRecords.size(); i++) {
+            hasMore = oaiRecords.size() > maxResponseLength;
+            
+            for (int i = 0; i < maxResponseLength && i < oaiRecords.size(); i++) {
                 OAIRecord record = oaiRecords.get(i);
                 DataverseXoaiItem xoaiItem = new DataverseXoaiItem(record);
                 
@@ -154,14 +175,18 @@ public class DataverseXoaiItemRepository implements ItemRepository {
                 xoaiItems.add(xoaiItem);
             }
             
+            if (hasMore) {
+                OAIRecord lastRecord = oaiRecords.get(maxResponseLength - 1);
+                DataverseXoaiResumptionTokenFormat.setNextPageKey(resumptionToken.next(maxResponseLength),
+                        new PageKey(lastRecord.getGlobalId(), lastRecord.getId(), total));
+            }
+            
             // Run a second pass, looking for records in this set that occur
             // in *other* sets. Then we'll add these multiple sets to the 
             // formatted output in the header:
             addExtraSets(xoaiItems, setSpec, from, until);
             
-            hasMore = offset + maxResponseLength < oaiRecords.size();
-            
-            ResultsPage<DataverseXoaiItem> result = new ResultsPage(resumptionToken, hasMore, xoaiItems, oaiRecords.size());
+            ResultsPage<DataverseXoaiItem> result = new ResultsPage(resumptionToken, hasMore, xoaiItems, total);
             logger.fine("returning result with " + xoaiItems.size() + " items.");
             return result;
         }
@@ -173,7 +198,13 @@ public class DataverseXoaiItemRepository implements ItemRepository {
         
         List<DataverseXoaiItem> xoaiItems = (List<DataverseXoaiItem>)xoaiItemsList;
         
-        List<OAIRecord> oaiRecords = recordService.findOaiRecordsNotInThisSet(setSpec, from, until);
+        // Only the records for the items on this page are looked up:
+        java.util.Set<String> globalIds = new HashSet<>();
+        for (DataverseXoaiItem xoaiItem : xoaiItems) {
+            globalIds.add(xoaiItem.getIdentifier());
+        }
+        
+        List<OAIRecord> oaiRecords = recordService.findOaiRecordsNotInThisSet(setSpec, from, until, globalIds);
         
         if (oaiRecords == null || oaiRecords.isEmpty()) {
             return;
@@ -252,10 +283,18 @@ public class DataverseXoaiItemRepository implements ItemRepository {
                     .withAttribute("directApiCall", customDataverseJsonApiUri(dataset.getGlobalId().asString()));
             
         } else {
-            InputStream pregeneratedMetadataStream;
-            pregeneratedMetadataStream = ExportService.getInstance().getExport(dataset, metadataPrefix);
-
-            metadata = Metadata.copyFromStream(pregeneratedMetadataStream);
+            if (StreamedMetadata.isStreaming()) {
+                // The servlet will copy the export into the response as is,
+                // once XOAI gets to this record. (The export is only made
+                // sure to exist, or produced, here; it is opened when it is 
+                // written, so that the exports of a whole page of records 
+                // are not all held open at once.)
+                ExportService.getInstance().prepareExport(dataset, metadataPrefix);
+                metadata = StreamedMetadata.add(() -> ExportService.getInstance().getExport(dataset, metadataPrefix));
+            } else {
+                InputStream pregeneratedMetadataStream = ExportService.getInstance().getExport(dataset, metadataPrefix);
+                metadata = Metadata.copyFromStream(pregeneratedMetadataStream);
+            }
         }
         return metadata;
     }
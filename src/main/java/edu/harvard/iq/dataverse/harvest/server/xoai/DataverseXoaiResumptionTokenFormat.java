@@ -0,0 +1,126 @@
+package edu.harvard.iq.dataverse.harvest.server.xoai;
+
+import io.gdcc.xoai.exceptions.BadResumptionTokenException;
+import io.gdcc.xoai.model.oaipmh.Granularity;
+import io.gdcc.xoai.model.oaipmh.ResumptionToken;
+import io.gdcc.xoai.services.api.ResumptionTokenFormat;
+import io.gdcc.xoai.services.impl.SimpleResumptionTokenFormat;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The resumption tokens of the OAI server: the (offset, set, from, until,
+ * metadata prefix) of SimpleResumptionTokenFormat, followed by the key of
+ * the last record of the page served (see
+ * {@link DataverseXoaiItemRepository}); so that the next page is looked up
+ * by that key, whichever node serves it, and however long after.
+ *
+ * XOAI only hands the parsed token value to the item repository, and
+ * formats the token of the next page from a value of its own; so the keys
+ * are passed between them through the thread handling the request: parse()
+ * leaves the key of the token for getPageKey(), and the repository leaves
+ * the key of the next page, with setNextPageKey(), for format(). The servlet
+ * calls clear() once the response is written.
+ */
+public class DataverseXoaiResumptionTokenFormat implements ResumptionTokenFormat {
+
+    // (not a base64 character)
+    private static final String KEY_SEPARATOR = ".";
+
+    private static final ThreadLocal<KeyedValue> requestedPageKey = new ThreadLocal<>();
+    private static final ThreadLocal<KeyedValue> nextPageKey = new ThreadLocal<>();
+
+    private final ResumptionTokenFormat format = new SimpleResumptionTokenFormat();
+
+    /**
+     * The last record of the page before the one a token is for.
+     */
+    public static class PageKey {
+        final String lastGlobalId;
+        final long lastId;
+        // the number of records in the set, when the first page was served
+        final long total;
+
+        PageKey(String lastGlobalId, long lastId, long total) {
+            this.lastGlobalId = lastGlobalId;
+            this.lastId = lastId;
+            this.total = total;
+        }
+
+        String encode() {
+            String key = total + "|" + lastId + "|" + lastGlobalId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static PageKey decode(String encoded) throws BadResumptionTokenException {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8).split("\\|", 3);
+                return new PageKey(parts[2], Long.parseLong(parts[1]), Long.parseLong(parts[0]));
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new BadResumptionTokenException("Invalid resumption token");
+            }
+        }
+    }
+
+    private static class KeyedValue {
+        final ResumptionToken.Value value;
+        final PageKey key;
+
+        KeyedValue(ResumptionToken.Value value, PageKey key) {
+            this.value = value;
+            this.key = key;
+        }
+    }
+
+    @Override
+    public ResumptionTokenFormat withGranularity(Granularity granularity) {
+        format.withGranularity(granularity);
+        return this;
+    }
+
+    @Override
+    public ResumptionToken.Value parse(String resumptionToken) throws BadResumptionTokenException {
+        requestedPageKey.remove();
+        int separator = resumptionToken == null ? -1 : resumptionToken.lastIndexOf(KEY_SEPARATOR);
+        if (separator < 0) {
+            // (a token without a key: such as one served before the keys
+            // were added to them)
+            return format.parse(resumptionToken);
+        }
+        ResumptionToken.Value value = format.parse(resumptionToken.substring(0, separator));
+        requestedPageKey.set(new KeyedValue(value, PageKey.decode(resumptionToken.substring(separator + 1))));
+        return value;
+    }
+
+    @Override
+    public String format(ResumptionToken.Value resumptionToken) {
+        String token = format.format(resumptionToken);
+        KeyedValue keyedValue = nextPageKey.get();
+        if (keyedValue != null && keyedValue.value.equals(resumptionToken)) {
+            token += KEY_SEPARATOR + keyedValue.key.encode();
+        }
+        return token;
+    }
+
+    /**
+     * @return the key in the token of the request, if it was parsed into
+     *         this value; null otherwise (such as for the first page)
+     */
+    public static PageKey getPageKey(ResumptionToken.Value resumptionToken) {
+        KeyedValue keyedValue = requestedPageKey.get();
+        return keyedValue != null && keyedValue.value.equals(resumptionToken) ? keyedValue.key : null;
+    }
+
+    /**
+     * @param resumptionToken the value of the token for the next page
+     * @param key the last record of the page served
+     */
+    public static void setNextPageKey(ResumptionToken.Value resumptionToken, PageKey key) {
+        nextPageKey.set(new KeyedValue(resumptionToken, key));
+    }
+
+    public static void clear() {
+        requestedPageKey.remove();
+        nextPageKey.remove();
+    }
+}
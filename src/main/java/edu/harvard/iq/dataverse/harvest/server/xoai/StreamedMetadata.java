@@ -0,0 +1,255 @@
+package edu.harvard.iq.dataverse.harvest.server.xoai;
+
+import io.gdcc.xoai.model.oaipmh.results.record.Metadata;
+import io.gdcc.xoai.xml.EchoElement;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Streams the pre-generated ("cached") metadata exports of the records
+ * straight into an OAI response, instead of having XOAI read, parse and
+ * re-serialize them.
+ *
+ * While the servlet is streaming (between start() and stop(), in the same
+ * thread), the item repository registers the export of each record with
+ * add(), and hands XOAI a small placeholder element as the metadata of the
+ * record. The response is then written through the output stream returned
+ * by wrap(), which replaces every placeholder with the bytes of the export
+ * it stands for. Each export is only opened when its placeholder is written,
+ * and is closed right after; so no more than one is open at a time.
+ */
+public class StreamedMetadata {
+    private static final Logger logger = Logger.getLogger(StreamedMetadata.class.getCanonicalName());
+
+    static final String PLACEHOLDER_ELEMENT = "dataverseStreamedMetadata";
+
+    /**
+     * Opens the cached export of a record.
+     */
+    @FunctionalInterface
+    public interface ExportSource {
+        InputStream open() throws IOException;
+    }
+
+    private static final ThreadLocal<List<ExportSource>> exports = new ThreadLocal<>();
+
+    private StreamedMetadata() {
+    }
+
+    public static void start() {
+        exports.set(new ArrayList<>());
+    }
+
+    public static boolean isStreaming() {
+        return exports.get() != null;
+    }
+
+    public static void stop() {
+        exports.remove();
+    }
+
+    /**
+     * @param export opens the cached export (XML) of the record
+     * @return the metadata to give to XOAI in place of the export
+     */
+    public static Metadata add(ExportSource export) {
+        List<ExportSource> registeredExports = exports.get();
+        registeredExports.add(export);
+        return new Metadata(new EchoElement("<" + PLACEHOLDER_ELEMENT + ">" + (registeredExports.size() - 1) + "</" + PLACEHOLDER_ELEMENT + ">"));
+    }
+
+    public static OutputStream wrap(OutputStream out) {
+        return new SplicingOutputStream(out, exports.get());
+    }
+
+    /**
+     * Copies the XML document, without the XML declaration, if any; so that
+     * it can be embedded in the response.
+     */
+    static void copyWithoutDeclaration(InputStream in, OutputStream out) throws IOException {
+        PushbackInputStream pushbackIn = new PushbackInputStream(in, 5);
+        int b = pushbackIn.read();
+        // the byte order mark, if any:
+        if (b == 0xEF) {
+            pushbackIn.read();
+            pushbackIn.read();
+            b = pushbackIn.read();
+        }
+        while (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+            b = pushbackIn.read();
+        }
+        if (b == -1) {
+            return;
+        }
+        pushbackIn.unread(b);
+
+        byte[] start = new byte[5];
+        int read = IOUtils.read(pushbackIn, start);
+        if (read == 5 && "<?xml".equals(new String(start, StandardCharsets.US_ASCII))) {
+            // skip the declaration, up to and including the "?>":
+            int previous = 0;
+            while ((b = pushbackIn.read()) != -1 && !(previous == '?' && b == '>')) {
+                previous = b;
+            }
+        } else {
+            out.write(start, 0, read);
+        }
+        IOUtils.copy(pushbackIn, out);
+    }
+
+    /**
+     * Passes the bytes written through, except for the placeholder elements
+     * "<dataverseStreamedMetadata>N</dataverseStreamedMetadata>" (the start
+     * tag may have attributes, such as an xmlns=""), which are replaced with
+     * the exports registered under those numbers.
+     */
+    static class SplicingOutputStream extends FilterOutputStream {
+        private static final byte[] START_TAG = ("<" + PLACEHOLDER_ELEMENT).getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] END_TAG = ("</" + PLACEHOLDER_ELEMENT + ">").getBytes(StandardCharsets.US_ASCII);
+
+        private static final int PASS_THROUGH = 0;
+        private static final int IN_START_TAG_NAME = 1;
+        private static final int IN_START_TAG = 2;
+        private static final int IN_CONTENT = 3;
+        private static final int IN_END_TAG = 4;
+
+        private final List<ExportSource> exports;
+        // the bytes that may be a part of a placeholder:
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private int state = PASS_THROUGH;
+        private int matched = 0;
+        private int number = 0;
+
+        SplicingOutputStream(OutputStream out, List<ExportSource> exports) {
+            super(out);
+            this.exports = exports;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int passThroughFrom = off;
+            for (int i = off; i < off + len; i++) {
+                if (state == PASS_THROUGH && b[i] != '<') {
+                    continue;
+                }
+                // write out the bytes that can't be a part of a placeholder
+                // in one go:
+                if (passThroughFrom < i) {
+                    out.write(b, passThroughFrom, i - passThroughFrom);
+                }
+                passThroughFrom = i + 1;
+                process(b[i]);
+            }
+            if (passThroughFrom < off + len) {
+                out.write(b, passThroughFrom, off + len - passThroughFrom);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (state == PASS_THROUGH && b != '<') {
+                out.write(b);
+            } else {
+                process((byte) b);
+            }
+        }
+
+        private void process(byte b) throws IOException {
+            switch (state) {
+                case PASS_THROUGH:
+                    // (a '<')
+                    pending.write(b);
+                    state = IN_START_TAG_NAME;
+                    matched = 1;
+                    return;
+                case IN_START_TAG_NAME:
+                    if (b == START_TAG[matched]) {
+                        pending.write(b);
+                        if (++matched == START_TAG.length) {
+                            state = IN_START_TAG;
+                        }
+                        return;
+                    }
+                    break;
+                case IN_START_TAG:
+                    if (b == '>') {
+                        pending.write(b);
+                        state = IN_CONTENT;
+                        number = 0;
+                        return;
+                    } else if (b != '<' && b != '/') {
+                        pending.write(b);
+                        return;
+                    }
+                    break;
+                case IN_CONTENT:
+                    if (b >= '0' && b <= '9') {
+                        pending.write(b);
+                        number = number * 10 + (b - '0');
+                        return;
+                    } else if (b == '<') {
+                        pending.write(b);
+                        state = IN_END_TAG;
+                        matched = 1;
+                        return;
+                    }
+                    break;
+                case IN_END_TAG:
+                    if (b == END_TAG[matched]) {
+                        pending.write(b);
+                        if (++matched == END_TAG.length) {
+                            pending.reset();
+                            state = PASS_THROUGH;
+                            writeExport(number);
+                        }
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            // Not a placeholder after all; write out what we've held back,
+            // and start over with this byte:
+            out.write(pending.toByteArray());
+            pending.reset();
+            state = PASS_THROUGH;
+            write(b);
+        }
+
+        private void writeExport(int i) throws IOException {
+            if (exports == null || i >= exports.size() || exports.get(i) == null) {
+                throw new IOException("No metadata stream registered as " + i);
+            }
+            try (InputStream exportStream = exports.get(i).open()) {
+                copyWithoutDeclaration(exportStream, out);
+            }
+            exports.set(i, null);
+            logger.fine("Streamed metadata record " + i);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // (the pending bytes can only be written once we know whether
+            // they are a placeholder or not)
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (pending.size() > 0) {
+                out.write(pending.toByteArray());
+                pending.reset();
+            }
+            super.close();
+        }
+    }
+}
@@ -48,6 +48,7 @@ import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.dataaccess.S3AccessIO;
 import edu.harvard.iq.dataverse.dataaccess.TabularSubsetGenerator;
+import edu.harvard.iq.dataverse.dataaccess.TabularColumnStore;
 import edu.harvard.iq.dataverse.datasetutility.FileExceedsMaxSizeException;
 import static edu.harvard.iq.dataverse.datasetutility.FileSizeChecker.bytesToHumanReadable;
 import edu.harvard.iq.dataverse.datavariable.SummaryStatistic;
@@ -71,6 +72,7 @@ import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.sav.SAVFileReade
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.sav.SAVFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.por.PORFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.por.PORFileReaderSpi;
+import edu.harvard.iq.dataverse.settings.FeatureFlags;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.storageuse.StorageUseServiceBean;
 import edu.harvard.iq.dataverse.storageuse.UploadSessionQuotaLimit;
@@ -109,6 +111,7 @@ import java.util.Set;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.ListIterator;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.Hashtable;
 import java.util.Optional;
@@ -119,6 +122,9 @@ import jakarta.jms.Queue;
 import jakarta.jms.QueueConnectionFactory;
 import jakarta.annotation.Resource;
 import jakarta.ejb.Asynchronous;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.jms.JMSException;
 import jakarta.jms.QueueConnection;
 import jakarta.jms.QueueSender;
@@ -160,12 +166,20 @@ public class IngestServiceBean {
     Queue queue;
     @Resource(lookup = "java:app/jms/factory/ingest")
     QueueConnectionFactory factory;
+    @Resource
+    SessionContext sessionContext;
     
 
     private static String timeFormat_hmsS = "HH:mm:ss.SSS";
     private static String dateTimeFormat_ymdhmsS = "yyyy-MM-dd HH:mm:ss.SSS";
     private static String dateFormat_ymd = "yyyy-MM-dd";
     
+    // The maximum number of values (table cells) we are willing to keep in
+    // memory at once when subsetting multiple variable vectors in a single pass
+    // through the tab-delimited file, for the summary statistics, UNFs and 
+    // frequencies:
+    private static final int MAX_SUBSET_VALUES_IN_MEMORY = 4000000;
+    
     // This method tries to permanently store new files in storage (on the filesystem,
     // in an S3 bucket, etc.).
     // Then it adds the files that *have been successfully saved* to the 
@@ -592,8 +606,13 @@ public class IngestServiceBean {
     // -- L.A. 4.6
     public void startIngestJobsForDataset(Dataset dataset, AuthenticatedUser user) {
         List<DataFile> scheduledFiles = new ArrayList<>();
+        List<Long> thumbnailFileIds = new ArrayList<>();
                 
         for (DataFile dataFile : dataset.getFiles()) {
+            if (dataFile.getId() != null && !dataFile.isPreviewImageAvailable() && !dataFile.isPreviewImageFail()
+                    && !dataFile.isHarvested() && FileUtil.isThumbnailSupported(dataFile)) {
+                thumbnailFileIds.add(dataFile.getId());
+            }
             if (dataFile.isIngestScheduled()) {
                 // todo: investigate why when calling save with the file object
                 // gotten from the loop, the roles assignment added at create is removed
@@ -606,6 +625,12 @@ public class IngestServiceBean {
         }
 
         startIngestJobs(dataset.getId(), scheduledFiles, user);
+        
+        // The thumbnails of the new images (and PDFs) are generated in the 
+        // background, rather than on the first page that shows them:
+        if (!thumbnailFileIds.isEmpty()) {
+            sessionContext.getBusinessObject(IngestServiceBean.class).generateThumbnails(thumbnailFileIds);
+        }
     }
     
     public String startIngestJobs(Long datasetId, List<DataFile> dataFiles, AuthenticatedUser user) {
@@ -717,110 +742,90 @@ public class IngestServiceBean {
         /*
         logger.info("Skipping summary statistics and UNF.");
          */
-        produceDiscreteNumericSummaryStatistics(dataFile, generatedTabularFile); 
-        produceContinuousSummaryStatistics(dataFile, generatedTabularFile);
-        produceCharacterSummaryStatistics(dataFile, generatedTabularFile);
+        List<DataVariable> vars = dataFile.getDataTable().getDataVariables();
+        int caseQuantity = dataFile.getDataTable().getCaseQuantity().intValue();
+        boolean skipVariableHeaderLine = dataFile.getDataTable().isStoredWithVariableHeader();
         
-        recalculateDataFileUNF(dataFile);
-        recalculateDatasetVersionUNF(dataFile.getFileMetadata().getDatasetVersion());
-    }
-    
-    public void produceContinuousSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
+        // Select the vector type we need for each variable; then read as 
+        // many of them as we can afford to keep in memory at once in a single
+        // pass through the tab file, instead of re-reading the entire file 
+        // for every variable.
+        List<Integer> columns = new ArrayList<>();
+        List<Class<?>> types = new ArrayList<>();
         
-        for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
-            if (dataFile.getDataTable().getDataVariables().get(i).isIntervalContinuous()) {
-                logger.fine("subsetting continuous vector");
-
-                if ("float".equals(dataFile.getDataTable().getDataVariables().get(i).getFormat())) {
-                    Float[] variableVector = TabularSubsetGenerator.subsetFloatVector(
-                            new FileInputStream(generatedTabularFile), 
-                            i, 
-                            dataFile.getDataTable().getCaseQuantity().intValue(),
-                            dataFile.getDataTable().isStoredWithVariableHeader());
+        for (int i = 0; i < vars.size(); i++) {
+            DataVariable var = vars.get(i);
+            if (var.isIntervalDiscrete() && var.isTypeNumeric()) {
+                columns.add(i);
+                types.add(Long.class);
+            } else if (var.isIntervalContinuous()) {
+                columns.add(i);
+                types.add("float".equals(var.getFormat()) ? Float.class : Double.class);
+            } else if (var.isTypeCharacter()) {
+                columns.add(i);
+                types.add(String.class);
+            }
+        }
+        
+        int batchSize = getColumnBatchSize(caseQuantity);
+        
+        for (int start = 0; start < columns.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, columns.size());
+            logger.fine("subsetting vectors for variables " + start + " through " + (end - 1));
+            
+            Object[][] vectors = TabularSubsetGenerator.subsetVectors(
+                    new FileInputStream(generatedTabularFile),
+                    columns.subList(start, end).stream().mapToInt(Integer::intValue).toArray(),
+                    types.subList(start, end).toArray(new Class<?>[0]),
+                    caseQuantity,
+                    skipVariableHeaderLine);
+            
+            for (int j = 0; j < vectors.length; j++) {
+                int varnum = columns.get(start + j);
+                Object[] variableVector = vectors[j];
+                vectors[j] = null;
+                
+                if (variableVector instanceof Long[]) {
+                    // We are discussing calculating the same summary stats for 
+                    // all numerics (the same kind of sumstats that we've been calculating
+                    // for numeric continuous type)  -- L.A. Jul. 2014
+                    calculateContinuousSummaryStatistics(dataFile, varnum, (Long[]) variableVector);
+                    // calculate the UNF while we are at it:
+                    logger.fine("Calculating UNF on a Long vector");
+                    calculateUNF(dataFile, varnum, (Long[]) variableVector);
+                } else if (variableVector instanceof Float[]) {
                     logger.fine("Calculating summary statistics on a Float vector;");
-                    calculateContinuousSummaryStatistics(dataFile, i, variableVector);
+                    calculateContinuousSummaryStatistics(dataFile, varnum, (Float[]) variableVector);
                     // calculate the UNF while we are at it:
                     logger.fine("Calculating UNF on a Float vector;");
-                    calculateUNF(dataFile, i, variableVector);
-                    variableVector = null; 
-                } else {
-                    Double[] variableVector = TabularSubsetGenerator.subsetDoubleVector(
-                            new FileInputStream(generatedTabularFile), 
-                            i, 
-                            dataFile.getDataTable().getCaseQuantity().intValue(), 
-                            dataFile.getDataTable().isStoredWithVariableHeader());
+                    calculateUNF(dataFile, varnum, (Float[]) variableVector);
+                } else if (variableVector instanceof Double[]) {
                     logger.fine("Calculating summary statistics on a Double vector;");
-                    calculateContinuousSummaryStatistics(dataFile, i, variableVector);
+                    calculateContinuousSummaryStatistics(dataFile, varnum, (Double[]) variableVector);
                     // calculate the UNF while we are at it:
                     logger.fine("Calculating UNF on a Double vector;");
-                    calculateUNF(dataFile, i, variableVector);
-                    variableVector = null; 
+                    calculateUNF(dataFile, varnum, (Double[]) variableVector);
+                } else {
+                    /* 
+                        At this point it's still not clear what kinds of summary stats we
+                        want for character types. Though we are pretty confident we don't 
+                        want to keep doing what we used to do in the past, i.e. simply 
+                        store the total counts for all the unique values; even if it's a 
+                        very long vector, and *every* value in it is unique. (As a result 
+                        of this, our Categorical Variable Value table is the single 
+                        largest in the production database. With no evidence whatsoever, 
+                        that this information is at all useful. 
+                            -- L.A. Jul. 2014 
+                    */
+                    logger.fine("Calculating UNF on a String vector");
+                    calculateUNF(dataFile, varnum, (String[]) variableVector);
                 }
-                logger.fine("Done! (continuous);");
             }
+            logger.fine("Done! (variables " + start + " through " + (end - 1) + ")");
         }
-    }
-    
-    public void produceDiscreteNumericSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
         
-        //TabularSubsetGenerator subsetGenerator = new TabularSubsetGenerator();
-        
-        for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
-            if (dataFile.getDataTable().getDataVariables().get(i).isIntervalDiscrete()
-                    && dataFile.getDataTable().getDataVariables().get(i).isTypeNumeric()) {
-                logger.fine("subsetting discrete-numeric vector");
-
-                Long[] variableVector = TabularSubsetGenerator.subsetLongVector(
-                        new FileInputStream(generatedTabularFile), 
-                        i, 
-                        dataFile.getDataTable().getCaseQuantity().intValue(), 
-                        dataFile.getDataTable().isStoredWithVariableHeader());
-                // We are discussing calculating the same summary stats for 
-                // all numerics (the same kind of sumstats that we've been calculating
-                // for numeric continuous type)  -- L.A. Jul. 2014
-                calculateContinuousSummaryStatistics(dataFile, i, variableVector);
-                // calculate the UNF while we are at it:
-                logger.fine("Calculating UNF on a Long vector");
-                calculateUNF(dataFile, i, variableVector);
-                logger.fine("Done! (discrete numeric)");
-                variableVector = null; 
-            }
-        }
-    }
-    
-    public void produceCharacterSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
-
-        /* 
-            At this point it's still not clear what kinds of summary stats we
-            want for character types. Though we are pretty confident we don't 
-            want to keep doing what we used to do in the past, i.e. simply 
-            store the total counts for all the unique values; even if it's a 
-            very long vector, and *every* value in it is unique. (As a result 
-            of this, our Categorical Variable Value table is the single 
-            largest in the production database. With no evidence whatsoever, 
-            that this information is at all useful. 
-                -- L.A. Jul. 2014 
-        
-        TabularSubsetGenerator subsetGenerator = new TabularSubsetGenerator();
-        */
-        
-        for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
-            if (dataFile.getDataTable().getDataVariables().get(i).isTypeCharacter()) {
-
-                logger.fine("subsetting character vector");
-                String[] variableVector = TabularSubsetGenerator.subsetStringVector(
-                        new FileInputStream(generatedTabularFile), 
-                        i, 
-                        dataFile.getDataTable().getCaseQuantity().intValue(),
-                        dataFile.getDataTable().isStoredWithVariableHeader());
-                //calculateCharacterSummaryStatistics(dataFile, i, variableVector);
-                // calculate the UNF while we are at it:
-                logger.fine("Calculating UNF on a String vector");
-                calculateUNF(dataFile, i, variableVector);
-                logger.fine("Done! (character)");
-                variableVector = null; 
-            }
-        }
+        recalculateDataFileUNF(dataFile);
+        recalculateDatasetVersionUNF(dataFile.getFileMetadata().getDatasetVersion());
     }
 
     public static void produceFrequencyStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
@@ -832,31 +837,43 @@ public class IngestServiceBean {
 
     public static void produceFrequencies(File generatedTabularFile, List<DataVariable> vars) throws IOException {
 
+        List<Integer> columns = new ArrayList<>();
+        List<Class<?>> types = new ArrayList<>();
+        
         for (int i = 0; i < vars.size(); i++) {
-
-            Collection<VariableCategory> cats = vars.get(i).getCategories();
-            int caseQuantity = vars.get(i).getDataTable().getCaseQuantity().intValue();
-            boolean isNumeric = vars.get(i).isTypeNumeric();
-            boolean skipVariableHeaderLine = vars.get(i).getDataTable().isStoredWithVariableHeader();
-            Object[] variableVector = null;
-            if (cats.size() > 0) {
-                if (isNumeric) {
-                    variableVector = TabularSubsetGenerator.subsetFloatVector(
-                            new FileInputStream(generatedTabularFile), 
-                            i, 
-                            caseQuantity,
-                            skipVariableHeaderLine);
-                }
-                else {
-                    variableVector = TabularSubsetGenerator.subsetStringVector(
-                            new FileInputStream(generatedTabularFile), 
-                            i, 
-                            caseQuantity,
-                            skipVariableHeaderLine);
-                }
+            if (vars.get(i).getCategories().size() > 0) {
+                columns.add(i);
+                types.add(vars.get(i).isTypeNumeric() ? Float.class : String.class);
+            }
+        }
+        
+        if (columns.isEmpty()) {
+            return;
+        }
+        
+        int caseQuantity = vars.get(0).getDataTable().getCaseQuantity().intValue();
+        boolean skipVariableHeaderLine = vars.get(0).getDataTable().isStoredWithVariableHeader();
+        int batchSize = getColumnBatchSize(caseQuantity);
+        
+        for (int start = 0; start < columns.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, columns.size());
+            
+            Object[][] vectors = TabularSubsetGenerator.subsetVectors(
+                    new FileInputStream(generatedTabularFile),
+                    columns.subList(start, end).stream().mapToInt(Integer::intValue).toArray(),
+                    types.subList(start, end).toArray(new Class<?>[0]),
+                    caseQuantity,
+                    skipVariableHeaderLine);
+            
+            for (int j = 0; j < vectors.length; j++) {
+                DataVariable var = vars.get(columns.get(start + j));
+                boolean isNumeric = var.isTypeNumeric();
+                Object[] variableVector = vectors[j];
+                vectors[j] = null;
+                
                 if (variableVector != null) {
                     Hashtable<Object, Double> freq = calculateFrequency(variableVector);
-                    for (VariableCategory cat : cats) {
+                    for (VariableCategory cat : var.getCategories()) {
                         Object catValue;
                         if (isNumeric) {
                             catValue = new Float(cat.getValue());
@@ -871,11 +888,25 @@ public class IngestServiceBean {
                         }
                     }
                 } else {
-                    logger.fine("variableVector is null for variable " + vars.get(i).getName());
+                    logger.fine("variableVector is null for variable " + var.getName());
                 }
             }
         }
     }
+    
+    /**
+     * How many variable vectors can be subset in one pass through the tab file,
+     * so that the number of values kept in memory at once stays under 
+     * MAX_SUBSET_VALUES_IN_MEMORY. (At least one vector is always read, no 
+     * matter how many cases there are - this is how the statistics used to be 
+     * calculated, one vector at a time, for all the variables.)
+     */
+    private static int getColumnBatchSize(int caseQuantity) {
+        if (caseQuantity < 1) {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(1, MAX_SUBSET_VALUES_IN_MEMORY / caseQuantity);
+    }
 
     public static Hashtable<Object, Double> calculateFrequency( Object[] variableVector) {
         Hashtable<Object, Double> freq = new Hashtable<Object, Double>();
@@ -1182,6 +1213,10 @@ public class IngestServiceBean {
                     // Replace contents of the file with the tab-delimited data produced:
                     dataAccess.savePath(Paths.get(tabFile.getAbsolutePath()));
                     
+                    if (FeatureFlags.TABULAR_COLUMN_STORE.enabled()) {
+                        saveTabularColumnStore(dataFile, dataAccess, tabFile);
+                    }
+                    
                     // Reset the file size: 
                     dataFile.setFilesize(dataAccess.getSize());
                     
@@ -1217,6 +1252,31 @@ public class IngestServiceBean {
         return ingestSuccessful;
     }
 
+    /**
+     * Saves the column-oriented copy of the tab-delimited file as an aux object.
+     * This is an optimization only - if it fails, the column subsets will 
+     * still be produced from the tab file itself.
+     */
+    private void saveTabularColumnStore(DataFile dataFile, StorageIO<DataFile> dataAccess, File tabFile) {
+        File storeFile = null;
+        try {
+            storeFile = File.createTempFile("tempColumnStore", ".tmp");
+            long numberOfLines = dataFile.getDataTable().getCaseQuantity();
+            if (dataFile.getDataTable().isStoredWithVariableHeader()) {
+                numberOfLines++;
+            }
+            TabularColumnStore.write(tabFile, dataFile.getDataTable().getVarQuantity().intValue(), numberOfLines, storeFile);
+            dataAccess.savePathAsAux(storeFile.toPath(), TabularColumnStore.AUX_TAG);
+            logger.fine("Saved the column store as an aux file " + TabularColumnStore.AUX_TAG);
+        } catch (IOException ioex) {
+            logger.warning("Failed to save the column store for the ingested file id=" + dataFile.getId() + "; " + ioex.getMessage());
+        } finally {
+            if (storeFile != null) {
+                storeFile.delete();
+            }
+        }
+    }
+
     private BufferedInputStream openFile(DataFile dataFile) throws IOException {
         BufferedInputStream inputStream;
         StorageIO<DataFile> storageIO = dataFile.getStorageIO();
@@ -2094,6 +2154,22 @@ public class IngestServiceBean {
         }
     }
     
+    // This method takes a list of file ids, and generates the thumbnails of
+    // these files in all the standard sizes (see ImageThumbConverter.generateThumbnails()),
+    // each file in a transaction of its own. 
+    // Note the @Asynchronous attribute - the uploads don't wait for this.
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void generateThumbnails(List<Long> datafileIds) {
+        for (Long fileId : datafileIds) {
+            try {
+                fileService.generateThumbnails(fileId);
+            } catch (Exception ex) {
+                logger.log(Level.WARNING, "Failed to generate the thumbnails of datafile " + fileId, ex);
+            }
+        }
+    }
+    
     // This method takes a list of file ids, checks the format type of the ingested 
     // original, and attempts to fix it if it's missing. 
     // Note the @Asynchronous attribute - this allows us to just kick off and run this 
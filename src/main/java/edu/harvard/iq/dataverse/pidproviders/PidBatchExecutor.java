@@ -0,0 +1,152 @@
+package edu.harvard.iq.dataverse.pidproviders;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a call to a PID provider (registering, or publicizing, an identifier)
+ * for many objects at once, such as for all the files of a dataset: up to
+ * {@code dataverse.pid.batch.threads} calls at a time, and retrying each
+ * failed call, with an exponential backoff, up to
+ * {@code dataverse.pid.batch.max-attempts} times.
+ *
+ * The calls are made on the threads of the given executor. In the
+ * application, that is the ManagedExecutorService of the container (see
+ * {@link edu.harvard.iq.dataverse.DatasetServiceBean#getPidBatchExecutor()}),
+ * as the providers are EJBs, which can't be called from threads the
+ * container doesn't know of. The executor is shared, and not shut down
+ * here.
+ *
+ * The first object is handled on the calling thread, before the others; so
+ * that whatever they share (the dataset and its metadata) is loaded from the
+ * database there, rather than concurrently. The caller is told of each
+ * success on its own thread, where it can update the objects.
+ */
+public class PidBatchExecutor {
+
+    private static final Logger logger = Logger.getLogger(PidBatchExecutor.class.getCanonicalName());
+
+    /**
+     * A call to the PID provider for one object: {@code false}, or an
+     * exception, is a failure.
+     */
+    @FunctionalInterface
+    public interface PidCall<T> {
+        boolean apply(T item) throws Throwable;
+    }
+
+    private final ExecutorService executor;
+    private final int threads;
+    private final int maxAttempts;
+    private final long backoffMs;
+
+    public PidBatchExecutor(ExecutorService executor, int threads, int maxAttempts, long backoffMs) {
+        this.executor = executor;
+        this.threads = Math.max(1, threads);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = backoffMs;
+    }
+
+    /**
+     * @param executor where the calls are made
+     * @return an executor configured by {@code dataverse.pid.batch.threads}
+     *         and {@code dataverse.pid.batch.max-attempts}
+     */
+    public static PidBatchExecutor fromSettings(ExecutorService executor) {
+        return new PidBatchExecutor(executor,
+                JvmSettings.PID_BATCH_THREADS.lookupOptional(Integer.class).orElse(4),
+                JvmSettings.PID_BATCH_MAX_ATTEMPTS.lookupOptional(Integer.class).orElse(3),
+                1000L);
+    }
+
+    /**
+     * @param items the objects (or their ids)
+     * @param call the call to make for each of them
+     * @param onSuccess called, on the calling thread, for each object the call
+     *        succeeded for, in the order of completion
+     * @return the objects the call failed for, after all the attempts
+     * @throws InterruptedException if interrupted while waiting for the calls
+     */
+    public <T> List<T> run(List<T> items, PidCall<T> call, Consumer<T> onSuccess) throws InterruptedException {
+        List<T> failed = new ArrayList<>();
+        if (items.isEmpty()) {
+            return failed;
+        }
+
+        T first = items.get(0);
+        if (callWithRetries(first, call)) {
+            onSuccess.accept(first);
+        } else {
+            failed.add(first);
+        }
+
+        CompletionService<Map.Entry<T, Boolean>> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Map.Entry<T, Boolean>>> submitted = new ArrayList<>();
+        Iterator<T> remaining = items.subList(1, items.size()).iterator();
+        try {
+            // (no more than the configured number of calls at a time: one
+            // more is submitted as each one completes)
+            for (int i = 0; i < threads && remaining.hasNext(); i++) {
+                submitted.add(submit(completionService, remaining.next(), call));
+            }
+            for (int i = 1; i < items.size(); i++) {
+                Map.Entry<T, Boolean> result;
+                try {
+                    result = completionService.take().get();
+                } catch (ExecutionException e) {
+                    // (callWithRetries only throws if interrupted)
+                    throw new InterruptedException(e.getCause().getMessage());
+                }
+                if (remaining.hasNext()) {
+                    submitted.add(submit(completionService, remaining.next(), call));
+                }
+                if (result.getValue()) {
+                    onSuccess.accept(result.getKey());
+                } else {
+                    failed.add(result.getKey());
+                }
+            }
+        } finally {
+            // (only left running if this failed, or was interrupted)
+            for (Future<Map.Entry<T, Boolean>> future : submitted) {
+                future.cancel(true);
+            }
+        }
+        return failed;
+    }
+
+    private <T> Future<Map.Entry<T, Boolean>> submit(CompletionService<Map.Entry<T, Boolean>> completionService, T item, PidCall<T> call) {
+        return completionService.submit(() -> new AbstractMap.SimpleImmutableEntry<>(item, callWithRetries(item, call)));
+    }
+
+    private <T> boolean callWithRetries(T item, PidCall<T> call) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (call.apply(item)) {
+                    return true;
+                }
+                logger.log(Level.WARNING, "PID call failed for {0} (attempt {1} of {2})", new Object[]{item, attempt, maxAttempts});
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Throwable t) {
+                logger.log(Level.WARNING, "PID call failed for " + item + " (attempt " + attempt + " of " + maxAttempts + "): " + t.getMessage(), t);
+            }
+            if (attempt >= maxAttempts) {
+                return false;
+            }
+            Thread.sleep(backoffMs << (attempt - 1));
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import edu.harvard.iq.dataverse.dataaccess.DataAccessRequest;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.inject.Named;
+import org.apache.commons.io.IOUtils;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * Extracts the text of the files, for full-text indexing, with Apache Tika.
+ *
+ * The extractions run on the managed executor service of the server, at
+ * most "extraction-threads" of them at a time (the others wait in a queue
+ * for their turn), so that the files of a dataset are extracted in parallel.
+ * The indexing extracts the text of the files of a dataset before it starts
+ * its transaction, see {@link IndexServiceBean#indexQueuedDataset}. Every
+ * extraction is given a time limit, and a limit on the number of characters
+ * extracted. An extraction that has timed out is interrupted, but Tika
+ * parsers don't always stop when interrupted: such an extraction keeps its
+ * place among the ones running until it is done, and is counted (and
+ * logged) as stuck meanwhile.
+ *
+ * The extracted text is saved, gzipped, as an auxiliary object of the file
+ * ("fulltext.gz") and reused as long as the checksum and the size of the file
+ * are those it was extracted from; so reindexing a dataset after an edit of
+ * its metadata doesn't parse its files again.
+ */
+@Named
+@Singleton
+public class FullTextExtractionServiceBean {
+    private static final Logger logger = Logger.getLogger(FullTextExtractionServiceBean.class.getCanonicalName());
+
+    // The text, preceded by a line with the key (checksum and size) of the
+    // file it was extracted from:
+    static final String AUX_TAG = "fulltext.gz";
+
+    @Resource
+    ManagedExecutorService managedExecutorService;
+
+    // the extractions waiting for their turn, and the turns:
+    private final Queue<FutureTask<String>> queued = new ConcurrentLinkedQueue<>();
+    private Semaphore turns;
+    // the extractions still running after they have timed out:
+    private final AtomicInteger stuckExtractions = new AtomicInteger();
+    // (thread-safe)
+    private AutoDetectParser autoParser;
+    private long timeoutMs;
+    private int maxCharacters;
+    private boolean cacheEnabled;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, JvmSettings.FULLTEXT_EXTRACTION_THREADS.lookupOptional(Integer.class).orElse(2));
+        timeoutMs = 1000L * JvmSettings.FULLTEXT_EXTRACTION_TIMEOUT.lookupOptional(Integer.class).orElse(300);
+        maxCharacters = JvmSettings.FULLTEXT_MAX_CHARACTERS.lookupOptional(Integer.class).orElse(10000000);
+        cacheEnabled = JvmSettings.FULLTEXT_CACHE.lookupOptional(Boolean.class).orElse(true);
+        autoParser = new AutoDetectParser();
+        turns = new Semaphore(threads);
+    }
+
+    @PreDestroy
+    public void close() {
+        FutureTask<String> task;
+        while ((task = queued.poll()) != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Starts extracting the text of the file (or reading the text extracted
+     * earlier).
+     *
+     * @param dataFile the file
+     * @param maxSize the size of the largest file to extract the text of
+     * @return the extraction, to get the text from once it is needed
+     */
+    @Lock(LockType.READ)
+    public Extraction extract(DataFile dataFile, long maxSize) {
+        if (dataFile.getFilesize() > maxSize) {
+            Extraction extraction = new Extraction(dataFile.getDisplayName());
+            extraction.future = CompletableFuture.completedFuture(null);
+            return extraction;
+        }
+
+        StorageIO<DataFile> accessObject;
+        try {
+            accessObject = DataAccess.getStorageIO(dataFile, new DataAccessRequest());
+        } catch (IOException e) {
+            logger.warning(String.format("Full-text indexing for %s failed: %s", dataFile.getDisplayName(), e.getMessage()));
+            Extraction extraction = new Extraction(dataFile.getDisplayName());
+            extraction.future = CompletableFuture.completedFuture(null);
+            return extraction;
+        }
+        String cacheKey = cacheEnabled && dataFile.getChecksumValue() != null
+                ? dataFile.getChecksumType() + ":" + dataFile.getChecksumValue() + ":" + dataFile.getFilesize()
+                : null;
+        return extract(dataFile.getDisplayName(), accessObject, cacheKey, maxSize);
+    }
+
+    /**
+     * @param cacheKey the key of the text saved as an auxiliary object, or
+     *        null not to use it
+     */
+    @Lock(LockType.READ)
+    Extraction extract(String fileName, StorageIO<DataFile> accessObject, String cacheKey, long maxSize) {
+        Extraction extraction = new Extraction(fileName);
+        FutureTask<String> task = new FutureTask<>(() -> extract(extraction, accessObject, cacheKey, maxSize));
+        extraction.future = task;
+        queued.add(task);
+        startQueued();
+        return extraction;
+    }
+
+    /**
+     * Starts the queued extractions there are turns for.
+     */
+    private void startQueued() {
+        while (!queued.isEmpty() && turns.tryAcquire()) {
+            FutureTask<String> task = queued.poll();
+            if (task == null) {
+                turns.release();
+                continue;
+            }
+            try {
+                managedExecutorService.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        turns.release();
+                        startQueued();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // (such as while the application is being shut down)
+                turns.release();
+                task.cancel(false);
+            }
+        }
+    }
+
+    private String extract(Extraction extraction, StorageIO<DataFile> accessObject, String cacheKey, long maxSize) {
+        extraction.startedAt = System.currentTimeMillis();
+        try {
+            return doExtract(extraction, accessObject, cacheKey, maxSize);
+        } finally {
+            if (extraction.state.getAndSet(Extraction.FINISHED) == Extraction.TIMED_OUT) {
+                logger.info(String.format("Full-text indexing for %s finished after timing out; %d extractions still stuck",
+                        extraction.fileName, stuckExtractions.decrementAndGet()));
+            }
+        }
+    }
+
+    private String doExtract(Extraction extraction, StorageIO<DataFile> accessObject, String cacheKey, long maxSize) {
+        if (cacheKey != null) {
+            String text = readCachedText(accessObject, cacheKey, extraction.fileName);
+            if (text != null) {
+                logger.fine("Reusing the text extracted from " + extraction.fileName);
+                return text;
+            }
+        }
+
+        String text = null;
+        InputStream instream = null;
+        try {
+            if (accessObject != null) {
+                accessObject.open();
+                // If the size is >max, we don't use the stream. However, for S3, the stream is
+                // currently opened in the call above (see
+                // https://github.com/IQSS/dataverse/issues/5165), so we want to get a handle so
+                // we can close it below.
+                instream = accessObject.getInputStream();
+                if (accessObject.getSize() <= maxSize) {
+                    /*
+                     * Try parsing the file. Note that, other than by limiting size, there's been no
+                     * check see whether this file is a good candidate for text extraction (e.g.
+                     * based on type).
+                     */
+                    text = parse(instream, extraction.fileName);
+                }
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, String.format("Full-text indexing for %s failed", extraction.fileName), e);
+        } catch (OutOfMemoryError e) {
+            logger.warning(String.format("Full-text indexing for %s failed due to OutOfMemoryError", extraction.fileName));
+        } catch (Error e) {
+            //Catch everything - full-text indexing is complex enough (and using enough 3rd party components) that it can fail
+            // and we don't want problems here to break other Dataverse functionality (e.g. edits)
+            logger.severe(String.format("Full-text indexing for %s failed due to Error: %s : %s",
+                    extraction.fileName, e.getClass().getCanonicalName(), e.getLocalizedMessage()));
+        } finally {
+            IOUtils.closeQuietly(instream);
+        }
+
+        if (text != null && cacheKey != null && !Thread.currentThread().isInterrupted()) {
+            saveCachedText(accessObject, cacheKey, text, extraction.fileName);
+        }
+        return text;
+    }
+
+    private String parse(InputStream instream, String fileName) throws IOException, SAXException, TikaException {
+        ContentHandler textHandler = new BodyContentHandler(maxCharacters > 0 ? maxCharacters : -1);
+        try {
+            autoParser.parse(instream, textHandler, new Metadata(), new ParseContext());
+        } catch (SAXException | TikaException e) {
+            if (!WriteLimitReachedException.isWriteLimitReached(e)) {
+                throw e;
+            }
+            logger.info(String.format("Full-text indexing for %s: only the first %d characters are indexed", fileName, maxCharacters));
+        }
+        return textHandler.toString();
+    }
+
+    private String readCachedText(StorageIO<DataFile> accessObject, String cacheKey, String fileName) {
+        try {
+            if (!accessObject.isAuxObjectCached(AUX_TAG)) {
+                return null;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(accessObject.getAuxFileAsInputStream(AUX_TAG)), StandardCharsets.UTF_8))) {
+                if (!cacheKey.equals(reader.readLine())) {
+                    // (extracted from an earlier version of the file, e.g.
+                    // before it was ingested as tabular data)
+                    return null;
+                }
+                return IOUtils.toString(reader);
+            }
+        } catch (IOException e) {
+            logger.warning(String.format("Failed to read the text extracted earlier from %s: %s", fileName, e.getMessage()));
+            return null;
+        }
+    }
+
+    private void saveCachedText(StorageIO<DataFile> accessObject, String cacheKey, String text, String fileName) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+                writer.write(cacheKey);
+                writer.write('\n');
+                writer.write(text);
+            }
+            accessObject.saveInputStreamAsAux(new ByteArrayInputStream(bytes.toByteArray()), AUX_TAG, (long) bytes.size());
+        } catch (IOException e) {
+            // (the text will be extracted again the next time around)
+            logger.warning(String.format("Failed to save the text extracted from %s: %s", fileName, e.getMessage()));
+        }
+    }
+
+    /**
+     * @return the number of extractions still running after they have timed
+     *         out (holding their turns)
+     */
+    int getStuckExtractions() {
+        return stuckExtractions.get();
+    }
+
+    /**
+     * The text of a file being extracted.
+     */
+    public class Extraction {
+        private static final int RUNNING = 0;
+        private static final int FINISHED = 1;
+        private static final int TIMED_OUT = 2;
+
+        private final String fileName;
+        private Future<String> future;
+        // when a worker picked it up; 0 while queued:
+        private volatile long startedAt = 0L;
+        // RUNNING (or queued) until FINISHED; or TIMED_OUT while running
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+        // (the outcome, once waited for)
+        private boolean done = false;
+        private String text;
+
+        private Extraction(String fileName) {
+            this.fileName = fileName;
+        }
+
+        /**
+         * Waits for the text to be extracted: for as long as the extraction
+         * is allowed to take once started, and for as long again for it to
+         * be started, when the workers are busy with the other files.
+         *
+         * @return the text, or null if there is none (the extraction has
+         *         failed, timed out, etc.)
+         */
+        public String getText() {
+            if (!done) {
+                text = waitForText();
+                done = true;
+            }
+            return text;
+        }
+
+        private String waitForText() {
+            long queuedUntil = System.currentTimeMillis() + timeoutMs;
+            try {
+                while (true) {
+                    long until = startedAt > 0 ? startedAt + timeoutMs : queuedUntil;
+                    long now = System.currentTimeMillis();
+                    if (now >= until) {
+                        break;
+                    }
+                    try {
+                        return future.get(until - now, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        // (it may have been started meanwhile)
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.warning(String.format("Full-text indexing for %s failed: %s", fileName, e.getCause()));
+                return null;
+            } catch (CancellationException e) {
+                logger.warning(String.format("Full-text indexing for %s was cancelled", fileName));
+                return null;
+            }
+            if (startedAt == 0) {
+                logger.warning(String.format("Full-text indexing for %s was not started within %d seconds", fileName, timeoutMs / 1000L));
+            } else if (state.compareAndSet(RUNNING, TIMED_OUT)) {
+                // (interrupted below, which the parser may well ignore)
+                logger.warning(String.format("Full-text indexing for %s timed out after %d seconds; %d extractions stuck",
+                        fileName, timeoutMs / 1000L, stuckExtractions.incrementAndGet()));
+            } else {
+                logger.warning(String.format("Full-text indexing for %s timed out after %d seconds", fileName, timeoutMs / 1000L));
+            }
+            future.cancel(true);
+            return null;
+        }
+    }
+}
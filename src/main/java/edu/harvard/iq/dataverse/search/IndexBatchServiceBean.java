@@ -7,14 +7,19 @@ import edu.harvard.iq.dataverse.DvObjectServiceBean;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jakarta.annotation.Resource;
 import jakarta.ejb.AsyncResult;
 import jakarta.ejb.Asynchronous;
 import jakarta.ejb.EJB;
+import jakarta.ejb.SessionContext;
 import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.inject.Named;
 import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
@@ -45,6 +50,13 @@ public class IndexBatchServiceBean {
     DvObjectServiceBean dvObjectService;
     @EJB
     SystemConfig systemConfig;
+    @EJB
+    SolrClientService solrClientService;
+    @Resource
+    SessionContext sessionContext;
+    
+    // the parallel reindex running, or the last one run:
+    private static volatile ReindexProgress reindexProgress = null;
     
     @Asynchronous
     public Future<JsonObjectBuilder> indexStatus() {
@@ -207,6 +219,7 @@ public class IndexBatchServiceBean {
             indexService.indexDatasetInNewTransaction(id);
         }
         logger.info("done iterating through all datasets");
+        commitIndexUpdates();
 
         long indexAllTimeEnd = System.currentTimeMillis();
         String timeElapsed = "index all took " + (indexAllTimeEnd - indexAllTimeBegin) + " milliseconds";
@@ -220,6 +233,134 @@ public class IndexBatchServiceBean {
         return new AsyncResult<>(status);
     }
         
+    /**
+     * Starts reindexing all the collections and datasets (or the ones that
+     * haven't been indexed yet, if skipIndexed) with a number of workers
+     * running in parallel, taking the next object to index from a shared
+     * queue. The workers are held back by the sending of the documents to
+     * Solr, in batches, when Solr can't keep up with them.
+     * 
+     * @param threads the number of workers
+     * @param skipIndexed whether to skip the objects that have been indexed
+     * @return the progress, so far (see {@link #getReindexProgress()}); or
+     *         null if a parallel reindex is already running
+     */
+    public JsonObjectBuilder indexAllInParallel(int threads, boolean skipIndexed) {
+        List<Long> dataverseIds = dataverseService.findDataverseIdsForIndexing(skipIndexed);
+        List<Long> datasetIds = new ArrayList<>(datasetService.findAllOrSubsetOrderByFilesOwned(skipIndexed));
+        // The datasets with the most files first, so that they are not left
+        // to be indexed on their own at the end:
+        Collections.reverse(datasetIds);
+
+        ReindexProgress progress = new ReindexProgress(threads, dataverseIds, datasetIds, 
+                solrClientService.getDocumentsAdded(), solrClientService.getFailedDocuments());
+        if (!startReindex(progress)) {
+            return null;
+        }
+        logger.info("Starting to reindex " + dataverseIds.size() + " dataverses and " + datasetIds.size() + " datasets with " + threads + " threads");
+        // (the workers must be started through the container, to run asynchronously)
+        IndexBatchServiceBean self = sessionContext.getBusinessObject(IndexBatchServiceBean.class);
+        for (int i = 0; i < threads; i++) {
+            self.indexAllInParallelWorker(progress);
+        }
+        return getReindexProgress();
+    }
+    
+    private static synchronized boolean startReindex(ReindexProgress progress) {
+        if (reindexProgress != null && reindexProgress.isRunning()) {
+            return false;
+        }
+        reindexProgress = progress;
+        return true;
+    }
+    
+    /**
+     * A worker of {@link #indexAllInParallel(int, boolean)}. It doesn't run
+     * in a transaction of its own; every object is indexed in a new one.
+     */
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void indexAllInParallelWorker(ReindexProgress progress) {
+        try {
+            Long id;
+            while ((id = progress.nextDataverse()) != null) {
+                try {
+                    Dataverse dataverse = dataverseService.find(id);
+                    String status = indexService.indexDataverseInNewTransaction(dataverse).get();
+                    // (a failure to send the documents to Solr is reported
+                    // in the status, rather than thrown)
+                    if (status.startsWith(IndexServiceBean.indexedDataversePrefix)) {
+                        progress.dataverseIndexed();
+                    } else {
+                        progress.dataverseFailed(id);
+                        logger.info("FAILURE indexing dataverse (id=" + id + "): " + status);
+                    }
+                } catch (Exception e) {
+                    //We want to keep running even after an exception so throw some more info into the log
+                    progress.dataverseFailed(id);
+                    logger.info("FAILURE indexing dataverse (id=" + id + ") Exception info: " + e.getMessage());
+                }
+            }
+            while ((id = progress.nextDataset()) != null) {
+                boolean indexed = false;
+                try {
+                    indexed = indexService.indexDatasetInNewTransaction(id);
+                } catch (Exception e) {
+                    logger.info("FAILURE indexing dataset (id=" + id + ") Exception info: " + e.getMessage());
+                }
+                if (indexed) {
+                    progress.datasetIndexed();
+                } else {
+                    progress.datasetFailed(id);
+                }
+            }
+        } finally {
+            if (progress.workerDone()) {
+                commitIndexUpdates();
+                logger.info("Parallel reindex done: " + progress.toJson(solrClientService.getDocumentsAdded(), solrClientService.getFailedDocuments()).build());
+            }
+        }
+    }
+    
+    /**
+     * @return the progress of the parallel reindex running (or of the last
+     *         one run), or null if none has been run
+     */
+    public JsonObjectBuilder getReindexProgress() {
+        ReindexProgress progress = reindexProgress;
+        if (progress == null) {
+            return null;
+        }
+        return progress.toJson(solrClientService.getDocumentsAdded(), solrClientService.getFailedDocuments());
+    }
+    
+    /**
+     * Stops the parallel reindex running, once the objects being indexed are
+     * done.
+     * 
+     * @return false if there is no parallel reindex running
+     */
+    public boolean cancelReindex() {
+        ReindexProgress progress = reindexProgress;
+        if (progress == null || !progress.isRunning()) {
+            return false;
+        }
+        progress.cancel();
+        return true;
+    }
+        
+    /**
+     * Makes sure that everything indexed so far is searchable, once a batch
+     * is done (the documents are otherwise sent, and committed, in batches).
+     */
+    private void commitIndexUpdates() {
+        try {
+            solrClientService.commit();
+        } catch (SolrServerException | IOException ex) {
+            logger.warning("Failed to commit the updates to the Solr index: " + ex);
+        }
+    }
+    
     @Asynchronous
     public void indexDataverseRecursively(Dataverse dataverse) {
         long start = System.currentTimeMillis();
@@ -264,6 +405,7 @@ public class IndexBatchServiceBean {
             logger.info("indexing dataset " + datasetIndexCount + " of " + datasetChildren.size() + " (id=" + childId + ")");
             indexService.indexDatasetInNewTransaction(childId);
         }
+        commitIndexUpdates();
         long end = System.currentTimeMillis();
         if (datasetFailureCount + dataverseFailureCount > 0){
             logger.info("There were index failures. " + dataverseFailureCount + " dataverse(s) and " + datasetFailureCount + " dataset(s) failed to index. Please check the log for more information.");            
@@ -0,0 +1,327 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Asynchronous;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * The queue of the datasets to be (re)indexed, kept in the database (the
+ * INDEXREQUEST table), so that it survives restarts and is shared by all the
+ * application servers.
+ *
+ * The requests are coalesced: there is one row per dataset, however many
+ * times it is requested. A worker claims the row before indexing the dataset,
+ * and deletes it when done - unless the dataset has been requested again in
+ * the meantime, in which case the row is released, to be indexed again (by
+ * the same or another worker). So a dataset is indexed by at most one worker
+ * at a time, and it is never left unindexed after the last request.
+ *
+ * The queue is drained by a limited number of workers per server, see
+ * {@link IndexServiceBean#asyncIndexDataset}: each indexes the dataset it was
+ * started for, and a few more from the queue; and before it stops, it starts
+ * another worker if there are requests left (including the ones made while
+ * all the workers were busy). Plus a sweep, every 30 seconds, for the
+ * requests left over by the servers that were restarted.
+ */
+@Singleton
+@Startup
+@DependsOn("StartupFlywayMigrator")
+@Lock(LockType.READ)
+public class IndexQueueServiceBean {
+
+    private static final Logger logger = Logger.getLogger(IndexQueueServiceBean.class.getCanonicalName());
+
+    // the number of datasets a worker takes from the queue, before it leaves
+    // the rest to another (asynchronous) worker:
+    static final int DRAIN_BATCH_SIZE = 10;
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    private EntityManager em;
+
+    @EJB
+    IndexServiceBean indexService;
+    @Resource
+    SessionContext sessionContext;
+
+    // identifies the claims of this server:
+    private String serverName;
+    private int maxWorkers;
+    private Semaphore workers;
+    private long claimTimeoutMs;
+
+    private final AtomicLong datasetsIndexed = new AtomicLong();
+    private final AtomicLong datasetsFailed = new AtomicLong();
+
+    /**
+     * A claimed request.
+     */
+    public static class Claim {
+        private final Long datasetId;
+        private final long requestCount;
+        private final boolean cleanup;
+
+        Claim(Long datasetId, long requestCount, boolean cleanup) {
+            this.datasetId = datasetId;
+            this.requestCount = requestCount;
+            this.cleanup = cleanup;
+        }
+
+        public Long getDatasetId() {
+            return datasetId;
+        }
+
+        /**
+         * @return whether any of the requests was for a "normal" Solr doc
+         *         clean up
+         */
+        public boolean isCleanup() {
+            return cleanup;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            serverName = InetAddress.getLocalHost().getCanonicalHostName();
+        } catch (UnknownHostException ex) {
+            serverName = "localhost";
+        }
+        String instanceName = System.getProperty("com.sun.aas.instanceName");
+        if (instanceName != null) {
+            serverName += ":" + instanceName;
+        }
+        maxWorkers = Math.max(1, JvmSettings.INDEX_QUEUE_WORKERS.lookupOptional(Integer.class).orElse(8));
+        workers = new Semaphore(maxWorkers);
+        claimTimeoutMs = 1000L * JvmSettings.INDEX_QUEUE_CLAIM_TIMEOUT.lookupOptional(Integer.class).orElse(3600);
+
+        // The datasets this server was indexing when it was stopped:
+        int released = em.createNativeQuery("UPDATE INDEXREQUEST SET CLAIMEDBY = NULL, CLAIMTIME = NULL WHERE CLAIMEDBY = ?1")
+                .setParameter(1, serverName)
+                .executeUpdate();
+        if (released > 0) {
+            logger.info("Released " + released + " index requests claimed by " + serverName + " before the restart");
+        }
+    }
+
+    /**
+     * Adds the dataset to the queue (if it is not queued already); committed
+     * right away, whatever happens to the transaction of the caller.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void request(Long datasetId, boolean cleanup) {
+        em.createNativeQuery("INSERT INTO INDEXREQUEST (DATASET_ID, REQUESTCOUNT, CLEANUP, REQUESTTIME) VALUES (?1, 1, ?2, ?3) "
+                + "ON CONFLICT (DATASET_ID) DO UPDATE SET REQUESTCOUNT = INDEXREQUEST.REQUESTCOUNT + 1, CLEANUP = INDEXREQUEST.CLEANUP OR EXCLUDED.CLEANUP")
+                .setParameter(1, datasetId)
+                .setParameter(2, cleanup)
+                .setParameter(3, new Timestamp(System.currentTimeMillis()))
+                .executeUpdate();
+    }
+
+    /**
+     * Adds the dataset to the queue, and claims the request for it; in one
+     * transaction.
+     *
+     * @return the claim, or null if the dataset is being indexed already
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Claim requestAndClaim(Long datasetId, boolean cleanup) {
+        request(datasetId, cleanup);
+        List<Object[]> rows = em.createNativeQuery("SELECT DATASET_ID, REQUESTCOUNT, CLEANUP FROM INDEXREQUEST "
+                + "WHERE DATASET_ID = ?1 AND (CLAIMEDBY IS NULL OR CLAIMTIME < ?2) FOR UPDATE SKIP LOCKED")
+                .setParameter(1, datasetId)
+                .setParameter(2, new Timestamp(System.currentTimeMillis() - claimTimeoutMs))
+                .getResultList();
+        List<Claim> claims = claim(rows);
+        return claims.isEmpty() ? null : claims.get(0);
+    }
+
+    /**
+     * Claims the oldest requests not being worked on.
+     *
+     * @param max the number of requests to claim, at most
+     * @return the claims; none if there are no requests waiting
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<Claim> claimNext(int max) {
+        List<Object[]> rows = em.createNativeQuery("SELECT DATASET_ID, REQUESTCOUNT, CLEANUP FROM INDEXREQUEST "
+                + "WHERE CLAIMEDBY IS NULL OR CLAIMTIME < ?1 ORDER BY REQUESTTIME LIMIT ?2 FOR UPDATE SKIP LOCKED")
+                .setParameter(1, new Timestamp(System.currentTimeMillis() - claimTimeoutMs))
+                .setParameter(2, max)
+                .getResultList();
+        return claim(rows);
+    }
+
+    private List<Claim> claim(List<Object[]> rows) {
+        List<Claim> claims = new ArrayList<>();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (Object[] row : rows) {
+            Claim claim = new Claim(((Number) row[0]).longValue(), ((Number) row[1]).longValue(), (Boolean) row[2]);
+            em.createNativeQuery("UPDATE INDEXREQUEST SET CLAIMEDBY = ?1, CLAIMTIME = ?2 WHERE DATASET_ID = ?3")
+                    .setParameter(1, serverName)
+                    .setParameter(2, now)
+                    .setParameter(3, claim.datasetId)
+                    .executeUpdate();
+            claims.add(claim);
+        }
+        return claims;
+    }
+
+    /**
+     * @return whether there are requests waiting to be claimed
+     */
+    boolean hasWaitingRequests() {
+        return !em.createNativeQuery("SELECT 1 FROM INDEXREQUEST WHERE CLAIMEDBY IS NULL OR CLAIMTIME < ?1 LIMIT 1")
+                .setParameter(1, new Timestamp(System.currentTimeMillis() - claimTimeoutMs))
+                .getResultList().isEmpty();
+    }
+
+    /**
+     * Removes the request from the queue, once the dataset has been indexed;
+     * or, if it has been requested again since it was claimed, releases it
+     * to be indexed again.
+     *
+     * @param indexed whether the indexing was successful (for the counters)
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void done(Claim claim, boolean indexed) {
+        (indexed ? datasetsIndexed : datasetsFailed).incrementAndGet();
+        int deleted = em.createNativeQuery("DELETE FROM INDEXREQUEST WHERE DATASET_ID = ?1 AND REQUESTCOUNT = ?2 AND CLAIMEDBY = ?3")
+                .setParameter(1, claim.datasetId)
+                .setParameter(2, claim.requestCount)
+                .setParameter(3, serverName)
+                .executeUpdate();
+        if (deleted == 0) {
+            // (requested again since - i.e. at the time it was claimed, at the latest)
+            em.createNativeQuery("UPDATE INDEXREQUEST SET CLAIMEDBY = NULL, CLAIMTIME = NULL, REQUESTTIME = CLAIMTIME WHERE DATASET_ID = ?1 AND CLAIMEDBY = ?2")
+                    .setParameter(1, claim.datasetId)
+                    .setParameter(2, serverName)
+                    .executeUpdate();
+        }
+    }
+
+    /**
+     * @return false if all the workers of this server are busy
+     */
+    public boolean startWorker() {
+        return workers.tryAcquire();
+    }
+
+    /**
+     * Indexes up to {@link #DRAIN_BATCH_SIZE} datasets from the queue, by the
+     * worker that has called {@link #startWorker()}; then stops the worker.
+     * If there are requests left, another worker is started for them
+     * (asynchronously), when there is one free; otherwise, one of the busy
+     * workers does the same once it is done.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void drainAndStopWorker() {
+        boolean more;
+        try {
+            more = drain(DRAIN_BATCH_SIZE);
+        } catch (Exception e) {
+            // (left for the sweep, rather than retried right away)
+            logger.log(Level.WARNING, "Failed to drain the index queue", e);
+            more = false;
+        } finally {
+            workers.release();
+        }
+        // (checked again once the worker is stopped, for the requests made
+        // while it was busy: their callers could not start one)
+        if (more || hasWaitingRequests()) {
+            sessionContext.getBusinessObject(IndexQueueServiceBean.class).wakeWorker();
+        }
+    }
+
+    /**
+     * Starts a worker for the requests in the queue, if the workers of this
+     * server are not all busy.
+     */
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void wakeWorker() {
+        if (startWorker()) {
+            drainAndStopWorker();
+        }
+    }
+
+    /**
+     * @return whether there may be requests left
+     */
+    private boolean drain(int max) {
+        // (through the container, for the transactions)
+        IndexQueueServiceBean self = sessionContext.getBusinessObject(IndexQueueServiceBean.class);
+        List<Claim> claims = self.claimNext(max);
+        for (Claim claim : claims) {
+            boolean indexed = false;
+            try {
+                indexed = indexService.indexQueuedDataset(claim.getDatasetId(), claim.isCleanup());
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to index dataset " + claim.getDatasetId() + " from the queue", e);
+            } finally {
+                self.done(claim, indexed);
+            }
+        }
+        return claims.size() == max;
+    }
+
+    /**
+     * Picks up the requests left in the queue (e.g. by the servers that were
+     * restarted), if the workers of this server are not all busy.
+     */
+    @Schedule(hour = "*", minute = "*", second = "*/30", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void sweep() {
+        wakeWorker();
+    }
+
+    /**
+     * @return the queue depth (the datasets queued, and being indexed), the
+     *         lag (the age of the oldest request waiting), and the workers
+     *         and counters of this server
+     */
+    public JsonObjectBuilder getStatus() {
+        Object[] row = (Object[]) em.createNativeQuery("SELECT COUNT(*), COUNT(CLAIMEDBY), "
+                + "MIN(CASE WHEN CLAIMEDBY IS NULL THEN REQUESTTIME END), SUM(REQUESTCOUNT) FROM INDEXREQUEST")
+                .getSingleResult();
+        long queued = ((Number) row[0]).longValue();
+        long claimed = ((Number) row[1]).longValue();
+        Timestamp oldestWaiting = (Timestamp) row[2];
+        long requests = row[3] == null ? 0L : ((Number) row[3]).longValue();
+
+        return Json.createObjectBuilder()
+                .add("queued", queued)
+                .add("beingIndexed", claimed)
+                .add("requests", requests)
+                .add("lagSeconds", oldestWaiting == null ? 0L : Math.max(0L, (System.currentTimeMillis() - oldestWaiting.getTime()) / 1000L))
+                .add("server", Json.createObjectBuilder()
+                        .add("name", serverName)
+                        .add("workers", maxWorkers)
+                        .add("workersBusy", maxWorkers - workers.availablePermits())
+                        .add("datasetsIndexed", datasetsIndexed.get())
+                        .add("datasetsFailed", datasetsFailed.get()));
+    }
+}
@@ -4,9 +4,6 @@ import edu.harvard.iq.dataverse.*;
 import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
 import edu.harvard.iq.dataverse.authorization.providers.builtin.BuiltinUserServiceBean;
 import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
-import edu.harvard.iq.dataverse.dataaccess.DataAccess;
-import edu.harvard.iq.dataverse.dataaccess.DataAccessRequest;
-import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableMetadata;
 import edu.harvard.iq.dataverse.datavariable.VariableMetadataUtil;
@@ -19,7 +16,6 @@ import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.StringUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.IOException;
-import java.io.InputStream;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
@@ -29,31 +25,33 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
 import jakarta.ejb.AsyncResult;
 import jakarta.ejb.Asynchronous;
 import jakarta.ejb.EJB;
 import jakarta.ejb.EJBException;
+import jakarta.ejb.SessionContext;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
+import static jakarta.ejb.TransactionAttributeType.NOT_SUPPORTED;
 import static jakarta.ejb.TransactionAttributeType.REQUIRES_NEW;
 import jakarta.inject.Named;
 import jakarta.json.JsonObject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -61,18 +59,12 @@ import org.apache.solr.client.solrj.SolrQuery.SortClause;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.response.QueryResponse;
-import org.apache.solr.client.solrj.response.UpdateResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.CursorMarkParams;
-import org.apache.tika.parser.AutoDetectParser;
-import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.ParseContext;
-import org.apache.tika.sax.BodyContentHandler;
 import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.ConfigProvider;
-import org.xml.sax.ContentHandler;
 
 @Stateless
 @Named
@@ -112,6 +104,12 @@ public class IndexServiceBean {
     SolrClientService solrClientService;
     @EJB
     DataFileServiceBean dataFileService;
+    @EJB
+    FullTextExtractionServiceBean fullTextExtractionService;
+    @EJB
+    IndexQueueServiceBean indexQueueService;
+    @Resource
+    SessionContext sessionContext;
 
     @EJB
     VariableServiceBean variableService;
@@ -132,6 +130,8 @@ public class IndexServiceBean {
     private static final String groupPerUserPrefix = "group_user";
     private static final String publicGroupIdString = "public";
     private static final String publicGroupString = groupPrefix + "public";
+    // (the status returned by indexDataverse when it has succeeded starts with this)
+    static final String indexedDataversePrefix = "indexed dataverse ";
     public static final String PUBLISHED_STRING = "Published";
     private static final String UNPUBLISHED_STRING = "Unpublished";
     private static final String DRAFT_STRING = "Draft";
@@ -303,7 +303,7 @@ public class IndexServiceBean {
         String status;
         try {
             if (dataverse.getId() != null) {
-                solrClientService.getSolrClient().add(docs);
+                solrClientService.addAndWait(docs);
             } else {
                 logger.info("WARNING: indexing of a dataverse with no id attempted");
             }
@@ -312,91 +312,176 @@ public class IndexServiceBean {
             logger.info(status);
             return new AsyncResult<>(status);
         }
-        try {
-            solrClientService.getSolrClient().commit();
-        } catch (SolrServerException | IOException ex) {
-            status = ex.toString();
-            logger.info(status);
-            return new AsyncResult<>(status);
-        }
 
         dvObjectService.updateContentIndexTime(dataverse);
         IndexResponse indexResponse = solrIndexService.indexPermissionsForOneDvObject(dataverse);
-        String msg = "indexed dataverse " + dataverse.getId() + ":" + dataverse.getAlias() + ". Response from permission indexing: " + indexResponse.getMessage();
+        String msg = indexedDataversePrefix + dataverse.getId() + ":" + dataverse.getAlias() + ". Response from permission indexing: " + indexResponse.getMessage();
         return new AsyncResult<>(msg);
 
     }
     
-    @TransactionAttribute(REQUIRES_NEW)
-    public void indexDatasetInNewTransaction(Long datasetId) { //Dataset dataset) {
+    /**
+     * Indexes the dataset right away (in this thread), unless it is being
+     * indexed already; in which case it will be indexed again once that's
+     * done. See {@link IndexQueueServiceBean}.
+     * 
+     * @return false if the indexing has failed
+     */
+    @TransactionAttribute(NOT_SUPPORTED)
+    public boolean indexDatasetInNewTransaction(Long datasetId) { //Dataset dataset) {
         boolean doNormalSolrDocCleanUp = false;
+        IndexQueueServiceBean.Claim claim = indexQueueService.requestAndClaim(datasetId, doNormalSolrDocCleanUp);
+        if (claim == null) {
+            return true;
+        }
+        boolean indexed = false;
+        try {
+            indexed = indexQueuedDataset(datasetId, claim.isCleanup());
+        } finally {
+            indexQueueService.done(claim, indexed);
+        }
+        return indexed;
+    }
+    
+    /**
+     * Indexes a dataset taken from the queue, see
+     * {@link IndexQueueServiceBean#drainAndStopWorker()}: extracts the text of
+     * its files first (see {@link #extractFullTextAhead}), then indexes it in
+     * a new transaction.
+     * 
+     * @return false if the indexing has failed
+     */
+    @TransactionAttribute(NOT_SUPPORTED)
+    public boolean indexQueuedDataset(Long datasetId, boolean doNormalSolrDocCleanUp) {
+        Map<Long, FullTextExtractionServiceBean.Extraction> extractedTexts = extractFullTextAhead(datasetService.find(datasetId));
+        return sessionContext.getBusinessObject(IndexServiceBean.class).indexQueuedDatasetInNewTransaction(datasetId, doNormalSolrDocCleanUp, extractedTexts);
+    }
+    
+    /**
+     * @param extractedTexts the text of the files, extracted ahead of the
+     *        transaction, by the id of the file
+     * @return false if the indexing has failed
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public boolean indexQueuedDatasetInNewTransaction(Long datasetId, boolean doNormalSolrDocCleanUp, Map<Long, FullTextExtractionServiceBean.Extraction> extractedTexts) {
         Dataset dataset = datasetService.findDeep(datasetId);
-        asyncIndexDataset(dataset, doNormalSolrDocCleanUp);
-        dataset = null;
+        if (dataset == null) {
+            // (deleted since it was queued)
+            return true;
+        }
+        return indexDatasetLoggingFailures(dataset, doNormalSolrDocCleanUp, extractedTexts);
     }
     
-    // The following two variables are only used in the synchronized getNextToIndex method and do not need to be synchronized themselves
-
-    // nextToIndex contains datasets mapped by dataset id that were added for future indexing while the indexing was already ongoing for a given dataset
-    // (if there already was a dataset scheduled for indexing, it is overwritten and only the most recently requested version is kept in the map)
-    private static final Map<Long, Dataset> NEXT_TO_INDEX = new ConcurrentHashMap<>();
-    // indexingNow is a set of dataset ids of datasets being indexed asynchronously right now
-    private static final Map<Long, Boolean> INDEXING_NOW = new ConcurrentHashMap<>();
-
-    // When you pass null as Dataset parameter to this method, it indicates that the indexing of the dataset with "id" has finished
-    // Pass non-null Dataset to schedule it for indexing
-    synchronized private static Dataset getNextToIndex(Long id, Dataset d) {
-        if (d == null) { // -> indexing of the dataset with id has finished
-            Dataset next = NEXT_TO_INDEX.remove(id);
-            if (next == null) { // -> no new indexing jobs were requested while indexing was ongoing
-                // the job can be stopped now
-                INDEXING_NOW.remove(id);
+    /**
+     * Indexes the dataset (as passed in, by {@link #asyncIndexDataset}) with
+     * the text of its files extracted ahead of the transaction.
+     * 
+     * @return false if the indexing has failed
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public boolean indexDatasetInNewTransaction(Dataset dataset, boolean doNormalSolrDocCleanUp, Map<Long, FullTextExtractionServiceBean.Extraction> extractedTexts) {
+        return indexDatasetLoggingFailures(dataset, doNormalSolrDocCleanUp, extractedTexts);
+    }
+    
+    /**
+     * Extracts the text of the files of the dataset that are to be indexed
+     * with it (see {@link #toSolrDocs}), before the indexing transaction is
+     * started; so that the transaction isn't kept open while the files are
+     * being parsed. The files left out (e.g. added since) are extracted by
+     * the indexing itself.
+     * 
+     * @return the extractions, done, by the id of the file
+     */
+    private Map<Long, FullTextExtractionServiceBean.Extraction> extractFullTextAhead(Dataset dataset) {
+        Map<Long, FullTextExtractionServiceBean.Extraction> extractions = new HashMap<>();
+        if (dataset == null || dataset.isHarvested() || !settingsService.isTrueForKey(SettingsServiceBean.Key.SolrFullTextIndexing, false)) {
+            return extractions;
+        }
+        Long maxFTIndexingSize = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.SolrMaxFileSizeForFullTextIndexing);
+        long maxSize = maxFTIndexingSize != null ? maxFTIndexingSize.longValue() : Long.MAX_VALUE;
+        for (DatasetVersion version : new DatasetVersion[] { dataset.getLatestVersion(), dataset.getReleasedVersion() }) {
+            if (version == null) {
+                continue;
+            }
+            for (FileMetadata fileMetadata : version.getFileMetadatas()) {
+                DataFile dataFile = fileMetadata.getDataFile();
+                if (!dataFile.isRestricted() && !dataFile.isFilePackage() && !extractions.containsKey(dataFile.getId())) {
+                    extractions.put(dataFile.getId(), fullTextExtractionService.extract(dataFile, maxSize));
+                }
             }
-            return next;
         }
-        // index job is requested for a non-null dataset
-        if (INDEXING_NOW.containsKey(id)) { // -> indexing job is already ongoing, and a new job should not be started by the current thread -> return null
-            NEXT_TO_INDEX.put(id, d);
-            return null;
+        for (FullTextExtractionServiceBean.Extraction extraction : extractions.values()) {
+            extraction.getText();
         }
-        // otherwise, start a new job
-        INDEXING_NOW.put(id, true);
-        return d;
+        return extractions;
     }
 
     /**
      * Indexes a dataset asynchronously.
      * 
-     * Note that this method implement a synchronized skipping mechanism. When an
-     * indexing job is already running for a given dataset in the background, the
-     * new call will not index that dataset, but will delegate the execution to
-     * the already running job. The running job will pick up the requested indexing
-     * once that it is finished with the ongoing indexing. If another indexing is
-     * requested before the ongoing indexing is finished, only the indexing that is
-     * requested most recently will be picked up for the next indexing.
+     * The requests are kept in a queue in the database (see
+     * {@link IndexQueueServiceBean}), which coalesces them: when the dataset
+     * is already being indexed (by this or another server), this request is
+     * left for that worker to pick up once it is finished with the ongoing
+     * indexing; and if several requests come in meanwhile, the dataset is
+     * indexed only once more. In other words: we can have at most one
+     * indexing ongoing for the given dataset, and at most one (most recent)
+     * request for reindexing of the same dataset. For the original in-memory
+     * version of this mechanism, see the pull request:
+     * https://github.com/IQSS/dataverse/pull/9558
      * 
-     * In other words: we can have at most one indexing ongoing for the given
-     * dataset, and at most one (most recent) request for reindexing of the same
-     * dataset. All requests that come between the most recent one and the ongoing
-     * one are skipped for the optimization reasons. For a more in depth discussion,
-     * see the pull request: https://github.com/IQSS/dataverse/pull/9558
+     * A limited number of these calls at a time (per server) index the
+     * dataset; these then go on to index a few of the other datasets left in
+     * the queue, and leave the rest to another worker. When they are all
+     * busy, this call leaves the dataset in the queue; the busy workers check
+     * the queue again once they are done.
      * 
      * @param dataset                The dataset to be indexed.
      * @param doNormalSolrDocCleanUp Flag for normal Solr doc clean up.
      */
     @Asynchronous
+    @TransactionAttribute(NOT_SUPPORTED)
     public void asyncIndexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp) {
         Long id = dataset.getId();
-        Dataset next = getNextToIndex(id, dataset); // if there is an ongoing index job for this dataset, next is null (ongoing index job will reindex the newest version after current indexing finishes)
-        while (next != null) {
-            try {
-                indexDataset(next, doNormalSolrDocCleanUp);
-            } catch (Exception e) { // catch all possible exceptions; otherwise when something unexpected happes the dataset wold remain locked and impossible to reindex
-                String failureLogText = "Indexing failed. You can kickoff a re-index of this dataset with: \r\n curl http://localhost:8080/api/admin/index/datasets/" + dataset.getId().toString();
-                failureLogText += "\r\n" + e.getLocalizedMessage();
-                LoggingUtil.writeOnSuccessFailureLog(null, failureLogText, dataset);
+        if (!indexQueueService.startWorker()) {
+            indexQueueService.request(id, doNormalSolrDocCleanUp);
+            // (in case a worker has become free meanwhile, before the request
+            // was committed; otherwise the busy workers will see it)
+            if (indexQueueService.startWorker()) {
+                indexQueueService.drainAndStopWorker();
+            }
+            return;
+        }
+        try {
+            IndexQueueServiceBean.Claim claim = indexQueueService.requestAndClaim(id, doNormalSolrDocCleanUp);
+            if (claim != null) {
+                boolean indexed = false;
+                try {
+                    // (the text of the files is extracted before the
+                    // indexing transaction is started)
+                    Map<Long, FullTextExtractionServiceBean.Extraction> extractedTexts = extractFullTextAhead(dataset);
+                    indexed = sessionContext.getBusinessObject(IndexServiceBean.class).indexDatasetInNewTransaction(dataset, claim.isCleanup(), extractedTexts);
+                } finally {
+                    indexQueueService.done(claim, indexed);
+                }
             }
-            next = getNextToIndex(id, null); // if dataset was not changed during the indexing (and no new job was requested), next is null and loop can be stopped
+        } finally {
+            indexQueueService.drainAndStopWorker();
+        }
+    }
+
+    /**
+     * @return false if the indexing has failed
+     */
+    private boolean indexDatasetLoggingFailures(Dataset dataset, boolean doNormalSolrDocCleanUp, Map<Long, FullTextExtractionServiceBean.Extraction> extractedTexts) {
+        try {
+            indexDataset(dataset, doNormalSolrDocCleanUp, extractedTexts);
+            return true;
+        } catch (Exception e) { // catch all possible exceptions; otherwise when something unexpected happens the request would remain claimed until it times out
+            String failureLogText = "Indexing failed. You can kickoff a re-index of this dataset with: \r\n curl http://localhost:8080/api/admin/index/datasets/" + dataset.getId().toString();
+            failureLogText += "\r\n" + e.getLocalizedMessage();
+            LoggingUtil.writeOnSuccessFailureLog(null, failureLogText, dataset);
+            return false;
         }
     }
 
@@ -415,12 +500,12 @@ public class IndexServiceBean {
         }
     }
 
-    private void indexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp) throws  SolrServerException, IOException {
-        doIndexDataset(dataset, doNormalSolrDocCleanUp);
+    private void indexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp, Map<Long, FullTextExtractionServiceBean.Extraction> extractedTexts) throws  SolrServerException, IOException {
+        doIndexDataset(dataset, doNormalSolrDocCleanUp, extractedTexts);
         updateLastIndexedTime(dataset.getId());
     }
     
-    private void doIndexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp) throws  SolrServerException, IOException {
+    private void doIndexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp, Map<Long, FullTextExtractionServiceBean.Extraction> extractedTexts) throws  SolrServerException, IOException {
         logger.fine("indexing dataset " + dataset.getId());
         /**
          * @todo should we use solrDocIdentifierDataset or
@@ -467,6 +552,17 @@ public class IndexServiceBean {
                 solrIdsOfFilesToDelete.add(solrIdOfPublishedFile);
                 fileInfo.add(fileMetadata.getDataFile().getId() + ":" + fileMetadata.getLabel());
             }
+            int numFiles = 0;
+            if (fileMetadatas != null) {
+                numFiles = fileMetadatas.size();
+            }
+            debug.append("- files: " + numFiles + " " + fileInfo.toString() + "\n");
+        }
+        debug.append("numPublishedVersions: " + numPublishedVersions + "\n");
+        if (doNormalSolrDocCleanUp) {
+            // (This is only needed when cleaning up - and is only done once,
+            // rather than for every version; the search has to commit the
+            // pending index updates first, which is costly during a reindex.)
             try {
                 /**
                  * Preemptively delete *all* Solr documents for files associated
@@ -493,14 +589,6 @@ public class IndexServiceBean {
             } catch (SearchException | NullPointerException ex) {
                 logger.fine("could not run search of files to delete: " + ex);
             }
-            int numFiles = 0;
-            if (fileMetadatas != null) {
-                numFiles = fileMetadatas.size();
-            }
-            debug.append("- files: " + numFiles + " " + fileInfo.toString() + "\n");
-        }
-        debug.append("numPublishedVersions: " + numPublishedVersions + "\n");
-        if (doNormalSolrDocCleanUp) {
             IndexResponse resultOfAttemptToPremptivelyDeletePublishedFiles = solrIndexService.deleteMultipleSolrIds(solrIdsOfFilesToDelete);
             debug.append("result of attempt to premptively deleted published files before reindexing: " + resultOfAttemptToPremptivelyDeletePublishedFiles + "\n");
         }
@@ -529,7 +617,7 @@ public class IndexServiceBean {
 
                 desiredCards.put(DatasetVersion.VersionState.DRAFT, true);
                 IndexableDataset indexableDraftVersion = new IndexableDataset(latestVersion);
-                String indexDraftResult = addOrUpdateDataset(indexableDraftVersion);
+                String indexDraftResult = addOrUpdateDataset(indexableDraftVersion, extractedTexts);
                 results.append("The latest version is a working copy (latestVersionState: ")
                         .append(latestVersionStateString).append(") and indexing was attempted for ")
                         .append(solrIdDraftDataset).append(" (limited discoverability). Result: ")
@@ -583,7 +671,7 @@ public class IndexServiceBean {
 
                 desiredCards.put(DatasetVersion.VersionState.DEACCESSIONED, true);
                 IndexableDataset indexableDeaccessionedVersion = new IndexableDataset(latestVersion);
-                String indexDeaccessionedVersionResult = addOrUpdateDataset(indexableDeaccessionedVersion);
+                String indexDeaccessionedVersionResult = addOrUpdateDataset(indexableDeaccessionedVersion, extractedTexts);
                 results.append("No draft version. Attempting to index as deaccessioned. Result: ").append(indexDeaccessionedVersionResult).append("\n");
 
                 desiredCards.put(DatasetVersion.VersionState.RELEASED, false);
@@ -637,7 +725,7 @@ public class IndexServiceBean {
 
                 desiredCards.put(DatasetVersion.VersionState.RELEASED, true);
                 IndexableDataset indexableReleasedVersion = new IndexableDataset(releasedVersion);
-                String indexReleasedVersionResult = addOrUpdateDataset(indexableReleasedVersion);
+                String indexReleasedVersionResult = addOrUpdateDataset(indexableReleasedVersion, extractedTexts);
                 results.append("Attempted to index " + solrIdPublished).append(". Result: ").append(indexReleasedVersionResult).append("\n");
 
                 desiredCards.put(DatasetVersion.VersionState.DRAFT, false);
@@ -692,10 +780,10 @@ public class IndexServiceBean {
 
                 desiredCards.put(DatasetVersion.VersionState.RELEASED, true);
                 IndexableDataset indexableReleasedVersion = new IndexableDataset(releasedVersion);
-                String indexReleasedVersionResult = addOrUpdateDataset(indexableReleasedVersion, datafilesInDraftVersion);
+                String indexReleasedVersionResult = addOrUpdateDataset(indexableReleasedVersion, datafilesInDraftVersion, extractedTexts);
                 results.append("There is a published version we will attempt to index. Result: ").append(indexReleasedVersionResult).append("\n");
 
-                String indexDraftResult = addOrUpdateDataset(indexableDraftVersion);
+                String indexDraftResult = addOrUpdateDataset(indexableDraftVersion, extractedTexts);
                 results.append("The latest version is a working copy (latestVersionState: ")
                         .append(latestVersionStateString).append(") and will be indexed as ")
                         .append(solrIdDraftDataset).append(" (limited visibility). Result: ").append(indexDraftResult).append("\n");
@@ -764,12 +852,21 @@ public class IndexServiceBean {
         return indexResponse;
     }
 
-    private String addOrUpdateDataset(IndexableDataset indexableDataset) throws  SolrServerException, IOException {
-        String result = addOrUpdateDataset(indexableDataset, null);
+    private String addOrUpdateDataset(IndexableDataset indexableDataset, Map<Long, FullTextExtractionServiceBean.Extraction> extractedTexts) throws  SolrServerException, IOException {
+        String result = addOrUpdateDataset(indexableDataset, null, extractedTexts);
         return result;
     }
 
     public SolrInputDocuments toSolrDocs(IndexableDataset indexableDataset, Set<Long> datafilesInDraftVersion) throws  SolrServerException, IOException {
+        return toSolrDocs(indexableDataset, datafilesInDraftVersion, null);
+    }
+    
+    /**
+     * @param extractedTexts the text of the files extracted ahead (see
+     *        {@link #extractFullTextAhead}), by the id of the file; the
+     *        others are extracted here
+     */
+    private SolrInputDocuments toSolrDocs(IndexableDataset indexableDataset, Set<Long> datafilesInDraftVersion, Map<Long, FullTextExtractionServiceBean.Extraction> extractedTexts) throws  SolrServerException, IOException {
         IndexableDataset.DatasetState state = indexableDataset.getDatasetState();
         Dataset dataset = indexableDataset.getDatasetVersion().getDataset();
         logger.fine("adding or updating Solr document for dataset id " + dataset.getId());
@@ -1095,6 +1192,8 @@ public class IndexServiceBean {
         boolean doFullTextIndexing = settingsService.isTrueForKey(SettingsServiceBean.Key.SolrFullTextIndexing, false);
         Long maxFTIndexingSize = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.SolrMaxFileSizeForFullTextIndexing);
         long maxSize = maxFTIndexingSize != null ? maxFTIndexingSize.longValue() : Long.MAX_VALUE;
+        // (the text of the files is extracted in parallel, see FullTextExtractionServiceBean)
+        Map<SolrInputDocument, FullTextExtractionServiceBean.Extraction> fullTextExtractions = new IdentityHashMap<>();
 
         List<String> filesIndexed = new ArrayList<>();
         if (datasetVersion != null) {
@@ -1159,54 +1258,11 @@ public class IndexServiceBean {
                     }
                     
                     /* Full-text indexing using Apache Tika */
-                    if (doFullTextIndexing) {
+                    if (doFullTextIndexing && indexableDataset.isFilesShouldBeIndexed()) {
                         if (!dataset.isHarvested() && !fileMetadata.getDataFile().isRestricted() && !fileMetadata.getDataFile().isFilePackage()) {
-                            StorageIO<DataFile> accessObject = null;
-                            InputStream instream = null;
-                            ContentHandler textHandler = null;
-                            try {
-                                accessObject = DataAccess.getStorageIO(fileMetadata.getDataFile(),
-                                        new DataAccessRequest());
-                                if (accessObject != null) {
-                                    accessObject.open();
-                                    // If the size is >max, we don't use the stream. However, for S3, the stream is
-                                    // currently opened in the call above (see
-                                    // https://github.com/IQSS/dataverse/issues/5165), so we want to get a handle so
-                                    // we can close it below.
-                                    instream = accessObject.getInputStream();
-                                    if (accessObject.getSize() <= maxSize) {
-                                        AutoDetectParser autoParser = new AutoDetectParser();
-                                        textHandler = new BodyContentHandler(-1);
-                                        Metadata metadata = new Metadata();
-                                        ParseContext context = new ParseContext();
-                                        /*
-                                         * Try parsing the file. Note that, other than by limiting size, there's been no
-                                         * check see whether this file is a good candidate for text extraction (e.g.
-                                         * based on type).
-                                         */
-                                        autoParser.parse(instream, textHandler, metadata, context);
-                                        datafileSolrInputDocument.addField(SearchFields.FULL_TEXT,
-                                                textHandler.toString());
-                                    }
-                                }
-                            } catch (Exception e) {
-                                // Needs better logging of what went wrong in order to
-                                // track down "bad" documents.
-                                logger.warning(String.format("Full-text indexing for %s failed",
-                                        fileMetadata.getDataFile().getDisplayName()));
-                                e.printStackTrace();
-                            } catch (OutOfMemoryError e) {
-                                textHandler = null;
-                                logger.warning(String.format("Full-text indexing for %s failed due to OutOfMemoryError",
-                                        fileMetadata.getDataFile().getDisplayName()));
-                            } catch(Error e) {
-                                //Catch everything - full-text indexing is complex enough (and using enough 3rd party components) that it can fail
-                                // and we don't want problems here to break other Dataverse functionality (e.g. edits)
-                                logger.severe(String.format("Full-text indexing for %s failed due to Error: %s : %s",
-                                        fileMetadata.getDataFile().getDisplayName(),e.getClass().getCanonicalName(), e.getLocalizedMessage()));
-                            } finally {
-                                IOUtils.closeQuietly(instream);
-                            }
+                            // (the text is added to the document once all the files have been gone through)
+                            FullTextExtractionServiceBean.Extraction extraction = extractedTexts != null ? extractedTexts.get(fileEntityId) : null;
+                            fullTextExtractions.put(datafileSolrInputDocument, extraction != null ? extraction : fullTextExtractionService.extract(fileMetadata.getDataFile(), maxSize));
                         }
                     }
 
@@ -1436,23 +1492,31 @@ public class IndexServiceBean {
               solrInputDocument.addField(SearchFields.EMBARGO_END_DATE, embargoEndDate.toEpochDay());
             }
         }
+        for (Map.Entry<SolrInputDocument, FullTextExtractionServiceBean.Extraction> fullTextExtraction : fullTextExtractions.entrySet()) {
+            String fullText = fullTextExtraction.getValue().getText();
+            if (fullText != null) {
+                fullTextExtraction.getKey().addField(SearchFields.FULL_TEXT, fullText);
+            }
+        }
         Long datasetId = dataset.getId();
         final String msg = "indexed dataset " + datasetId + " as " + datasetSolrDocId + ". filesIndexed: " + filesIndexed;
         return new SolrInputDocuments(docs, msg, datasetId);
     }
     
-    private String addOrUpdateDataset(IndexableDataset indexableDataset, Set<Long> datafilesInDraftVersion) throws  SolrServerException, IOException {   
-        final SolrInputDocuments docs = toSolrDocs(indexableDataset, datafilesInDraftVersion);
+    private String addOrUpdateDataset(IndexableDataset indexableDataset, Set<Long> datafilesInDraftVersion, Map<Long, FullTextExtractionServiceBean.Extraction> extractedTexts) throws  SolrServerException, IOException {   
+        final SolrInputDocuments docs = toSolrDocs(indexableDataset, datafilesInDraftVersion, extractedTexts);
 
         try {
-            solrClientService.getSolrClient().add(docs.getDocuments());
-            solrClientService.getSolrClient().commit();
+            solrClientService.addAndWait(docs.getDocuments());
         } catch (SolrServerException | IOException ex) {
             if (ex.getCause() instanceof SolrServerException) {
                 throw new SolrServerException(ex);
             } else if (ex.getCause() instanceof IOException) {
                 throw new IOException(ex);
             }
+            // (the documents have not been indexed: the caller must not
+            // record the index time)
+            throw ex;
         }
         return docs.getMessage();
     }
@@ -1665,6 +1729,9 @@ public class IndexServiceBean {
     
     
     private void updatePathForExistingSolrDocs(DvObject object) throws SolrServerException, IOException {
+        // The documents are read back, and re-added with the new paths; so
+        // any updates to them still in the buffer must be committed first:
+        solrClientService.commit();
         SolrQuery solrQuery = new SolrQuery();
         solrQuery.setQuery(SearchUtil.constructQuery(SearchFields.ENTITY_ID, object.getId().toString()));
 
@@ -1687,8 +1754,7 @@ public class IndexServiceBean {
 
             sid.removeField(SearchFields.SUBTREE);
             sid.addField(SearchFields.SUBTREE, paths);
-            UpdateResponse addResponse = solrClientService.getSolrClient().add(sid);
-            UpdateResponse commitResponse = solrClientService.getSolrClient().commit();
+            solrClientService.add(List.of(sid));
             if (object.isInstanceofDataset()) {
                 for (DataFile df : dataset.getFiles()) {
                     solrQuery.setQuery(SearchUtil.constructQuery(SearchFields.ENTITY_ID, df.getId().toString()));
@@ -1701,8 +1767,7 @@ public class IndexServiceBean {
                         }
                         sid.removeField(SearchFields.SUBTREE);
                         sid.addField(SearchFields.SUBTREE, paths);
-                        addResponse = solrClientService.getSolrClient().add(sid);
-                        commitResponse = solrClientService.getSolrClient().commit();
+                        solrClientService.add(List.of(sid));
                     }
                 }
             }
@@ -1742,18 +1807,12 @@ public class IndexServiceBean {
 
     public String delete(Dataverse doomed) {
         logger.fine("deleting Solr document for dataverse " + doomed.getId());
-        UpdateResponse updateResponse;
         try {
-            updateResponse = solrClientService.getSolrClient().deleteById(solrDocIdentifierDataverse + doomed.getId());
+            solrClientService.deleteById(List.of(solrDocIdentifierDataverse + doomed.getId()));
         } catch (SolrServerException | IOException ex) {
             return ex.toString();
         }
-        try {
-            solrClientService.getSolrClient().commit();
-        } catch (SolrServerException | IOException ex) {
-            return ex.toString();
-        }
-        String response = "Successfully deleted dataverse " + doomed.getId() + " from Solr index. updateReponse was: " + updateResponse.toString();
+        String response = "Successfully deleted dataverse " + doomed.getId() + " from Solr index.";
         logger.fine(response);
         return response;
     }
@@ -1767,18 +1826,12 @@ public class IndexServiceBean {
     public String removeSolrDocFromIndex(String doomed) {
 
         logger.fine("deleting Solr document: " + doomed);
-        UpdateResponse updateResponse;
         try {
-            updateResponse = solrClientService.getSolrClient().deleteById(doomed);
+            solrClientService.deleteById(List.of(doomed));
         } catch (SolrServerException | IOException ex) {
             return ex.toString();
         }
-        try {
-            solrClientService.getSolrClient().commit();
-        } catch (SolrServerException | IOException ex) {
-            return ex.toString();
-        }
-        String response = "Attempted to delete " + doomed + " from Solr index. updateReponse was: " + updateResponse.toString();
+        String response = "Attempted to delete " + doomed + " from Solr index.";
         logger.fine(response);
         return response;
     }
@@ -1960,6 +2013,7 @@ public class IndexServiceBean {
     public List<String> findPermissionsInSolrOnly() throws SearchException {
         List<String> permissionInSolrOnly = new ArrayList<>();
         try {
+            solrClientService.commit();
             int rows = 100;
             SolrQuery q = (new SolrQuery(SearchFields.DEFINITION_POINT_DVOBJECT_ID+":*")).setRows(rows).setSort(SortClause.asc(SearchFields.ID));
             String cursorMark = CursorMarkParams.CURSOR_MARK_START;
@@ -1994,6 +2048,11 @@ public class IndexServiceBean {
         solrQuery.setQuery("*").setRows(rows).setSort(SortClause.asc(SearchFields.ID));
         solrQuery.addFilterQuery(SearchFields.TYPE + ":" + type);
         List<String> dvObjectInSolrOnly = new ArrayList<>();
+        try {
+            solrClientService.commit();
+        } catch (SolrServerException | IOException ex) {
+            throw new SearchException("Error committing the pending updates to Solr", ex);
+        }
        
         String cursorMark = CursorMarkParams.CURSOR_MARK_START;
         boolean done = false;
@@ -2042,6 +2101,7 @@ public class IndexServiceBean {
         List<String> dvObjectInSolrOnly = new ArrayList<>();
         QueryResponse queryResponse = null;
         try {
+            solrClientService.commit();
             queryResponse = solrClientService.getSolrClient().query(solrQuery);
         } catch (SolrServerException | IOException ex) {
             throw new SearchException("Error searching Solr for dataset parent id " + parentDatasetId, ex);
@@ -0,0 +1,167 @@
+package edu.harvard.iq.dataverse.search;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObjectBuilder;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The work, and the progress, of a parallel reindex (see
+ * {@link IndexBatchServiceBean#indexAllInParallel(int, boolean)}): the ids of
+ * the collections and datasets left to index, which the workers take from as
+ * they go (so that a worker that gets the larger datasets doesn't hold up the
+ * others), and the counters reported by /api/admin/index/status/reindex.
+ */
+public class ReindexProgress {
+
+    // (only the first ones are kept)
+    private static final int MAX_FAILED_IDS = 1000;
+
+    private final int threads;
+    private final Queue<Long> dataverseIds;
+    private final Queue<Long> datasetIds;
+    private final int dataverseCount;
+    private final int datasetCount;
+
+    private final long startTime = System.currentTimeMillis();
+    private volatile long endTime = 0L;
+    private volatile boolean cancelled = false;
+    private final AtomicInteger workersRunning;
+
+    private final AtomicInteger dataversesIndexed = new AtomicInteger();
+    private final AtomicInteger datasetsIndexed = new AtomicInteger();
+    private final AtomicInteger dataverseFailures = new AtomicInteger();
+    private final AtomicInteger datasetFailures = new AtomicInteger();
+    private final Queue<Long> failedIds = new ConcurrentLinkedQueue<>();
+
+    // the counters of the documents sent to Solr, when the reindex started:
+    private final long documentsAddedBefore;
+    private final long failedDocumentsBefore;
+
+    ReindexProgress(int threads, List<Long> dataverseIds, List<Long> datasetIds, long documentsAddedBefore, long failedDocumentsBefore) {
+        this.threads = threads;
+        this.dataverseIds = new ConcurrentLinkedQueue<>(dataverseIds);
+        this.datasetIds = new ConcurrentLinkedQueue<>(datasetIds);
+        this.dataverseCount = dataverseIds.size();
+        this.datasetCount = datasetIds.size();
+        this.workersRunning = new AtomicInteger(threads);
+        this.documentsAddedBefore = documentsAddedBefore;
+        this.failedDocumentsBefore = failedDocumentsBefore;
+    }
+
+    /**
+     * @return the id of the next collection to index, or null if there are
+     *         none left (or the reindex has been cancelled)
+     */
+    Long nextDataverse() {
+        return cancelled ? null : dataverseIds.poll();
+    }
+
+    /**
+     * @return the id of the next dataset to index, or null if there are none
+     *         left (or the reindex has been cancelled)
+     */
+    Long nextDataset() {
+        return cancelled ? null : datasetIds.poll();
+    }
+
+    void dataverseIndexed() {
+        dataversesIndexed.incrementAndGet();
+    }
+
+    void datasetIndexed() {
+        datasetsIndexed.incrementAndGet();
+    }
+
+    void dataverseFailed(Long id) {
+        dataverseFailures.incrementAndGet();
+        addFailedId(id);
+    }
+
+    void datasetFailed(Long id) {
+        datasetFailures.incrementAndGet();
+        addFailedId(id);
+    }
+
+    private void addFailedId(Long id) {
+        if (dataverseFailures.get() + datasetFailures.get() <= MAX_FAILED_IDS) {
+            failedIds.add(id);
+        }
+    }
+
+    int getFailureCount() {
+        return dataverseFailures.get() + datasetFailures.get();
+    }
+
+    /**
+     * The workers stop once they are done with what they are indexing.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isRunning() {
+        return workersRunning.get() > 0;
+    }
+
+    /**
+     * @return true if this was the last worker
+     */
+    boolean workerDone() {
+        if (workersRunning.decrementAndGet() == 0) {
+            endTime = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param documentsAdded the number of documents sent to Solr so far (see
+     *        {@link SolrClientService#getDocumentsAdded()})
+     * @param failedDocuments the number of documents that have failed to be
+     *        sent to Solr so far
+     */
+    JsonObjectBuilder toJson(long documentsAdded, long failedDocuments) {
+        long now = endTime > 0 ? endTime : System.currentTimeMillis();
+        double seconds = Math.max(1L, now - startTime) / 1000.0;
+        int done = dataversesIndexed.get() + datasetsIndexed.get() + getFailureCount();
+        int left = dataverseCount + datasetCount - done;
+        long documents = documentsAdded - documentsAddedBefore;
+
+        String state = isRunning() ? (cancelled ? "cancelling" : "running") : (cancelled ? "cancelled" : "finished");
+        JsonArrayBuilder failedIdsJson = Json.createArrayBuilder();
+        for (Long id : failedIds) {
+            failedIdsJson.add(id);
+        }
+        JsonObjectBuilder json = Json.createObjectBuilder()
+                .add("state", state)
+                .add("threads", threads)
+                .add("startTime", new Timestamp(startTime).toString())
+                .add("secondsElapsed", (long) seconds)
+                .add("dataverses", Json.createObjectBuilder()
+                        .add("total", dataverseCount)
+                        .add("indexed", dataversesIndexed.get())
+                        .add("failed", dataverseFailures.get()))
+                .add("datasets", Json.createObjectBuilder()
+                        .add("total", datasetCount)
+                        .add("indexed", datasetsIndexed.get())
+                        .add("failed", datasetFailures.get()))
+                .add("failedIds", failedIdsJson)
+                .add("documentsIndexed", documents)
+                .add("failedDocuments", failedDocuments - failedDocumentsBefore)
+                .add("documentsPerSecond", Math.round(documents / seconds))
+                .add("objectsPerSecond", Math.round(done / seconds * 100.0) / 100.0);
+        if (endTime > 0) {
+            json.add("endTime", new Timestamp(endTime).toString());
+        } else if (done > 0 && !cancelled) {
+            // (a rough estimate: the datasets with the most files are indexed
+            // first, so the estimate goes down faster towards the end)
+            json.add("secondsRemaining", Math.round(seconds * left / done));
+        }
+        return json;
+    }
+}
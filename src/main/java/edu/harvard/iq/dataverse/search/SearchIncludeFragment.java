@@ -1367,6 +1367,18 @@ public class SearchIncludeFragment implements java.io.Serializable {
     public void setDisplayCardValues() {
 
         Set<Long> harvestedDatasetIds = null;
+        
+        // The download permissions of the restricted files, looked up all 
+        // together (for the card images, and the lock icons):
+        List<DvObject> restrictedFiles = new ArrayList<>();
+        for (SolrSearchResult result : searchResultsList) {
+            if (result.getType().equals("files") && result.getEntity() instanceof DataFile
+                    && ((DataFile) result.getEntity()).isRestricted()) {
+                restrictedFiles.add(result.getEntity());
+            }
+        }
+        permissionsWrapper.prefetchPermissions(restrictedFiles);
+        
         for (SolrSearchResult result : searchResultsList) {
             //logger.info("checking DisplayImage for the search result " + i++);
             if (result.getType().equals("dataverses")) {
@@ -8,14 +8,24 @@ package edu.harvard.iq.dataverse.search;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.common.SolrInputDocument;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
 import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.inject.Named;
+import jakarta.json.JsonObjectBuilder;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 /**
@@ -27,6 +37,9 @@ import java.util.logging.Logger;
  * classes that need it. 
  * This ensures that we are using one client only - as recommended by the 
  * documentation. 
+ * 
+ * The updates to the index (other than the bulk deletes by query) are also 
+ * sent through here, see {@link SolrUpdateBuffer}.
  */
 @Named
 @Singleton
@@ -36,7 +49,12 @@ public class SolrClientService {
     @EJB
     SystemConfig systemConfig;
     
+    // (runs the flusher of the updates)
+    @Resource
+    ManagedExecutorService managedExecutorService;
+    
     private SolrClient solrClient;
+    private SolrUpdateBuffer updateBuffer;
     
     @PostConstruct
     public void init() {
@@ -47,6 +65,10 @@ public class SolrClientService {
         
         String urlString = protocol + "://" + systemConfig.getSolrHostColonPort() + path;
         solrClient = new HttpSolrClient.Builder(urlString).build();
+        
+        updateBuffer = new SolrUpdateBuffer(this::getSolrClient, managedExecutorService,
+                JvmSettings.SOLR_BATCH_SIZE.lookupOptional(Integer.class).orElse(100),
+                JvmSettings.SOLR_COMMIT_WITHIN.lookupOptional(Integer.class).orElse(1000));
     }
     
     @PreDestroy
@@ -78,4 +100,67 @@ public class SolrClientService {
         close(); 
         init();
     }
+    
+    /**
+     * Queues the documents for indexing, to be sent batched with the ones
+     * other callers are queueing meanwhile, and made visible within the
+     * configured commitWithin.
+     * 
+     * @return completed once the documents have reached Solr; see
+     *         {@link #addAndWait(Collection)} for the callers that need to
+     *         know they have been indexed
+     */
+    @Lock(LockType.READ)
+    public Future<Void> add(Collection<SolrInputDocument> docs) {
+        return updateBuffer.add(docs);
+    }
+    
+    /**
+     * Queues the documents for indexing, and waits for them to have reached
+     * Solr; throws if they have failed to.
+     */
+    @Lock(LockType.READ)
+    public void addAndWait(Collection<SolrInputDocument> docs) throws SolrServerException, IOException {
+        SolrUpdateBuffer.await(updateBuffer.add(docs));
+    }
+    
+    /**
+     * Deletes the documents (after sending the ones queued to be indexed).
+     */
+    @Lock(LockType.READ)
+    public void deleteById(List<String> ids) throws SolrServerException, IOException {
+        updateBuffer.deleteById(ids);
+    }
+    
+    /**
+     * Sends the documents queued to be indexed, and commits; for the callers
+     * that need to search what has just been indexed.
+     */
+    @Lock(LockType.READ)
+    public void commit() throws SolrServerException, IOException {
+        updateBuffer.commit();
+    }
+    
+    @Lock(LockType.READ)
+    public JsonObjectBuilder getUpdateCounters() {
+        return updateBuffer.getCounters();
+    }
+    
+    /**
+     * @return the number of documents sent to Solr since the application
+     *         started
+     */
+    @Lock(LockType.READ)
+    public long getDocumentsAdded() {
+        return updateBuffer.getDocumentsAdded();
+    }
+    
+    /**
+     * @return the number of documents that failed to be sent to Solr since
+     *         the application started
+     */
+    @Lock(LockType.READ)
+    public long getFailedDocuments() {
+        return updateBuffer.getFailedDocuments();
+    }
 }
@@ -0,0 +1,298 @@
+package edu.harvard.iq.dataverse.search;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Sends the documents being indexed to Solr in batches, across the objects
+ * they belong to, with "commitWithin" - letting Solr make them visible (with
+ * a soft commit) within that many milliseconds - instead of an explicit hard
+ * commit after every object.
+ *
+ * The callers only queue their updates; a flusher task, started on the
+ * executor whenever there are updates queued and none running, sends them
+ * in the order they were queued: the documents queued by consecutive calls
+ * to add() together, in requests of up to batchSize documents, and the
+ * deletes and commits in between on their own. add() returns a future,
+ * completed once the documents have reached Solr (or failed to); the callers
+ * that need to know they have been indexed (e.g. before recording the index
+ * time) wait for it, the others don't. Callers that need to read back what
+ * they have just indexed must call commit().
+ */
+class SolrUpdateBuffer {
+    private static final Logger logger = Logger.getLogger(SolrUpdateBuffer.class.getCanonicalName());
+
+    private final Supplier<SolrClient> solrClient;
+    private final Executor executor;
+    private final int batchSize;
+    private final int commitWithinMs;
+
+    // (guarded by "this")
+    private List<PendingUpdate> pending = new ArrayList<>();
+    // whether the flusher is running (guarded by "this")
+    private boolean flushing = false;
+
+    private final long countingSince = System.currentTimeMillis();
+    private final AtomicLong documentsAdded = new AtomicLong();
+    private final AtomicLong documentsDeleted = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong failedDocuments = new AtomicLong();
+    private final AtomicLong sendingNanos = new AtomicLong();
+
+    /**
+     * @param solrClient the client to send the updates with
+     * @param executor runs the flusher
+     * @param batchSize the maximum number of documents to send at once (the
+     *        documents of one call to add() are never split); 1 or less sends
+     *        every object's documents on their own
+     * @param commitWithinMs the "commitWithin" sent with the updates; 0 or
+     *        less makes a hard commit after every update instead
+     */
+    SolrUpdateBuffer(Supplier<SolrClient> solrClient, Executor executor, int batchSize, int commitWithinMs) {
+        this.solrClient = solrClient;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.commitWithinMs = commitWithinMs;
+    }
+
+    /**
+     * Queues the documents, to be sent together with the ones queued by the
+     * other callers meanwhile.
+     *
+     * @return completed once the documents have reached Solr; completed
+     *         exceptionally if they have failed to
+     */
+    CompletableFuture<Void> add(Collection<SolrInputDocument> docs) {
+        if (docs.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return queue(new PendingUpdate(docs, null));
+    }
+
+    /**
+     * Deletes the documents, after the ones queued to be added before;
+     * returns once they have been deleted.
+     */
+    void deleteById(List<String> ids) throws SolrServerException, IOException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        await(queue(new PendingUpdate(null, ids)));
+    }
+
+    /**
+     * The flush barrier: sends the queued updates and makes a hard commit,
+     * so that everything indexed so far is visible to the searches that
+     * follow; returns once it is done.
+     */
+    void commit() throws SolrServerException, IOException {
+        await(queue(new PendingUpdate(null, null)));
+    }
+
+    /**
+     * Waits for the updates to have reached Solr.
+     *
+     * @throws IOException if they have failed to, for an I/O error
+     * @throws SolrServerException if they have failed to otherwise
+     */
+    static void await(Future<Void> update) throws SolrServerException, IOException {
+        try {
+            update.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the updates to be sent to Solr");
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw new IOException("Failed to send the updates to Solr", ee.getCause());
+            }
+            throw new SolrServerException("Failed to send the updates to Solr", ee.getCause());
+        }
+    }
+
+    private CompletableFuture<Void> queue(PendingUpdate update) {
+        synchronized (this) {
+            pending.add(update);
+            if (flushing) {
+                return update.future;
+            }
+            flushing = true;
+        }
+        try {
+            executor.execute(this::flush);
+        } catch (RejectedExecutionException ree) {
+            // (such as while the application is being shut down)
+            flush();
+        }
+        return update.future;
+    }
+
+    /**
+     * Sends the queued updates until there are none left; runs on one
+     * thread at a time.
+     */
+    private void flush() {
+        while (true) {
+            List<PendingUpdate> updates;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    flushing = false;
+                    return;
+                }
+                updates = pending;
+                pending = new ArrayList<>();
+            }
+            try {
+                send(updates);
+            } catch (Throwable t) {
+                for (PendingUpdate update : updates) {
+                    update.future.completeExceptionally(t);
+                }
+                synchronized (this) {
+                    flushing = false;
+                }
+                throw t;
+            }
+        }
+    }
+
+    private void send(List<PendingUpdate> updates) {
+        int from = 0;
+        while (from < updates.size()) {
+            PendingUpdate update = updates.get(from);
+            if (update.docs == null) {
+                sendDeleteOrCommit(update);
+                from++;
+                continue;
+            }
+            int to = from;
+            List<SolrInputDocument> batch = new ArrayList<>();
+            do {
+                batch.addAll(updates.get(to++).docs);
+            } while (to < updates.size() && updates.get(to).docs != null && batch.size() + updates.get(to).docs.size() <= batchSize);
+            sendBatch(batch, updates.subList(from, to));
+            from = to;
+        }
+    }
+
+    private void sendBatch(List<SolrInputDocument> batch, List<PendingUpdate> updates) {
+        long start = System.nanoTime();
+        try {
+            if (commitWithinMs > 0) {
+                solrClient.get().add(batch, commitWithinMs);
+            } else {
+                solrClient.get().add(batch);
+                hardCommit();
+            }
+            documentsAdded.addAndGet(batch.size());
+            batchesSent.incrementAndGet();
+            for (PendingUpdate update : updates) {
+                update.future.complete(null);
+            }
+        } catch (SolrServerException | IOException | RuntimeException ex) {
+            failedDocuments.addAndGet(batch.size());
+            List<Object> ids = new ArrayList<>();
+            for (SolrInputDocument doc : batch) {
+                ids.add(doc.getFieldValue(SearchFields.ID));
+            }
+            logger.log(Level.SEVERE, "Failed to send " + batch.size() + " documents to Solr: " + ids, ex);
+            for (PendingUpdate update : updates) {
+                update.future.completeExceptionally(ex);
+            }
+        } finally {
+            sendingNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private void sendDeleteOrCommit(PendingUpdate update) {
+        long start = System.nanoTime();
+        try {
+            if (update.ids == null) {
+                hardCommit();
+            } else if (commitWithinMs > 0) {
+                solrClient.get().deleteById(update.ids, commitWithinMs);
+                documentsDeleted.addAndGet(update.ids.size());
+            } else {
+                solrClient.get().deleteById(update.ids);
+                documentsDeleted.addAndGet(update.ids.size());
+                hardCommit();
+            }
+            update.future.complete(null);
+        } catch (SolrServerException | IOException | RuntimeException ex) {
+            update.future.completeExceptionally(ex);
+        } finally {
+            sendingNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private void hardCommit() throws SolrServerException, IOException {
+        solrClient.get().commit();
+        commits.incrementAndGet();
+    }
+
+    long getDocumentsAdded() {
+        return documentsAdded.get();
+    }
+
+    long getFailedDocuments() {
+        return failedDocuments.get();
+    }
+
+    synchronized int getPendingCount() {
+        int count = 0;
+        for (PendingUpdate update : pending) {
+            if (update.docs != null) {
+                count += update.docs.size();
+            }
+        }
+        return count;
+    }
+
+    JsonObjectBuilder getCounters() {
+        long seconds = Math.max(1L, (System.currentTimeMillis() - countingSince) / 1000L);
+        return Json.createObjectBuilder()
+                .add("batchSize", batchSize)
+                .add("commitWithinMs", commitWithinMs)
+                .add("pendingDocuments", getPendingCount())
+                .add("documentsAdded", documentsAdded.get())
+                .add("documentsDeleted", documentsDeleted.get())
+                .add("batchesSent", batchesSent.get())
+                .add("commits", commits.get())
+                .add("failedDocuments", failedDocuments.get())
+                .add("secondsSending", sendingNanos.get() / 1000000000L)
+                .add("secondsCounting", seconds)
+                .add("documentsPerSecond", documentsAdded.get() / seconds);
+    }
+
+    /**
+     * One queued update: the documents of one call to add(), the ids of one
+     * call to deleteById(), or (with neither) a commit; and its outcome.
+     */
+    private static class PendingUpdate {
+        final Collection<SolrInputDocument> docs;
+        final List<String> ids;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingUpdate(Collection<SolrInputDocument> docs, List<String> ids) {
+            this.docs = docs;
+            this.ids = ids;
+        }
+    }
+}
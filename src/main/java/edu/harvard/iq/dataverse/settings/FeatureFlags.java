@@ -36,6 +36,21 @@ public enum FeatureFlags {
      * @since Dataverse @TODO:
      */
     API_BEARER_AUTH("api-bearer-auth"),
+    /**
+     * Saves a column-oriented copy of every newly ingested tabular file as an auxiliary object, and uses it to
+     * produce column subsets ("variables=" downloads) without re-reading the entire tab-delimited file.
+     * Only used with storage drivers providing random access to auxiliary objects.
+     * @apiNote Raise flag by setting "dataverse.feature.tabular-column-store"
+     * @since Dataverse @TODO:
+     */
+    TABULAR_COLUMN_STORE("tabular-column-store"),
+    /**
+     * Copies the cached metadata exports of the records straight into the OAI-PMH responses (GetRecord, ListRecords),
+     * instead of reading each export into memory and having it re-serialized by the OAI library.
+     * @apiNote Raise flag by setting "dataverse.feature.oai-streamed-metadata"
+     * @since Dataverse @TODO:
+     */
+    OAI_STREAMED_METADATA("oai-streamed-metadata"),
     ;
     
     final String flag;
@@ -51,6 +51,13 @@ public enum JvmSettings {
     DOCROOT_DIRECTORY(SCOPE_FILES, "docroot"),
     GUESTBOOK_AT_REQUEST(SCOPE_FILES, "guestbook-at-request"),
     GLOBUS_CACHE_MAXAGE(SCOPE_FILES, "globus-cache-maxage"),
+    ZIP_DOWNLOAD_PREFETCH(SCOPE_FILES, "zip-download-prefetch"),
+    ZIP_UPLOAD_THREADS(SCOPE_FILES, "zip-upload-threads"),
+    THUMBNAIL_MAX_CONCURRENT(SCOPE_FILES, "thumbnail-max-concurrent"),
+    SCOPE_FILES_VALIDATION(SCOPE_FILES, "validation"),
+    FILES_VALIDATION_THREADS(SCOPE_FILES_VALIDATION, "threads"),
+    FILES_VALIDATION_MAX_AGE(SCOPE_FILES_VALIDATION, "max-age"),
+    FILES_VALIDATION_NEW_FILES_ONLY(SCOPE_FILES_VALIDATION, "new-files-only"),
     
     // SOLR INDEX SETTINGS
     SCOPE_SOLR(PREFIX, "solr"),
@@ -59,6 +66,17 @@ public enum JvmSettings {
     SOLR_PROT(SCOPE_SOLR, "protocol"),
     SOLR_CORE(SCOPE_SOLR, "core"),
     SOLR_PATH(SCOPE_SOLR, "path"),
+    SOLR_BATCH_SIZE(SCOPE_SOLR, "batch-size"),
+    SOLR_COMMIT_WITHIN(SCOPE_SOLR, "commit-within"),
+    SOLR_REINDEX_MAX_THREADS(SCOPE_SOLR, "reindex-max-threads"),
+    SCOPE_SOLR_FULLTEXT(SCOPE_SOLR, "fulltext"),
+    FULLTEXT_EXTRACTION_THREADS(SCOPE_SOLR_FULLTEXT, "extraction-threads"),
+    FULLTEXT_EXTRACTION_TIMEOUT(SCOPE_SOLR_FULLTEXT, "extraction-timeout"),
+    FULLTEXT_MAX_CHARACTERS(SCOPE_SOLR_FULLTEXT, "max-characters"),
+    FULLTEXT_CACHE(SCOPE_SOLR_FULLTEXT, "cache"),
+    SCOPE_SOLR_INDEX_QUEUE(SCOPE_SOLR, "index-queue"),
+    INDEX_QUEUE_WORKERS(SCOPE_SOLR_INDEX_QUEUE, "workers"),
+    INDEX_QUEUE_CLAIM_TIMEOUT(SCOPE_SOLR_INDEX_QUEUE, "claim-timeout"),
 
     // RSERVE CONNECTION
     SCOPE_RSERVE(PREFIX, "rserve"),
@@ -91,6 +109,9 @@ public enum JvmSettings {
 
     // PERSISTENT IDENTIFIER SETTINGS
     SCOPE_PID(PREFIX, "pid"),
+    SCOPE_PID_BATCH(SCOPE_PID, "batch"),
+    PID_BATCH_THREADS(SCOPE_PID_BATCH, "threads"),
+    PID_BATCH_MAX_ATTEMPTS(SCOPE_PID_BATCH, "max-attempts"),
     
     // PROVIDER EZID (legacy) - these settings were formerly kept together with DataCite ones
     SCOPE_PID_EZID(SCOPE_PID, "ezid"),
@@ -141,6 +162,11 @@ public enum JvmSettings {
     OIDC_PKCE_METHOD(SCOPE_OIDC_PKCE, "method"),
     OIDC_PKCE_CACHE_MAXSIZE(SCOPE_OIDC_PKCE, "max-cache-size"),
     OIDC_PKCE_CACHE_MAXAGE(SCOPE_OIDC_PKCE, "max-cache-age"),
+    // AUTH: PERMISSION CACHE SETTINGS
+    SCOPE_PERMISSION_CACHE(SCOPE_AUTH, "permission-cache"),
+    PERMISSION_CACHE_MAXSIZE(SCOPE_PERMISSION_CACHE, "max-size"),
+    PERMISSION_CACHE_MAXAGE(SCOPE_PERMISSION_CACHE, "max-age"),
+    PERMISSION_CACHE_REFRESH_INTERVAL(SCOPE_PERMISSION_CACHE, "refresh-interval"),
 
     // UI SETTINGS
     SCOPE_UI(PREFIX, "ui"),
@@ -161,6 +187,14 @@ public enum JvmSettings {
     // STORAGE USE SETTINGS
     SCOPE_STORAGEUSE(PREFIX, "storageuse"),
     STORAGEUSE_DISABLE_UPDATES(SCOPE_STORAGEUSE, "disable-storageuse-increments"),
+
+    // DATABASE SETTINGS
+    SCOPE_SETTINGS(PREFIX, "settings"),
+    SETTINGS_REFRESH_INTERVAL(SCOPE_SETTINGS, "refresh-interval"),
+
+    // HARVESTING CLIENT SETTINGS
+    SCOPE_HARVEST(PREFIX, "harvest"),
+    HARVEST_GETRECORD_CONCURRENCY(SCOPE_HARVEST, "getrecord-concurrency"),
     ;
 
     private static final String SCOPE_SEPARATOR = ".";
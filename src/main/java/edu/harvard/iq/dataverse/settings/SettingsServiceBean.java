@@ -5,6 +5,7 @@ import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
 import edu.harvard.iq.dataverse.api.ApiBlockingFilter;
 import edu.harvard.iq.dataverse.util.StringUtil;
 import edu.harvard.iq.dataverse.util.json.JsonUtil;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Named;
@@ -13,6 +14,8 @@ import jakarta.json.JsonObject;
 import jakarta.json.JsonValue;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -31,6 +34,15 @@ import java.util.logging.Logger;
 
 /**
  * Service bean accessing a persistent hash map, used as settings in the application.
+ * 
+ * The settings are read from an in-memory snapshot of the whole table, shared
+ * by all the instances of the bean, rather than queried one by one. Every
+ * change to the table bumps the version in the {@code settingversion} table
+ * (with a trigger, so this includes the changes made with SQL, or through
+ * another application server); the version is checked at most every
+ * {@code dataverse.settings.refresh-interval} seconds, and right after the
+ * changes made through this bean, and the snapshot is reloaded when it has
+ * changed.
  * @author michael
  */
 @Stateless
@@ -618,20 +630,62 @@ public class SettingsServiceBean {
     @EJB
     ActionLogServiceBean actionLogSvc;
     
+    @Resource
+    TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+    
+    private static final long refreshIntervalMs = 1000L * JvmSettings.SETTINGS_REFRESH_INTERVAL.lookupOptional(Integer.class).orElse(5);
+    
+    private static volatile SettingsSnapshot snapshot = null;
+    // when to check the version of the settings in the database again:
+    private static volatile long nextCheck = 0L;
+    
+    /**
+     * @return the snapshot of the settings, reloaded first if they have changed
+     */
+    private SettingsSnapshot getSnapshot() {
+        SettingsSnapshot current = snapshot;
+        long now = System.currentTimeMillis();
+        if (current != null && now < nextCheck) {
+            return current;
+        }
+        long version = ((Number) em.createNativeQuery("SELECT VERSION FROM SETTINGVERSION WHERE ID = 1").getSingleResult()).longValue();
+        if (current == null || current.getVersion() != version) {
+            // (the version is read first: a change made while the settings
+            // are read is picked up by the next check)
+            current = new SettingsSnapshot(version, em.createNamedQuery("Setting.findAll", Setting.class).getResultList());
+            snapshot = current;
+            logger.fine("Loaded version " + version + " of the settings");
+        }
+        nextCheck = now + refreshIntervalMs;
+        return current;
+    }
+    
+    /**
+     * Has the version of the settings checked again right away; and again
+     * once the transaction making the changes is over, as the snapshot may
+     * have been reloaded before it was committed (or rolled back).
+     */
+    private void settingsChanged() {
+        nextCheck = 0L;
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                nextCheck = 0L;
+            }
+        });
+    }
+    
     /**
      * Basic functionality - get the name, return the setting, or {@code null}.
      * @param name of the setting
      * @return the actual setting, or {@code null}.
      */
     public String get( String name ) {
-        List<Setting> tokens = em.createNamedQuery("Setting.findByName", Setting.class)
-                .setParameter("name", name )
-                .getResultList();
-        String val = null;
-        if(tokens.size() > 0) {
-            val = tokens.get(0).getContent();
-        }
-        return (val!=null) ? val : null;
+        return getSnapshot().get(name);
     }
     
     /**
@@ -756,14 +810,7 @@ public class SettingsServiceBean {
     }
 
     public String get(String name, String lang, String defaultValue ) {
-        List<Setting> tokens = em.createNamedQuery("Setting.findByNameAndLang", Setting.class)
-                .setParameter("name", name )
-                .setParameter("lang", lang )
-                .getResultList();
-        String val = null;
-        if(tokens.size() > 0) {
-            val = tokens.get(0).getContent();
-        }
+        String val = getSnapshot().get(name, lang);
         return (val!=null) ? val : defaultValue;
     }
     
@@ -793,6 +840,7 @@ public class SettingsServiceBean {
         }
         
         s = em.merge(s);
+        settingsChanged();
         actionLogSvc.log( new ActionLogRecord(ActionLogRecord.ActionType.Setting, "set")
                             .setInfo(name + ": " + content));
         return s;
@@ -817,6 +865,7 @@ public class SettingsServiceBean {
         }
         
         em.merge(s);
+        settingsChanged();
         actionLogSvc.log( new ActionLogRecord(ActionLogRecord.ActionType.Setting, "set")
                 .setInfo(name + ": " +lang + ": " + content));
         return s;
@@ -865,6 +914,7 @@ public class SettingsServiceBean {
         em.createNamedQuery("Setting.deleteByName")
                 .setParameter("name", name)
                 .executeUpdate();
+        settingsChanged();
     }
 
     public void delete( String name, String lang ) {
@@ -874,10 +924,11 @@ public class SettingsServiceBean {
                 .setParameter("name", name)
                 .setParameter("lang", lang)
                 .executeUpdate();
+        settingsChanged();
     }
     
     public Set<Setting> listAll() {
-        return new HashSet<>(em.createNamedQuery("Setting.findAll", Setting.class).getResultList());
+        return new HashSet<>(getSnapshot().getAll());
     }
     
     public Map<String, String> getBaseMetadataLanguageMap(Map<String,String> languageMap, boolean refresh) {
@@ -0,0 +1,77 @@
+package edu.harvard.iq.dataverse.settings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable copy of all the settings in the database, as of a given
+ * version of the settings (see {@link SettingsServiceBean}). Lookups are plain
+ * map lookups; a new snapshot replaces this one as a whole when the settings
+ * change.
+ */
+final class SettingsSnapshot {
+
+    private final long version;
+    // the settings without a language:
+    private final Map<String, String> values;
+    // the settings with one, by name, then language:
+    private final Map<String, Map<String, String>> localizedValues;
+    private final List<Setting> settings;
+
+    SettingsSnapshot(long version, Collection<Setting> settings) {
+        this.version = version;
+        Map<String, String> values = new HashMap<>();
+        Map<String, Map<String, String>> localizedValues = new HashMap<>();
+        List<Setting> copies = new ArrayList<>(settings.size());
+        for (Setting setting : settings) {
+            if (setting.getLang() == null) {
+                values.put(setting.getName(), setting.getContent());
+            } else {
+                localizedValues.computeIfAbsent(setting.getName(), name -> new HashMap<>())
+                        .put(setting.getLang(), setting.getContent());
+            }
+            copies.add(copy(setting));
+        }
+        this.values = values;
+        this.localizedValues = localizedValues;
+        this.settings = Collections.unmodifiableList(copies);
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the content of the setting (without a language), or null
+     */
+    String get(String name) {
+        return values.get(name);
+    }
+
+    /**
+     * @return the content of the setting in the given language, or null
+     */
+    String get(String name, String lang) {
+        Map<String, String> byLang = localizedValues.get(name);
+        return byLang == null ? null : byLang.get(lang);
+    }
+
+    /**
+     * @return copies of all the settings (the caller may change them)
+     */
+    List<Setting> getAll() {
+        List<Setting> all = new ArrayList<>(settings.size());
+        for (Setting setting : settings) {
+            all.add(copy(setting));
+        }
+        return all;
+    }
+
+    private static Setting copy(Setting setting) {
+        return new Setting(setting.getName(), setting.getLang(), setting.getContent());
+    }
+}
@@ -87,6 +87,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jakarta.activation.MimetypesFileTypeMap;
@@ -728,7 +729,7 @@ public class FileUtil implements java.io.Serializable  {
             throw new RuntimeException(e);
         }
 
-        byte[] dataBytes = new byte[1024];
+        byte[] dataBytes = new byte[8192];
 
         int nread;
         try {
@@ -747,6 +748,71 @@ public class FileUtil implements java.io.Serializable  {
         return checksumDigestToString(md.digest());
     }
     
+    /**
+     * Saves the stream in the file, calculating its checksum on the way; so
+     * that a new upload doesn't have to be read again for the checksum. 
+     * 
+     * @return the checksum of the bytes saved
+     */
+    public static String copyAndCalculateChecksum(InputStream in, Path target, ChecksumType checksumType) throws IOException {
+        try {
+            return copyAndCalculateChecksum(in, target, checksumType, null, null);
+        } catch (FileExceedsMaxSizeException | FileExceedsStorageQuotaException ex) {
+            // (not without limits)
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+    /**
+     * Saves the stream in the file, calculating its checksum, and counting 
+     * its bytes against the limits, on the way: the copy is given up (and 
+     * the file removed) as soon as it goes over either of them, rather than 
+     * once the whole stream has been saved.
+     * 
+     * @param fileSizeLimit the size limit of the file; null for none
+     * @param storageQuotaRemaining the storage quota remaining, shared by 
+     *        all the files saved for the same upload (such as the files 
+     *        unpacked from a zip file, several at once), and reduced by the 
+     *        bytes saved; null for none
+     * @return the checksum of the bytes saved
+     */
+    public static String copyAndCalculateChecksum(InputStream in, Path target, ChecksumType checksumType, Long fileSizeLimit, AtomicLong storageQuotaRemaining) 
+            throws IOException, FileExceedsMaxSizeException, FileExceedsStorageQuotaException {
+        MessageDigest md = null;
+        try {
+            md = MessageDigest.getInstance(checksumType.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        byte[] buffer = new byte[65536];
+        long size = 0;
+        boolean saved = false;
+        try (OutputStream out = Files.newOutputStream(target)) {
+            int nread;
+            while ((nread = in.read(buffer)) != -1) {
+                size += nread;
+                if (fileSizeLimit != null && size > fileSizeLimit) {
+                    throw new FileExceedsMaxSizeException(MessageFormat.format(BundleUtil.getStringFromBundle("file.addreplace.error.file_exceeds_limit"), 
+                            "> " + bytesToHumanReadable(fileSizeLimit), bytesToHumanReadable(fileSizeLimit)));
+                }
+                if (storageQuotaRemaining != null && storageQuotaRemaining.addAndGet(-nread) < 0) {
+                    throw new FileExceedsStorageQuotaException(MessageFormat.format(BundleUtil.getStringFromBundle("file.addreplace.error.quota_exceeded"), 
+                            "> " + bytesToHumanReadable(size), bytesToHumanReadable(storageQuotaRemaining.get() + size)));
+                }
+                md.update(buffer, 0, nread);
+                out.write(buffer, 0, nread);
+            }
+            saved = true;
+        } finally {
+            if (!saved) {
+                Files.deleteIfExists(target);
+            }
+        }
+
+        return checksumDigestToString(md.digest());
+    }
+    
     public static String calculateChecksum(byte[] dataBytes, ChecksumType checksumType) {
         MessageDigest md = null;
         try {
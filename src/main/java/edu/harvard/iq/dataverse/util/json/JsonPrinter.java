@@ -55,6 +55,7 @@ import jakarta.ejb.EJB;
 import jakarta.ejb.Singleton;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
+import jakarta.json.stream.JsonGenerator;
 
 /**
  * Convert objects to Json.
@@ -410,6 +411,35 @@ public class JsonPrinter {
         return bld;
     }
 
+    /**
+     * Writes the same JSON as {@link #json(DatasetVersion, List, boolean)},
+     * but one file at a time: the JSON of the files (the bulk of the JSON of a
+     * version with many files) is never all in memory at once.
+     */
+    public static void writeJson(JsonGenerator generator, DatasetVersion dsv, List<String> anonymizedFieldTypeNamesList, boolean includeFiles) {
+        JsonObject versionWithoutFiles = json(dsv, anonymizedFieldTypeNamesList, false).build();
+        generator.writeStartObject();
+        versionWithoutFiles.forEach(generator::write);
+        if (includeFiles) {
+            // (the last field, as in json(DatasetVersion, ...))
+            generator.writeKey("files");
+            writeFileMetadatas(generator, dsv.getFileMetadatas());
+        }
+        generator.writeEnd();
+    }
+
+    /**
+     * Writes the same JSON as {@link #jsonFileMetadatas(Collection)}, one file
+     * at a time.
+     */
+    public static void writeFileMetadatas(JsonGenerator generator, Collection<FileMetadata> fmds) {
+        generator.writeStartArray();
+        for (FileMetadata fmd : fmds) {
+            generator.write(json(fmd).build());
+        }
+        generator.writeEnd();
+    }
+
     public static JsonObjectBuilder jsonDataFileList(List<DataFile> dataFiles){
     
         if (dataFiles==null){
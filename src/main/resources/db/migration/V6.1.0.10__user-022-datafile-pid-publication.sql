@@ -0,0 +1,10 @@
+-- The file identifiers publicized for the publication of a version, see
+-- DatasetServiceBean.publicizeDataFileIdentifier: written as each one is,
+-- in a transaction of its own, and removed once the version is published.
+CREATE TABLE IF NOT EXISTS DATAFILEPIDPUBLICATION (
+    DATAFILE_ID BIGINT NOT NULL REFERENCES DVOBJECT (ID) ON DELETE CASCADE,
+    DATASETVERSION_ID BIGINT NOT NULL,
+    PUBLICIZETIME TIMESTAMP NOT NULL,
+    PRIMARY KEY (DATAFILE_ID, DATASETVERSION_ID)
+);
+CREATE INDEX IF NOT EXISTS INDEX_DATAFILEPIDPUBLICATION_DATASETVERSION_ID ON DATAFILEPIDPUBLICATION (DATASETVERSION_ID);
@@ -0,0 +1,3 @@
+-- Supports paging through the records of an OAI set (ListIdentifiers, ListRecords),
+-- in the order of the global ids, continuing from the last record of the previous page:
+CREATE INDEX IF NOT EXISTS index_oairecord_setname_globalid ON oairecord (setname, globalid, id);
@@ -0,0 +1,11 @@
+-- The queue of the datasets to be (re)indexed, see IndexQueueServiceBean:
+-- one row per dataset, however many times it has been requested.
+CREATE TABLE IF NOT EXISTS INDEXREQUEST (
+    DATASET_ID BIGINT PRIMARY KEY,
+    REQUESTCOUNT BIGINT NOT NULL,
+    CLEANUP BOOLEAN NOT NULL,
+    REQUESTTIME TIMESTAMP NOT NULL,
+    CLAIMEDBY VARCHAR(255),
+    CLAIMTIME TIMESTAMP
+);
+CREATE INDEX IF NOT EXISTS INDEX_INDEXREQUEST_REQUESTTIME ON INDEXREQUEST (REQUESTTIME);
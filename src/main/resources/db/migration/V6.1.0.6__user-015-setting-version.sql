@@ -0,0 +1,22 @@
+-- The version of the settings: bumped on every change to the setting table,
+-- so that the application servers know when to reload their in-memory copy of
+-- the settings (including after changes made directly in the database)
+CREATE TABLE IF NOT EXISTS settingversion (
+    id INTEGER PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+
+INSERT INTO settingversion (id, version) VALUES (1, 0) ON CONFLICT DO NOTHING;
+
+CREATE OR REPLACE FUNCTION bumpSettingVersion()
+RETURNS trigger AS $$
+BEGIN
+  UPDATE settingversion SET version = version + 1 WHERE id = 1;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS setting_version_trigger ON setting;
+CREATE TRIGGER setting_version_trigger
+AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON setting
+FOR EACH STATEMENT EXECUTE PROCEDURE bumpSettingVersion();
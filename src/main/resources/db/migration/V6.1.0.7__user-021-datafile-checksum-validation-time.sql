@@ -0,0 +1,2 @@
+-- When the checksum of the file was last verified on publish (see dataverse.files.validation.max-age):
+ALTER TABLE datafile ADD COLUMN IF NOT EXISTS checksumvalidationtime TIMESTAMP WITHOUT TIME ZONE;
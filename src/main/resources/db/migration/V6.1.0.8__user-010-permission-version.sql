@@ -0,0 +1,52 @@
+-- The version of the permissions: bumped on every change to the tables the
+-- permissions of the users are computed from (role assignments, roles,
+-- groups, and the ownership of the objects), so that the application servers
+-- know when to clear their in-memory permission caches (including after
+-- changes made through another server, or directly in the database)
+CREATE TABLE IF NOT EXISTS permissionversion (
+    id INTEGER PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+
+INSERT INTO permissionversion (id, version) VALUES (1, 0) ON CONFLICT DO NOTHING;
+
+CREATE OR REPLACE FUNCTION bumpPermissionVersion()
+RETURNS trigger AS $$
+BEGIN
+  UPDATE permissionversion SET version = version + 1 WHERE id = 1;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DO $$
+DECLARE
+  t TEXT;
+BEGIN
+  FOREACH t IN ARRAY ARRAY['roleassignment', 'dataverserole', 'explicitgroup',
+      'explicitgroup_authenticateduser', 'explicitgroup_explicitgroup',
+      'explicitgroup_containedroleassignees', 'persistedglobalgroup',
+      'ipv4range', 'ipv6range']
+  LOOP
+    EXECUTE format('DROP TRIGGER IF EXISTS permission_version_trigger ON %I', t);
+    EXECUTE format('CREATE TRIGGER permission_version_trigger '
+        'AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON %I '
+        'FOR EACH STATEMENT EXECUTE PROCEDURE bumpPermissionVersion()', t);
+  END LOOP;
+END $$;
+
+-- (only the columns the permissions depend on, as these tables are updated
+-- all the time)
+DROP TRIGGER IF EXISTS permission_version_trigger ON dvobject;
+CREATE TRIGGER permission_version_trigger
+AFTER UPDATE OF owner_id ON dvobject
+FOR EACH STATEMENT EXECUTE PROCEDURE bumpPermissionVersion();
+
+DROP TRIGGER IF EXISTS permission_version_trigger ON dataverse;
+CREATE TRIGGER permission_version_trigger
+AFTER UPDATE OF permissionroot ON dataverse
+FOR EACH STATEMENT EXECUTE PROCEDURE bumpPermissionVersion();
+
+DROP TRIGGER IF EXISTS permission_version_trigger ON authenticateduser;
+CREATE TRIGGER permission_version_trigger
+AFTER UPDATE OF useridentifier, email OR DELETE ON authenticateduser
+FOR EACH STATEMENT EXECUTE PROCEDURE bumpPermissionVersion();
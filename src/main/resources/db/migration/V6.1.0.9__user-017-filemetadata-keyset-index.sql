@@ -0,0 +1,5 @@
+-- Supports paging through the files of a version by cursor (see
+-- DatasetVersionFilesServiceBean), in the order of their labels, continuing
+-- from the last file of the previous page. (The other orders sort on the
+-- columns of the datafile table, which an index on filemetadata can't cover.)
+CREATE INDEX IF NOT EXISTS index_filemetadata_datasetversion_id_label_id ON filemetadata (datasetversion_id, label, id);
@@ -9,6 +9,7 @@ import java.net.URI;
 import java.sql.Timestamp;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -86,6 +87,31 @@ public class DatasetVersionTest {
         assertFalse(nonDraft.isInReview());
     }
 
+    @Test
+    public void testContainsDataFile() {
+        DatasetVersion version = new DatasetVersion();
+        version.setFileMetadatas(new ArrayList<>());
+        DataFile inVersion = new DataFile("text/plain");
+        inVersion.setId(1L);
+        DataFile notInVersion = new DataFile("text/plain");
+        notInVersion.setId(2L);
+
+        FileMetadata fmd = new FileMetadata();
+        fmd.setDataFile(inVersion);
+        version.getFileMetadatas().add(fmd);
+        assertTrue(version.containsDataFile(inVersion));
+        assertFalse(version.containsDataFile(notInVersion));
+
+        // the files added since are found too:
+        FileMetadata added = new FileMetadata();
+        added.setDataFile(notInVersion);
+        version.getFileMetadatas().add(added);
+        assertTrue(version.containsDataFile(notInVersion));
+
+        DataFile notSaved = new DataFile("text/plain");
+        assertFalse(version.containsDataFile(notSaved));
+    }
+
     /**
      * See also SchemaDotOrgExporterTest.java for more extensive tests.
      */
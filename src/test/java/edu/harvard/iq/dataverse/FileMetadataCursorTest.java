@@ -0,0 +1,65 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.DatasetVersionFilesServiceBean.FileOrderCriteria;
+import java.sql.Timestamp;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FileMetadataCursorTest {
+
+    private FileMetadata fileMetadata;
+
+    @BeforeEach
+    public void setUp() {
+        DataFile dataFile = new DataFile("text/csv");
+        dataFile.setFilesize(1234L);
+        dataFile.setCreateDate(Timestamp.valueOf("2024-01-02 03:04:05.123456"));
+        fileMetadata = new FileMetadata();
+        fileMetadata.setId(42L);
+        fileMetadata.setLabel("data.csv");
+        fileMetadata.setDataFile(dataFile);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (FileOrderCriteria orderCriteria : FileOrderCriteria.values()) {
+            String cursor = FileMetadataCursor.after(fileMetadata, orderCriteria).toString();
+            FileMetadataCursor parsed = FileMetadataCursor.parse(cursor, orderCriteria);
+            assertEquals(42L, parsed.getId());
+            switch (orderCriteria) {
+                case Newest, Oldest -> assertEquals(Timestamp.valueOf("2024-01-02 03:04:05.123456"), parsed.getDate());
+                case Size -> assertEquals(1234L, parsed.getFilesize());
+                case Type -> {
+                    assertEquals("text/csv", parsed.getContentType());
+                    assertEquals("data.csv", parsed.getLabel());
+                }
+                default -> assertEquals("data.csv", parsed.getLabel());
+            }
+        }
+    }
+
+    @Test
+    public void testPublicationDateFirst() {
+        fileMetadata.getDataFile().setPublicationDate(Timestamp.valueOf("2024-02-03 00:00:00"));
+        String cursor = FileMetadataCursor.after(fileMetadata, FileOrderCriteria.Newest).toString();
+        assertEquals(Timestamp.valueOf("2024-02-03 00:00:00"), FileMetadataCursor.parse(cursor, FileOrderCriteria.Newest).getDate());
+    }
+
+    @Test
+    public void testUnknownSizeLast() {
+        fileMetadata.getDataFile().setFilesize(-1L);
+        String cursor = FileMetadataCursor.after(fileMetadata, FileOrderCriteria.Size).toString();
+        assertEquals(DatasetVersionFilesServiceBean.UNKNOWN_FILESIZE_SORT_KEY, FileMetadataCursor.parse(cursor, FileOrderCriteria.Size).getFilesize());
+    }
+
+    @Test
+    public void testInvalidCursor() {
+        String cursor = FileMetadataCursor.after(fileMetadata, FileOrderCriteria.NameAZ).toString();
+        assertThrows(IllegalArgumentException.class, () -> FileMetadataCursor.parse(cursor, FileOrderCriteria.Size));
+        assertThrows(IllegalArgumentException.class, () -> FileMetadataCursor.parse("not a cursor!", FileOrderCriteria.NameAZ));
+        assertThrows(IllegalArgumentException.class, () -> FileMetadataCursor.parse("WyJOYW1lQVoiXQ", FileOrderCriteria.NameAZ));
+    }
+}
@@ -0,0 +1,145 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
+import edu.harvard.iq.dataverse.authorization.users.GuestUser;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@LocalJvmSettings
+public class PermissionCacheTest {
+
+    private final AtomicInteger computed = new AtomicInteger();
+    private Dataverse dataverse;
+
+    @BeforeEach
+    public void setUp() {
+        PermissionCache.invalidate();
+        dataverse = new Dataverse();
+        dataverse.setId(1L);
+    }
+
+    private Set<Permission> compute() {
+        computed.incrementAndGet();
+        return EnumSet.of(Permission.ViewUnpublishedDataverse);
+    }
+
+    @Test
+    public void testComputedOnce() {
+        assertEquals(EnumSet.of(Permission.ViewUnpublishedDataverse), PermissionCache.get(GuestUser.get(), null, dataverse, this::compute));
+        assertEquals(EnumSet.of(Permission.ViewUnpublishedDataverse), PermissionCache.get(GuestUser.get(), null, dataverse, this::compute));
+        assertEquals(1, computed.get());
+    }
+
+    @Test
+    public void testInvalidate() {
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        PermissionCache.invalidate();
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        assertEquals(2, computed.get());
+    }
+
+    @Test
+    public void testGetIfPresent() {
+        assertNull(PermissionCache.getIfPresent(GuestUser.get(), null, dataverse));
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        assertEquals(EnumSet.of(Permission.ViewUnpublishedDataverse), PermissionCache.getIfPresent(GuestUser.get(), null, dataverse));
+        PermissionCache.invalidate();
+        assertNull(PermissionCache.getIfPresent(GuestUser.get(), null, dataverse));
+    }
+
+    @Test
+    public void testKeyedBySourceAddressAndObject() {
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        PermissionCache.get(GuestUser.get(), IpAddress.valueOf("128.0.0.1"), dataverse, this::compute);
+        PermissionCache.get(GuestUser.get(), IpAddress.valueOf("128.0.0.2"), dataverse, this::compute);
+        Dataverse other = new Dataverse();
+        other.setId(2L);
+        PermissionCache.get(GuestUser.get(), null, other, this::compute);
+        assertEquals(4, computed.get());
+    }
+
+    @Test
+    public void testUnsavedObjectNotCached() {
+        Dataverse unsaved = new Dataverse();
+        PermissionCache.get(GuestUser.get(), null, unsaved, this::compute);
+        PermissionCache.get(GuestUser.get(), null, unsaved, this::compute);
+        assertEquals(2, computed.get());
+    }
+
+    @Test
+    public void testInvalidatedAgainAfterTheTransaction() {
+        TransactionSynchronizationRegistry registry = mock(TransactionSynchronizationRegistry.class);
+        when(registry.getTransactionStatus()).thenReturn(Status.STATUS_ACTIVE);
+
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        PermissionCache.invalidate(registry);
+        ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+        verify(registry).registerInterposedSynchronization(synchronization.capture());
+
+        // (cached by another request, before the changes are committed)
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        synchronization.getValue().afterCompletion(Status.STATUS_COMMITTED);
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        assertEquals(3, computed.get());
+    }
+
+    @Test
+    public void testInvalidateOutsideOfTransaction() {
+        TransactionSynchronizationRegistry registry = mock(TransactionSynchronizationRegistry.class);
+        when(registry.getTransactionStatus()).thenReturn(Status.STATUS_NO_TRANSACTION);
+
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        PermissionCache.invalidate(registry);
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        assertEquals(2, computed.get());
+        verify(registry, never()).registerInterposedSynchronization(any());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.PERMISSION_CACHE_REFRESH_INTERVAL, value = "0")
+    public void testInvalidatedOnNewVersion() {
+        // (changes made through another server, between the checks)
+        PermissionCache.checkVersion(() -> 41L);
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        PermissionCache.checkVersion(() -> 41L);
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        assertEquals(1, computed.get());
+
+        PermissionCache.checkVersion(() -> 42L);
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        assertEquals(2, computed.get());
+    }
+
+    @Test
+    public void testInvalidateWithTransactionOutsideOfTheServer() {
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        PermissionCache.invalidateWithTransaction();
+        PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        assertEquals(2, computed.get());
+    }
+
+    @Test
+    public void testUnmodifiable() {
+        Set<Permission> permissions = PermissionCache.get(GuestUser.get(), null, dataverse, this::compute);
+        assertThrows(UnsupportedOperationException.class, () -> permissions.add(Permission.EditDataverse));
+    }
+}
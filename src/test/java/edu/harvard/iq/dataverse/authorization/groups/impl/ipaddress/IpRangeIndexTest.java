@@ -0,0 +1,84 @@
+package edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress;
+
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv4Range;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IPv6Range;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddressRange;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class IpRangeIndexTest {
+
+    private final List<IPv4Range> ipv4Ranges = new ArrayList<>();
+    private final List<IPv6Range> ipv6Ranges = new ArrayList<>();
+    private IpRangeIndex index;
+
+    private void add(long groupId, String bottom, String top) {
+        IpGroup group = new IpGroup();
+        group.setId(groupId);
+        IpAddressRange range = IpAddressRange.make(IpAddress.valueOf(bottom), IpAddress.valueOf(top));
+        range.setOwner(group);
+        if (range instanceof IPv4Range) {
+            ipv4Ranges.add((IPv4Range) range);
+        } else {
+            ipv6Ranges.add((IPv6Range) range);
+        }
+    }
+
+    private long[] find(String address) {
+        return index.findGroupIdsIncluding(IpAddress.valueOf(address));
+    }
+
+    @BeforeEach
+    public void setUp() {
+        add(1L, "10.0.0.0", "10.255.255.255");
+        add(2L, "10.1.0.0", "10.1.0.255");
+        add(3L, "192.168.1.1", "192.168.1.1");
+        add(4L, "200.0.0.0", "255.255.255.255");
+        add(5L, "2001:db8:0:0:0:0:0:0", "2001:db8:ffff:ffff:ffff:ffff:ffff:ffff");
+        add(6L, "ff00:0:0:0:0:0:0:0", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff");
+        add(7L, "0:0:0:0:0:0:0:0", "0:0:0:0:ffff:ffff:ffff:ffff");
+        index = new IpRangeIndex(ipv4Ranges, ipv6Ranges);
+    }
+
+    @Test
+    public void testIPv4() {
+        assertArrayEquals(new long[0], find("9.255.255.255"));
+        assertArrayEquals(new long[]{1L}, find("10.0.0.0"));
+        assertArrayEquals(new long[]{1L, 2L}, find("10.1.0.0"));
+        assertArrayEquals(new long[]{1L, 2L}, find("10.1.0.255"));
+        assertArrayEquals(new long[]{1L}, find("10.1.1.0"));
+        assertArrayEquals(new long[]{1L}, find("10.255.255.255"));
+        assertArrayEquals(new long[0], find("11.0.0.0"));
+        assertArrayEquals(new long[0], find("192.168.1.0"));
+        assertArrayEquals(new long[]{3L}, find("192.168.1.1"));
+        assertArrayEquals(new long[0], find("192.168.1.2"));
+        // (the addresses above 128.0.0.0, and up to the last one)
+        assertArrayEquals(new long[]{4L}, find("200.0.0.0"));
+        assertArrayEquals(new long[]{4L}, find("255.255.255.255"));
+    }
+
+    @Test
+    public void testIPv6() {
+        assertArrayEquals(new long[]{7L}, find("0:0:0:0:0:0:0:1"));
+        assertArrayEquals(new long[]{7L}, find("0:0:0:0:ffff:ffff:ffff:ffff"));
+        assertArrayEquals(new long[0], find("0:0:0:1:0:0:0:0"));
+        assertArrayEquals(new long[0], find("2001:db7:ffff:ffff:ffff:ffff:ffff:ffff"));
+        assertArrayEquals(new long[]{5L}, find("2001:db8:0:0:0:0:0:0"));
+        assertArrayEquals(new long[]{5L}, find("2001:db8:1:2:3:4:5:6"));
+        assertArrayEquals(new long[0], find("2001:db9:0:0:0:0:0:0"));
+        assertArrayEquals(new long[]{6L}, find("ff00:0:0:0:0:0:0:1"));
+        assertArrayEquals(new long[]{6L}, find("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"));
+    }
+
+    @Test
+    public void testEmpty() {
+        index = new IpRangeIndex(new ArrayList<>(), new ArrayList<>());
+        assertArrayEquals(new long[0], find("10.0.0.1"));
+        assertArrayEquals(new long[0], find("2001:db8:0:0:0:0:0:1"));
+    }
+}
@@ -13,6 +13,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 import java.util.*;
 import java.util.stream.Stream;
 
@@ -26,6 +27,8 @@ class MailDomainGroupServiceBeanTest {
     ConfirmEmailServiceBean confirmEmailSvc;
     @Mock
     EntityManager em;
+    @Mock
+    TransactionSynchronizationRegistry transactionSynchronizationRegistry;
     
     MailDomainGroupServiceBean svc;
     
@@ -34,6 +37,7 @@ class MailDomainGroupServiceBeanTest {
         svc = new MailDomainGroupServiceBean();
         svc.em = em;
         svc.confirmEmailSvc = confirmEmailSvc;
+        svc.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
     }
     
     @Test
@@ -105,6 +105,22 @@ public class FileAccessIOTest {
         assertEquals(false, dataFileAccess.canWrite());
     }
 
+    /**
+     * Test of openRange method, of class FileAccessIO.
+     *
+     * @throws java.io.IOException if test is broken
+     */
+    @Test
+    public void testOpenRange() throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter("/tmp/files/tmp/dataset/DataFile"))) {
+            bw.write("0123456789");
+        }
+        dataFileAccess.open(DataAccessOption.READ_ACCESS);
+        try (InputStream rangeStream = dataFileAccess.openRange(3, 4)) {
+            assertEquals("3456", new String(rangeStream.readAllBytes()));
+        }
+    }
+
     /**
      * Test of savePath method, of class FileAccessIO.
      *
@@ -0,0 +1,108 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter.ThumbnailStatus;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Semaphore;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+public class ImageThumbConverterTest {
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testReadImageSubsampled() throws IOException {
+        BufferedImage image = ImageThumbConverter.readImage(new ByteArrayInputStream(png(1000, 500)), ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE);
+        // (every 7th pixel: still at least twice the size of the thumbnail)
+        assertEquals(143, image.getWidth());
+        assertEquals(72, image.getHeight());
+        assertTrue(image.getWidth() >= 2 * ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE);
+    }
+
+    @Test
+    public void testReadImageFullSize() throws IOException {
+        BufferedImage image = ImageThumbConverter.readImage(new ByteArrayInputStream(png(1000, 500)), ImageThumbConverter.DEFAULT_PREVIEW_SIZE);
+        assertEquals(1000, image.getWidth());
+        assertEquals(500, image.getHeight());
+    }
+
+    @Test
+    public void testGenerateImageThumbnailFromFileWaitsForAPermit() throws IOException {
+        Path image = Files.createTempFile("image", ".png");
+        Files.write(image, png(1000, 500));
+        Path thumbnail = Path.of(image + ".thumb" + ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE);
+        try {
+            Semaphore permits = ImageThumbConverter.getImageDecodingPermits();
+            int taken = permits.drainPermits();
+            try {
+                // (too many images being decoded already: no thumbnail, and 
+                // the default icon is shown instead)
+                long start = System.currentTimeMillis();
+                assertNull(ImageThumbConverter.generateImageThumbnailFromFile(image.toString(), ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE));
+                assertTrue(System.currentTimeMillis() - start >= ImageThumbConverter.IMAGE_DECODING_WAIT_MS);
+            } finally {
+                permits.release(taken);
+            }
+
+            assertEquals(thumbnail.toString(), ImageThumbConverter.generateImageThumbnailFromFile(image.toString(), ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE));
+            assertTrue(Files.exists(thumbnail));
+        } finally {
+            Files.deleteIfExists(thumbnail);
+            Files.delete(image);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testThumbnailStatusBusy() throws IOException {
+        byte[] png = png(1000, 500);
+        DataFile file = Mockito.mock(DataFile.class);
+        StorageIO<DataFile> storageIO = Mockito.mock(StorageIO.class);
+        when(file.getContentType()).thenReturn("image/png");
+        when(file.getStorageIdentifier()).thenReturn("file://image");
+        when(file.getFilesize()).thenReturn((long) png.length);
+        when(file.getStorageIO()).thenReturn(storageIO);
+        when(storageIO.getDvObject()).thenReturn(file);
+        when(storageIO.getDataFile()).thenReturn(file);
+        when(storageIO.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(png));
+        when(storageIO.openAuxChannel(anyString(), Mockito.eq(DataAccessOption.WRITE_ACCESS))).thenThrow(new UnsupportedDataAccessOperationException("not here"));
+
+        Semaphore permits = ImageThumbConverter.getImageDecodingPermits();
+        int taken = permits.drainPermits();
+        try {
+            // (too many images being decoded already: not a failure of the 
+            // file, to be recorded as such)
+            assertEquals(ThumbnailStatus.BUSY, ImageThumbConverter.getThumbnailStatus(file));
+            assertEquals(ThumbnailStatus.BUSY, ImageThumbConverter.generateThumbnails(file));
+        } finally {
+            permits.release(taken);
+        }
+
+        assertEquals(ThumbnailStatus.AVAILABLE, ImageThumbConverter.getThumbnailStatus(file));
+        Mockito.verify(storageIO, Mockito.atLeastOnce()).savePathAsAux(any(), Mockito.eq(ImageThumbConverter.THUMBNAIL_SUFFIX + ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE));
+    }
+
+    @Test
+    public void testReadImageNotAnImage() throws IOException {
+        assertNull(ImageThumbConverter.readImage(new ByteArrayInputStream("not an image".getBytes(StandardCharsets.UTF_8)), ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE));
+    }
+}
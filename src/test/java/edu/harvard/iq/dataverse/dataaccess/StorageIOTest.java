@@ -40,6 +40,15 @@ public class StorageIOTest {
         assertEquals(c, instance.getChannel());
     }
 
+    @Test
+    public void testOpenRange() throws IOException {
+        StorageIO<DataFile> streamIO = new InputStreamIO(new ByteArrayInputStream("0123456789".getBytes()), 10);
+        assertEquals("12", new String(streamIO.openRange(1, 2).readAllBytes()));
+        assertEquals("567", new String(streamIO.openRange(5, 3).readAllBytes()));
+        assertEquals("9", new String(streamIO.openRange(9, 5).readAllBytes()));
+        assertThrows(IOException.class, () -> streamIO.openRange(0, 1));
+    }
+
     @Test
     public void testGetWriteChannel() throws Exception {
         try {
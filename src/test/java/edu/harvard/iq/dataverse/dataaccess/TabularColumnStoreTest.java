@@ -0,0 +1,80 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+public class TabularColumnStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private File writeTabFile(int numCases) throws IOException {
+        StringBuilder data = new StringBuilder("x\ty\tz\n");
+        for (int i = 0; i < numCases; i++) {
+            data.append(i * 0.5).append('\t')
+                    .append(i % 5 == 0 ? "" : String.valueOf(i % 3)).append('\t')
+                    .append("\"s").append(i).append("\\t\u00e9\"").append('\n');
+        }
+        File tabFile = tempDir.resolve("data.tab").toFile();
+        Files.writeString(tabFile.toPath(), data.toString(), StandardCharsets.UTF_8);
+        return tabFile;
+    }
+
+    @Test
+    public void testSubsetIsIdenticalToTabFileSubset() throws IOException {
+        int numCases = 10000;
+        File tabFile = writeTabFile(numCases);
+        File storeFile = tempDir.resolve("data.cols").toFile();
+        TabularColumnStore.write(tabFile, 3, numCases + 1, storeFile);
+
+        List<Integer> columns = List.of(2, 0);
+        File expected = tempDir.resolve("subset.tab").toFile();
+        new TabularSubsetGenerator().subsetFile(tabFile.getAbsolutePath(), expected.getAbsolutePath(), columns, (long) numCases + 1);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (TabularColumnStore.Reader reader = new TabularColumnStore.Reader(Files.newByteChannel(storeFile.toPath()))) {
+            assertEquals(3, reader.getNumColumns());
+            assertEquals(numCases + 1, reader.getNumRows());
+            reader.subset(columns, actual);
+        }
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), actual.toByteArray());
+    }
+
+    @Test
+    public void testWrongNumberOfRows() throws IOException {
+        File tabFile = writeTabFile(10);
+        File storeFile = tempDir.resolve("data.cols").toFile();
+        assertThrows(IOException.class, () -> TabularColumnStore.write(tabFile, 3, 12, storeFile));
+        assertThrows(IOException.class, () -> TabularColumnStore.write(tabFile, 3, 5, storeFile));
+    }
+
+    @Test
+    public void testOpenNotAColumnStore() throws IOException {
+        File notAStore = tempDir.resolve("data.cols").toFile();
+        Files.writeString(notAStore.toPath(), "not a column store", StandardCharsets.UTF_8);
+        SeekableByteChannel channel = Files.newByteChannel(notAStore.toPath());
+        StorageIO<?> storageIO = Mockito.mock(StorageIO.class);
+        when(storageIO.isAuxObjectCached(TabularColumnStore.AUX_TAG)).thenReturn(true);
+        when(storageIO.openAuxChannel(TabularColumnStore.AUX_TAG)).thenReturn(channel);
+
+        assertNull(TabularColumnStore.open(storageIO));
+        // (not left open)
+        assertFalse(channel.isOpen());
+    }
+}
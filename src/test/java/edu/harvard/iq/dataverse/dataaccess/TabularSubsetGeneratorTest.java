@@ -0,0 +1,89 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TabularSubsetGeneratorTest {
+
+    private static final String TAB_DATA = "x\ty\tz\n"
+            + "1.5\t2\t\"a\\tb\"\n"
+            + "\t-inf\t\n"
+            + "3\tNA\t\"c\"\n";
+
+    @TempDir
+    Path tempDir;
+
+    private static InputStream tabData() {
+        return new ByteArrayInputStream(TAB_DATA.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSubsetVectorsMatchesSingleColumnSubsetting() {
+        Object[][] vectors = TabularSubsetGenerator.subsetVectors(tabData(),
+                new int[]{0, 1, 2, 1},
+                new Class<?>[]{Double.class, Long.class, String.class, Float.class},
+                3, true);
+
+        assertEquals(4, vectors.length);
+        assertArrayEquals(TabularSubsetGenerator.subsetDoubleVector(tabData(), 0, 3, true), vectors[0]);
+        assertArrayEquals(TabularSubsetGenerator.subsetLongVector(tabData(), 1, 3, true), vectors[1]);
+        assertArrayEquals(TabularSubsetGenerator.subsetStringVector(tabData(), 2, 3, true), vectors[2]);
+        assertArrayEquals(TabularSubsetGenerator.subsetFloatVector(tabData(), 1, 3, true), vectors[3]);
+
+        assertArrayEquals(new Double[]{1.5, null, 3.0}, vectors[0]);
+        assertArrayEquals(new Long[]{2L, null, null}, vectors[1]);
+        assertArrayEquals(new String[]{"a\tb", null, "c"}, vectors[2]);
+        assertArrayEquals(new Float[]{2.0f, Float.NEGATIVE_INFINITY, null}, vectors[3]);
+    }
+
+    @Test
+    public void testSubsetVectorsFewerRowsThanCases() {
+        assertThrows(RuntimeException.class, () -> TabularSubsetGenerator.subsetVectors(tabData(),
+                new int[]{0}, new Class<?>[]{Double.class}, 4, true));
+    }
+
+    @Test
+    public void testSubsetVectorsUnsupportedType() {
+        assertThrows(IllegalArgumentException.class, () -> TabularSubsetGenerator.subsetVectors(tabData(),
+                new int[]{0}, new Class<?>[]{Integer.class}, 3, true));
+    }
+
+    @Test
+    public void testSubsetFile() throws IOException {
+        File subset = tempDir.resolve("subset.tab").toFile();
+        new TabularSubsetGenerator().subsetFile(tabData(), subset.getAbsolutePath(), List.of(2, 0), 4L, "\t");
+
+        assertEquals("z\tx\n\"a\\tb\"\t1.5\n\t\n\"c\"\t3\n",
+                Files.readString(subset.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSubsetFileWithLinesLongerThanTheBuffer() throws IOException {
+        String longValue = "x".repeat(200000);
+        String data = "1\t" + longValue + "\t2\n3\t\t4";
+        File subset = tempDir.resolve("subset.tab").toFile();
+        new TabularSubsetGenerator().subsetFile(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)),
+                subset.getAbsolutePath(), List.of(2, 1), 2L, "\t");
+
+        assertEquals("2\t" + longValue + "\n4\t\n", Files.readString(subset.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSubsetFileExtraRows() throws IOException {
+        File subset = tempDir.resolve("subset.tab").toFile();
+        assertThrows(RuntimeException.class, () -> new TabularSubsetGenerator().subsetFile(tabData(),
+                subset.getAbsolutePath(), List.of(0), 2L, "\t"));
+    }
+}
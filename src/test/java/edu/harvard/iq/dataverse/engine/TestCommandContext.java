@@ -24,6 +24,7 @@ import edu.harvard.iq.dataverse.storageuse.StorageUseServiceBean;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.workflow.WorkflowServiceBean;
 import java.util.Stack;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.persistence.EntityManager;
 
 /**
@@ -251,6 +252,11 @@ public class TestCommandContext implements CommandContext {
         return null;
     }
 
+    @Override
+    public ManagedExecutorService managedExecutor() {
+        return null;
+    }
+
     @Override
     public void beginCommandSequence() {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
@@ -0,0 +1,204 @@
+package edu.harvard.iq.dataverse.engine.command.impl;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The unpacking of the entries of uploaded zip files, on a shared executor,
+ * with the turns shared by all the uploads.
+ */
+@LocalJvmSettings
+@JvmSetting(key = JvmSettings.FILES_DIRECTORY, method = "getFilesDirectory")
+public class CreateNewDataFilesCommandTest {
+
+    private static Path filesDirectory;
+
+    private ExecutorService executor;
+
+    static String getFilesDirectory() {
+        try {
+            filesDirectory = Files.createTempDirectory("files");
+            Files.createDirectory(filesDirectory.resolve("temp"));
+            return filesDirectory.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException, IOException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        FileUtils.cleanDirectory(new File(filesDirectory.toFile(), "temp"));
+    }
+
+    private static List<ZipEntry> entries(int count) {
+        List<ZipEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(new ZipEntry("dir/file" + i + ".txt"));
+        }
+        return entries;
+    }
+
+    private static CreateNewDataFilesCommand.UnzippedEntry unzip(ZipEntry entry, String storageIdentifier) throws IOException {
+        Files.writeString(Paths.get(filesDirectory.toString(), "temp", storageIdentifier), entry.getName());
+        CreateNewDataFilesCommand.UnzippedEntry unzippedEntry = new CreateNewDataFilesCommand.UnzippedEntry();
+        unzippedEntry.entry = entry;
+        unzippedEntry.storageIdentifier = storageIdentifier;
+        return unzippedEntry;
+    }
+
+    private static String[] tempFiles() {
+        return new File(filesDirectory.toFile(), "temp").list();
+    }
+
+    @Test
+    public void testEntriesInOrder() throws Exception {
+        executor = Executors.newCachedThreadPool();
+        List<ZipEntry> entries = entries(8);
+        List<CountDownLatch> done = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            done.add(new CountDownLatch(1));
+        }
+
+        // (each entry is only done after the one that follows it)
+        List<CreateNewDataFilesCommand.UnzippedEntry> unzippedEntries = CreateNewDataFilesCommand.unzipEntries(executor, new Semaphore(entries.size()), entries, (entry, storageIdentifier) -> {
+            int i = entries.indexOf(entry);
+            try {
+                if (i + 1 < entries.size() && !done.get(i + 1).await(10, TimeUnit.SECONDS)) {
+                    throw new IOException("entry " + (i + 1) + " not done");
+                }
+                return unzip(entry, storageIdentifier);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                done.get(i).countDown();
+            }
+        }, 1000L);
+
+        assertEquals(entries.size(), unzippedEntries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i), unzippedEntries.get(i).entry);
+            assertEquals(entries.get(i).getName(), Files.readString(Paths.get(filesDirectory.toString(), "temp", unzippedEntries.get(i).storageIdentifier)));
+        }
+    }
+
+    @Test
+    public void testTurnsSharedByUploads() throws Exception {
+        // (the threads of the executor don't limit anything: the turns do)
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        executor = pool;
+        Semaphore turns = new Semaphore(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch twoStarted = new CountDownLatch(2);
+        CountDownLatch released = new CountDownLatch(1);
+        CreateNewDataFilesCommand.EntryUnzipper unzipper = (entry, storageIdentifier) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            twoStarted.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            return unzip(entry, storageIdentifier);
+        };
+
+        // (three uploads at once)
+        ExecutorService uploads = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<List<CreateNewDataFilesCommand.UnzippedEntry>>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                results.add(uploads.submit(() -> CreateNewDataFilesCommand.unzipEntries(executor, turns, entries(6), unzipper, 1000L)));
+            }
+            assertTrue(twoStarted.await(10, TimeUnit.SECONDS));
+            // (while the two entries started are held up, the uploads wait for
+            // a turn, rather than submitting any more entries)
+            assertEquals(0, turns.availablePermits());
+            assertEquals(2, running.get());
+            assertEquals(2L, pool.getTaskCount());
+
+            released.countDown();
+            for (Future<List<CreateNewDataFilesCommand.UnzippedEntry>> result : results) {
+                assertEquals(6, result.get(10, TimeUnit.SECONDS).size());
+            }
+        } finally {
+            uploads.shutdownNow();
+        }
+        assertEquals(2, maxRunning.get());
+        assertEquals(2, turns.availablePermits());
+        assertEquals(18, tempFiles().length);
+    }
+
+    @Test
+    public void testFilesRemovedOnFailure() throws InterruptedException {
+        executor = Executors.newCachedThreadPool();
+        Semaphore turns = new Semaphore(3);
+        List<ZipEntry> entries = entries(6);
+        CountDownLatch slowEntryStarted = new CountDownLatch(1);
+        CountDownLatch slowEntryReleased = new CountDownLatch(1);
+        CountDownLatch slowEntryDone = new CountDownLatch(1);
+
+        // (entry 0 is unpacked, entry 1 still being unpacked after the
+        // timeout, and entry 2 fails)
+        IOException ex = assertThrows(IOException.class, () -> CreateNewDataFilesCommand.unzipEntries(executor, turns, entries, (entry, storageIdentifier) -> {
+            int i = entries.indexOf(entry);
+            if (i == 1) {
+                CreateNewDataFilesCommand.UnzippedEntry unzippedEntry = unzip(entry, storageIdentifier);
+                slowEntryStarted.countDown();
+                try {
+                    slowEntryReleased.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } finally {
+                    slowEntryDone.countDown();
+                }
+                return unzippedEntry;
+            } else if (i == 2) {
+                try {
+                    slowEntryStarted.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                unzip(entry, storageIdentifier);
+                throw new IOException("broken entry");
+            }
+            return unzip(entry, storageIdentifier);
+        }, 100L));
+        assertEquals("broken entry", ex.getMessage());
+
+        slowEntryReleased.countDown();
+        assertTrue(slowEntryDone.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, tempFiles().length);
+        assertEquals(3, turns.availablePermits());
+    }
+}
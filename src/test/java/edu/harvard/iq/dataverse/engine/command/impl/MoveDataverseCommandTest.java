@@ -229,7 +229,8 @@ public class MoveDataverseCommandTest {
                     }
 
                     @Override
-                    public void indexDatasetInNewTransaction(Long id){
+                    public boolean indexDatasetInNewTransaction(Long id){
+                        return true;
                     }                    
                 };
 
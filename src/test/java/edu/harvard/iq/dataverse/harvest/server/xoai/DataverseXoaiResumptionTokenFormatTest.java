@@ -0,0 +1,66 @@
+package edu.harvard.iq.dataverse.harvest.server.xoai;
+
+import io.gdcc.xoai.exceptions.BadResumptionTokenException;
+import io.gdcc.xoai.model.oaipmh.Granularity;
+import io.gdcc.xoai.model.oaipmh.ResumptionToken;
+import io.gdcc.xoai.services.impl.SimpleResumptionTokenFormat;
+import java.time.Instant;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DataverseXoaiResumptionTokenFormatTest {
+
+    private final DataverseXoaiResumptionTokenFormat format = (DataverseXoaiResumptionTokenFormat) new DataverseXoaiResumptionTokenFormat().withGranularity(Granularity.Second);
+
+    private static final ResumptionToken.Value firstPage = new ResumptionToken.ValueBuilder()
+            .withOffset(0)
+            .withSetSpec("a_set")
+            .withFrom(Instant.parse("2023-01-01T00:00:00Z"))
+            .withMetadataPrefix("oai_dc")
+            .build();
+
+    @AfterEach
+    public void tearDown() {
+        DataverseXoaiResumptionTokenFormat.clear();
+    }
+
+    @Test
+    public void testPageKeyInToken() throws BadResumptionTokenException {
+        ResumptionToken.Value nextPage = firstPage.next(100);
+        DataverseXoaiResumptionTokenFormat.setNextPageKey(nextPage, new DataverseXoaiResumptionTokenFormat.PageKey("doi:10.5072/FK2|A", 42L, 1234L));
+        String token = format.format(nextPage);
+        // (as served by another node)
+        DataverseXoaiResumptionTokenFormat.clear();
+
+        ResumptionToken.Value value = format.parse(token);
+        assertEquals(nextPage, value);
+        DataverseXoaiResumptionTokenFormat.PageKey key = DataverseXoaiResumptionTokenFormat.getPageKey(value);
+        assertEquals("doi:10.5072/FK2|A", key.lastGlobalId);
+        assertEquals(42L, key.lastId);
+        assertEquals(1234L, key.total);
+        assertNull(DataverseXoaiResumptionTokenFormat.getPageKey(value.next(100)));
+    }
+
+    @Test
+    public void testTokenWithoutPageKey() throws BadResumptionTokenException {
+        String token = format.format(firstPage.next(100));
+        assertFalse(token.contains("."));
+        assertEquals(new SimpleResumptionTokenFormat().withGranularity(Granularity.Second).format(firstPage.next(100)), token);
+
+        ResumptionToken.Value value = format.parse(token);
+        assertEquals(firstPage.next(100), value);
+        assertNull(DataverseXoaiResumptionTokenFormat.getPageKey(value));
+    }
+
+    @Test
+    public void testInvalidPageKey() {
+        String token = format.format(firstPage.next(100));
+        // ("not a key")
+        assertThrows(BadResumptionTokenException.class, () -> format.parse(token + ".bm90IGEga2V5"));
+    }
+}
@@ -0,0 +1,99 @@
+package edu.harvard.iq.dataverse.harvest.server.xoai;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StreamedMetadataTest {
+
+    private static InputStream stream(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String splice(String response, List<StreamedMetadata.ExportSource> exports, boolean byteByByte) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new StreamedMetadata.SplicingOutputStream(bytes, exports)) {
+            byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+            if (byteByByte) {
+                for (byte b : responseBytes) {
+                    out.write(b);
+                }
+            } else {
+                out.write(responseBytes);
+            }
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSplice() throws IOException {
+        String response = "<OAI-PMH><ListRecords>"
+                + "<record><metadata><dataverseStreamedMetadata>0</dataverseStreamedMetadata></metadata></record>"
+                + "<record><header>&lt;dataverse</header><metadata><dataverseStreamedMetadata xmlns=\"\">1</dataverseStreamedMetadata></metadata></record>"
+                + "</ListRecords></OAI-PMH>";
+        String expected = "<OAI-PMH><ListRecords>"
+                + "<record><metadata><codeBook>a &lt; b</codeBook></metadata></record>"
+                + "<record><header>&lt;dataverse</header><metadata><oai_dc/></metadata></record>"
+                + "</ListRecords></OAI-PMH>";
+
+        for (boolean byteByByte : new boolean[]{false, true}) {
+            List<StreamedMetadata.ExportSource> exports = new ArrayList<>();
+            exports.add(() -> stream("<?xml version=\"1.0\" encoding=\"UTF-8\"?><codeBook>a &lt; b</codeBook>"));
+            exports.add(() -> stream("<oai_dc/>"));
+            assertEquals(expected, splice(response, exports, byteByByte));
+        }
+    }
+
+    @Test
+    public void testSpliceOpensOneExportAtATime() throws IOException {
+        String response = "<a><dataverseStreamedMetadata>0</dataverseStreamedMetadata>"
+                + "<dataverseStreamedMetadata>1</dataverseStreamedMetadata></a>";
+        AtomicInteger open = new AtomicInteger();
+        List<Integer> openWhenOpened = new ArrayList<>();
+        List<StreamedMetadata.ExportSource> exports = new ArrayList<>();
+        for (String export : new String[]{"<b/>", "<c/>"}) {
+            exports.add(() -> {
+                openWhenOpened.add(open.incrementAndGet());
+                return new FilterInputStream(stream(export)) {
+                    @Override
+                    public void close() throws IOException {
+                        open.decrementAndGet();
+                        super.close();
+                    }
+                };
+            });
+        }
+
+        assertEquals("<a><b/><c/></a>", splice(response, exports, false));
+        assertEquals(List.of(1, 1), openWhenOpened);
+        assertEquals(0, open.get());
+    }
+
+    @Test
+    public void testSpliceUnknownPlaceholder() {
+        List<StreamedMetadata.ExportSource> exports = new ArrayList<>();
+        assertThrows(IOException.class, () -> splice("<dataverseStreamedMetadata>0</dataverseStreamedMetadata>", exports, false));
+    }
+
+    @Test
+    public void testCopyWithoutDeclaration() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamedMetadata.copyWithoutDeclaration(stream("\uFEFF <?xml version=\"1.0\"?><a>?></a>"), out);
+        assertEquals("<a>?></a>", out.toString(StandardCharsets.UTF_8));
+
+        out.reset();
+        StreamedMetadata.copyWithoutDeclaration(stream("<a/>"), out);
+        assertEquals("<a/>", out.toString(StandardCharsets.UTF_8));
+    }
+}
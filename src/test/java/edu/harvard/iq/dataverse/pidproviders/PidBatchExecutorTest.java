@@ -0,0 +1,99 @@
+package edu.harvard.iq.dataverse.pidproviders;
+
+import edu.harvard.iq.dataverse.DataFile;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PidBatchExecutorTest {
+
+    // (stands for the ManagedExecutorService of the container)
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static List<DataFile> dataFiles(int n) {
+        List<DataFile> dataFiles = new ArrayList<>();
+        for (long i = 1; i <= n; i++) {
+            DataFile dataFile = new DataFile("text/plain");
+            dataFile.setId(i);
+            dataFiles.add(dataFile);
+        }
+        return dataFiles;
+    }
+
+    @Test
+    public void testAllSucceed() throws InterruptedException {
+        List<DataFile> dataFiles = dataFiles(20);
+        List<DataFile> succeeded = new ArrayList<>();
+        Thread caller = Thread.currentThread();
+
+        List<DataFile> failed = new PidBatchExecutor(executor, 4, 3, 0L).run(dataFiles, df -> true, df -> {
+            assertSame(caller, Thread.currentThread());
+            succeeded.add(df);
+        });
+
+        assertTrue(failed.isEmpty());
+        assertEquals(20, succeeded.size());
+        assertSame(dataFiles.get(0), succeeded.get(0));
+        assertTrue(succeeded.containsAll(dataFiles));
+    }
+
+    @Test
+    public void testRetries() throws InterruptedException {
+        List<DataFile> dataFiles = dataFiles(5);
+        Map<Long, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+        // every file fails once; the 3rd one always
+        List<DataFile> failed = new PidBatchExecutor(executor, 2, 3, 0L).run(dataFiles, df -> {
+            int attempt = attempts.computeIfAbsent(df.getId(), id -> new AtomicInteger()).incrementAndGet();
+            if (df.getId() == 3L) {
+                throw new IOException("Unavailable");
+            }
+            return attempt > 1;
+        }, df -> {});
+
+        assertEquals(List.of(dataFiles.get(2)), failed);
+        for (DataFile df : dataFiles) {
+            assertEquals(df.getId() == 3L ? 3 : 2, attempts.get(df.getId()).get());
+        }
+    }
+
+    @Test
+    public void testCallsAtATime() throws InterruptedException {
+        List<DataFile> dataFiles = dataFiles(30);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<DataFile> failed = new PidBatchExecutor(executor, 3, 1, 0L).run(dataFiles, df -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(10);
+            running.decrementAndGet();
+            return true;
+        }, df -> {});
+
+        assertTrue(failed.isEmpty());
+        // (on a shared executor, with more threads than that)
+        assertTrue(maxRunning.get() <= 3, maxRunning.get() + " calls at a time");
+        assertTrue(maxRunning.get() > 1);
+    }
+
+    @Test
+    public void testEmpty() throws InterruptedException {
+        assertTrue(new PidBatchExecutor(executor, 4, 3, 0L).run(new ArrayList<DataFile>(), df -> true, df -> {}).isEmpty());
+    }
+}
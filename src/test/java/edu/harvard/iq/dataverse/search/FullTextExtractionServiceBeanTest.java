@@ -0,0 +1,150 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@LocalJvmSettings
+public class FullTextExtractionServiceBeanTest {
+
+    private static final String CACHE_KEY = "MD5:0123456789abcdef:11";
+
+    private final FullTextExtractionServiceBean extractionService = new FullTextExtractionServiceBean();
+    @SuppressWarnings("unchecked")
+    private final StorageIO<DataFile> accessObject = Mockito.mock(StorageIO.class);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @BeforeEach
+    public void setUp() {
+        extractionService.managedExecutorService = Mockito.mock(ManagedExecutorService.class, AdditionalAnswers.delegatesTo(executor));
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        extractionService.close();
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static InputStream cachedText(String cacheKey, String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            writer.write(cacheKey + "\n" + text);
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    @Test
+    public void testCachedText() throws IOException {
+        extractionService.init();
+        when(accessObject.isAuxObjectCached(FullTextExtractionServiceBean.AUX_TAG)).thenReturn(true);
+        when(accessObject.getAuxFileAsInputStream(FullTextExtractionServiceBean.AUX_TAG)).thenReturn(cachedText(CACHE_KEY, "hello world"));
+
+        assertEquals("hello world", extractionService.extract("hello.txt", accessObject, CACHE_KEY, 1000L).getText());
+
+        // (the file itself is not read, nor the text saved again)
+        verify(accessObject, never()).getInputStream();
+        verify(accessObject, never()).saveInputStreamAsAux(any(InputStream.class), eq(FullTextExtractionServiceBean.AUX_TAG), anyLong());
+    }
+
+    @Test
+    public void testCachedTextOfAnotherVersionOfTheFile() throws IOException {
+        extractionService.init();
+        when(accessObject.isAuxObjectCached(FullTextExtractionServiceBean.AUX_TAG)).thenReturn(true);
+        when(accessObject.getAuxFileAsInputStream(FullTextExtractionServiceBean.AUX_TAG)).thenReturn(cachedText("MD5:fedcba9876543210:11", "stale text"));
+        when(accessObject.getInputStream()).thenReturn(new ByteArrayInputStream("hello world".getBytes(StandardCharsets.UTF_8)));
+        when(accessObject.getSize()).thenReturn(11L);
+
+        assertEquals("hello world", extractionService.extract("hello.txt", accessObject, CACHE_KEY, 1000L).getText().trim());
+
+        verify(accessObject).saveInputStreamAsAux(any(InputStream.class), eq(FullTextExtractionServiceBean.AUX_TAG), anyLong());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.FULLTEXT_EXTRACTION_TIMEOUT, value = "1")
+    public void testTimeout() throws IOException, InterruptedException {
+        extractionService.init();
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(accessObject.getInputStream()).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(60000L);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new IOException(e);
+            }
+            return null;
+        });
+
+        long start = System.currentTimeMillis();
+        assertNull(extractionService.extract("slow.pdf", accessObject, null, 1000L).getText());
+
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed >= 1000L && elapsed < 30000L, "timed out after " + elapsed + " ms");
+        // (the extraction is cancelled, freeing the worker)
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.FULLTEXT_EXTRACTION_THREADS, value = "1")
+    @JvmSetting(key = JvmSettings.FULLTEXT_EXTRACTION_TIMEOUT, value = "1")
+    public void testStuckExtraction() throws IOException, InterruptedException {
+        extractionService.init();
+        // (a parser that doesn't stop when interrupted)
+        CountDownLatch release = new CountDownLatch(1);
+        @SuppressWarnings("unchecked")
+        StorageIO<DataFile> stuckAccessObject = Mockito.mock(StorageIO.class);
+        when(stuckAccessObject.getInputStream()).thenAnswer(invocation -> {
+            while (true) {
+                try {
+                    release.await();
+                    return new ByteArrayInputStream(new byte[0]);
+                } catch (InterruptedException e) {
+                    // (ignored)
+                }
+            }
+        });
+        when(accessObject.getInputStream()).thenReturn(new ByteArrayInputStream("hello world".getBytes(StandardCharsets.UTF_8)));
+        when(accessObject.getSize()).thenReturn(11L);
+
+        assertNull(extractionService.extract("stuck.pdf", stuckAccessObject, null, 1000L).getText());
+        assertEquals(1, extractionService.getStuckExtractions());
+
+        // (the stuck extraction keeps its turn: the next one waits for it)
+        FullTextExtractionServiceBean.Extraction next = extractionService.extract("hello.txt", accessObject, null, 1000L);
+        verify(accessObject, after(500L).never()).getInputStream();
+        release.countDown();
+        assertEquals("hello world", next.getText().trim());
+        assertEquals(0, extractionService.getStuckExtractions());
+    }
+}
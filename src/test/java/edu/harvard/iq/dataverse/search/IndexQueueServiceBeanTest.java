@@ -0,0 +1,258 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import jakarta.ejb.SessionContext;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the queue against an in-memory stand-in for the INDEXREQUEST table,
+ * which answers the (PostgreSQL) statements of the bean the way the database
+ * would.
+ */
+@LocalJvmSettings
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class IndexQueueServiceBeanTest {
+
+    @Mock
+    EntityManager em;
+    @Mock
+    IndexServiceBean indexService;
+    @Mock
+    SessionContext sessionContext;
+    @Spy
+    @InjectMocks
+    IndexQueueServiceBean indexQueueService;
+
+    private final Map<Long, Row> table = new LinkedHashMap<>();
+
+    private static class Row {
+        long requestCount;
+        boolean cleanup;
+        Timestamp requestTime;
+        String claimedBy;
+        Timestamp claimTime;
+    }
+
+    @BeforeEach
+    public void setUp() {
+        when(em.createNativeQuery(anyString())).thenAnswer(invocation -> query(invocation.getArgument(0)));
+        // (no container: the calls "through the container" are made directly)
+        when(sessionContext.getBusinessObject(IndexQueueServiceBean.class)).thenReturn(indexQueueService);
+        when(indexService.indexQueuedDataset(anyLong(), anyBoolean())).thenReturn(true);
+    }
+
+    @Test
+    public void testRequestsAreCoalesced() {
+        indexQueueService.init();
+        indexQueueService.request(1L, false);
+        indexQueueService.request(1L, true);
+        indexQueueService.request(1L, false);
+
+        assertEquals(1, table.size());
+        assertEquals(3L, table.get(1L).requestCount);
+        assertTrue(table.get(1L).cleanup);
+
+        List<IndexQueueServiceBean.Claim> claims = indexQueueService.claimNext(10);
+        assertEquals(1, claims.size());
+        assertTrue(claims.get(0).isCleanup());
+        indexQueueService.done(claims.get(0), true);
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    public void testRequestedAgainWhileBeingIndexed() {
+        indexQueueService.init();
+        IndexQueueServiceBean.Claim claim = indexQueueService.requestAndClaim(1L, false);
+        assertNotNull(claim);
+
+        // (left for the worker indexing it)
+        assertNull(indexQueueService.requestAndClaim(1L, true));
+        assertTrue(indexQueueService.claimNext(10).isEmpty());
+
+        // not deleted, but released to be indexed once more:
+        indexQueueService.done(claim, true);
+        assertEquals(1, table.size());
+        assertNull(table.get(1L).claimedBy);
+
+        List<IndexQueueServiceBean.Claim> claims = indexQueueService.claimNext(10);
+        assertEquals(1, claims.size());
+        assertTrue(claims.get(0).isCleanup());
+        indexQueueService.done(claims.get(0), true);
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.INDEX_QUEUE_WORKERS, value = "2")
+    public void testWorkersAreCapped() {
+        indexQueueService.init();
+        assertTrue(indexQueueService.startWorker());
+        assertTrue(indexQueueService.startWorker());
+        assertFalse(indexQueueService.startWorker());
+
+        // (nothing queued)
+        indexQueueService.drainAndStopWorker();
+        assertTrue(indexQueueService.startWorker());
+        assertFalse(indexQueueService.startWorker());
+    }
+
+    @Test
+    public void testDrainTakesBoundedBatches() {
+        indexQueueService.init();
+        int queued = 2 * IndexQueueServiceBean.DRAIN_BATCH_SIZE + 5;
+        for (long id = 1; id <= queued; id++) {
+            indexQueueService.request(id, false);
+        }
+
+        assertTrue(indexQueueService.startWorker());
+        indexQueueService.drainAndStopWorker();
+
+        // (each worker leaves the rest of the queue to another one)
+        assertTrue(table.isEmpty());
+        verify(indexService, times(queued)).indexQueuedDataset(anyLong(), anyBoolean());
+        verify(indexQueueService, times(3)).claimNext(IndexQueueServiceBean.DRAIN_BATCH_SIZE);
+        verify(indexQueueService, times(2)).wakeWorker();
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.INDEX_QUEUE_WORKERS, value = "1")
+    public void testRequestMadeWhileTheWorkersAreBusy() {
+        indexQueueService.init();
+        indexQueueService.request(1L, false);
+        when(indexService.indexQueuedDataset(1L, false)).thenAnswer(invocation -> {
+            // (another dataset is edited meanwhile; its caller can't start a
+            // worker)
+            assertFalse(indexQueueService.startWorker());
+            indexQueueService.request(2L, false);
+            return true;
+        });
+
+        assertTrue(indexQueueService.startWorker());
+        indexQueueService.drainAndStopWorker();
+
+        // (picked up by a worker started once this one is done)
+        assertTrue(table.isEmpty());
+        verify(indexService).indexQueuedDataset(2L, false);
+        verify(indexQueueService).wakeWorker();
+    }
+
+    private Query query(String sql) {
+        Map<Integer, Object> parameters = new HashMap<>();
+        Query query = Mockito.mock(Query.class);
+        when(query.setParameter(anyInt(), any())).thenAnswer(invocation -> {
+            parameters.put(invocation.getArgument(0), invocation.getArgument(1));
+            return query;
+        });
+        when(query.executeUpdate()).thenAnswer(invocation -> executeUpdate(sql, parameters));
+        when(query.getResultList()).thenAnswer(invocation -> select(sql, parameters));
+        return query;
+    }
+
+    private int executeUpdate(String sql, Map<Integer, Object> p) {
+        if (sql.startsWith("INSERT")) {
+            Row row = table.get((Long) p.get(1));
+            if (row == null) {
+                row = new Row();
+                row.requestTime = (Timestamp) p.get(3);
+                table.put((Long) p.get(1), row);
+            }
+            row.requestCount++;
+            row.cleanup |= (Boolean) p.get(2);
+            return 1;
+        } else if (sql.startsWith("UPDATE INDEXREQUEST SET CLAIMEDBY = ?1")) {
+            Row row = table.get((Long) p.get(3));
+            row.claimedBy = (String) p.get(1);
+            row.claimTime = (Timestamp) p.get(2);
+            return 1;
+        } else if (sql.startsWith("DELETE")) {
+            Row row = table.get((Long) p.get(1));
+            if (row != null && row.requestCount == (Long) p.get(2) && p.get(3).equals(row.claimedBy)) {
+                table.remove((Long) p.get(1));
+                return 1;
+            }
+            return 0;
+        } else if (sql.startsWith("UPDATE INDEXREQUEST SET CLAIMEDBY = NULL, CLAIMTIME = NULL, REQUESTTIME = CLAIMTIME")) {
+            Row row = table.get((Long) p.get(1));
+            if (row != null && p.get(2).equals(row.claimedBy)) {
+                row.requestTime = row.claimTime;
+                row.claimedBy = null;
+                row.claimTime = null;
+                return 1;
+            }
+            return 0;
+        } else if (sql.startsWith("UPDATE INDEXREQUEST SET CLAIMEDBY = NULL, CLAIMTIME = NULL WHERE CLAIMEDBY")) {
+            int released = 0;
+            for (Row row : table.values()) {
+                if (p.get(1).equals(row.claimedBy)) {
+                    row.claimedBy = null;
+                    row.claimTime = null;
+                    released++;
+                }
+            }
+            return released;
+        }
+        throw new IllegalArgumentException(sql);
+    }
+
+    private List<Object> select(String sql, Map<Integer, Object> p) {
+        List<Object> rows = new ArrayList<>();
+        if (sql.contains("WHERE DATASET_ID = ?1")) {
+            Row row = table.get((Long) p.get(1));
+            if (row != null && claimable(row, (Timestamp) p.get(2))) {
+                rows.add(new Object[]{p.get(1), row.requestCount, row.cleanup});
+            }
+        } else if (sql.startsWith("SELECT DATASET_ID")) {
+            table.entrySet().stream()
+                    .filter(entry -> claimable(entry.getValue(), (Timestamp) p.get(1)))
+                    .sorted(Comparator.comparing(entry -> entry.getValue().requestTime))
+                    .limit((Integer) p.get(2))
+                    .forEach(entry -> rows.add(new Object[]{entry.getKey(), entry.getValue().requestCount, entry.getValue().cleanup}));
+        } else if (sql.startsWith("SELECT 1")) {
+            table.values().stream()
+                    .filter(row -> claimable(row, (Timestamp) p.get(1)))
+                    .limit(1)
+                    .forEach(row -> rows.add(1));
+        } else {
+            throw new IllegalArgumentException(sql);
+        }
+        return rows;
+    }
+
+    private static boolean claimable(Row row, Timestamp staleBefore) {
+        return row.claimedBy == null || row.claimTime.before(staleBefore);
+    }
+}
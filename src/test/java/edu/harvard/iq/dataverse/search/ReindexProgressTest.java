@@ -0,0 +1,55 @@
+package edu.harvard.iq.dataverse.search;
+
+import jakarta.json.JsonObject;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReindexProgressTest {
+
+    @Test
+    public void testProgress() {
+        ReindexProgress progress = new ReindexProgress(2, List.of(1L), List.of(3L, 2L), 100L, 0L);
+        assertTrue(progress.isRunning());
+
+        assertEquals(1L, progress.nextDataverse());
+        assertNull(progress.nextDataverse());
+        progress.dataverseIndexed();
+        assertEquals(3L, progress.nextDataset());
+        progress.datasetIndexed();
+        assertEquals(2L, progress.nextDataset());
+        progress.datasetFailed(2L);
+        assertNull(progress.nextDataset());
+
+        JsonObject json = progress.toJson(110L, 1L).build();
+        assertEquals("running", json.getString("state"));
+        assertEquals(1, json.getJsonObject("dataverses").getInt("indexed"));
+        assertEquals(1, json.getJsonObject("datasets").getInt("indexed"));
+        assertEquals(1, json.getJsonObject("datasets").getInt("failed"));
+        assertEquals(2L, json.getJsonArray("failedIds").getJsonNumber(0).longValue());
+        assertEquals(10, json.getInt("documentsIndexed"));
+        assertEquals(1, json.getInt("failedDocuments"));
+        assertEquals(0, json.getInt("secondsRemaining"));
+
+        assertFalse(progress.workerDone());
+        assertTrue(progress.workerDone());
+        assertFalse(progress.isRunning());
+        json = progress.toJson(110L, 1L).build();
+        assertEquals("finished", json.getString("state"));
+        assertTrue(json.containsKey("endTime"));
+    }
+
+    @Test
+    public void testCancel() {
+        ReindexProgress progress = new ReindexProgress(1, List.of(), List.of(1L, 2L), 0L, 0L);
+        progress.cancel();
+        assertNull(progress.nextDataset());
+        assertEquals("cancelling", progress.toJson(0L, 0L).build().getString("state"));
+        progress.workerDone();
+        assertEquals("cancelled", progress.toJson(0L, 0L).build().getString("state"));
+    }
+}
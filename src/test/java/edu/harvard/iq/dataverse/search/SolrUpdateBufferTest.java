@@ -0,0 +1,196 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SolrUpdateBufferTest {
+
+    private final SolrClient solrClient = Mockito.mock(SolrClient.class);
+
+    // (runs the flusher in the thread queueing the update)
+    private static final Executor inline = Runnable::run;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static SolrInputDocument doc(String id) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField(SearchFields.ID, id);
+        return doc;
+    }
+
+    private static List<SolrInputDocument> docs(String... ids) {
+        List<SolrInputDocument> docs = new ArrayList<>();
+        for (String id : ids) {
+            docs.add(doc(id));
+        }
+        return docs;
+    }
+
+    @Test
+    public void testAddSent() throws Exception {
+        SolrUpdateBuffer buffer = new SolrUpdateBuffer(() -> solrClient, inline, 3, 1000);
+
+        Future<Void> added = buffer.add(docs("dataset_2", "datafile_3"));
+
+        assertTrue(added.isDone());
+        SolrUpdateBuffer.await(added);
+        verify(solrClient).add(anyCollection(), eq(1000));
+        verify(solrClient, never()).commit();
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testBatchingWithoutWaiting() throws Exception {
+        // (the first batch is held up in Solr, while the others queue up)
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Collection<SolrInputDocument>> batches = Collections.synchronizedList(new ArrayList<>());
+        when(solrClient.add(anyCollection(), anyInt())).thenAnswer(invocation -> {
+            Collection<SolrInputDocument> batch = invocation.getArgument(0);
+            batches.add(new ArrayList<>(batch));
+            if (batches.size() == 1) {
+                sending.countDown();
+                release.await();
+            }
+            return null;
+        });
+        SolrUpdateBuffer buffer = new SolrUpdateBuffer(() -> solrClient, executor, 3, 1000);
+
+        List<Future<Void>> adds = new ArrayList<>();
+        adds.add(buffer.add(docs("dataverse_1")));
+        assertTrue(sending.await(10, TimeUnit.SECONDS));
+        // (queued while the flusher is busy, without waiting for it)
+        adds.add(buffer.add(docs("dataset_2", "datafile_3")));
+        adds.add(buffer.add(docs("dataverse_4")));
+        adds.add(buffer.add(docs("dataverse_5")));
+        for (Future<Void> add : adds) {
+            assertFalse(add.isDone());
+        }
+        assertEquals(4, buffer.getPendingCount());
+
+        release.countDown();
+        for (Future<Void> add : adds) {
+            add.get(10, TimeUnit.SECONDS);
+        }
+
+        // the 3 queued meanwhile are sent in 2 batches of up to 3 documents,
+        // the documents of one caller staying together:
+        assertEquals(3, batches.size());
+        assertEquals(1, batches.get(0).size());
+        assertEquals(3, batches.get(1).size());
+        assertEquals(1, batches.get(2).size());
+        assertEquals(0, buffer.getPendingCount());
+        assertEquals(5L, buffer.getDocumentsAdded());
+    }
+
+    @Test
+    public void testDeleteSentAfterQueuedDocuments() throws SolrServerException, IOException {
+        SolrUpdateBuffer buffer = new SolrUpdateBuffer(() -> solrClient, executor, 100, 1000);
+
+        buffer.add(docs("datafile_3"));
+        buffer.deleteById(List.of("datafile_3"));
+
+        InOrder inOrder = Mockito.inOrder(solrClient);
+        inOrder.verify(solrClient).add(anyCollection(), eq(1000));
+        inOrder.verify(solrClient).deleteById(List.of("datafile_3"), 1000);
+    }
+
+    @Test
+    public void testCommitIsAFlushBarrier() throws SolrServerException, IOException {
+        SolrUpdateBuffer buffer = new SolrUpdateBuffer(() -> solrClient, executor, 100, 1000);
+
+        Future<Void> added = buffer.add(docs("dataset_2"));
+        buffer.commit();
+
+        assertTrue(added.isDone());
+        InOrder inOrder = Mockito.inOrder(solrClient);
+        inOrder.verify(solrClient).add(anyCollection(), eq(1000));
+        inOrder.verify(solrClient).commit();
+    }
+
+    @Test
+    public void testHardCommitWithoutCommitWithin() throws Exception {
+        SolrUpdateBuffer buffer = new SolrUpdateBuffer(() -> solrClient, inline, 1, 0);
+
+        SolrUpdateBuffer.await(buffer.add(docs("dataset_2")));
+
+        verify(solrClient).add(anyCollection());
+        verify(solrClient).commit();
+    }
+
+    @Test
+    public void testFailedBatch() throws SolrServerException, IOException {
+        when(solrClient.add(anyCollection(), anyInt())).thenThrow(new IOException("Solr is down"));
+        SolrUpdateBuffer buffer = new SolrUpdateBuffer(() -> solrClient, inline, 2, 1000);
+
+        Future<Void> added = buffer.add(docs("dataset_2"));
+
+        assertThrows(IOException.class, () -> SolrUpdateBuffer.await(added));
+        assertEquals(0, buffer.getPendingCount());
+        assertEquals(1L, buffer.getCounters().build().getJsonNumber("failedDocuments").longValue());
+        assertEquals(0L, buffer.getDocumentsAdded());
+    }
+
+    @Test
+    public void testFailureReportedToTheOwnersOfTheBatch() throws Exception {
+        // (the first batch is held up in Solr while 2 more are queued; they
+        // are sent together, and fail)
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(solrClient.add(anyCollection(), anyInt())).thenAnswer(invocation -> {
+            sending.countDown();
+            release.await();
+            return null;
+        }).thenThrow(new SolrServerException("Bad document"));
+        SolrUpdateBuffer buffer = new SolrUpdateBuffer(() -> solrClient, executor, 100, 1000);
+
+        Future<Void> first = buffer.add(docs("dataverse_1"));
+        assertTrue(sending.await(10, TimeUnit.SECONDS));
+        Future<Void> second = buffer.add(docs("dataset_2"));
+        Future<Void> third = buffer.add(docs("dataset_3"));
+        release.countDown();
+
+        first.get(10, TimeUnit.SECONDS);
+        for (Future<Void> add : List.of(second, third)) {
+            ExecutionException thrown = assertThrows(ExecutionException.class, () -> add.get(10, TimeUnit.SECONDS));
+            assertTrue(thrown.getCause() instanceof SolrServerException);
+        }
+        verify(solrClient, times(2)).add(anyCollection(), anyInt());
+        assertEquals(2L, buffer.getFailedDocuments());
+    }
+}
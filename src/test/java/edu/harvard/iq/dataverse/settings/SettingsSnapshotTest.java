@@ -0,0 +1,39 @@
+package edu.harvard.iq.dataverse.settings;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SettingsSnapshotTest {
+
+    private final SettingsSnapshot snapshot = new SettingsSnapshot(3L, List.of(
+            new Setting(":SiteUrl", "https://demo.dataverse.org"),
+            new Setting(":ApplicationTermsOfUse", "Terms"),
+            new Setting(":ApplicationTermsOfUse", "fr", "Conditions")));
+
+    @Test
+    public void testGet() {
+        assertEquals(3L, snapshot.getVersion());
+        assertEquals("https://demo.dataverse.org", snapshot.get(":SiteUrl"));
+        assertEquals("Terms", snapshot.get(":ApplicationTermsOfUse"));
+        assertNull(snapshot.get(":NotSet"));
+    }
+
+    @Test
+    public void testGetLocalized() {
+        assertEquals("Conditions", snapshot.get(":ApplicationTermsOfUse", "fr"));
+        assertNull(snapshot.get(":ApplicationTermsOfUse", "de"));
+        assertNull(snapshot.get(":SiteUrl", "fr"));
+    }
+
+    @Test
+    public void testGetAllReturnsCopies() {
+        List<Setting> all = snapshot.getAll();
+        assertEquals(3, all.size());
+        all.forEach(setting -> setting.setContent("changed"));
+        assertEquals("Terms", snapshot.get(":ApplicationTermsOfUse"));
+        assertEquals("Terms", snapshot.getAll().get(1).getContent());
+    }
+}
@@ -4,17 +4,24 @@ import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.datasetutility.FileExceedsMaxSizeException;
 import edu.harvard.iq.dataverse.Embargo;
 import edu.harvard.iq.dataverse.FileMetadata;
 import edu.harvard.iq.dataverse.Guestbook;
 import edu.harvard.iq.dataverse.TermsOfUseAndAccess;
 import edu.harvard.iq.dataverse.license.License;
 import edu.harvard.iq.dataverse.util.FileUtil.FileCitationExtension;
+import edu.harvard.iq.dataverse.util.file.FileExceedsStorageQuotaException;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.net.URI;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
@@ -27,6 +34,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -371,4 +379,45 @@ public class FileUtilTest {
         assertEquals("application/octet-stream", contentType);
     }
 
+    @Test
+    public void testCopyAndCalculateChecksum() throws IOException {
+        Path source = Paths.get("src/test/resources/netcdf/madis-raob");
+        Path target = Files.createTempFile("checksum", "test");
+        try (InputStream in = Files.newInputStream(source)) {
+            String checksum = FileUtil.copyAndCalculateChecksum(in, target, DataFile.ChecksumType.MD5);
+            assertEquals(FileUtil.calculateChecksum(source.toString(), DataFile.ChecksumType.MD5), checksum);
+            assertEquals(Files.size(source), Files.size(target));
+        } finally {
+            Files.delete(target);
+        }
+    }
+
+    @Test
+    public void testCopyAndCalculateChecksumOverLimits() throws IOException {
+        Path source = Paths.get("src/test/resources/netcdf/madis-raob");
+        long size = Files.size(source);
+        Path target = Files.createTempFile("checksum", "test");
+        try (InputStream in = Files.newInputStream(source)) {
+            assertThrows(FileExceedsMaxSizeException.class, () -> FileUtil.copyAndCalculateChecksum(in, target, DataFile.ChecksumType.MD5, size - 1, null));
+        }
+        assertFalse(Files.exists(target));
+
+        // (the quota is shared by the files of the same upload)
+        AtomicLong storageQuotaRemaining = new AtomicLong(size + size / 2);
+        Path first = Files.createTempFile("checksum", "test");
+        Path second = Files.createTempFile("checksum", "test");
+        try {
+            try (InputStream in = Files.newInputStream(source)) {
+                FileUtil.copyAndCalculateChecksum(in, first, DataFile.ChecksumType.MD5, size, storageQuotaRemaining);
+            }
+            assertEquals(size / 2, storageQuotaRemaining.get());
+            try (InputStream in = Files.newInputStream(source)) {
+                assertThrows(FileExceedsStorageQuotaException.class, () -> FileUtil.copyAndCalculateChecksum(in, second, DataFile.ChecksumType.MD5, size, storageQuotaRemaining));
+            }
+            assertFalse(Files.exists(second));
+        } finally {
+            Files.deleteIfExists(first);
+        }
+    }
+
 }
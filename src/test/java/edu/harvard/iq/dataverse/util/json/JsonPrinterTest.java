@@ -10,6 +10,7 @@ import edu.harvard.iq.dataverse.privateurl.PrivateUrl;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.UserNotification.Type;
 
+import java.io.StringWriter;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,10 +20,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
+import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.json.JsonString;
+import jakarta.json.stream.JsonGenerator;
 
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import org.junit.jupiter.api.Test;
@@ -181,6 +184,78 @@ public class JsonPrinterTest {
         assertEquals("Some reason", jsonObject.getJsonObject("dataFile").getJsonObject("embargo").getString("reason"));
     }
 
+    @Test
+    public void testWriteFileMetadatas() {
+        DatasetVersion dsVersion = new DatasetVersion();
+        List<FileMetadata> fmds = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            DataFile dataFile = new DataFile();
+            dataFile.setId(id);
+            dataFile.setProtocol("doi");
+            dataFile.setAuthority("10.5072/FK2");
+            dataFile.setIdentifier("ABC" + id);
+            dataFile.setFilesize(id * 100);
+            FileMetadata fmd = new FileMetadata();
+            fmd.setLabel("file" + id + ".txt");
+            fmd.setDatasetVersion(dsVersion);
+            fmd.setDataFile(dataFile);
+            fmds.add(fmd);
+        }
+
+        StringWriter streamed = new StringWriter();
+        try (JsonGenerator generator = Json.createGenerator(streamed)) {
+            JsonPrinter.writeFileMetadatas(generator, fmds);
+        }
+        assertEquals(Json.createObjectBuilder().add("files", JsonPrinter.jsonFileMetadatas(fmds)).build().getJsonArray("files").toString(),
+                streamed.toString());
+    }
+
+    @Test
+    public void testWriteJsonDatasetVersion() {
+        SettingsServiceBean nullServiceBean = null;
+        DatasetFieldServiceBean nullDFServiceBean = null;
+        JsonPrinter.injectSettingsService(nullServiceBean, nullDFServiceBean);
+        Dataset dataset = new Dataset();
+        dataset.setId(1L);
+        dataset.setProtocol("doi");
+        dataset.setAuthority("10.5072/FK2");
+        dataset.setIdentifier("DATASET");
+        DatasetVersion dsVersion = dataset.getLatestVersion();
+        dsVersion.setId(2L);
+        TermsOfUseAndAccess terms = new TermsOfUseAndAccess();
+        terms.setTermsOfUse("Use as you wish");
+        terms.setTermsOfAccess("Ask first");
+        dsVersion.setTermsOfUseAndAccess(terms);
+
+        DatasetField title = new DatasetField();
+        title.setDatasetFieldType(datasetFieldTypeSvc.findByName("title"));
+        title.setSingleValue("A title");
+        dsVersion.setDatasetFields(new ArrayList<>(List.of(title)));
+
+        for (long id = 1; id <= 3; id++) {
+            DataFile dataFile = new DataFile();
+            dataFile.setId(10 + id);
+            dataFile.setProtocol("doi");
+            dataFile.setAuthority("10.5072/FK2");
+            dataFile.setIdentifier("FILE" + id);
+            dataFile.setFilesize(id * 100);
+            dataFile.setOwner(dataset);
+            FileMetadata fmd = new FileMetadata();
+            fmd.setLabel("file" + id + ".txt");
+            fmd.setDatasetVersion(dsVersion);
+            fmd.setDataFile(dataFile);
+            dsVersion.getFileMetadatas().add(fmd);
+        }
+
+        for (boolean includeFiles : new boolean[]{true, false}) {
+            StringWriter streamed = new StringWriter();
+            try (JsonGenerator generator = Json.createGenerator(streamed)) {
+                JsonPrinter.writeJson(generator, dsVersion, null, includeFiles);
+            }
+            assertEquals(JsonPrinter.json(dsVersion, null, includeFiles).build().toString(), streamed.toString());
+        }
+    }
+
     @Test
     public void testDatasetContactOutOfBoxNoPrivacy() {
         MetadataBlock block = new MetadataBlock();